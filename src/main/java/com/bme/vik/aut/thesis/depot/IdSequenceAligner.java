@@ -0,0 +1,65 @@
+package com.bme.vik.aut.thesis.depot;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// The entities used to get their IDs from identity columns and now draw them from pooled sequences,
+// which lets Hibernate batch the inserts. A sequence created next to a table that already has rows starts at 1,
+// so before anything is inserted every sequence is moved past the highest ID already in its table.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class IdSequenceAligner implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdSequenceAligner.class);
+
+    // has to match the allocationSize of the entities' @SequenceGenerator
+    static final int ALLOCATION_SIZE = 50;
+
+    // { K: sequence name, V: table whose IDs it generates }
+    static final Map<String, String> SEQUENCE_TABLES = Map.of(
+            "category_seq", "category",
+            "product_schema_seq", "product_schema",
+            "inventory_seq", "inventory",
+            "product_lot_seq", "product_lot",
+            "product_seq", "product",
+            "orders_seq", "orders"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+
+    @Override
+    public void run(String... args) {
+        Dialect dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        SEQUENCE_TABLES.forEach((sequenceName, tableName) -> align(dialect, sequenceName, tableName));
+    }
+
+    // The pooled optimizer hands out the block ending at the value the sequence returns,
+    // so once the sequence returned at least the highest ID every later block lies above it.
+    // Checking costs one block of IDs per startup.
+    private void align(Dialect dialect, String sequenceName, String tableName) {
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + tableName, Long.class);
+        Long nextValue = jdbcTemplate.queryForObject(
+                dialect.getSequenceSupport().getSequenceNextValString(sequenceName), Long.class);
+        if (maxId == null || nextValue == null || nextValue >= maxId) {
+            return;
+        }
+
+        long restartValue = maxId + ALLOCATION_SIZE;
+        jdbcTemplate.execute("ALTER SEQUENCE " + sequenceName + " RESTART WITH " + restartValue);
+        logger.info("Moved sequence {} to {} past the highest existing ID {} of table {}",
+                sequenceName, restartValue, maxId, tableName);
+    }
+}
@@ -0,0 +1,44 @@
+package com.bme.vik.aut.thesis.depot;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// Inventories used to list their product IDs in the inventory_products table, now every product points to
+// its inventory through product.inventory_id. On the first start after the change the old table is copied
+// into the new column and dropped. The copy only fills empty columns, so an interrupted run can be repeated.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class InventoryOwnershipMigration implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventoryOwnershipMigration.class);
+
+    static final String LEGACY_TABLE = "inventory_products";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void run(String... args) {
+        try {
+            jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + LEGACY_TABLE, Integer.class);
+        } catch (BadSqlGrammarException e) {
+            // created after the change or already migrated
+            return;
+        }
+
+        int migratedCount = jdbcTemplate.update(
+                "UPDATE product SET inventory_id = " +
+                        "(SELECT MIN(ip.inventory_id) FROM " + LEGACY_TABLE + " ip WHERE ip.product_id = product.id) " +
+                        "WHERE inventory_id IS NULL " +
+                        "AND id IN (SELECT ip.product_id FROM " + LEGACY_TABLE + " ip)");
+        jdbcTemplate.execute("DROP TABLE " + LEGACY_TABLE);
+        logger.info("Moved the inventory of {} products from {} to product.inventory_id", migratedCount, LEGACY_TABLE);
+    }
+}
@@ -0,0 +1,7 @@
+package com.bme.vik.aut.thesis.depot.exception.inventory;
+
+public class StockSnapshotException extends RuntimeException {
+    public StockSnapshotException(String message) {
+        super(message);
+    }
+}
@@ -21,7 +21,8 @@ import java.util.List;
 public class ProductSchema {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_schema_seq")
+    @SequenceGenerator(name = "product_schema_seq", sequenceName = "product_schema_seq", allocationSize = 50)
     private Long id;
 
     private String name;
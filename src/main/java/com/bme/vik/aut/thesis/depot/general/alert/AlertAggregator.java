@@ -0,0 +1,195 @@
+package com.bme.vik.aut.thesis.depot.general.alert;
+
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.alert.event.AlertDigestEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.event.LowStockAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.event.ProductExpiredAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxService;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.Collectors;
+
+// Low stock alerts are raised on every order approval and expired alerts on every expiry check, so the same
+// alert would be mailed again and again. This collects them per inventory and publishes one AlertDigestEvent
+// per inventory every window. An alert of an (inventory, product schema, alert type) is suppressed if it only
+// lists products that were already reported for the same key within the window.
+// The outbox events the alerts were relayed from travel with the digest of their inventory, whose handler marks them
+// dispatched once it was mailed. Events whose alerts were all suppressed are marked when the digests are published.
+@Component
+@RequiredArgsConstructor
+public class AlertAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlertAggregator.class);
+
+    @Value("${custom.alert.digest.window-ms}")
+    private long DIGEST_WINDOW_MS;
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final TimeService timeService;
+    private final OutboxService outboxService;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<AlertKey, ReportWindow> reportWindows = new HashMap<>();
+    // { K: inventoryID, V: alerts to send in the next digest }
+    private final Map<Long, PendingDigest> pendingDigests = new LinkedHashMap<>();
+    // { K: inventoryID, V: outbox events whose alerts were taken since the last digests were published }
+    private final Map<Long, List<Long>> pendingOutboxEventIds = new HashMap<>();
+
+    private final Map<AlertType, Counter> suppressedCounters = new EnumMap<>(AlertType.class);
+    private Counter sentDigestsCounter;
+
+    @PostConstruct
+    public void init() {
+        for (AlertType alertType : AlertType.values()) {
+            suppressedCounters.put(alertType, Counter.builder("depot.alert.suppressed")
+                    .description("Alerts not mailed because the same products were already reported within the digest window")
+                    .tag("type", alertType.name())
+                    .register(meterRegistry));
+        }
+        sentDigestsCounter = Counter.builder("depot.alert.digest.sent")
+                .description("Alert digests published, at most one per inventory per digest window")
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public synchronized void onLowStockAlert(LowStockAlertEvent event) {
+        Inventory inventory = event.getInventory();
+        LocalDateTime now = timeService.getCurrentTime();
+
+        event.getStock().forEach((productSchema, products) -> {
+            List<Product> newProducts = takeNewProducts(new AlertKey(inventory.getId(), productSchema.getId(), AlertType.LOW_STOCK), products, now);
+            if (newProducts != null) {
+                pendingDigest(inventory).lowStock
+                        .computeIfAbsent(productSchema.getId(), id -> new SchemaProducts(productSchema, new ArrayList<>()))
+                        .products().addAll(newProducts);
+            }
+        });
+    }
+
+    @EventListener
+    public synchronized void onProductExpiredAlert(ProductExpiredAlertEvent event) {
+        Inventory inventory = event.getInventory();
+        LocalDateTime now = timeService.getCurrentTime();
+
+        event.getProducts().stream()
+                .collect(Collectors.groupingBy(product -> product.getSchema().getId(), LinkedHashMap::new, Collectors.toList()))
+                .forEach((productSchemaId, products) -> {
+                    List<Product> newProducts = takeNewProducts(new AlertKey(inventory.getId(), productSchemaId, AlertType.EXPIRED), products, now);
+                    if (newProducts != null) {
+                        pendingDigest(inventory).expiredProducts.addAll(newProducts);
+                    }
+                });
+    }
+
+    // Called by the OutboxRelay once the events it published to this were handed over
+    public synchronized void addOutboxEvents(Long inventoryId, List<Long> outboxEventIds) {
+        pendingOutboxEventIds.computeIfAbsent(inventoryId, id -> new ArrayList<>()).addAll(outboxEventIds);
+    }
+
+    @Scheduled(fixedRateString = "${custom.alert.digest.window-ms}", initialDelayString = "${custom.alert.digest.window-ms}")
+    public void publishDigests() {
+        List<PendingDigest> digests;
+        Map<Long, List<Long>> outboxEventIds;
+        synchronized (this) {
+            digests = new ArrayList<>(pendingDigests.values());
+            pendingDigests.clear();
+            outboxEventIds = new HashMap<>(pendingOutboxEventIds);
+            pendingOutboxEventIds.clear();
+            LocalDateTime now = timeService.getCurrentTime();
+            reportWindows.values().removeIf(window -> window.isClosedAt(now, DIGEST_WINDOW_MS));
+        }
+
+        // published outside the lock, the listeners send mails
+        digests.forEach(digest -> {
+            eventPublisher.publishEvent(new AlertDigestEvent(
+                    this,
+                    digest.inventory,
+                    digest.lowStock.values().stream()
+                            .collect(Collectors.toMap(SchemaProducts::productSchema, SchemaProducts::products, (a, b) -> a, LinkedHashMap::new)),
+                    digest.expiredProducts,
+                    Objects.requireNonNullElse(outboxEventIds.remove(digest.inventory.getId()), List.of())));
+            sentDigestsCounter.increment();
+        });
+        if (!digests.isEmpty()) {
+            logger.info("Published {} alert digests", digests.size());
+        }
+
+        // the alerts of these events were suppressed as already reported, there is nothing to mail
+        List<Long> suppressedOutboxEventIds = outboxEventIds.values().stream().flatMap(List::stream).toList();
+        if (!suppressedOutboxEventIds.isEmpty()) {
+            outboxService.markDigested(suppressedOutboxEventIds);
+        }
+    }
+
+    public double getSuppressedCount(AlertType alertType) {
+        return suppressedCounters.get(alertType).count();
+    }
+
+    public double getSentDigestCount() {
+        return sentDigestsCounter.count();
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    // Returns the products not yet reported for the key in its window, null if the alert is suppressed.
+    // The first alert of a window is always reported, even without products (e.g. out of stock).
+    private List<Product> takeNewProducts(AlertKey key, List<Product> products, LocalDateTime now) {
+        ReportWindow window = reportWindows.get(key);
+        if (window == null || window.isClosedAt(now, DIGEST_WINDOW_MS)) {
+            ReportWindow newWindow = new ReportWindow(now, new HashSet<>());
+            reportWindows.put(key, newWindow);
+            products.forEach(product -> newWindow.productIds().add(product.getId()));
+            return new ArrayList<>(products);
+        }
+
+        List<Product> newProducts = products.stream()
+                .filter(product -> window.productIds().add(product.getId()))
+                .toList();
+        if (newProducts.isEmpty()) {
+            suppressedCounters.get(key.alertType()).increment();
+            return null;
+        }
+        return newProducts;
+    }
+
+    private PendingDigest pendingDigest(Inventory inventory) {
+        PendingDigest digest = pendingDigests.computeIfAbsent(inventory.getId(), id -> new PendingDigest());
+        digest.inventory = inventory;
+        return digest;
+    }
+
+    private record AlertKey(Long inventoryId, Long productSchemaId, AlertType alertType) {
+    }
+
+    private record ReportWindow(LocalDateTime openedAt, Set<Long> productIds) {
+        boolean isClosedAt(LocalDateTime now, long windowMs) {
+            return !now.isBefore(openedAt.plus(windowMs, ChronoUnit.MILLIS));
+        }
+    }
+
+    private record SchemaProducts(ProductSchema productSchema, List<Product> products) {
+    }
+
+    private static class PendingDigest {
+        private Inventory inventory;
+        private final Map<Long, SchemaProducts> lowStock = new LinkedHashMap<>();
+        private final List<Product> expiredProducts = new ArrayList<>();
+    }
+}
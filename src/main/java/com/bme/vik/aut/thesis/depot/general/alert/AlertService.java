@@ -1,26 +1,26 @@
 package com.bme.vik.aut.thesis.depot.general.alert;
 
-import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
-import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchemaService;
-import com.bme.vik.aut.thesis.depot.general.alert.event.LowStockAlertEvent;
-import com.bme.vik.aut.thesis.depot.general.alert.event.ProductExpiredAlertEvent;
-import com.bme.vik.aut.thesis.depot.general.alert.event.ReorderAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxEventType;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxPayload;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxService;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryAlertThresholds;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryService;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.*;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockLocation;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -28,6 +28,8 @@ public class AlertService {
 
     private static final Logger logger = LoggerFactory.getLogger(AlertService.class);
 
+    private static final int LONG_EXPIRED_AFTER_DAYS = 30;
+
     @Value("${custom.alert.auto-reorder}")
     private boolean AUTO_REORDER_ENABLED;
 
@@ -38,13 +40,15 @@ public class AlertService {
     private boolean EXPIRY_ALERT_ENABLED;
 
     private final InventoryRepository inventoryRepository;
-    private final ApplicationEventPublisher eventPublisher;
+    private final OutboxService outboxService;
     private final TimeService timeService;
     private final ProductService productService;
-    private final ProductSchemaService productSchemaService;
     @Setter
     private InventoryService inventoryService;
 
+    // Each run only reads the products whose expiry status changes, found by expiry date ranges on an index
+    // (see ProductRepository.findExpiryTransitions), so its cost follows the number of transitions, not the stock.
+    // Expired alerts are sent for the products that moved to a worse status in this run.
     @Scheduled(fixedRateString = "${custom.alert.expiry-check-interval-ms}", initialDelay = 10000)
     @Transactional
     public void checkForExpiredProducts() {
@@ -55,74 +59,97 @@ public class AlertService {
 
         logger.info("Running periodic expiry check");
 
+        LocalDateTime now = timeService.getCurrentTime();
         List<Inventory> inventories = inventoryRepository.findAll();
+        int transitionCount = 0;
 
         for (Inventory inventory : inventories) {
-            List<Product> expiredProducts = new ArrayList<>();
-
-            for (Long productId : inventory.getProductIds()) {
-                Product product = productService.getProductById(productId);
-
-                ExpiryStatus newExpiryStatus = determineExpiryStatus(product.getExpiresAt(), inventory.getExpiryAlertThreshold());
-                ExpiryStatus oldExpiryStatus = product.getExpiryStatus();
-
-                if (newExpiryStatus != oldExpiryStatus) {
-                    logger.info("Expiry status changed for product ID: {} in inventory ID: {} from {} to {}",
-                            productId, inventory.getId(), oldExpiryStatus, newExpiryStatus);
-
-                    product.setExpiryStatus(newExpiryStatus);
-                    inventoryService.changeProductExpirationStatus(inventory.getId(), product.getSchema().getId(), productId, newExpiryStatus);
-                }
-
-                if (newExpiryStatus != ExpiryStatus.NOTEXPIRED && product.getStatus() != ProductStatus.REMOVED) {
-                    expiredProducts.add(product);
-                }
+            int expiryAlertThreshold = inventory.getExpiryAlertThreshold();
+            List<Product> transitioningProducts = productService.getProductsDueForExpiryTransition(
+                    inventory.getId(),
+                    now.plusDays(expiryAlertThreshold),
+                    now,
+                    now.minusDays(LONG_EXPIRED_AFTER_DAYS));
+            if (transitioningProducts.isEmpty()) {
+                continue;
             }
 
+            Map<ExpiryStatus, List<Product>> productsByNewStatus = transitioningProducts.stream()
+                    .collect(Collectors.groupingBy(
+                            product -> determineExpiryStatus(product.getExpiresAt(), expiryAlertThreshold, now),
+                            () -> new EnumMap<>(ExpiryStatus.class),
+                            Collectors.toList()));
+            productsByNewStatus.forEach((newExpiryStatus, products) -> {
+                logger.info("Expiry status of {} products in inventory ID: {} changed to {}",
+                        products.size(), inventory.getId(), newExpiryStatus);
+                inventoryService.changeProductExpirationStatuses(inventory.getId(), products, newExpiryStatus);
+            });
+            transitionCount += transitioningProducts.size();
+
+            List<Product> expiredProducts = transitioningProducts.stream()
+                    .filter(product -> product.getStatus() != ProductStatus.REMOVED)
+                    .toList();
             if (!expiredProducts.isEmpty()) {
-                eventPublisher.publishEvent(new ProductExpiredAlertEvent(this, inventory, expiredProducts));
+                outboxService.enqueue(OutboxEventType.PRODUCT_EXPIRED, inventory.getId(),
+                        OutboxPayload.expired(expiredProducts.stream().map(Product::getId).toList()));
             }
         }
 
-        logger.info("Expiry check completed.");
+        logger.info("Expiry check completed. Expiry status changed for {} products.", transitionCount);
     }
 
-    public void checkStockForReorder(Map<Long, Map<Long, List<Product>>> stock) {
-        logger.info("Checking all inventories in the depot for reorder and low stock alerts");
-
-        stock.forEach((inventoryId, productSchemaMap) -> {
-            Inventory inventory = inventoryService.getInventoryById(inventoryId);
-
-            Map<ProductSchema, List<Product>> lowStockProducts = new HashMap<>();
-            List<InternalReorder> reorderProducts = new ArrayList<>();
+    // Checks only the given buckets against the kept free counts and the cached thresholds of their inventory,
+    // the products are only loaded for an alert. Alerts go to the outbox in the caller's transaction.
+    @Transactional
+    public void checkStockForReorder(Collection<StockLocation> touchedBuckets) {
+        Map<Long, List<Long>> schemaIdsByInventory = touchedBuckets.stream()
+                .collect(Collectors.groupingBy(StockLocation::inventoryId,
+                        Collectors.mapping(StockLocation::productSchemaId, Collectors.toList())));
+        logger.info("Checking {} stock buckets of {} inventories for reorder and low stock alerts",
+                touchedBuckets.size(), schemaIdsByInventory.size());
+
+        schemaIdsByInventory.forEach((inventoryId, productSchemaIds) -> {
+            InventoryAlertThresholds thresholds = inventoryService.getAlertThresholds(inventoryId);
+
+            Map<Long, List<Long>> lowStockProductIds = new HashMap<>();
+            List<OutboxPayload.ReorderItem> reorders = new ArrayList<>();
+
+            productSchemaIds.forEach(productSchemaId -> {
+                boolean lowOnStock = LOW_STOCK_ALERT_ENABLED && inventoryService.lowOnStock(thresholds, productSchemaId);
+                boolean needsReorder = AUTO_REORDER_ENABLED && inventoryService.needsReorderForStock(thresholds, productSchemaId);
+                if (!lowOnStock && !needsReorder) {
+                    return;
+                }
 
-            productSchemaMap.forEach((productSchemaId, products) -> {
-                if (LOW_STOCK_ALERT_ENABLED && inventoryService.lowOnStock(inventory, productSchemaId)) {
-                    List<Product> temp = new ArrayList<>();
-                    products.stream()
+                List<Product> products = inventoryService.getStockProducts(inventoryId, productSchemaId);
+                if (lowOnStock) {
+                    lowStockProductIds.put(productSchemaId, products.stream()
                             .filter(product -> product.getStatus() != ProductStatus.REMOVED)
-                            .forEach(temp::add);
-                    lowStockProducts.put(productSchemaService.getProductSchemaById(productSchemaId), temp);
+                            .map(Product::getId)
+                            .collect(Collectors.toList()));
                 }
-
-                if (AUTO_REORDER_ENABLED && inventoryService.needsReorderForStock(inventory, productSchemaId)) {
-                    reorderProducts.add(new InternalReorder(productSchemaService.getProductSchemaById(productSchemaId), products.get(0).getDescription(), products.get(0).getExpiresAt()));
+                if (needsReorder && !products.isEmpty()) {
+                    reorders.add(new OutboxPayload.ReorderItem(productSchemaId, products.get(0).getDescription(), products.get(0).getExpiresAt()));
                 }
             });
 
-            if (!lowStockProducts.isEmpty()) {
-                eventPublisher.publishEvent(new LowStockAlertEvent(this, inventory, lowStockProducts));
+            if (!lowStockProductIds.isEmpty()) {
+                outboxService.enqueue(OutboxEventType.LOW_STOCK, inventoryId, OutboxPayload.lowStock(lowStockProductIds));
             }
 
-            if (!reorderProducts.isEmpty()) {
-                eventPublisher.publishEvent(new ReorderAlertEvent(this, inventory, reorderProducts));
+            if (!reorders.isEmpty()) {
+                outboxService.enqueue(OutboxEventType.REORDER, inventoryId, OutboxPayload.reorders(reorders));
             }
         });
     }
 
     public ExpiryStatus determineExpiryStatus(LocalDateTime expiryDate, int expiryAlertThreshold) {
-        LocalDateTime now = timeService.getCurrentTime();
-        if (expiryDate.isBefore(now.minusDays(30))) {
+        return determineExpiryStatus(expiryDate, expiryAlertThreshold, timeService.getCurrentTime());
+    }
+
+    // Has to agree with the thresholds checkForExpiredProducts queries with
+    private ExpiryStatus determineExpiryStatus(LocalDateTime expiryDate, int expiryAlertThreshold, LocalDateTime now) {
+        if (expiryDate.isBefore(now.minusDays(LONG_EXPIRED_AFTER_DAYS))) {
             return ExpiryStatus.LONGEXPIRED;
         } else if (expiryDate.isBefore(now)) {
             return ExpiryStatus.EXPIRED;
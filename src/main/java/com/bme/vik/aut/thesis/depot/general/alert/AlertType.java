@@ -0,0 +1,6 @@
+package com.bme.vik.aut.thesis.depot.general.alert;
+
+public enum AlertType {
+    LOW_STOCK,
+    EXPIRED
+}
@@ -1,5 +1,6 @@
 package com.bme.vik.aut.thesis.depot.general.alert;
 
+import com.bme.vik.aut.thesis.depot.general.config.AsyncConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -22,18 +23,23 @@ public class EmailService {
         this.javaMailSender = javaMailSender;
     }
 
-    @Async
+    @Async(AsyncConfig.MAIL_EXECUTOR)
     public void sendEmail(String to, String subject, String body) {
+        try {
+            sendEmailNow(to, subject, body);
+        } catch (Exception e) {
+            logger.error("Failed to send email to: {}", to, e);
+        }
+    }
+
+    // Sends on the caller's thread, for callers that have to know whether the mail went out
+    public void sendEmailNow(String to, String subject, String body) {
         SimpleMailMessage mailMessage = new SimpleMailMessage();
         mailMessage.setFrom(defaultFromAddress);
         mailMessage.setTo(to);
         mailMessage.setSubject(subject);
         mailMessage.setText(body);
 
-        try {
-            javaMailSender.send(mailMessage);
-        } catch (Exception e) {
-            logger.error("Failed to send email to: {}", to, e);
-        }
+        javaMailSender.send(mailMessage);
     }
 }
\ No newline at end of file
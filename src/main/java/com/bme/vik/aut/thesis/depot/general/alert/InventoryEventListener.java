@@ -1,19 +1,18 @@
 package com.bme.vik.aut.thesis.depot.general.alert;
 
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
-import com.bme.vik.aut.thesis.depot.general.alert.event.LowStockAlertEvent;
-import com.bme.vik.aut.thesis.depot.general.alert.event.ProductExpiredAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.event.AlertDigestEvent;
 import com.bme.vik.aut.thesis.depot.general.alert.event.ReorderAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxService;
+import com.bme.vik.aut.thesis.depot.general.config.AsyncConfig;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
-import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryService;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
-import com.bme.vik.aut.thesis.depot.general.supplier.product.dto.CreateProductStockRequest;
 import com.bme.vik.aut.thesis.depot.general.supplier.supplier.Supplier;
-import com.bme.vik.aut.thesis.depot.security.user.MyUser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
+import org.springframework.mail.MailException;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
@@ -28,71 +27,35 @@ public class InventoryEventListener {
     @Value("${custom.alert.mail.should-send}")
     private boolean SHOULD_SEND_EMAIL_NOTIFICATION;
 
-    private final InventoryService inventoryService;
+    private final ReorderService reorderService;
     private final EmailService emailService;
+    private final OutboxService outboxService;
 
-    public InventoryEventListener(InventoryService inventoryService, EmailService emailService) {
-        this.inventoryService = inventoryService;
+    public InventoryEventListener(ReorderService reorderService, EmailService emailService, OutboxService outboxService) {
+        this.reorderService = reorderService;
         this.emailService = emailService;
+        this.outboxService = outboxService;
     }
 
+    // Published by the OutboxRelay on the reorder executor with the reorders of one inventory collected over the
+    // reorder batch window, in the transaction that marks them dispatched, so a failed reorder is retried from the outbox
     @EventListener
-    @Async
-    public void handleLowStockAlertEvent(LowStockAlertEvent event) {
-        if (!SHOULD_SEND_EMAIL_NOTIFICATION) {
-            logger.info("Low stock alert email notification is disabled. Skipping email notification.");
-            return;
-        }
-
-        Inventory inventory = event.getInventory();
-        Map<ProductSchema, List<Product>> lowStockProducts = event.getStock();
-        Supplier supplier = inventory.getSupplier();
-
-        StringBuilder emailBody = new StringBuilder();
-        emailBody.append("Dear Supplier,\n\n");
-
-        for (Map.Entry<ProductSchema, List<Product>> entry : lowStockProducts.entrySet()) {
-            ProductSchema productSchema = entry.getKey();
-            List<Product> products = entry.getValue();
-
-            emailBody.append(String.format("The following products in your inventory are running low on stock for the %s (%d) product schema:\n\n", productSchema.getName(), productSchema.getId()));
-
-            for (Product product : products) {
-                emailBody.append(String.format(" - Product '%s' (ID: %d)\n", product.getSchema().getName(), product.getId()));
-            }
-            emailBody.append("\n"); // Ensure this newline is added only once per product schema group
-        }
-
-        emailBody.append("Please take necessary actions.\n\nThank you!");
-
-        emailService.sendEmail(supplier.getEmail(), "Low Stock Alert", emailBody.toString());
-        logger.info("Low stock alert email sent to {}", supplier.getEmail());
-    }
-
-    @EventListener
-    @Async
     public void handleReorderEvent(ReorderAlertEvent event) {
         Inventory inventory = event.getInventory();
-        List<InternalReorder> reorders = event.getReorders();
         Supplier supplier = inventory.getSupplier();
-        MyUser user = supplier.getUser();
         StringBuilder emailBody = new StringBuilder();
 
         logger.info("Handling reorder event for inventory ID: {}", inventory.getId());
 
+        List<InternalReorder> reorders = reorderService.reorder(inventory, event.getReorders());
+        if (reorders.isEmpty()) {
+            logger.info("No reorder applied for inventory ID: {}", inventory.getId());
+            return;
+        }
+
         emailBody.append("Dear Supplier,\n\nAuto reorder triggered.\n\n");
 
         for (InternalReorder reorder : reorders) {
-            CreateProductStockRequest request = CreateProductStockRequest.builder()
-                    .productSchemaId(reorder.getProductSchema().getId())
-                    .description(reorder.getProductDescription())
-                    .quantity(inventory.getReorderQuantity())
-                    .expiresAt(reorder.getExpiresAt())
-                    .build();
-
-            inventoryService.addStock(user, request);
-
-            // Corrected string formatting using String.format()
             emailBody.append(String.format(
                     "%d new products added to the %s (id: %d) product schema's stock.\n",
                     inventory.getReorderQuantity(),
@@ -113,29 +76,59 @@ public class InventoryEventListener {
         logger.info("Reorder notification email sent to {}", supplier.getEmail());
     }
 
+    // Low stock and expired alerts arrive merged by the AlertAggregator, one mail per inventory per digest window.
+    // The mail is sent on this thread, so the outbox events of the alerts are only marked dispatched once it went out,
+    // a digest dropped or failed is relayed again once the lease of its events ran out.
     @EventListener
-    @Async
-    public void handleProductExpiredEvent(ProductExpiredAlertEvent event) {
+    @Async(AsyncConfig.ALERT_EXECUTOR)
+    public void handleAlertDigestEvent(AlertDigestEvent event) {
         if (!SHOULD_SEND_EMAIL_NOTIFICATION) {
-            logger.info("Product expired alert email notification is disabled. Skipping email notification.");
+            logger.info("Alert digest email notification is disabled. Skipping email notification.");
+            outboxService.markDigested(event.getOutboxEventIds());
             return;
         }
 
         Inventory inventory = event.getInventory();
-        List<Product> products = event.getProducts();
+        Map<ProductSchema, List<Product>> lowStockProducts = event.getLowStock();
+        List<Product> expiredProducts = event.getExpiredProducts();
         Supplier supplier = inventory.getSupplier();
 
         StringBuilder emailBody = new StringBuilder();
-        emailBody.append("Dear Supplier,\n\nThe following products in your inventory have expired:\n\n");
+        emailBody.append("Dear Supplier,\n\n");
+
+        for (Map.Entry<ProductSchema, List<Product>> entry : lowStockProducts.entrySet()) {
+            ProductSchema productSchema = entry.getKey();
+            List<Product> products = entry.getValue();
+
+            emailBody.append(String.format("The following products in your inventory are running low on stock for the %s (%d) product schema:\n\n", productSchema.getName(), productSchema.getId()));
 
-        for (Product product : products) {
-            emailBody.append(String.format(" - Product '%s' (ID: %d)\n", product.getSchema().getName(), product.getId()));
+            for (Product product : products) {
+                emailBody.append(String.format(" - Product '%s' (ID: %d)\n", product.getSchema().getName(), product.getId()));
+            }
+            emailBody.append("\n");
         }
 
-        emailBody.append("\nPlease take necessary actions.\n\nThank you!");
+        if (!expiredProducts.isEmpty()) {
+            emailBody.append("The following products in your inventory have expired:\n\n");
 
-        emailService.sendEmail(supplier.getEmail(), "Products Expired Alert", emailBody.toString());
-        logger.info("Product expired alert email sent to {}", supplier.getEmail());
-    }
+            for (Product product : expiredProducts) {
+                emailBody.append(String.format(" - Product '%s' (ID: %d)\n", product.getSchema().getName(), product.getId()));
+            }
+            emailBody.append("\n");
+        }
+
+        emailBody.append("Please take necessary actions.\n\nThank you!");
 
-}
\ No newline at end of file
+        String subject = lowStockProducts.isEmpty() ? "Products Expired Alert"
+                : expiredProducts.isEmpty() ? "Low Stock Alert"
+                : "Low Stock and Products Expired Alert";
+        try {
+            emailService.sendEmailNow(supplier.getEmail(), subject, emailBody.toString());
+        } catch (MailException e) {
+            logger.error("Failed to send alert digest email to {}, its alerts are relayed again", supplier.getEmail(), e);
+            return;
+        }
+        outboxService.markDigested(event.getOutboxEventIds());
+        logger.info("Alert digest email sent to {}", supplier.getEmail());
+    }
+}
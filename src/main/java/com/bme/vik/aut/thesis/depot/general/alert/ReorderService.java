@@ -0,0 +1,104 @@
+package com.bme.vik.aut.thesis.depot.general.alert;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryAlertThresholds;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryService;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockLocation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Applies the reorders of an inventory collected by the OutboxRelay as one batch, see InventoryService.addReorderStock.
+// A bucket is reordered by one thread at a time: a reorder of a bucket already being reordered is skipped,
+// as is one whose bucket got enough free stock since the reorder was raised.
+@Service
+@RequiredArgsConstructor
+public class ReorderService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReorderService.class);
+
+    private final InventoryService inventoryService;
+    private final MeterRegistry meterRegistry;
+
+    private final Set<StockLocation> bucketsInFlight = ConcurrentHashMap.newKeySet();
+
+    private final Map<SkipReason, Counter> skippedCounters = new EnumMap<>(SkipReason.class);
+    private Timer batchTimer;
+    private Counter reorderedUnitsCounter;
+
+    private enum SkipReason {
+        IN_FLIGHT,
+        NOT_NEEDED,
+        NO_SPACE
+    }
+
+    @PostConstruct
+    public void init() {
+        for (SkipReason reason : SkipReason.values()) {
+            skippedCounters.put(reason, Counter.builder("depot.reorder.skipped")
+                    .description("Reorders not applied: bucket already being reordered, stock replenished meanwhile, or no space left")
+                    .tag("reason", reason.name())
+                    .register(meterRegistry));
+        }
+        batchTimer = Timer.builder("depot.reorder.batch.latency")
+                .description("Time to apply the reorders of one inventory in one transaction")
+                .register(meterRegistry);
+        reorderedUnitsCounter = Counter.builder("depot.reorder.units")
+                .description("Product units added to stock by reorders")
+                .register(meterRegistry);
+    }
+
+    // Returns the reorders that were applied
+    public List<InternalReorder> reorder(Inventory inventory, List<InternalReorder> reorders) {
+        Long inventoryId = inventory.getId();
+        InventoryAlertThresholds thresholds = inventoryService.getAlertThresholds(inventoryId);
+
+        List<StockLocation> claimedBuckets = new ArrayList<>(reorders.size());
+        try {
+            List<InternalReorder> toApply = new ArrayList<>(reorders.size());
+            for (InternalReorder reorder : reorders) {
+                StockLocation bucket = new StockLocation(inventoryId, reorder.getProductSchema().getId());
+                // also drops a second reorder of the same bucket within the batch
+                if (!bucketsInFlight.add(bucket)) {
+                    skip(SkipReason.IN_FLIGHT, bucket);
+                    continue;
+                }
+                claimedBuckets.add(bucket);
+
+                if (!inventoryService.needsReorderForStock(thresholds, bucket.productSchemaId())) {
+                    skip(SkipReason.NOT_NEEDED, bucket);
+                    continue;
+                }
+                toApply.add(reorder);
+            }
+            if (toApply.isEmpty()) {
+                return List.of();
+            }
+
+            List<InternalReorder> applied = batchTimer.record(() -> inventoryService.addReorderStock(inventoryId, toApply));
+            skippedCounters.get(SkipReason.NO_SPACE).increment(toApply.size() - applied.size());
+            reorderedUnitsCounter.increment((double) applied.size() * inventory.getReorderQuantity());
+            return applied;
+        } finally {
+            claimedBuckets.forEach(bucketsInFlight::remove);
+        }
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    private void skip(SkipReason reason, StockLocation bucket) {
+        logger.info("Skipping reorder of product schema with ID: {} in inventory with ID: {}, reason: {}",
+                bucket.productSchemaId(), bucket.inventoryId(), reason);
+        skippedCounters.get(reason).increment();
+    }
+}
@@ -0,0 +1,29 @@
+package com.bme.vik.aut.thesis.depot.general.alert.event;
+
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+import java.util.Map;
+
+// Low stock and expired alerts of one inventory collected over a digest window, see AlertAggregator
+@Getter
+public class AlertDigestEvent extends ApplicationEvent {
+    private final Inventory inventory;
+    private final Map<ProductSchema, List<Product>> lowStock;
+    private final List<Product> expiredProducts;
+    // outbox events the alerts were relayed from, marked dispatched once the digest was mailed
+    private final List<Long> outboxEventIds;
+
+    public AlertDigestEvent(Object source, Inventory inventory, Map<ProductSchema, List<Product>> lowStock, List<Product> expiredProducts,
+                            List<Long> outboxEventIds) {
+        super(source);
+        this.inventory = inventory;
+        this.lowStock = lowStock;
+        this.expiredProducts = expiredProducts;
+        this.outboxEventIds = outboxEventIds;
+    }
+}
@@ -0,0 +1,62 @@
+package com.bme.vik.aut.thesis.depot.general.alert.outbox;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// An alert or reorder event written in the transaction that raised it, published by the OutboxRelay
+// once that transaction committed
+@Entity
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(indexes = {
+        // the relay polls the pending events that are due
+        @Index(name = "idx_outbox_event_status_next_attempt", columnList = "status, next_attempt_at")
+})
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_event_seq")
+    @SequenceGenerator(name = "outbox_event_seq", sequenceName = "outbox_event_seq", allocationSize = 50)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private OutboxEventType type;
+
+    @Column(nullable = false)
+    private Long inventoryId;
+
+    // OutboxPayload as JSON
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private OutboxStatus status;
+
+    // counted when the relay claims the event, so an attempt lost with the process is counted too
+    private int attempts;
+
+    // while an attempt is running this is the end of its lease, after that the event can be claimed again
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    private LocalDateTime dispatchedAt;
+
+    // set when a LOW_STOCK or PRODUCT_EXPIRED event was handed to the AlertAggregator, the event stays PENDING and
+    // leased until the digest holding its alerts was published
+    private LocalDateTime handedToDigestAt;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,67 @@
+package com.bme.vik.aut.thesis.depot.general.alert.outbox;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.LockOptions;
+import org.hibernate.jpa.SpecHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // Locked rows are skipped, so relays of several instances claim different events
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = SpecHints.HINT_SPEC_LOCK_TIMEOUT, value = "" + LockOptions.SKIP_LOCKED))
+    @Query("SELECT e FROM OutboxEvent e " +
+            "WHERE e.status = com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxStatus.PENDING AND e.nextAttemptAt <= :now " +
+            "ORDER BY e.id")
+    List<OutboxEvent> findDueForUpdate(@Param("now") LocalDateTime now, Pageable pageable);
+
+    long countByStatus(OutboxStatus status);
+
+    long countByStatusAndHandedToDigestAtIsNull(OutboxStatus status);
+
+    // The status conditions make every transition a compare-and-set, a late attempt cannot undo a finished one.
+    // The attempt condition only lets the attempt holding the current lease claim the event.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE OutboxEvent e SET e.status = com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxStatus.DISPATCHED, " +
+            "e.dispatchedAt = :dispatchedAt, e.lastError = NULL " +
+            "WHERE e.id = :id AND e.attempts = :attempt " +
+            "AND e.status = com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxStatus.PENDING")
+    int markDispatched(@Param("id") Long id, @Param("attempt") int attempt, @Param("dispatchedAt") LocalDateTime dispatchedAt);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE OutboxEvent e SET e.handedToDigestAt = :handedAt, e.nextAttemptAt = :nextAttemptAt, e.lastError = NULL " +
+            "WHERE e.id = :id AND e.attempts = :attempt " +
+            "AND e.status = com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxStatus.PENDING")
+    int markHandedToDigest(@Param("id") Long id,
+                           @Param("attempt") int attempt,
+                           @Param("handedAt") LocalDateTime handedAt,
+                           @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE OutboxEvent e SET e.status = com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxStatus.DISPATCHED, " +
+            "e.dispatchedAt = :dispatchedAt " +
+            "WHERE e.id IN :ids AND e.status = com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxStatus.PENDING")
+    int markAllDispatched(@Param("ids") Collection<Long> ids, @Param("dispatchedAt") LocalDateTime dispatchedAt);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE OutboxEvent e SET e.status = :status, e.nextAttemptAt = :nextAttemptAt, e.lastError = :lastError " +
+            "WHERE e.id = :id AND e.status = com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxStatus.PENDING")
+    int markFailedAttempt(@Param("id") Long id,
+                          @Param("status") OutboxStatus status,
+                          @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                          @Param("lastError") String lastError);
+
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.status = com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxStatus.DISPATCHED " +
+            "AND e.dispatchedAt < :before")
+    int deleteDispatchedBefore(@Param("before") LocalDateTime before);
+}
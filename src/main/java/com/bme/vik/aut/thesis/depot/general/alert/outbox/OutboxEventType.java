@@ -0,0 +1,7 @@
+package com.bme.vik.aut.thesis.depot.general.alert.outbox;
+
+public enum OutboxEventType {
+    LOW_STOCK,
+    REORDER,
+    PRODUCT_EXPIRED
+}
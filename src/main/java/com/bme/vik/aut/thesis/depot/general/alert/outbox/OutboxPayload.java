@@ -0,0 +1,32 @@
+package com.bme.vik.aut.thesis.depot.general.alert.outbox;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+// Only IDs are stored, the relay loads the inventory, schemas and products when it publishes the event
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public record OutboxPayload(
+        // { K: productSchemaID, V: IDs of the products left in stock }
+        Map<Long, List<Long>> lowStockProductIds,
+        List<Long> expiredProductIds,
+        List<ReorderItem> reorders
+) {
+
+    public record ReorderItem(Long productSchemaId, String productDescription, LocalDateTime expiresAt) {
+    }
+
+    public static OutboxPayload lowStock(Map<Long, List<Long>> lowStockProductIds) {
+        return new OutboxPayload(lowStockProductIds, List.of(), List.of());
+    }
+
+    public static OutboxPayload expired(List<Long> expiredProductIds) {
+        return new OutboxPayload(Map.of(), expiredProductIds, List.of());
+    }
+
+    public static OutboxPayload reorders(List<ReorderItem> reorders) {
+        return new OutboxPayload(Map.of(), List.of(), reorders);
+    }
+}
@@ -0,0 +1,286 @@
+package com.bme.vik.aut.thesis.depot.general.alert.outbox;
+
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchemaService;
+import com.bme.vik.aut.thesis.depot.general.alert.AlertAggregator;
+import com.bme.vik.aut.thesis.depot.general.alert.InternalReorder;
+import com.bme.vik.aut.thesis.depot.general.alert.TimeService;
+import com.bme.vik.aut.thesis.depot.general.alert.event.LowStockAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.event.ProductExpiredAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.event.ReorderAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.config.AsyncConfig;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryService;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// Publishes the events of the outbox. Each run claims batches of due events, merges the events of the same type and
+// inventory into one application event (e.g. all reorders of an inventory are applied in one transaction) and hands
+// them to the executor of their type (reorders to the reorder executor, alerts to the alert executor), whose pool size
+// is the relay's concurrency. The merged event is published in a transaction that first claims its outbox events by
+// marking them dispatched, so the handlers' changes and the marks commit together, and an attempt whose lease was
+// taken over by another one does not run the handlers at all. Low stock and expired alerts are only mailed with
+// the next digest of the AlertAggregator, their events stay leased and are marked dispatched once the digest was
+// mailed, so alerts lost with the process or a failed mail are relayed again. A failed attempt is retried with exponential
+// backoff until the maximum number of attempts.
+@Component
+public class OutboxRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    @Value("${custom.alert.outbox.batch-size}")
+    private int BATCH_SIZE;
+
+    @Value("${custom.alert.outbox.lease-ms}")
+    private long LEASE_MS;
+
+    @Value("${custom.alert.outbox.max-attempts}")
+    private int MAX_ATTEMPTS;
+
+    @Value("${custom.alert.outbox.initial-backoff-ms}")
+    private long INITIAL_BACKOFF_MS;
+
+    @Value("${custom.alert.outbox.max-backoff-ms}")
+    private long MAX_BACKOFF_MS;
+
+    @Value("${custom.alert.outbox.retention-ms}")
+    private long RETENTION_MS;
+
+    @Value("${custom.alert.digest.window-ms}")
+    private long DIGEST_WINDOW_MS;
+
+    private final OutboxService outboxService;
+    private final InventoryService inventoryService;
+    private final ProductRepository productRepository;
+    private final ProductSchemaService productSchemaService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AlertAggregator alertAggregator;
+    private final TimeService timeService;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor alertExecutor;
+    private final Executor reorderExecutor;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<OutboxEventType, Timer> lagTimers = new EnumMap<>(OutboxEventType.class);
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private Counter retriedCounter;
+    private Counter failedCounter;
+
+    public OutboxRelay(OutboxService outboxService,
+                       InventoryService inventoryService,
+                       ProductRepository productRepository,
+                       ProductSchemaService productSchemaService,
+                       ApplicationEventPublisher eventPublisher,
+                       AlertAggregator alertAggregator,
+                       TimeService timeService,
+                       PlatformTransactionManager transactionManager,
+                       @Qualifier(AsyncConfig.ALERT_EXECUTOR) Executor alertExecutor,
+                       @Qualifier(AsyncConfig.REORDER_EXECUTOR) Executor reorderExecutor,
+                       MeterRegistry meterRegistry) {
+        this.outboxService = outboxService;
+        this.inventoryService = inventoryService;
+        this.productRepository = productRepository;
+        this.productSchemaService = productSchemaService;
+        this.eventPublisher = eventPublisher;
+        this.alertAggregator = alertAggregator;
+        this.timeService = timeService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.alertExecutor = alertExecutor;
+        this.reorderExecutor = reorderExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        for (OutboxEventType type : OutboxEventType.values()) {
+            lagTimers.put(type, Timer.builder("depot.outbox.dispatch.lag")
+                    .description("Time from writing an outbox event until it was dispatched, retries included")
+                    .tag("type", type.name())
+                    .register(meterRegistry));
+        }
+        retriedCounter = Counter.builder("depot.outbox.retried")
+                .description("Failed dispatch attempts that are retried later")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("depot.outbox.failed")
+                .description("Outbox events given up after the maximum number of attempts")
+                .register(meterRegistry);
+        Gauge.builder("depot.outbox.pending", pendingEvents, AtomicLong::get)
+                .description("Outbox events not dispatched yet, as of the last relay run")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${custom.alert.outbox.poll-interval-ms}", initialDelayString = "${custom.alert.outbox.poll-interval-ms}")
+    public void relay() {
+        int dispatchedCount = 0;
+        List<OutboxEvent> batch;
+        do {
+            batch = outboxService.claimDueEvents(BATCH_SIZE, timeService.getCurrentTime().plus(Duration.ofMillis(LEASE_MS)));
+            dispatchedCount += dispatchAll(batch);
+        } while (batch.size() == BATCH_SIZE);
+
+        pendingEvents.set(outboxService.countPending());
+        if (dispatchedCount > 0) {
+            logger.info("Outbox relay dispatched {} events, {} pending", dispatchedCount, pendingEvents.get());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${custom.alert.outbox.retention-ms}", initialDelayString = "${custom.alert.outbox.retention-ms}")
+    public void deleteDispatchedEvents() {
+        int deletedCount = outboxService.deleteDispatchedBefore(timeService.getCurrentTime().minus(Duration.ofMillis(RETENTION_MS)));
+        logger.info("Deleted {} dispatched outbox events", deletedCount);
+    }
+
+    // Publishes outbox events of one type and inventory as one event, handled in a single transaction.
+    // Failures are recorded for a later retry. Returns the number of events dispatched.
+    public int dispatch(List<OutboxEvent> events) {
+        try {
+            boolean digested = isDigested(events.get(0).getType());
+            Integer dispatchedCount = transactionTemplate.execute(status -> {
+                LocalDateTime digestDueBy = digested
+                        ? timeService.getCurrentTime().plus(Duration.ofMillis(DIGEST_WINDOW_MS + LEASE_MS))
+                        : null;
+                // the events are claimed before the handlers run, an attempt that lost its lease has no side effects
+                for (OutboxEvent event : events) {
+                    boolean claimed = digested
+                            ? outboxService.handToDigest(event, digestDueBy)
+                            : outboxService.markDispatched(event);
+                    if (!claimed) {
+                        logger.warn("{} event with ID: {} was taken over by another attempt, skipping {} events",
+                                event.getType(), event.getId(), events.size());
+                        // releases the events of the group claimed so far
+                        status.setRollbackOnly();
+                        return 0;
+                    }
+                }
+                eventPublisher.publishEvent(toApplicationEvent(events));
+                return events.size();
+            });
+            if (dispatchedCount == null || dispatchedCount == 0) {
+                return 0;
+            }
+            if (digested) {
+                alertAggregator.addOutboxEvents(events.get(0).getInventoryId(), events.stream().map(OutboxEvent::getId).toList());
+            }
+            LocalDateTime now = timeService.getCurrentTime();
+            events.forEach(event -> lagTimers.get(event.getType()).record(Duration.between(event.getCreatedAt(), now)));
+            return dispatchedCount;
+        } catch (RuntimeException e) {
+            events.forEach(event -> recordFailure(event, e));
+            return 0;
+        }
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    // Waits for the batch at most for its lease, events still queued after that are claimed again by a later run.
+    // Returns the number of events dispatched.
+    private int dispatchAll(List<OutboxEvent> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Map<EventGroup, List<OutboxEvent>> eventsByGroup = batch.stream()
+                .collect(Collectors.groupingBy(event -> new EventGroup(event.getType(), event.getInventoryId()),
+                        LinkedHashMap::new, Collectors.toList()));
+        List<CompletableFuture<Integer>> dispatches = eventsByGroup.entrySet().stream()
+                .map(entry -> CompletableFuture.supplyAsync(() -> dispatch(entry.getValue()), executorFor(entry.getKey().type())))
+                .toList();
+        try {
+            CompletableFuture.allOf(dispatches.toArray(CompletableFuture[]::new)).get(LEASE_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Outbox batch of {} events did not finish within its lease of {} ms", batch.size(), LEASE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // dispatch handles its own failures
+            logger.error("Outbox dispatch failed unexpectedly", e.getCause());
+        }
+        return dispatches.stream().mapToInt(dispatch -> dispatch.getNow(0)).sum();
+    }
+
+    private static boolean isDigested(OutboxEventType type) {
+        return type == OutboxEventType.LOW_STOCK || type == OutboxEventType.PRODUCT_EXPIRED;
+    }
+
+    private Executor executorFor(OutboxEventType type) {
+        return type == OutboxEventType.REORDER ? reorderExecutor : alertExecutor;
+    }
+
+    private void recordFailure(OutboxEvent event, RuntimeException error) {
+        if (event.getAttempts() >= MAX_ATTEMPTS) {
+            logger.error("Giving up {} event with ID: {} after {} attempts", event.getType(), event.getId(), event.getAttempts(), error);
+            outboxService.giveUp(event.getId(), error);
+            failedCounter.increment();
+            return;
+        }
+
+        long backoffMs = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(event.getAttempts() - 1, 30));
+        logger.warn("Attempt {} of {} event with ID: {} failed, retrying in {} ms: {}",
+                event.getAttempts(), event.getType(), event.getId(), backoffMs, error.getMessage());
+        outboxService.retryLater(event.getId(), timeService.getCurrentTime().plus(Duration.ofMillis(backoffMs)), error);
+        retriedCounter.increment();
+    }
+
+    private ApplicationEvent toApplicationEvent(List<OutboxEvent> events) {
+        OutboxEvent first = events.get(0);
+        List<OutboxPayload> payloads = events.stream().map(outboxService::readPayload).toList();
+        Inventory inventory = inventoryService.getInventoryById(first.getInventoryId());
+
+        return switch (first.getType()) {
+            case LOW_STOCK -> {
+                // the latest alert of a schema lists its current stock
+                Map<Long, List<Long>> lowStockProductIds = new LinkedHashMap<>();
+                payloads.forEach(payload -> lowStockProductIds.putAll(Objects.requireNonNullElse(payload.lowStockProductIds(), Map.of())));
+                Map<Long, List<Product>> productsBySchemaId = productRepository.findAllById(
+                                lowStockProductIds.values().stream().flatMap(List::stream).toList()).stream()
+                        .collect(Collectors.groupingBy(product -> product.getSchema().getId()));
+                Map<ProductSchema, List<Product>> stock = new HashMap<>();
+                lowStockProductIds.keySet().forEach(productSchemaId -> stock.put(
+                        productSchemaService.getProductSchemaById(productSchemaId),
+                        productsBySchemaId.getOrDefault(productSchemaId, List.of())));
+                yield new LowStockAlertEvent(this, inventory, stock);
+            }
+            case PRODUCT_EXPIRED -> new ProductExpiredAlertEvent(this, inventory, productRepository.findAllById(payloads.stream()
+                    .flatMap(payload -> Objects.requireNonNullElse(payload.expiredProductIds(), List.<Long>of()).stream())
+                    .distinct()
+                    .toList()));
+            case REORDER -> {
+                Map<Long, ProductSchema> productSchemas = new HashMap<>();
+                yield new ReorderAlertEvent(this, inventory, payloads.stream()
+                        .flatMap(payload -> Objects.requireNonNullElse(payload.reorders(), List.<OutboxPayload.ReorderItem>of()).stream())
+                        .map(item -> new InternalReorder(
+                                productSchemas.computeIfAbsent(item.productSchemaId(), productSchemaService::getProductSchemaById),
+                                item.productDescription(),
+                                item.expiresAt()))
+                        .toList());
+            }
+        };
+    }
+
+    private record EventGroup(OutboxEventType type, Long inventoryId) {
+    }
+}
@@ -0,0 +1,138 @@
+package com.bme.vik.aut.thesis.depot.general.alert.outbox;
+
+import com.bme.vik.aut.thesis.depot.general.alert.TimeService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+// Events are written in the transaction of the caller, a rollback discards them with the change that raised them
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxService.class);
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    // reorders become due after this, so the relay picks up the reorders of an inventory raised meanwhile together
+    @Value("${custom.alert.reorder.batch-window-ms}")
+    private long REORDER_BATCH_WINDOW_MS;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+    private final TimeService timeService;
+
+    // :::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PUBLIC METHODS @@@@@@@@@@@@@@@ //
+    // :::::::::::::::::::::::::::::::::::::::::::::: //
+
+    @Transactional
+    public OutboxEvent enqueue(OutboxEventType type, Long inventoryId, OutboxPayload payload) {
+        LocalDateTime now = timeService.getCurrentTime();
+        OutboxEvent event = outboxEventRepository.save(OutboxEvent.builder()
+                .type(type)
+                .inventoryId(inventoryId)
+                .payload(writePayload(payload))
+                .status(OutboxStatus.PENDING)
+                .attempts(0)
+                .nextAttemptAt(type == OutboxEventType.REORDER ? now.plus(Duration.ofMillis(REORDER_BATCH_WINDOW_MS)) : now)
+                .createdAt(now)
+                .build());
+        logger.debug("Queued {} event with ID: {} for inventory ID: {}", type, event.getId(), inventoryId);
+        return event;
+    }
+
+    // Takes the due events and leases them until the given time, counting the attempt. An event whose attempt
+    // never reports back (e.g. the process stopped) is claimed again once its lease ran out.
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<OutboxEvent> claimDueEvents(int batchSize, LocalDateTime leasedUntil) {
+        List<OutboxEvent> events = outboxEventRepository.findDueForUpdate(timeService.getCurrentTime(), PageRequest.ofSize(batchSize));
+        events.forEach(event -> {
+            event.setAttempts(event.getAttempts() + 1);
+            event.setNextAttemptAt(leasedUntil);
+            // a digest handed over earlier was lost, the event is handed over again
+            event.setHandedToDigestAt(null);
+        });
+        return events;
+    }
+
+    // Claims the event for the attempt that leased it, before its handlers run. Joins the transaction that publishes
+    // the event, so the event only counts as sent if its handlers committed, and a later attempt blocks on the
+    // claimed row until then. Returns false if a later attempt took the event over or finished it.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean markDispatched(OutboxEvent event) {
+        return outboxEventRepository.markDispatched(event.getId(), event.getAttempts(), timeService.getCurrentTime()) == 1;
+    }
+
+    // Claims the alert event like markDispatched. The alerts are only mailed with the next digest, so the event stays
+    // PENDING and leased until the digest is due, see markDigested.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean handToDigest(OutboxEvent event, LocalDateTime digestDueBy) {
+        return outboxEventRepository.markHandedToDigest(event.getId(), event.getAttempts(), timeService.getCurrentTime(), digestDueBy) == 1;
+    }
+
+    // Called once the digest holding the alerts of the events was published
+    @Transactional
+    public int markDigested(Collection<Long> eventIds) {
+        if (eventIds.isEmpty()) {
+            return 0;
+        }
+        return outboxEventRepository.markAllDispatched(eventIds, timeService.getCurrentTime());
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void retryLater(Long eventId, LocalDateTime nextAttemptAt, Throwable error) {
+        outboxEventRepository.markFailedAttempt(eventId, OutboxStatus.PENDING, nextAttemptAt, describe(error));
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void giveUp(Long eventId, Throwable error) {
+        outboxEventRepository.markFailedAttempt(eventId, OutboxStatus.FAILED, timeService.getCurrentTime(), describe(error));
+    }
+
+    @Transactional
+    public int deleteDispatchedBefore(LocalDateTime before) {
+        return outboxEventRepository.deleteDispatchedBefore(before);
+    }
+
+    public long countPending() {
+        return outboxEventRepository.countByStatus(OutboxStatus.PENDING);
+    }
+
+    public OutboxPayload readPayload(OutboxEvent event) {
+        try {
+            return objectMapper.readValue(event.getPayload(), OutboxPayload.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable payload of outbox event with ID: " + event.getId(), e);
+        }
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    private String writePayload(OutboxPayload payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Outbox payload could not be written", e);
+        }
+    }
+
+    private static String describe(Throwable error) {
+        String description = error.getClass().getSimpleName() + ": " + error.getMessage();
+        return description.length() > MAX_ERROR_LENGTH ? description.substring(0, MAX_ERROR_LENGTH) : description;
+    }
+}
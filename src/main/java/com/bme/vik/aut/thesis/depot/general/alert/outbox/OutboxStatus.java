@@ -0,0 +1,8 @@
+package com.bme.vik.aut.thesis.depot.general.alert.outbox;
+
+public enum OutboxStatus {
+    PENDING,
+    DISPATCHED,
+    // gave up after the maximum number of attempts
+    FAILED
+}
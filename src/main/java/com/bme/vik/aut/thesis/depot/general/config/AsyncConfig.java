@@ -0,0 +1,134 @@
+package com.bme.vik.aut.thesis.depot.general.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Every @Async method names one of these executors. Each has a fixed number of threads and a bounded queue,
+// a full queue either makes the caller run the task (backpressure) or drops it, counted in depot.executor.rejected.
+@Configuration
+@EnableAsync
+@RequiredArgsConstructor
+public class AsyncConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncConfig.class);
+
+    public static final String ALERT_EXECUTOR = "alertExecutor";
+    public static final String REORDER_EXECUTOR = "reorderExecutor";
+    public static final String MAIL_EXECUTOR = "mailExecutor";
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    public enum RejectionPolicy {
+        CALLER_RUNS,
+        DROP
+    }
+
+    @Bean(ALERT_EXECUTOR)
+    public ThreadPoolTaskExecutor alertExecutor() {
+        return boundedExecutor("alert");
+    }
+
+    @Bean(REORDER_EXECUTOR)
+    public ThreadPoolTaskExecutor reorderExecutor() {
+        return boundedExecutor("reorder");
+    }
+
+    @Bean(MAIL_EXECUTOR)
+    public ThreadPoolTaskExecutor mailExecutor() {
+        return boundedExecutor("mail");
+    }
+
+    // Spring Boot only creates its own executor while no other one exists, it is still needed for
+    // streamed MVC responses, so it is declared here with the spring.task.execution settings
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(ThreadPoolTaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    // Configured by custom.async.<name>.pool-size, queue-capacity and rejection-policy
+    private ThreadPoolTaskExecutor boundedExecutor(String name) {
+        String prefix = "custom.async." + name + ".";
+        int poolSize = environment.getRequiredProperty(prefix + "pool-size", Integer.class);
+        int queueCapacity = environment.getRequiredProperty(prefix + "queue-capacity", Integer.class);
+        RejectionPolicy rejectionPolicy = environment.getRequiredProperty(prefix + "rejection-policy", RejectionPolicy.class);
+
+        Tags tags = Tags.of("name", name);
+        Timer latencyTimer = Timer.builder("depot.executor.task.latency")
+                .description("Time from submitting a task until it finished, waiting in the queue included")
+                .tags(tags)
+                .register(meterRegistry);
+        Counter rejectedCounter = Counter.builder("depot.executor.rejected")
+                .description("Tasks that found the queue full, run by the caller or dropped by the rejection policy")
+                .tags(tags.and("policy", rejectionPolicy.name()))
+                .register(meterRegistry);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(name + "-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(rejectionHandler(name, rejectionPolicy, rejectedCounter));
+        executor.setTaskDecorator(task -> {
+            long submittedAt = System.nanoTime();
+            return () -> {
+                try {
+                    task.run();
+                } finally {
+                    latencyTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                }
+            };
+        });
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        executor.initialize();
+
+        Gauge.builder("depot.executor.queued", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .description("Tasks waiting in the queue")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder("depot.executor.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Threads running a task")
+                .tags(tags)
+                .register(meterRegistry);
+
+        logger.info("Executor {} started with {} threads and a queue of {}, full queue policy: {}",
+                name, poolSize, queueCapacity, rejectionPolicy);
+        return executor;
+    }
+
+    private RejectedExecutionHandler rejectionHandler(String name, RejectionPolicy rejectionPolicy, Counter rejectedCounter) {
+        ThreadPoolExecutor.CallerRunsPolicy callerRuns = new ThreadPoolExecutor.CallerRunsPolicy();
+        return (task, pool) -> {
+            rejectedCounter.increment();
+            if (rejectionPolicy == RejectionPolicy.CALLER_RUNS) {
+                callerRuns.rejectedExecution(task, pool);
+            } else {
+                logger.warn("Queue of executor {} is full, task dropped", name);
+            }
+        };
+    }
+}
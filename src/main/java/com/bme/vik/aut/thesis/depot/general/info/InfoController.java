@@ -5,6 +5,7 @@ import com.bme.vik.aut.thesis.depot.general.info.dto.OrderResponse;
 import com.bme.vik.aut.thesis.depot.general.info.dto.ProductResponse;
 import com.bme.vik.aut.thesis.depot.general.info.dto.SupplierResponse;
 import com.bme.vik.aut.thesis.depot.general.user.dto.UserResponse;
+import com.bme.vik.aut.thesis.depot.general.util.JsonStreamWriter;
 import com.bme.vik.aut.thesis.depot.security.user.MyUser;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -21,6 +22,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -31,6 +33,7 @@ import java.util.List;
 public class InfoController {
 
     private final InfoService infoService;
+    private final JsonStreamWriter jsonStreamWriter;
 
     @Operation(
             summary = "Get current authenticated user's information",
@@ -81,9 +84,8 @@ public class InfoController {
     )
     @GetMapping("/product")
     @PreAuthorize("hasAuthority('user:read')")
-    public ResponseEntity<List<ProductResponse>> getAllProducts() {
-        List<ProductResponse> products = infoService.getAllProducts();
-        return ResponseEntity.ok(products);
+    public ResponseEntity<StreamingResponseBody> getAllProducts() {
+        return jsonStreamWriter.respondArray(infoService::streamAllProducts);
     }
 
     @Operation(
@@ -24,6 +24,7 @@ import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -47,19 +48,17 @@ public class InfoService {
         return modelMapper.map(user, UserResponse.class);
     }
 
-    public List<ProductResponse> getAllProducts() {
-        logger.info("Fetching all products information");
-        List<Product> products = productRepository.findAll();
-        logger.info("All products information fetched successfully");
-
-        return products.stream().map(product -> ProductResponse.builder()
+    // Read through a cursor and mapped one by one, has to be consumed inside a transaction
+    public Stream<ProductResponse> streamAllProducts() {
+        logger.info("Streaming all products information");
+        return productRepository.streamAll().map(product -> ProductResponse.builder()
                 .id(product.getId())
                 .productName(product.getSchema().getName())
                 .description(product.getDescription())
                 .categories(product.getSchema().getCategories().stream().map(Category::getName).collect(Collectors.toList()))
                 .status(product.getStatus().name())
                 .expiresAt(product.getExpiresAt())
-                .build()).collect(Collectors.toList());
+                .build());
     }
 
     public List<ProductResponse> getProductsByCategoryId(Long categoryId) {
@@ -1,6 +1,7 @@
 package com.bme.vik.aut.thesis.depot.general.order;
 
 import com.bme.vik.aut.thesis.depot.general.order.dto.CreateOrderRequest;
+import com.bme.vik.aut.thesis.depot.general.util.JsonStreamWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
@@ -17,6 +18,7 @@ import org.springframework.web.bind.annotation.RestController;
 import com.bme.vik.aut.thesis.depot.security.user.MyUser;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -27,6 +29,7 @@ import java.util.List;
 public class OrderController {
 
     private final OrderService orderService;
+    private final JsonStreamWriter jsonStreamWriter;
 
     @Operation(
             summary = "Get all orders (Admin only)",
@@ -41,9 +44,8 @@ public class OrderController {
     )
     @GetMapping
     @PreAuthorize("hasAuthority('admin:read')")
-    public ResponseEntity<List<Order>> getAllOrders() {
-        List<Order> orders = orderService.getAllOrders();
-        return ResponseEntity.ok(orders);
+    public ResponseEntity<StreamingResponseBody> getAllOrders() {
+        return jsonStreamWriter.respondArray(orderService::streamAllOrders);
     }
 
     @Operation(
@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 
 @Service
@@ -40,9 +41,10 @@ public class OrderService {
     private final ProductSchemaService productSchemaService;
 
 
-    public List<Order> getAllOrders() {
-        logger.info("Fetching all orders");
-        return orderRepository.findAll();
+    // Read through a cursor, has to be consumed inside a transaction
+    public Stream<Order> streamAllOrders() {
+        logger.info("Streaming all orders");
+        return orderRepository.streamAll();
     }
 
     public Order getOrderById(Long orderId) {
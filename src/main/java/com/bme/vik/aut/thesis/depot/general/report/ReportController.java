@@ -2,7 +2,9 @@ package com.bme.vik.aut.thesis.depot.general.report;
 
 import com.bme.vik.aut.thesis.depot.general.report.dto.InventoryExpiryReportResponse;
 import com.bme.vik.aut.thesis.depot.general.report.dto.InventoryStateReportResponse;
+import com.bme.vik.aut.thesis.depot.general.report.dto.InventorySummaryReportResponse;
 import com.bme.vik.aut.thesis.depot.general.report.dto.OrderReportResponse;
+import com.bme.vik.aut.thesis.depot.general.util.JsonStreamWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -12,8 +14,10 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/report")
@@ -23,6 +27,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class ReportController {
 
     private final ReportService reportService;
+    private final JsonStreamWriter jsonStreamWriter;
 
     @Operation(
             summary = "Get Inventory State Report",
@@ -42,9 +47,8 @@ public class ReportController {
     )
     @GetMapping("/inventory/state")
     @PreAuthorize("hasAuthority('admin:read')")
-    public ResponseEntity<InventoryStateReportResponse> getInventoryStateReport() {
-        InventoryStateReportResponse report = reportService.getInventoryStateReportResponse();
-        return ResponseEntity.ok(report);
+    public ResponseEntity<StreamingResponseBody> getInventoryStateReport() {
+        return jsonStreamWriter.respond(reportService::writeInventoryStateReport);
     }
 
     @Operation(
@@ -65,8 +69,53 @@ public class ReportController {
     )
     @GetMapping("/inventory/expiry")
     @PreAuthorize("hasAuthority('admin:read')")
-    public ResponseEntity<InventoryExpiryReportResponse> getInventoryExpiryReport() {
-        InventoryExpiryReportResponse report = reportService.getInventoryExpiryReportResponse();
+    public ResponseEntity<StreamingResponseBody> getInventoryExpiryReport() {
+        return jsonStreamWriter.respond(reportService::writeInventoryExpiryReport);
+    }
+
+    @Operation(
+            summary = "Get Inventory Summary Report",
+            description = "Returns product counts by status and by expiry status for every inventory and product schema, and for the whole depot. The counts are maintained in memory as the stock changes, no products are listed.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Inventory summary report generated successfully",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = InventorySummaryReportResponse.class))
+                    ),
+                    @ApiResponse(
+                            responseCode = "403",
+                            description = "Forbidden - Only accessible by users with admin privileges",
+                            content = @Content
+                    )
+            }
+    )
+    @GetMapping("/inventory/summary")
+    @PreAuthorize("hasAuthority('admin:read')")
+    public ResponseEntity<InventorySummaryReportResponse> getInventorySummaryReport() {
+        InventorySummaryReportResponse report = reportService.getInventorySummaryReportResponse();
+        return ResponseEntity.ok(report);
+    }
+
+    @Operation(
+            summary = "Rebuild Inventory Summary",
+            description = "Counts the stock held in memory again, corrects the counters behind the summary report if they drifted, then returns the summary.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Inventory summary rebuilt successfully",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = InventorySummaryReportResponse.class))
+                    ),
+                    @ApiResponse(
+                            responseCode = "403",
+                            description = "Forbidden - Only accessible by users with admin privileges",
+                            content = @Content
+                    )
+            }
+    )
+    @PostMapping("/inventory/summary/rebuild")
+    @PreAuthorize("hasAuthority('admin:update')")
+    public ResponseEntity<InventorySummaryReportResponse> rebuildInventorySummary() {
+        InventorySummaryReportResponse report = reportService.rebuildInventorySummary();
         return ResponseEntity.ok(report);
     }
 
@@ -88,8 +137,7 @@ public class ReportController {
     )
     @GetMapping("/order")
     @PreAuthorize("hasAuthority('admin:read')")
-    public ResponseEntity<OrderReportResponse> getOrderReport() {
-        OrderReportResponse report = reportService.getOrderReportResponse();
-        return ResponseEntity.ok(report);
+    public ResponseEntity<StreamingResponseBody> getOrderReport() {
+        return jsonStreamWriter.respond(reportService::writeOrderReport);
     }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.bme.vik.aut.thesis.depot.general.report;
+
+import com.bme.vik.aut.thesis.depot.general.report.projection.*;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Read-only projection queries behind the reports. Every report is built from a fixed number of these,
+// independent of how many products are stocked. The streamed rows are plain records, so they are not kept
+// in the persistence context; the streams have to be consumed inside a transaction and closed afterwards.
+// Rows are streamed ordered by their inventory or order, so a report can be written one owner at a time.
+@org.springframework.stereotype.Repository
+public interface ReportRepository extends org.springframework.data.repository.Repository<Product, Long> {
+
+    String PROJECTION = "com.bme.vik.aut.thesis.depot.general.report.projection.";
+    String STREAM_FETCH_SIZE = "1000";
+
+    @Query("SELECT new " + PROJECTION + "InventoryRow(i.id, s.id, s.name, i.maxAvailableSpace, i.usedSpace, i.createdAt, i.updatedAt) " +
+            "FROM Inventory i LEFT JOIN i.supplier s ORDER BY i.id")
+    List<InventoryRow> findInventoryRows();
+
+    @Query("SELECT new " + PROJECTION + "SchemaCategoryRow(s.id, c.id) FROM ProductSchema s JOIN s.categories c")
+    List<SchemaCategoryRow> findSchemaCategories();
+
+    @Query("SELECT new " + PROJECTION + "ProductStatusCount(p.inventory.id, p.schema.id, p.status, COUNT(p)) " +
+            "FROM Product p WHERE p.inventory IS NOT NULL GROUP BY p.inventory.id, p.schema.id, p.status")
+    List<ProductStatusCount> countProductsByInventorySchemaAndStatus();
+
+    @Query("SELECT new " + PROJECTION + "ProductStatusCount(p.inventory.id, p.schema.id, p.status, COUNT(p)) " +
+            "FROM Product p WHERE p.inventory.id = :inventoryId GROUP BY p.inventory.id, p.schema.id, p.status")
+    List<ProductStatusCount> countProductsBySchemaAndStatus(@Param("inventoryId") Long inventoryId);
+
+    @Query("SELECT new " + PROJECTION + "ProductCount(p.inventory.id, p.schema.id, p.status, p.expiryStatus, COUNT(p)) " +
+            "FROM Product p WHERE p.inventory.id IN :inventoryIds GROUP BY p.inventory.id, p.schema.id, p.status, p.expiryStatus")
+    List<ProductCount> countProducts(@Param("inventoryIds") Collection<Long> inventoryIds);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT new " + PROJECTION + "ProductStateRow(p.inventory.id, p.id, s.id, s.name, p.status, s.storageSpaceNeeded, p.createdAt, p.updatedAt) " +
+            "FROM Product p JOIN p.schema s WHERE p.inventory IS NOT NULL ORDER BY p.inventory.id, p.id")
+    Stream<ProductStateRow> streamInventoryProductStates();
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT new " + PROJECTION + "ProductStateRow(p.inventory.id, p.id, s.id, s.name, p.status, s.storageSpaceNeeded, p.createdAt, p.updatedAt) " +
+            "FROM Product p JOIN p.schema s WHERE p.inventory.id = :inventoryId ORDER BY p.id")
+    Stream<ProductStateRow> streamInventoryProductStates(@Param("inventoryId") Long inventoryId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT new " + PROJECTION + "ProductExpiryRow(p.inventory.id, p.id, s.name, p.expiresAt, p.expiryStatus, p.createdAt, p.updatedAt) " +
+            "FROM Product p JOIN p.schema s WHERE p.inventory IS NOT NULL ORDER BY p.inventory.id, p.id")
+    Stream<ProductExpiryRow> streamInventoryProductExpiries();
+
+    @Query("SELECT new " + PROJECTION + "ExpiryStatusCount(p.expiryStatus, COUNT(p)) " +
+            "FROM Product p WHERE p.inventory IS NOT NULL GROUP BY p.expiryStatus")
+    List<ExpiryStatusCount> countProductsByExpiryStatus();
+
+    @Query("SELECT new " + PROJECTION + "OrderStatusCount(o.status, COUNT(o)) FROM Order o GROUP BY o.status")
+    List<OrderStatusCount> countOrdersByStatus();
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT new " + PROJECTION + "OrderRow(o.id, o.userId, o.status, o.createdAt) FROM Order o ORDER BY o.id")
+    Stream<OrderRow> streamOrders();
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT new " + PROJECTION + "ProductStateRow(o.id, p.id, s.id, s.name, p.status, s.storageSpaceNeeded, p.createdAt, p.updatedAt) " +
+            "FROM Order o JOIN o.orderItems p JOIN p.schema s ORDER BY o.id, p.id")
+    Stream<ProductStateRow> streamOrderItemStates();
+}
@@ -1,194 +1,363 @@
 package com.bme.vik.aut.thesis.depot.general.report;
 
-import com.bme.vik.aut.thesis.depot.general.admin.category.Category;
-import com.bme.vik.aut.thesis.depot.general.order.Order;
-import com.bme.vik.aut.thesis.depot.general.order.OrderRepository;
 import com.bme.vik.aut.thesis.depot.general.order.OrderStatus;
 import com.bme.vik.aut.thesis.depot.general.report.dto.*;
+import com.bme.vik.aut.thesis.depot.general.report.projection.*;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
-import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
-import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
-import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockEngine;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockHydrationMode;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockHydrationService;
+import com.fasterxml.jackson.core.JsonGenerator;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.EnumMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+// The reports are assembled from projection queries (see ReportRepository) instead of loading product entities,
+// so the number of queries stays the same no matter how many products are stocked.
+// The large reports are written straight to a JSON generator while the rows are streamed, each in one
+// repeatable-read transaction, so the totals written up front agree with the rows listed after them.
 @Service
 @RequiredArgsConstructor
 public class ReportService {
 
+    private static final Logger logger = LoggerFactory.getLogger(ReportService.class);
+
     @Value("${custom.inventory.max-depot-space}")
     private int MAX_AVAILABLE_DEPOT_SPACE;
 
-    private final InventoryRepository inventoryRepository;
-    private final ProductRepository productRepository;
-    private final OrderRepository orderRepository;
+    @Value("${custom.inventory.stock.hydration.mode}")
+    private StockHydrationMode STOCK_HYDRATION_MODE;
+
+    private final ReportRepository reportRepository;
+    private final StockEngine stockEngine;
+    private final StockHydrationService stockHydrationService;
+
+    // @@@@@@@@@@@@@@@ PUBLIC METHODS @@@@@@@@@@@@@@@ //
+
+    // Written as an InventoryStateReportResponse one inventory at a time: the products come ordered by inventory,
+    // so only the stock of the inventory being written is held in memory
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void writeInventoryStateReport(JsonGenerator generator) throws IOException {
+        List<InventoryRow> inventories = reportRepository.findInventoryRows();
+
+        // { K: inventoryID, V: { K: productSchemaID, V: { K: status, V: count } } }
+        Map<Long, Map<Long, Map<ProductStatus, Long>>> productStats = new HashMap<>();
+        reportRepository.countProductsByInventorySchemaAndStatus().forEach(count ->
+                addProductStat(productStats.computeIfAbsent(count.inventoryId(), id -> new HashMap<>()), count));
+        Map<Long, List<Long>> categoryIDs = getCategoryIDsBySchema();
+
+        generator.writeStartObject();
+        generator.writeNumberField("maxAvailableSpaceInStorage", MAX_AVAILABLE_DEPOT_SPACE);
+        generator.writeNumberField("usedSpaceInStorage", inventories.stream().mapToInt(InventoryRow::usedSpace).sum());
+        generator.writeNumberField("numOfInventories", inventories.size());
+        generator.writeArrayFieldStart("inventoryStates");
+        try (Stream<ProductStateRow> rows = reportRepository.streamInventoryProductStates()) {
+            OwnedRows<ProductStateRow> products = new OwnedRows<>(rows, ProductStateRow::ownerId);
+            for (InventoryRow inventory : inventories) {
+                Map<Long, List<ProductState>> stock = new HashMap<>();
+                products.takeFor(inventory.inventoryId()).forEach(row -> addProductState(stock, row, categoryIDs));
+                generator.writeObject(mapToInventoryState(
+                        inventory,
+                        stock,
+                        productStats.getOrDefault(inventory.inventoryId(), new HashMap<>())));
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    @Transactional(readOnly = true)
+    public InventoryState mapToInventoryState(Inventory inventory) {
+        Map<Long, Map<ProductStatus, Long>> productStats = new HashMap<>();
+        reportRepository.countProductsBySchemaAndStatus(inventory.getId())
+                .forEach(count -> addProductStat(productStats, count));
+
+        Map<Long, List<ProductState>> stock = new HashMap<>();
+        Map<Long, List<Long>> categoryIDs = getCategoryIDsBySchema();
+        try (Stream<ProductStateRow> rows = reportRepository.streamInventoryProductStates(inventory.getId())) {
+            rows.forEach(row -> addProductState(stock, row, categoryIDs));
+        }
 
-    public InventoryStateReportResponse getInventoryStateReportResponse() {
-        List<Inventory> inventories = inventoryRepository.findAll();
+        return mapToInventoryState(InventoryRow.of(inventory), stock, productStats);
+    }
 
-        int totalUsedSpace = inventories.stream().mapToInt(Inventory::getUsedSpace).sum();
+    // Written as an InventoryExpiryReportResponse one inventory at a time, the depot totals are counted up front
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void writeInventoryExpiryReport(JsonGenerator generator) throws IOException {
+        List<InventoryRow> inventories = reportRepository.findInventoryRows();
 
-        List<InventoryState> inventoryStates = inventories.stream()
-                .map(this::mapToInventoryState)
-                .collect(Collectors.toList());
+        Map<ExpiryStatus, Integer> depotExpiryStats = new EnumMap<>(ExpiryStatus.class);
+        reportRepository.countProductsByExpiryStatus().stream()
+                .filter(count -> count.expiryStatus() != null)
+                .forEach(count -> depotExpiryStats.put(count.expiryStatus(), count.count().intValue()));
+
+        generator.writeStartObject();
+        generator.writeObjectField("depotExpiryStats", depotExpiryStats);
+        generator.writeArrayFieldStart("inventoryExpires");
+        try (Stream<ProductExpiryRow> rows = reportRepository.streamInventoryProductExpiries()) {
+            OwnedRows<ProductExpiryRow> products = new OwnedRows<>(rows, ProductExpiryRow::inventoryId);
+            for (InventoryRow inventory : inventories) {
+                Map<ExpiryStatus, List<ProductExpiry>> stock = products.takeFor(inventory.inventoryId()).stream()
+                        .map(this::mapToProductExpiry)
+                        .collect(Collectors.groupingBy(ProductExpiry::getExpiryStatus));
+                generator.writeObject(mapToInventoryExpiry(inventory, stock));
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
 
-        return InventoryStateReportResponse.builder()
+    // Status and expiry counts per inventory and schema, read from the counters the stock engine maintains
+    // on every transition, so only the inventory rows are queried. In LAZY mode the inventories that are not
+    // loaded are counted in the database with one grouped query instead of being loaded for the report.
+    @Transactional(readOnly = true)
+    public InventorySummaryReportResponse getInventorySummaryReportResponse() {
+        List<InventoryRow> inventories = reportRepository.findInventoryRows();
+
+        Set<Long> notLoadedIds = inventories.stream()
+                .map(InventoryRow::inventoryId)
+                .filter(inventoryId -> STOCK_HYDRATION_MODE == StockHydrationMode.LAZY && !stockHydrationService.isLoaded(inventoryId))
+                .collect(Collectors.toSet());
+        // { K: inventoryID, V: counts of the inventory }
+        Map<Long, List<ProductCount>> countsFromDatabase = notLoadedIds.isEmpty()
+                ? Map.of()
+                : reportRepository.countProducts(notLoadedIds).stream().collect(Collectors.groupingBy(ProductCount::inventoryId));
+
+        Map<ProductStatus, Long> depotProductStats = new EnumMap<>(ProductStatus.class);
+        Map<ExpiryStatus, Long> depotExpiryStats = new EnumMap<>(ExpiryStatus.class);
+        List<InventorySummary> inventorySummaries = new ArrayList<>(inventories.size());
+        for (InventoryRow inventory : inventories) {
+            InventorySummary summary = notLoadedIds.contains(inventory.inventoryId())
+                    ? mapToInventorySummary(inventory, countsFromDatabase.getOrDefault(inventory.inventoryId(), List.of()))
+                    : mapToInventorySummary(inventory);
+
+            summary.getProductStats().values().forEach(stats -> stats.forEach((status, count) -> depotProductStats.merge(status, count, Long::sum)));
+            summary.getExpiryStats().values().forEach(stats -> stats.forEach((status, count) -> depotExpiryStats.merge(status, count, Long::sum)));
+            inventorySummaries.add(summary);
+        }
+
+        return InventorySummaryReportResponse.builder()
                 .maxAvailableSpaceInStorage(MAX_AVAILABLE_DEPOT_SPACE)
-                .usedSpaceInStorage(totalUsedSpace)
+                .usedSpaceInStorage(inventories.stream().mapToInt(InventoryRow::usedSpace).sum())
                 .numOfInventories(inventories.size())
-                .inventoryStates(inventoryStates)
+                .depotProductStats(depotProductStats)
+                .depotExpiryStats(depotExpiryStats)
+                .inventorySummaries(inventorySummaries)
                 .build();
     }
 
-    public InventoryState mapToInventoryState(Inventory inventory) {
-        Map<Long, List<ProductState>> stock = inventory.getProductIds().stream()
-                .collect(Collectors.groupingBy(
-                        productId -> productRepository.findById(productId).orElseThrow().getSchema().getId(),
-                        Collectors.mapping(this::mapToProductState, Collectors.toList())
-                ));
+    // Recounts the loaded stock, correcting counters that drifted from the units they count
+    public InventorySummaryReportResponse rebuildInventorySummary() {
+        int corrected = stockEngine.recount();
+        if (corrected > 0) {
+            logger.warn("Stock counters were off by {} units, corrected them", corrected);
+        } else {
+            logger.info("Stock counters are consistent with the stock");
+        }
+        return getInventorySummaryReportResponse();
+    }
+
+    // Written as an OrderReportResponse one order at a time, orders and their items are streamed side by side
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void writeOrderReport(JsonGenerator generator) throws IOException {
+        // Count orders by status
+        Map<OrderStatus, Long> orderStats = new EnumMap<>(OrderStatus.class);
+        reportRepository.countOrdersByStatus().forEach(count -> orderStats.put(count.status(), count.count()));
+        Map<Long, List<Long>> categoryIDs = getCategoryIDsBySchema();
+
+        generator.writeStartObject();
+        generator.writeNumberField("numOfOrders", orderStats.values().stream().mapToInt(Long::intValue).sum());
+        generator.writeObjectField("orderStats", orderStats);
+        generator.writeArrayFieldStart("userOrders");
+        try (Stream<OrderRow> orders = reportRepository.streamOrders();
+             Stream<ProductStateRow> rows = reportRepository.streamOrderItemStates()) {
+            OwnedRows<ProductStateRow> orderItems = new OwnedRows<>(rows, ProductStateRow::ownerId);
+            Iterator<OrderRow> iterator = orders.iterator();
+            while (iterator.hasNext()) {
+                OrderRow order = iterator.next();
+                List<ProductState> products = orderItems.takeFor(order.orderId()).stream()
+                        .map(row -> mapToProductState(row, categoryIDs))
+                        .collect(Collectors.toList());
+                generator.writeObject(mapToUserOrder(order, products));
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
 
-        // Mapping each ProductSchemaID to a map of ProductStatus to count
-        Map<Long, Map<ProductStatus, Long>> productStats = inventory.getProductIds().stream()
-                .map(productId -> productRepository.findById(productId).orElseThrow())
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+
+    // { K: productSchemaID, V: categoryIDs }, one query instead of loading the categories of every schema
+    private Map<Long, List<Long>> getCategoryIDsBySchema() {
+        return reportRepository.findSchemaCategories().stream()
                 .collect(Collectors.groupingBy(
-                        product -> product.getSchema().getId(),
-                        Collectors.groupingBy(
-                                Product::getStatus,
-                                Collectors.counting()
-                        )
+                        SchemaCategoryRow::productSchemaId,
+                        Collectors.mapping(SchemaCategoryRow::categoryId, Collectors.toList())
                 ));
+    }
+
+    private void addProductStat(Map<Long, Map<ProductStatus, Long>> productStats, ProductStatusCount count) {
+        productStats.computeIfAbsent(count.productSchemaId(), id -> new EnumMap<>(ProductStatus.class))
+                .put(count.status(), count.count());
+    }
 
+    private void addProductState(Map<Long, List<ProductState>> stock, ProductStateRow row, Map<Long, List<Long>> categoryIDs) {
+        stock.computeIfAbsent(row.productSchemaId(), id -> new ArrayList<>())
+                .add(mapToProductState(row, categoryIDs));
+    }
+
+    private InventoryState mapToInventoryState(
+            InventoryRow inventory,
+            Map<Long, List<ProductState>> stock,
+            Map<Long, Map<ProductStatus, Long>> productStats) {
         return InventoryState.builder()
-                .inventoryID(inventory.getId())
-                .supplierID(inventory.getSupplier().getId())
-                .supplierName(inventory.getSupplier().getName())
-                .maxAvailableSpace(inventory.getMaxAvailableSpace())
-                .usedSpace(inventory.getUsedSpace())
+                .inventoryID(inventory.inventoryId())
+                .supplierID(inventory.supplierId())
+                .supplierName(inventory.supplierName())
+                .maxAvailableSpace(inventory.maxAvailableSpace())
+                .usedSpace(inventory.usedSpace())
                 .stock(stock)
                 .productStats(productStats)
-                .createdAt(inventory.getCreatedAt())
-                .updatedAt(inventory.getUpdatedAt())
+                .createdAt(inventory.createdAt())
+                .updatedAt(inventory.updatedAt())
                 .build();
     }
 
-    private ProductState mapToProductState(Long productId) {
-        Product product = productRepository.findById(productId).orElseThrow();
-
+    private ProductState mapToProductState(ProductStateRow row, Map<Long, List<Long>> categoryIDs) {
         return ProductState.builder()
-                .productID(product.getId())
-                .productSchemaID(product.getSchema().getId())
-                .productName(product.getSchema().getName())
-                .status(product.getStatus())
-                .storageSpaceNeeded(product.getSchema().getStorageSpaceNeeded())
-                .categoryIDs(product.getSchema().getCategories().stream().map(Category::getId).collect(Collectors.toList()))
-                .createdAt(product.getCreatedAt())
-                .updatedAt(product.getUpdatedAt())
+                .productID(row.productId())
+                .productSchemaID(row.productSchemaId())
+                .productName(row.productName())
+                .status(row.status())
+                .storageSpaceNeeded(row.storageSpaceNeeded())
+                .categoryIDs(categoryIDs.getOrDefault(row.productSchemaId(), new ArrayList<>()))
+                .createdAt(row.createdAt())
+                .updatedAt(row.updatedAt())
                 .build();
     }
 
-    private ProductState mapToProductState(Product product) {
-        return ProductState.builder()
-                .productID(product.getId())
-                .productSchemaID(product.getSchema().getId())
-                .productName(product.getSchema().getName())
-                .status(product.getStatus())
-                .storageSpaceNeeded(product.getSchema().getStorageSpaceNeeded())
-                .categoryIDs(product.getSchema().getCategories().stream().map(Category::getId).collect(Collectors.toList()))
-                .createdAt(product.getCreatedAt())
-                .updatedAt(product.getUpdatedAt())
-                .build();
+    private InventorySummary mapToInventorySummary(InventoryRow inventory) {
+        Map<Long, Map<ProductStatus, Long>> productStats = new HashMap<>();
+        Map<Long, Map<ExpiryStatus, Long>> expiryStats = new HashMap<>();
+        for (Long productSchemaId : stockEngine.getProductSchemaIds(inventory.inventoryId())) {
+            Map<ProductStatus, Long> schemaProductStats = new EnumMap<>(ProductStatus.class);
+            for (ProductStatus status : ProductStatus.values()) {
+                int count = stockEngine.getStatusCount(inventory.inventoryId(), productSchemaId, status);
+                if (count > 0) {
+                    schemaProductStats.put(status, (long) count);
+                }
+            }
+            Map<ExpiryStatus, Long> schemaExpiryStats = new EnumMap<>(ExpiryStatus.class);
+            for (ExpiryStatus expiryStatus : ExpiryStatus.values()) {
+                int count = stockEngine.getExpiryStatusCount(inventory.inventoryId(), productSchemaId, expiryStatus);
+                if (count > 0) {
+                    schemaExpiryStats.put(expiryStatus, (long) count);
+                }
+            }
+            productStats.put(productSchemaId, schemaProductStats);
+            expiryStats.put(productSchemaId, schemaExpiryStats);
+        }
+        return buildInventorySummary(inventory, productStats, expiryStats);
     }
 
+    private InventorySummary mapToInventorySummary(InventoryRow inventory, List<ProductCount> counts) {
+        Map<Long, Map<ProductStatus, Long>> productStats = new HashMap<>();
+        Map<Long, Map<ExpiryStatus, Long>> expiryStats = new HashMap<>();
+        for (ProductCount count : counts) {
+            Map<ProductStatus, Long> schemaProductStats = productStats.computeIfAbsent(count.productSchemaId(), id -> new EnumMap<>(ProductStatus.class));
+            Map<ExpiryStatus, Long> schemaExpiryStats = expiryStats.computeIfAbsent(count.productSchemaId(), id -> new EnumMap<>(ExpiryStatus.class));
+            // products without a status are not counted, same as in the stock engine
+            if (count.status() != null) {
+                schemaProductStats.merge(count.status(), count.count(), Long::sum);
+            }
+            if (count.expiryStatus() != null) {
+                schemaExpiryStats.merge(count.expiryStatus(), count.count(), Long::sum);
+            }
+        }
+        return buildInventorySummary(inventory, productStats, expiryStats);
+    }
 
-    public InventoryExpiryReportResponse getInventoryExpiryReportResponse() {
-        List<Inventory> inventories = inventoryRepository.findAll();
-
-        List<InventoryExpiry> inventoryExpiries = inventories.stream()
-                .map(this::mapToInventoryExpiry)
-                .collect(Collectors.toList());
-
-        // Count products by expiry status
-        Map<ExpiryStatus, Integer> depotExpiryStats = new EnumMap<>(ExpiryStatus.class);
-        inventoryExpiries.forEach(inventoryExpiry -> {
-            inventoryExpiry.getStock().forEach((expiryStatus, products) ->
-                    depotExpiryStats.merge(expiryStatus, products.size(), Integer::sum));
-        });
-
-        return InventoryExpiryReportResponse.builder()
-                .depotExpiryStats(depotExpiryStats)
-                .inventoryExpires(inventoryExpiries)
+    private InventorySummary buildInventorySummary(
+            InventoryRow inventory,
+            Map<Long, Map<ProductStatus, Long>> productStats,
+            Map<Long, Map<ExpiryStatus, Long>> expiryStats) {
+        return InventorySummary.builder()
+                .inventoryID(inventory.inventoryId())
+                .supplierID(inventory.supplierId())
+                .supplierName(inventory.supplierName())
+                .maxAvailableSpace(inventory.maxAvailableSpace())
+                .usedSpace(inventory.usedSpace())
+                .productStats(productStats)
+                .expiryStats(expiryStats)
                 .build();
     }
 
-    private InventoryExpiry mapToInventoryExpiry(Inventory inventory) {
-        Map<ExpiryStatus, List<ProductExpiry>> stock = inventory.getProductIds().stream()
-                .map(productRepository::findById)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .map(this::mapToProductExpiry)
-                .collect(Collectors.groupingBy(ProductExpiry::getExpiryStatus));
-
+    private InventoryExpiry mapToInventoryExpiry(InventoryRow inventory, Map<ExpiryStatus, List<ProductExpiry>> stock) {
         return InventoryExpiry.builder()
-                .inventoryID(inventory.getId())
-                .supplierID(inventory.getSupplier().getId())
-                .supplierName(inventory.getSupplier().getName())
+                .inventoryID(inventory.inventoryId())
+                .supplierID(inventory.supplierId())
+                .supplierName(inventory.supplierName())
                 .stock(stock)
-                .createdAt(inventory.getCreatedAt())
-                .updatedAt(inventory.getUpdatedAt())
+                .createdAt(inventory.createdAt())
+                .updatedAt(inventory.updatedAt())
                 .build();
     }
 
-    private ProductExpiry mapToProductExpiry(Product product) {
+    private ProductExpiry mapToProductExpiry(ProductExpiryRow row) {
         return ProductExpiry.builder()
-                .productID(product.getId())
-                .productName(product.getSchema().getName())
-                .expiresAt(product.getExpiresAt())
-                .expiryStatus(product.getExpiryStatus())
-                .createdAt(product.getCreatedAt())
-                .updatedAt(product.getUpdatedAt())
+                .productID(row.productId())
+                .productName(row.productName())
+                .expiresAt(row.expiresAt())
+                .expiryStatus(row.expiryStatus())
+                .createdAt(row.createdAt())
+                .updatedAt(row.updatedAt())
                 .build();
     }
 
-    public OrderReportResponse getOrderReportResponse() {
-        List<Order> orders = orderRepository.findAll();
-
-        // Count orders by status
-        Map<OrderStatus, Long> orderStats = orders.stream()
-                .collect(Collectors.groupingBy(Order::getStatus, Collectors.counting()));
-
-        // Map orders to user-specific details
-        List<UserOrder> userOrders = orders.stream()
-                .map(this::mapToUserOrder)
-                .collect(Collectors.toList());
-
-        return OrderReportResponse.builder()
-                .numOfOrders(orders.size())
-                .orderStats(orderStats)
-                .userOrders(userOrders)
+    private UserOrder mapToUserOrder(OrderRow order, List<ProductState> products) {
+        return UserOrder.builder()
+                .orderID(order.orderId())
+                .userID(order.userId())
+                .orderStatus(order.status())
+                .products(products)
+                .createdAt(order.createdAt())
                 .build();
     }
 
-    private UserOrder mapToUserOrder(Order order) {
-        List<ProductState> products = order.getOrderItems().stream()
-                .map(this::mapToProductState)
-                .collect(Collectors.toList());
+    // Walks rows ordered by their owner's ID next to the owners, which have to come in the same order
+    private static class OwnedRows<R> {
+        private final Iterator<R> iterator;
+        private final Function<R, Long> ownerOf;
+        private R next;
 
-        return UserOrder.builder()
-                .orderID(order.getId())
-                .userID(order.getUserId())
-                .orderStatus(order.getStatus())
-                .products(products)
-                .createdAt(order.getCreatedAt())
-                .build();
+        OwnedRows(Stream<R> rows, Function<R, Long> ownerOf) {
+            this.iterator = rows.iterator();
+            this.ownerOf = ownerOf;
+            this.next = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        // Rows of the given owner, rows of owners before it that were not asked for are skipped
+        List<R> takeFor(Long ownerId) {
+            List<R> owned = new ArrayList<>();
+            while (next != null && ownerOf.apply(next) <= ownerId) {
+                if (ownerOf.apply(next).equals(ownerId)) {
+                    owned.add(next);
+                }
+                next = iterator.hasNext() ? iterator.next() : null;
+            }
+            return owned;
+        }
     }
 }
-
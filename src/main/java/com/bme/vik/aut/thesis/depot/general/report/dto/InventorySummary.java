@@ -0,0 +1,26 @@
+package com.bme.vik.aut.thesis.depot.general.report.dto;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class InventorySummary {
+    private Long inventoryID;
+    private Long supplierID;
+    private String supplierName;
+    private int maxAvailableSpace;
+    private int usedSpace;
+    // Mapping each ProductSchemaID to Map of ProductStatus to count
+    private Map<Long, Map<ProductStatus, Long>> productStats;
+    // Mapping each ProductSchemaID to Map of ExpiryStatus to count
+    private Map<Long, Map<ExpiryStatus, Long>> expiryStats;
+}
@@ -0,0 +1,24 @@
+package com.bme.vik.aut.thesis.depot.general.report.dto;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class InventorySummaryReportResponse {
+    private int maxAvailableSpaceInStorage;
+    private int usedSpaceInStorage;
+    private int numOfInventories;
+    private Map<ProductStatus, Long> depotProductStats;
+    private Map<ExpiryStatus, Long> depotExpiryStats;
+    private List<InventorySummary> inventorySummaries;
+}
@@ -0,0 +1,27 @@
+package com.bme.vik.aut.thesis.depot.general.report.projection;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+
+import java.time.LocalDateTime;
+
+// Inventory columns the reports need, read together with the supplier in one query
+public record InventoryRow(
+        Long inventoryId,
+        Long supplierId,
+        String supplierName,
+        int maxAvailableSpace,
+        int usedSpace,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt) {
+
+    public static InventoryRow of(Inventory inventory) {
+        return new InventoryRow(
+                inventory.getId(),
+                inventory.getSupplier().getId(),
+                inventory.getSupplier().getName(),
+                inventory.getMaxAvailableSpace(),
+                inventory.getUsedSpace(),
+                inventory.getCreatedAt(),
+                inventory.getUpdatedAt());
+    }
+}
@@ -0,0 +1,8 @@
+package com.bme.vik.aut.thesis.depot.general.report.projection;
+
+import com.bme.vik.aut.thesis.depot.general.order.OrderStatus;
+
+import java.time.LocalDateTime;
+
+public record OrderRow(Long orderId, Long userId, OrderStatus status, LocalDateTime createdAt) {
+}
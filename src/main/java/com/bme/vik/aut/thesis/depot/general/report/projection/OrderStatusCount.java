@@ -0,0 +1,6 @@
+package com.bme.vik.aut.thesis.depot.general.report.projection;
+
+import com.bme.vik.aut.thesis.depot.general.order.OrderStatus;
+
+public record OrderStatusCount(OrderStatus status, Long count) {
+}
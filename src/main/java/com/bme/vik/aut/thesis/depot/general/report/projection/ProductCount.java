@@ -0,0 +1,7 @@
+package com.bme.vik.aut.thesis.depot.general.report.projection;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+
+public record ProductCount(Long inventoryId, Long productSchemaId, ProductStatus status, ExpiryStatus expiryStatus, Long count) {
+}
@@ -0,0 +1,15 @@
+package com.bme.vik.aut.thesis.depot.general.report.projection;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+
+import java.time.LocalDateTime;
+
+public record ProductExpiryRow(
+        Long inventoryId,
+        Long productId,
+        String productName,
+        LocalDateTime expiresAt,
+        ExpiryStatus expiryStatus,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt) {
+}
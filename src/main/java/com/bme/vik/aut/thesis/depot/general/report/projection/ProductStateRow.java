@@ -0,0 +1,17 @@
+package com.bme.vik.aut.thesis.depot.general.report.projection;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+
+import java.time.LocalDateTime;
+
+// ownerId is the inventory or the order the product is listed under in the report
+public record ProductStateRow(
+        Long ownerId,
+        Long productId,
+        Long productSchemaId,
+        String productName,
+        ProductStatus status,
+        int storageSpaceNeeded,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt) {
+}
@@ -0,0 +1,6 @@
+package com.bme.vik.aut.thesis.depot.general.report.projection;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+
+public record ProductStatusCount(Long inventoryId, Long productSchemaId, ProductStatus status, Long count) {
+}
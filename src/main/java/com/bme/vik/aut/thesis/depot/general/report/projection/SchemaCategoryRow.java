@@ -0,0 +1,4 @@
+package com.bme.vik.aut.thesis.depot.general.report.projection;
+
+public record SchemaCategoryRow(Long productSchemaId, Long categoryId) {
+}
@@ -0,0 +1,106 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.inventory;
+
+import com.bme.vik.aut.thesis.depot.general.alert.TimeService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Alert thresholds of the inventories, so stock checks do not load the inventory for every order. An inventory
+// updated or deleted through this instance is evicted once its transaction committed, a reader can not cache the
+// old row again meanwhile. Changes made elsewhere are picked up at most one TTL later.
+@Component
+@RequiredArgsConstructor
+public class AlertThresholdCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlertThresholdCache.class);
+
+    @Value("${custom.inventory.alert-threshold-cache.ttl-ms}")
+    private long THRESHOLD_CACHE_TTL_MS;
+
+    @Value("${custom.inventory.alert-threshold-cache.max-size}")
+    private int THRESHOLD_CACHE_MAX_SIZE;
+
+    private final TimeService timeService;
+    private final MeterRegistry meterRegistry;
+
+    // { K: inventoryID, V: thresholds of the inventory }
+    private final Map<Long, CachedThresholds> thresholds = new ConcurrentHashMap<>();
+
+    private Counter hitCounter;
+    private Counter missCounter;
+
+    @PostConstruct
+    public void init() {
+        hitCounter = Counter.builder("depot.inventory.alert.thresholds.lookups")
+                .description("Alert thresholds answered from the cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        missCounter = Counter.builder("depot.inventory.alert.thresholds.lookups")
+                .description("Alert thresholds that had to be loaded from the database")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    // :::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PUBLIC METHODS @@@@@@@@@@@@@@@ //
+    // :::::::::::::::::::::::::::::::::::::::::::::: //
+
+    public InventoryAlertThresholds get(Long inventoryId, Function<Long, InventoryAlertThresholds> loader) {
+        LocalDateTime now = timeService.getCurrentTime();
+        CachedThresholds cached = thresholds.get(inventoryId);
+        if (cached != null && cached.expiresAt().isAfter(now)) {
+            hitCounter.increment();
+            return cached.thresholds();
+        }
+
+        missCounter.increment();
+        InventoryAlertThresholds loaded = loader.apply(inventoryId);
+        put(inventoryId, loaded, now);
+        return loaded;
+    }
+
+    // Outside a transaction the inventory is evicted right away
+    public void invalidateAfterCommit(Long inventoryId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            thresholds.remove(inventoryId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                thresholds.remove(inventoryId);
+            }
+        });
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    private void put(Long inventoryId, InventoryAlertThresholds inventoryThresholds, LocalDateTime now) {
+        if (thresholds.size() >= THRESHOLD_CACHE_MAX_SIZE && !thresholds.containsKey(inventoryId)) {
+            thresholds.values().removeIf(cached -> !cached.expiresAt().isAfter(now));
+            if (thresholds.size() >= THRESHOLD_CACHE_MAX_SIZE) {
+                // every entry is still fresh, dropping them only costs one lookup per inventory
+                logger.warn("Alert threshold cache is full with {} inventories, clearing it", thresholds.size());
+                thresholds.clear();
+            }
+        }
+        thresholds.put(inventoryId, new CachedThresholds(inventoryThresholds, now.plusNanos(THRESHOLD_CACHE_TTL_MS * 1_000_000)));
+    }
+
+    private record CachedThresholds(InventoryAlertThresholds thresholds, LocalDateTime expiresAt) {
+    }
+}
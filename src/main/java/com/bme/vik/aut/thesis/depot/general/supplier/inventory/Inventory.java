@@ -12,7 +12,6 @@ import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
 
 @Entity
@@ -23,13 +22,17 @@ import java.util.List;
 public class Inventory {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "inventory_seq")
+    @SequenceGenerator(name = "inventory_seq", sequenceName = "inventory_seq", allocationSize = 50)
     private Long id;
 
     @OneToOne(mappedBy = "inventory", cascade = CascadeType.ALL)
     @JsonBackReference
     private Supplier supplier;
 
+    // changed in the database by relative updates only (InventoryRepository.changeUsedSpace), so stock changes of
+    // concurrent transactions add up instead of the last saved inventory overwriting the others
+    @Column(updatable = false)
     private int usedSpace;
 
     private int maxAvailableSpace;
@@ -42,11 +45,6 @@ public class Inventory {
 
     private int reorderQuantity;
 
-    @ElementCollection(fetch = FetchType.EAGER)
-    @CollectionTable(name = "inventory_products", joinColumns = @JoinColumn(name = "inventory_id"))
-    @Column(name = "product_id")
-    private List<Long> productIds = new ArrayList<>();
-
     @Column(nullable = false, updatable = false)
     @CreationTimestamp
     private LocalDateTime createdAt;
@@ -54,20 +52,29 @@ public class Inventory {
     @UpdateTimestamp
     private LocalDateTime updatedAt;
 
-    public void addStock(List<Product> products) {
+    // The products point to their inventory, so the inventory itself only keeps track of the used space.
+    // Returns the space taken by the products.
+    public int addStock(List<Product> products) {
         // available space check not needed here,
         // as it is done in the service layer
+        int space = 0;
         for (Product product : products) {
-            this.productIds.add(product.getId());
-            this.usedSpace += product.getSchema().getStorageSpaceNeeded();
+            product.setInventory(this);
+            space += product.getSchema().getStorageSpaceNeeded();
         }
+        this.usedSpace += space;
+        return space;
     }
 
-    public void removeStock(List<Product> products) {
+    // Returns the space released by the products
+    public int removeStock(List<Product> products) {
+        int space = 0;
         for (Product product : products) {
-            this.productIds.remove(product.getId());
-            this.usedSpace -= product.getSchema().getStorageSpaceNeeded();
+            product.setInventory(null);
+            space += product.getSchema().getStorageSpaceNeeded();
         }
+        this.usedSpace -= space;
+        return space;
     }
 
     public boolean hasAvailableSpace(int requiredSpace) {
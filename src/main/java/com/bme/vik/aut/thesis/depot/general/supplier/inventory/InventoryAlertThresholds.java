@@ -0,0 +1,9 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.inventory;
+
+// Stock thresholds of an inventory, kept in memory so stock checks do not have to load the inventory
+public record InventoryAlertThresholds(Long inventoryId, int lowStockAlertThreshold, int reorderThreshold) {
+
+    public static InventoryAlertThresholds of(Inventory inventory) {
+        return new InventoryAlertThresholds(inventory.getId(), inventory.getLowStockAlertThreshold(), inventory.getReorderThreshold());
+    }
+}
@@ -1,6 +1,7 @@
 package com.bme.vik.aut.thesis.depot.general.supplier.inventory;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -12,9 +13,14 @@ import java.util.Optional;
 public interface InventoryRepository extends JpaRepository<Inventory, Long> {
     Optional<Inventory> findBySupplierId(Long supplierId);
 
-    @Query("SELECT i FROM Inventory i WHERE :productId MEMBER OF i.productIds")
+    @Query("SELECT p.inventory FROM Product p WHERE p.id = :productId")
     Optional<Inventory> findByProductId(@Param("productId") Long productId);
 
-    @Query("SELECT DISTINCT i FROM Inventory i JOIN Product p ON p.id MEMBER OF i.productIds WHERE p.schema.id = :productSchemaId")
+    @Query("SELECT i FROM Inventory i WHERE EXISTS (SELECT 1 FROM Product p WHERE p.inventory = i AND p.schema.id = :productSchemaId)")
     List<Inventory> findAllByProductSchemaId(@Param("productSchemaId") Long productSchemaId);
+
+    // Relative to the stored value, concurrent changes of the same inventory add up
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Inventory i SET i.usedSpace = i.usedSpace + :delta WHERE i.id = :id")
+    int changeUsedSpace(@Param("id") Long id, @Param("delta") int delta);
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import com.bme.vik.aut.thesis.depot.exception.inventory.DepotFullException;
 import com.bme.vik.aut.thesis.depot.exception.inventory.InventoryFullException;
 import com.bme.vik.aut.thesis.depot.exception.inventory.InventoryNotFoundException;
 import com.bme.vik.aut.thesis.depot.exception.inventory.InventoryOutOfStockException;
+import com.bme.vik.aut.thesis.depot.exception.order.ProductAlreadyReservedException;
 import com.bme.vik.aut.thesis.depot.exception.product.InvalidProductExpiryException;
 import com.bme.vik.aut.thesis.depot.exception.product.ProductNotFoundException;
 import com.bme.vik.aut.thesis.depot.exception.supplier.NonGreaterThanZeroQuantityException;
@@ -11,21 +12,31 @@ import com.bme.vik.aut.thesis.depot.exception.user.UserSupplierNotFoundException
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchemaService;
 import com.bme.vik.aut.thesis.depot.general.alert.AlertService;
+import com.bme.vik.aut.thesis.depot.general.alert.InternalReorder;
 import com.bme.vik.aut.thesis.depot.general.report.ReportService;
 import com.bme.vik.aut.thesis.depot.general.report.dto.InventoryState;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductLot;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductLotRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.dto.CreateProductStockRequest;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.dto.ProductStockResponse;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.dto.RemoveProductStockRequest;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockEngine;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockHydrationMode;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockHydrationService;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockLocation;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockSnapshotService;
+import com.bme.vik.aut.thesis.depot.general.supplier.supplier.Supplier;
 import com.bme.vik.aut.thesis.depot.general.supplier.supplier.SupplierRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.supplier.dto.CreateSupplierRequest;
 import com.bme.vik.aut.thesis.depot.security.user.MyUser;
 import jakarta.annotation.PostConstruct;
-import lombok.Getter;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -34,7 +45,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import static java.lang.Math.min;
 
@@ -44,6 +55,9 @@ public class InventoryService {
 
     private static final Logger logger = LoggerFactory.getLogger(InventoryService.class);
 
+    // stays well below the bind parameter limits of the databases
+    private static final int STATUS_UPDATE_CHUNK_SIZE = 1000;
+
     @Value("${custom.inventory.max-depot-space}")
     private int AVAILABLE_DEPOT_SPACE_FOR_NEW_INVENTORY;
 
@@ -53,16 +67,21 @@ public class InventoryService {
     @Value("${custom.inventory.should-check-expiration}")
     private boolean SHOULD_CHECK_EXPIRATION;
 
+    @Value("${custom.inventory.stock.hydration.mode}")
+    private StockHydrationMode STOCK_HYDRATION_MODE;
+
     private final InventoryRepository inventoryRepository;
     private final ProductRepository productRepository;
+    private final ProductLotRepository productLotRepository;
     private final ProductSchemaService productSchemaService;
     private final SupplierRepository supplierRepository;
     private final AlertService alertService;
     private final ReportService reportService;
-
-    // { K: InventoryID, V: { K: ProductSchemaID, V: List<Product> } }
-    @Getter
-    private final Map<Long, Map<Long, List<Product>>> stock = new HashMap<>();
+    private final StockEngine stockEngine;
+    private final StockSnapshotService stockSnapshotService;
+    private final StockHydrationService stockHydrationService;
+    private final EntityManager entityManager;
+    private final AlertThresholdCache alertThresholdCache;
 
     // :::::::::::::::::::::::::::::::::::::::::::::: //
     // @@@@@@@@@@@@@@@ PUBLIC METHODS @@@@@@@@@@@@@@@ //
@@ -74,33 +93,36 @@ public class InventoryService {
     }
 
     public void clearStock() {
-        AVAILABLE_DEPOT_SPACE_FOR_NEW_INVENTORY += stock.size() * MAX_AVAILABLE_INVENTORY_SPACE;
-        stock.clear();
+        AVAILABLE_DEPOT_SPACE_FOR_NEW_INVENTORY += stockEngine.getInventoryCount() * MAX_AVAILABLE_INVENTORY_SPACE;
+        stockEngine.clear();
+        stockHydrationService.reset();
     }
 
     @Transactional
     public void initializeStockForAllInventories() {
-        supplierRepository.findAll().forEach(supplier -> {
-            Inventory inventory = supplier.getInventory();
-            Long inventoryId = inventory.getId();
-            List<Long> productIds = inventory.getProductIds();
-            AVAILABLE_DEPOT_SPACE_FOR_NEW_INVENTORY -= inventory.getMaxAvailableSpace();
-
-            if (productIds != null && !productIds.isEmpty()) {
-                Map<Long, List<Product>> inventoryStock = new HashMap<>();
-
-                for (Long productId : productIds) {
-                    Product product = productRepository.findById(productId)
-                            .orElseThrow(() -> new ProductNotFoundException("Product with ID " + productId + " not found"));
+        List<Inventory> inventories = supplierRepository.findAll().stream()
+                .map(Supplier::getInventory)
+                .toList();
+        inventories.forEach(inventory -> AVAILABLE_DEPOT_SPACE_FOR_NEW_INVENTORY -= inventory.getMaxAvailableSpace());
+
+        if (isLazyHydration()) {
+            logger.info("Stock of {} inventories is loaded on their first use", inventories.size());
+            return;
+        }
 
-                    inventoryStock.computeIfAbsent(product.getSchema().getId(), k -> new ArrayList<>()).add(product);
-                }
+        long start = System.nanoTime();
+        if (stockSnapshotService.restore(inventories)) {
+            stockHydrationService.recordStartup("SNAPSHOT", System.nanoTime() - start);
+            return;
+        }
 
-                // Store the stock for the inventory in the main stock map
-                stock.put(inventoryId, inventoryStock);
-                System.out.println("Initialized stock for inventory with ID: " + inventoryId);
-            }
-        });
+        if (STOCK_HYDRATION_MODE == StockHydrationMode.BULK) {
+            stockHydrationService.hydrate(inventories);
+        } else {
+            initializeStockPerProduct(inventories);
+        }
+        stockSnapshotService.onStockRebuilt();
+        stockHydrationService.recordStartup(STOCK_HYDRATION_MODE.name(), System.nanoTime() - start);
     }
 
     public Inventory createInventory(CreateSupplierRequest request) {
@@ -134,6 +156,7 @@ public class InventoryService {
         inventory.setExpiryAlertThreshold(request.getExpiryAlertThreshold());
         inventory.setReorderThreshold(request.getReorderThreshold());
         inventory.setReorderQuantity(request.getReorderQuantity());
+        alertThresholdCache.invalidateAfterCommit(inventory.getId());
         logger.info("Inventory with ID {} updated successfully", inventory.getId());
 
         return inventory;
@@ -154,6 +177,15 @@ public class InventoryService {
         return reportService.mapToInventoryState(inventory);
     }
 
+    public InventoryAlertThresholds getAlertThresholds(Long inventoryId) {
+        return alertThresholdCache.get(inventoryId, id -> InventoryAlertThresholds.of(getInventoryById(id)));
+    }
+
+    // The inventory is deleted along with its supplier
+    public void inventoryDeleted(Long inventoryId) {
+        alertThresholdCache.invalidateAfterCommit(inventoryId);
+    }
+
     public Inventory getInventoryBySupplierId(Long supplierId) {
         logger.info("Fetching inventory by supplier ID: {}", supplierId);
         return inventoryRepository.findBySupplierId(supplierId)
@@ -177,8 +209,9 @@ public class InventoryService {
         validateSupplierExists(user);
         Long supplierId = user.getSupplier().getId();
 
-        Inventory inventory = getInventoryBySupplierId(supplierId);
+        Inventory inventory = getInventoryOfSupplierUser(user);
         Long inventoryId = inventory.getId();
+        loadStock(inventory);
 
         if (SHOULD_CHECK_EXPIRATION) {
             validateExpiryDate(request.getExpiresAt(), inventory);
@@ -201,26 +234,87 @@ public class InventoryService {
             throw new InventoryFullException(errorMsg);
         }
 
-        // create products and save them
-        List<Product> productsToAdd = createProductsToAdd(request, quantity, productSchema, inventory);
+        // create the lot of the delivery, then its units
+        ProductLot lot = productLotRepository.save(createLot(request, quantity, productSchema, inventory));
+        ExpiryStatus expiryStatus = alertService.determineExpiryStatus(request.getExpiresAt(), inventory.getExpiryAlertThreshold());
+        List<Product> productsToAdd = lot.expandUnits(expiryStatus);
+
+        // add products to inventory and save them
+        int addedSpace = inventory.addStock(productsToAdd);
         productRepository.saveAll(productsToAdd);
+        inventoryRepository.save(inventory);
+        inventoryRepository.changeUsedSpace(inventoryId, addedSpace);
 
         // add products to stock
-        addToInMemoryStock(inventoryId, productSchemaId, productsToAdd);
-
-        // add products to inventory and save it
-        inventory.addStock(productsToAdd);
-        inventoryRepository.save(inventory);
+        stockEngine.addProducts(inventoryId, productSchemaId, productsToAdd);
 
         logger.info("Stock successfully added to inventory of supplier with ID: {}. Stock-add size: {}", supplierId, quantity);
 
         return ProductStockResponse.builder()
                 .productSchemaId(productSchemaId)
+                .lotId(lot.getId())
                 .quantity(quantity)
                 .response("Stock added successfully")
                 .build();
     }
 
+    // Adds the reorder quantity of every reorder to the inventory in one transaction: one inventory lookup, the lots and
+    // units written as batched inserts. The space of the whole batch is checked before anything is written, reorders
+    // that do not fit anymore or have an invalid expiry date are skipped. Returns the applied reorders.
+    @Transactional
+    public List<InternalReorder> addReorderStock(Long inventoryId, List<InternalReorder> reorders) {
+        Inventory inventory = getInventoryById(inventoryId);
+        loadStock(inventory);
+        int quantity = validatePositiveQuantity(inventory.getReorderQuantity());
+
+        List<InternalReorder> applied = new ArrayList<>(reorders.size());
+        int spaceNeeded = 0;
+        for (InternalReorder reorder : reorders) {
+            // an invalid reorder must not abort the others of the batch
+            if (SHOULD_CHECK_EXPIRATION && !isValidExpiryDate(reorder.getExpiresAt(), inventory)) {
+                logger.warn("Invalid expiry date: {} of reorder of product schema with ID: {} into inventory with ID: {}, skipping it",
+                        reorder.getExpiresAt(), reorder.getProductSchema().getId(), inventoryId);
+                continue;
+            }
+            int reorderSpace = quantity * reorder.getProductSchema().getStorageSpaceNeeded();
+            if (!inventory.hasAvailableSpace(spaceNeeded + reorderSpace)) {
+                logger.warn("Not enough space in inventory with ID: {} to reorder {} of product schema with ID: {}",
+                        inventoryId, quantity, reorder.getProductSchema().getId());
+                continue;
+            }
+            spaceNeeded += reorderSpace;
+            applied.add(reorder);
+        }
+        if (applied.isEmpty()) {
+            return applied;
+        }
+
+        List<ProductLot> lots = productLotRepository.saveAll(applied.stream()
+                .map(reorder -> createLot(CreateProductStockRequest.builder()
+                        .productSchemaId(reorder.getProductSchema().getId())
+                        .description(reorder.getProductDescription())
+                        .quantity(quantity)
+                        .expiresAt(reorder.getExpiresAt())
+                        .build(), quantity, reorder.getProductSchema(), inventory))
+                .toList());
+
+        Map<Long, List<Product>> productsBySchemaId = new LinkedHashMap<>();
+        for (ProductLot lot : lots) {
+            ExpiryStatus expiryStatus = alertService.determineExpiryStatus(lot.getExpiresAt(), inventory.getExpiryAlertThreshold());
+            productsBySchemaId.computeIfAbsent(lot.getSchema().getId(), id -> new ArrayList<>()).addAll(lot.expandUnits(expiryStatus));
+        }
+        List<Product> productsToAdd = productsBySchemaId.values().stream().flatMap(List::stream).toList();
+
+        int addedSpace = inventory.addStock(productsToAdd);
+        productRepository.saveAll(productsToAdd);
+        inventoryRepository.save(inventory);
+        inventoryRepository.changeUsedSpace(inventoryId, addedSpace);
+        productsBySchemaId.forEach((productSchemaId, products) -> stockEngine.addProducts(inventoryId, productSchemaId, products));
+
+        logger.info("Reordered {} product schemas, {} units in total, into inventory with ID: {}", applied.size(), productsToAdd.size(), inventoryId);
+        return applied;
+    }
+
     @Transactional
     public ProductStockResponse removeStock(MyUser user, RemoveProductStockRequest request) {
         // validate request
@@ -228,8 +322,9 @@ public class InventoryService {
 
         Long supplierId = user.getSupplier().getId();
 
-        Inventory inventory = getInventoryBySupplierId(supplierId);
+        Inventory inventory = getInventoryOfSupplierUser(user);
         Long inventoryId = inventory.getId();
+        loadStock(inventory);
 
         int quantity = validatePositiveQuantity(request.getQuantity());
 
@@ -247,12 +342,19 @@ public class InventoryService {
         }
 
         // create products to remove and remove them
-        List<Product> productToRemove = createProductsToRemoveForNearExpiryStock(inventoryId, productSchemaId, quantity);
+        List<Product> productToRemove = stockEngine.removeFreeProducts(inventoryId, productSchemaId, quantity);
+        if (productToRemove.size() < quantity) {
+            // a concurrent order reserved the stock between the check above and the removal
+            String errorMsg = "Too few stock of: " + productName + " in inventory for supplier ID: " + supplierId + ". Available stock: " + getCurrentStock(inventoryId, productSchemaId) + ", requested: " + quantity;
+            logger.error(errorMsg);
+            throw new InventoryOutOfStockException(errorMsg);
+        }
         productRepository.deleteAll(productToRemove);
 
         // remove products from inventory and save it
-        inventory.removeStock(productToRemove);
+        int releasedSpace = inventory.removeStock(productToRemove);
         inventoryRepository.save(inventory);
+        inventoryRepository.changeUsedSpace(inventoryId, -releasedSpace);
 
         logger.info("Stock successfully removed from inventory of supplier with ID: {} Stock-remove size: {}", supplierId, quantity);
 
@@ -269,16 +371,16 @@ public class InventoryService {
     public List<Product> getAllProductsInInventoryForUser(MyUser user) {
         validateSupplierExists(user);
         Long supplierId = user.getSupplier().getId();
-        Inventory inventory = getInventoryBySupplierId(supplierId);
-        Long inventoryId = inventory.getId();
+        // read from the stock engine only, no need for the inventory row when the principal knows its ID
+        Long inventoryId = user.getInventoryId() != null ? user.getInventoryId() : getInventoryBySupplierId(supplierId).getId();
+        loadStock(inventoryId);
 
-        if (!stock.containsKey(inventoryId)) {
+        if (!stockEngine.containsInventory(inventoryId)) {
             logger.warn("No products found in inventory with ID {}", inventoryId);
             return new ArrayList<>();
         }
 
-        List<Product> allProducts = new ArrayList<>();
-        stock.get(inventoryId).values().forEach(allProducts::addAll);
+        List<Product> allProducts = stockEngine.getProducts(inventoryId);
 
         logger.info("Fetched all products in inventory for supplier with ID: {}", supplierId);
         return allProducts;
@@ -289,16 +391,23 @@ public class InventoryService {
         Long inventoryId = inventory.getId();
         Long schemaId = product.getSchema().getId();
         Long productId = product.getId();
+        loadStock(inventory);
 
         logger.info("Reserving product with ID: {} in inventory with ID: {}", productId, inventoryId);
 
-        changeProductStatus(inventoryId, schemaId, productId, ProductStatus.RESERVED);
+        if (!stockEngine.compareAndSetStatus(inventoryId, schemaId, productId, ProductStatus.FREE, ProductStatus.RESERVED)) {
+            throw new ProductAlreadyReservedException("Product with ID " + productId + " is already reserved");
+        }
+
+        product.setStatus(ProductStatus.RESERVED);
+        productRepository.save(product);
     }
 
     @Transactional
     public List<Product> reserveProdByProdSupplName(Inventory inventory, ProductSchema schema, int quantity) {
         Long inventoryId = inventory.getId();
         Long schemaId = schema.getId();
+        loadStock(inventory);
 
         validateProductSchema(inventoryId, schemaId);
 
@@ -309,6 +418,7 @@ public class InventoryService {
     public List<Product> reserveProdByProdName(Inventory inventory, ProductSchema schema, int quantity) {
         Long inventoryId = inventory.getId();
         Long schemaId = schema.getId();
+        loadStock(inventory);
 
         validateProductSchema(inventoryId, schemaId);
 
@@ -319,72 +429,94 @@ public class InventoryService {
 
     @Transactional
     public void freeProducts(List<Product> products) {
-        products.forEach(product -> {
-            Long inventoryId = getInventoryBySupplierId(product.getSupplierId()).getId();
-            Long schemaId = product.getSchema().getId();
-            Long productId = product.getId();
-
-            changeProductStatus(inventoryId, schemaId, productId, ProductStatus.FREE);
-        });
+        // the stock engine knows where each product is, no need to query its inventory
+        changeHeldProductStatuses(products, ProductStatus.FREE);
 
         logger.info("Freed {} products", products.size());
     }
 
     @Transactional
     public void removeCompletedOrderProducts(List<Product> orderProducts) {
-        orderProducts.forEach(orderProduct -> {
-            Long inventoryId = getInventoryBySupplierId(orderProduct.getSupplierId()).getId();
-            Long schemaId = orderProduct.getSchema().getId();
-            Long productId = orderProduct.getId();
-
-            changeProductStatus(inventoryId, schemaId, productId, ProductStatus.REMOVED);
-        });
+        changeHeldProductStatuses(orderProducts, ProductStatus.REMOVED);
 
         logger.info("Marked {} products as removed from inventory based on completed order.", orderProducts.size());
 
-        alertService.checkStockForReorder(stock);
+        // only the stock the order was taken from can have dropped below a threshold
+        Set<StockLocation> touchedBuckets = new HashSet<>();
+        orderProducts.forEach(product -> stockEngine.locate(product.getId()).ifPresent(touchedBuckets::add));
+        alertService.checkStockForReorder(touchedBuckets);
     }
 
     @Transactional
     public void changeProductExpirationStatus(Long inventoryId, Long schemaId, Long productId, ExpiryStatus expiryStatus) {
-        List<Product> products = stock.get(inventoryId).get(schemaId);
+        if (isLazyHydration() && !stockHydrationService.isLoaded(inventoryId)) {
+            // the periodic expiry check visits every inventory, an idle one is not loaded just to update a row
+            productRepository.findById(productId).ifPresent(product -> {
+                product.setExpiryStatus(expiryStatus);
+                productRepository.save(product);
+            });
+            return;
+        }
+        stockEngine.changeExpiryStatus(inventoryId, schemaId, productId, expiryStatus)
+                .ifPresent(productRepository::save);
+    }
 
-        products.stream()
-                .filter(p -> p.getId().equals(productId))
-                .findFirst()
-                .ifPresent(p -> {
-                    p.setExpiryStatus(expiryStatus);
-                    productRepository.save(p);
-                });
+    // Moves products of one inventory to the same expiry status with one bulk UPDATE per chunk.
+    // The given products get the new status too, without being written again.
+    @Transactional
+    public void changeProductExpirationStatuses(Long inventoryId, List<Product> products, ExpiryStatus expiryStatus) {
+        List<Long> productIds = products.stream().map(Product::getId).toList();
+        if (!isLazyHydration() || stockHydrationService.isLoaded(inventoryId)) {
+            // one lock per bucket and no entity loaded, whatever the store
+            stockEngine.changeExpiryStatuses(productIds, expiryStatus);
+        }
+
+        LocalDateTime updatedAt = LocalDateTime.now();
+        for (int from = 0; from < productIds.size(); from += STATUS_UPDATE_CHUNK_SIZE) {
+            productRepository.updateExpiryStatus(productIds.subList(from, Math.min(from + STATUS_UPDATE_CHUNK_SIZE, productIds.size())),
+                    expiryStatus, updatedAt);
+        }
+        applyToHeldProducts(products, product -> product.setExpiryStatus(expiryStatus));
     }
 
     @Transactional
     public void changeProductStatus(Long inventoryId, Long schemaId, Long productId, ProductStatus status) {
-        List<Product> products = stock.get(inventoryId).get(schemaId);
+        loadStock(inventoryId);
+        stockEngine.changeStatus(inventoryId, schemaId, productId, status)
+                .ifPresent(product -> updateStatuses(List.of(productId), status));
+    }
 
-        products.stream()
-                .filter(p -> p.getId().equals(productId))
-                .findFirst()
-                .ifPresent(p -> {
-                    p.setStatus(status);
-                    productRepository.save(p);
-                });
+    @Transactional
+    public void changeProductStatus(Long productId, ProductStatus status) {
+        changeProductStatuses(List.of(productId), status);
     }
 
     public int getCurrentStockBySchemaId(Long productSchemaId) {
-        return stock.values().stream()
-                .filter(schemaMap -> schemaMap.containsKey(productSchemaId))
-                .flatMap(schemaMap -> schemaMap.get(productSchemaId).stream())
-                .mapToInt(product -> product.getStatus() == ProductStatus.FREE ? 1 : 0)
-                .sum();
+        if (isLazyHydration()) {
+            stockHydrationService.ensureLoadedForSchema(productSchemaId);
+        }
+        return stockEngine.getFreeCountBySchemaId(productSchemaId);
     }
 
     public boolean needsReorderForStock(Inventory inventory, Long productSchemaId) {
-        return getCurrentStock(inventory.getId(), productSchemaId) <= inventory.getReorderThreshold();
+        return needsReorderForStock(InventoryAlertThresholds.of(inventory), productSchemaId);
+    }
+
+    public boolean needsReorderForStock(InventoryAlertThresholds thresholds, Long productSchemaId) {
+        return getCurrentStock(thresholds.inventoryId(), productSchemaId) <= thresholds.reorderThreshold();
     }
 
     public boolean lowOnStock(Inventory inventory, Long productSchemaId) {
-        return getCurrentStock(inventory.getId(), productSchemaId) <= inventory.getLowStockAlertThreshold();
+        return lowOnStock(InventoryAlertThresholds.of(inventory), productSchemaId);
+    }
+
+    public boolean lowOnStock(InventoryAlertThresholds thresholds, Long productSchemaId) {
+        return getCurrentStock(thresholds.inventoryId(), productSchemaId) <= thresholds.lowStockAlertThreshold();
+    }
+
+    public List<Product> getStockProducts(Long inventoryId, Long productSchemaId) {
+        loadStock(inventoryId);
+        return stockEngine.getProducts(inventoryId, productSchemaId);
     }
 
     public int validatePositiveQuantity(int quantity) {
@@ -396,24 +528,15 @@ public class InventoryService {
     }
 
     public int getCurrentStock(Long inventoryId, Long productSchemaId) {
-        if (!stock.containsKey(inventoryId) || !stock.get(inventoryId).containsKey(productSchemaId)) {
-            return 0;
-        }
-
-        // Filter out reserved products and count only non-reserved products
-        return (int) stock.get(inventoryId).get(productSchemaId).stream()
-                .filter(product -> product.getStatus() == ProductStatus.FREE)
-                .count();
+        // Only free products count, reserved and removed ones are not available
+        loadStock(inventoryId);
+        return stockEngine.getFreeCount(inventoryId, productSchemaId);
     }
 
     public Product getSoonestExpiryProduct(Inventory inventory, ProductSchema schema) {
-        // Fetch all products of the specified schema in the inventory
-        List<Product> products = stock.get(inventory.getId()).get(schema.getId());
-
         // Find the free product with the closest expiry date
-        return products.stream()
-                .filter(product -> product.getStatus() == ProductStatus.FREE)
-                .min(Comparator.comparing(Product::getExpiresAt))
+        loadStock(inventory);
+        return stockEngine.getSoonestExpiryFreeProduct(inventory.getId(), schema.getId())
                 .orElseThrow(() -> new ProductNotFoundException("No available products with schema ID " + schema.getId() + " in inventory ID " + inventory.getId()));
     }
 
@@ -421,18 +544,102 @@ public class InventoryService {
     // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
     // ::::::::::::::::::::::::::::::::::::::::::::::: //
 
-    private List<Product> reserveProducts(Long inventoryId, Long schemaId, int quantity) {
-        List<Product> products = stock.get(inventoryId).get(schemaId);
+    private void initializeStockPerProduct(List<Inventory> inventories) {
+        inventories.forEach(inventory -> {
+            Long inventoryId = inventory.getId();
+            List<Long> productIds = productRepository.findIdsByInventoryId(inventoryId);
+
+            if (!productIds.isEmpty()) {
+                Map<Long, List<Product>> inventoryStock = new HashMap<>();
+
+                for (Long productId : productIds) {
+                    Product product = productRepository.findById(productId)
+                            .orElseThrow(() -> new ProductNotFoundException("Product with ID " + productId + " not found"));
 
-        List<Product> productsToReserve = selectCTEFreeProducts(products, quantity);
+                    inventoryStock.computeIfAbsent(product.getSchema().getId(), k -> new ArrayList<>()).add(product);
+                }
 
-        // Reserve the selected products
-        productsToReserve.forEach(product -> {
-            product.setStatus(ProductStatus.RESERVED);
-            productRepository.save(product);
+                // Store the stock for the inventory in the stock engine
+                inventoryStock.forEach((productSchemaId, products) ->
+                        stockEngine.addProducts(inventoryId, productSchemaId, products));
+                logger.info("Initialized stock for inventory with ID: {}", inventoryId);
+            }
         });
+    }
+
+    private boolean isLazyHydration() {
+        return STOCK_HYDRATION_MODE == StockHydrationMode.LAZY;
+    }
+
+    // In LAZY hydration mode the stock of an inventory is loaded on its first use
+    private void loadStock(Inventory inventory) {
+        if (isLazyHydration()) {
+            stockHydrationService.ensureLoaded(inventory);
+        }
+    }
 
-        return productsToReserve;
+    private void loadStock(Long inventoryId) {
+        if (isLazyHydration()) {
+            stockHydrationService.ensureLoaded(inventoryId);
+        }
+    }
+
+    private List<Product> reserveProducts(Long inventoryId, Long schemaId, int quantity) {
+        // Selecting and reserving happens atomically in the stock engine
+        List<Product> reservedProducts = stockEngine.reserveFreeProducts(inventoryId, schemaId, quantity);
+
+        updateStatuses(reservedProducts.stream().map(Product::getId).toList(), ProductStatus.RESERVED);
+
+        return reservedProducts;
+    }
+
+    // Products of the caller, e.g. the items of an order, get the status they were changed to
+    private void changeHeldProductStatuses(List<Product> products, ProductStatus status) {
+        Set<Long> changedIds = new HashSet<>(changeProductStatuses(products.stream().map(Product::getId).toList(), status));
+        applyToHeldProducts(products.stream().filter(product -> changedIds.contains(product.getId())).toList(),
+                product -> product.setStatus(status));
+    }
+
+    // Returns the IDs of the products whose status was changed
+    private List<Long> changeProductStatuses(List<Long> productIds, ProductStatus status) {
+        if (isLazyHydration()) {
+            productIds.stream()
+                    .filter(productId -> stockEngine.locate(productId).isEmpty())
+                    .forEach(stockHydrationService::ensureLoadedForProduct);
+        }
+
+        List<Long> changedIds = stockEngine.changeStatuses(productIds, status);
+        if (changedIds.size() < productIds.size()) {
+            logger.warn("{} of {} products not found in stock, status {} not applied to them",
+                    productIds.size() - changedIds.size(), productIds.size(), status);
+        }
+        updateStatuses(changedIds, status);
+        return changedIds;
+    }
+
+    // The bulk UPDATEs bypass the persistence context, so the products the caller holds are changed here.
+    // A managed one is changed while read-only and then takes its new state as loaded: it is not written again,
+    // and changes the caller makes to it later are still flushed.
+    private void applyToHeldProducts(List<Product> products, Consumer<Product> change) {
+        for (Product product : products) {
+            if (!entityManager.contains(product)) {
+                change.accept(product);
+                continue;
+            }
+            Session session = entityManager.unwrap(Session.class);
+            session.setReadOnly(product, true);
+            change.accept(product);
+            session.setReadOnly(product, false);
+        }
+    }
+
+    // Writes the status in chunked bulk UPDATEs instead of saving the products one by one
+    private void updateStatuses(List<Long> productIds, ProductStatus status) {
+        LocalDateTime updatedAt = LocalDateTime.now();
+        for (int from = 0; from < productIds.size(); from += STATUS_UPDATE_CHUNK_SIZE) {
+            productRepository.updateStatus(productIds.subList(from, Math.min(from + STATUS_UPDATE_CHUNK_SIZE, productIds.size())),
+                    status, updatedAt);
+        }
     }
 
     private void validateSupplierExists(MyUser user) {
@@ -442,72 +649,44 @@ public class InventoryService {
         }
     }
 
+    // The principal of a supplier knows the ID of its inventory, the row is then read by its primary key.
+    // Only principals of tokens issued before the inventory ID claim need the lookup through the supplier.
+    private Inventory getInventoryOfSupplierUser(MyUser user) {
+        Long inventoryId = user.getInventoryId();
+        return inventoryId != null ? getInventoryById(inventoryId) : getInventoryBySupplierId(user.getSupplier().getId());
+    }
+
     private void validateExpiryDate(LocalDateTime expiresAt, Inventory inventory) {
-        if (expiresAt == null || expiresAt.isBefore(inventory.getCreatedAt())) {
+        if (!isValidExpiryDate(expiresAt, inventory)) {
             logger.error("Invalid expiry date: {}. Expiry date must be provided, and be after inventory creation date.", expiresAt);
             throw new InvalidProductExpiryException("Invalid expiry date: " + expiresAt + ". Expiry date must be after inventory creation date.");
         }
     }
 
+    private boolean isValidExpiryDate(LocalDateTime expiresAt, Inventory inventory) {
+        return expiresAt != null && !expiresAt.isBefore(inventory.getCreatedAt());
+    }
+
     private void validateProductSchema(Long inventoryId, Long productSchemaId) {
-        if (!stock.containsKey(inventoryId)) {
+        if (!stockEngine.containsInventory(inventoryId)) {
             throw new InventoryNotFoundException("No inventory found with ID " + inventoryId);
         }
-        if (!stock.get(inventoryId).containsKey(productSchemaId)) {
+        if (!stockEngine.containsBucket(inventoryId, productSchemaId)) {
             throw new ProductNotFoundException("No products of schema " + productSchemaId + " found in inventory with ID " + inventoryId);
         }
     }
 
-    private List<Product> createProductsToAdd(CreateProductStockRequest request, int quantity, ProductSchema productSchema, Inventory inventory) {
-        List<Product> products = new ArrayList<>();
-        for (int i = 0; i < quantity; i++) {
-            products.add(Product.builder()
-                    .schema(productSchema)
-                    .supplierId(inventory.getSupplier().getId())
-                    .description(request.getDescription())
-                    .status(ProductStatus.FREE)
-                    .expiryStatus(alertService.determineExpiryStatus(request.getExpiresAt(), inventory.getExpiryAlertThreshold()))
-                    .expiresAt(request.getExpiresAt())
-                    .build());
-        }
-        return products;
-    }
-
-    private void addToInMemoryStock(Long inventoryId, Long productSchemaId, List<Product> productsToAdd) {
-        if (!stock.containsKey(inventoryId)) {
-            stock.put(inventoryId, new HashMap<>());
-        }
-
-        if (!stock.get(inventoryId).containsKey(productSchemaId)) {
-            stock.get(inventoryId).put(productSchemaId, new ArrayList<>());
-        }
-
-        stock.get(inventoryId).get(productSchemaId).addAll(productsToAdd);
+    private ProductLot createLot(CreateProductStockRequest request, int quantity, ProductSchema productSchema, Inventory inventory) {
+        return ProductLot.builder()
+                .schema(productSchema)
+                .supplierId(inventory.getSupplier().getId())
+                .description(request.getDescription())
+                .quantity(quantity)
+                .expiresAt(request.getExpiresAt())
+                .build();
     }
 
     private boolean hasAvailableStock(Long inventoryId, Long productSchemaId, int quantity) {
         return getCurrentStock(inventoryId, productSchemaId) >= quantity;
     }
-
-    private List<Product> selectCTEFreeProducts(List<Product> products, int quantity) {
-        return products.stream()
-                .filter(product -> product.getStatus() == ProductStatus.FREE)
-                .sorted(Comparator.comparing(Product::getExpiresAt))
-                .limit(quantity)
-                .collect(Collectors.toList());
-    }
-
-    private List<Product> createProductsToRemoveForNearExpiryStock(Long inventoryId, Long productSchemaId, int quantity) {
-        Map<Long, List<Product>> inventoryStock = stock.get(inventoryId);
-        List<Product> inventoryProducts = inventoryStock.get(productSchemaId);
-
-        List<Product> productsToRemove = selectCTEFreeProducts(inventoryProducts, quantity);
-
-        inventoryProducts.removeAll(productsToRemove);
-
-        if (inventoryProducts.isEmpty()) {
-            inventoryStock.remove(productSchemaId);
-        }
-        return productsToRemove;
-    }
 }
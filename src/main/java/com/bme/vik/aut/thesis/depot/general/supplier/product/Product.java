@@ -1,11 +1,10 @@
 package com.bme.vik.aut.thesis.depot.general.supplier.product;
 
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
-import lombok.AllArgsConstructor;
-import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -13,13 +12,19 @@ import java.time.LocalDateTime;
 
 @Entity
 @Data
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
+@Table(indexes = {
+        @Index(name = "idx_product_inventory_schema_status", columnList = "inventory_id, schema_id, status"),
+        // the expiry check walks each expiry status of an inventory in expiry order, see ProductRepository
+        @Index(name = "idx_product_inventory_expiry", columnList = "inventory_id, expiry_status, expires_at")
+})
 public class Product {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @SequenceGenerator(name = "product_seq", sequenceName = "product_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -29,6 +34,22 @@ public class Product {
     @Column(name = "supplier_id", nullable = false)
     private Long supplierId;
 
+    // null once the product left its inventory, e.g. removed products after stock compaction
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "inventory_id")
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Inventory inventory;
+
+    // null for products stocked before lots were introduced
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "lot_id")
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private ProductLot lot;
+
     private String description;
 
     @Enumerated(EnumType.STRING)
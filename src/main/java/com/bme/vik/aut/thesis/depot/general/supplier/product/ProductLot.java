@@ -0,0 +1,62 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.product;
+
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// One delivery of a product schema: every unit of an add stock request shares its schema, description and expiry.
+// Orders and reservations still work on the individual units, which reference their lot.
+@Entity
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductLot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_lot_seq")
+    @SequenceGenerator(name = "product_lot_seq", sequenceName = "product_lot_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne
+    @JoinColumn(name = "schema_id", nullable = false)
+    private ProductSchema schema;
+
+    @Column(name = "supplier_id", nullable = false)
+    private Long supplierId;
+
+    private String description;
+
+    private int quantity;
+
+    private LocalDateTime expiresAt;
+
+    @Column(nullable = false, updatable = false)
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    // Unit expansion of the lot, one free product per unit
+    public List<Product> expandUnits(ExpiryStatus expiryStatus) {
+        List<Product> units = new ArrayList<>(quantity);
+        for (int i = 0; i < quantity; i++) {
+            units.add(Product.builder()
+                    .lot(this)
+                    .schema(schema)
+                    .supplierId(supplierId)
+                    .description(description)
+                    .status(ProductStatus.FREE)
+                    .expiryStatus(expiryStatus)
+                    .expiresAt(expiresAt)
+                    .build());
+        }
+        return units;
+    }
+}
@@ -0,0 +1,8 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.product;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ProductLotRepository extends JpaRepository<ProductLot, Long> {
+}
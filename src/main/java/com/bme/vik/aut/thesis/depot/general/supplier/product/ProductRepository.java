@@ -1,8 +1,63 @@
 package com.bme.vik.aut.thesis.depot.general.supplier.product;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
+    List<Product> findAllByUpdatedAtGreaterThanEqual(LocalDateTime updatedAt);
+
+    List<Product> findAllByInventoryId(Long inventoryId);
+
+    // Every product in ID order, read through a cursor. Has to be consumed inside a transaction.
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT p FROM Product p JOIN FETCH p.schema ORDER BY p.id")
+    Stream<Product> streamAll();
+
+    @Query("SELECT p.id FROM Product p WHERE p.inventory.id = :inventoryId ORDER BY p.id")
+    List<Long> findIdsByInventoryId(@Param("inventoryId") Long inventoryId);
+
+    // Keyset pagination over the products of an inventory: pass the last ID of the previous chunk (0 for the first)
+    @Query("SELECT p FROM Product p JOIN FETCH p.schema WHERE p.inventory.id = :inventoryId AND p.id > :afterId ORDER BY p.id")
+    List<Product> findInventoryProductsAfter(@Param("inventoryId") Long inventoryId, @Param("afterId") Long afterId, Limit limit);
+
+    // Products of an inventory whose expiry status is behind the given thresholds. Statuses only move forward,
+    // so each status is a range of expiresAt below its next threshold: the result holds the products to transition only.
+    @Query("SELECT p FROM Product p JOIN FETCH p.schema WHERE p.inventory.id = :inventoryId AND (" +
+            "((p.expiryStatus IS NULL OR p.expiryStatus = com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus.NOTEXPIRED) AND p.expiresAt < :soonToExpireBefore) " +
+            "OR (p.expiryStatus = com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus.SOONTOEXPIRE AND p.expiresAt < :expiredBefore) " +
+            "OR (p.expiryStatus = com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus.EXPIRED AND p.expiresAt < :longExpiredBefore)) " +
+            "ORDER BY p.expiresAt, p.id")
+    List<Product> findExpiryTransitions(@Param("inventoryId") Long inventoryId,
+                                        @Param("soonToExpireBefore") LocalDateTime soonToExpireBefore,
+                                        @Param("expiredBefore") LocalDateTime expiredBefore,
+                                        @Param("longExpiredBefore") LocalDateTime longExpiredBefore);
+
+    // Detaches products from their inventory, they stay in the table for the orders referring to them
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Product p SET p.inventory = NULL, p.updatedAt = :updatedAt WHERE p.id IN :ids")
+    int releaseFromInventory(@Param("ids") Collection<Long> ids, @Param("updatedAt") LocalDateTime updatedAt);
+
+    // One UPDATE for many products. @UpdateTimestamp is skipped by bulk updates, so updatedAt is set here,
+    // the stock snapshot replays products by it. Loaded products are flushed before, the persistence context is
+    // not cleared after: callers keep their entities managed and apply the change to the products they hold.
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Product p SET p.status = :status, p.updatedAt = :updatedAt WHERE p.id IN :ids")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("status") ProductStatus status, @Param("updatedAt") LocalDateTime updatedAt);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Product p SET p.expiryStatus = :expiryStatus, p.updatedAt = :updatedAt WHERE p.id IN :ids")
+    int updateExpiryStatus(@Param("ids") Collection<Long> ids, @Param("expiryStatus") ExpiryStatus expiryStatus, @Param("updatedAt") LocalDateTime updatedAt);
 }
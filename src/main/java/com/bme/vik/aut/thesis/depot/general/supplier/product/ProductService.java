@@ -6,6 +6,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 @Service
 @RequiredArgsConstructor
 public class ProductService {
@@ -20,6 +23,16 @@ public class ProductService {
                 .orElseThrow(() -> new ProductNotFoundException("Product with ID " + id + " not found"));
     }
 
+    public List<Product> getProductsByInventoryId(Long inventoryId) {
+        return productRepository.findAllByInventoryId(inventoryId);
+    }
+
+    // Products whose expiry status is behind the given thresholds, see ProductRepository.findExpiryTransitions
+    public List<Product> getProductsDueForExpiryTransition(Long inventoryId, LocalDateTime soonToExpireBefore,
+                                                           LocalDateTime expiredBefore, LocalDateTime longExpiredBefore) {
+        return productRepository.findExpiryTransitions(inventoryId, soonToExpireBefore, expiredBefore, longExpiredBefore);
+    }
+
     public boolean isProductAvailable(Product product) {
         return product.getStatus() == ProductStatus.FREE;
     }
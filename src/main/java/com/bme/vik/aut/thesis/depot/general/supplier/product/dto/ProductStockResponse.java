@@ -11,6 +11,7 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 public class ProductStockResponse {
     private Long productSchemaId;
+    private Long lotId;
     private int quantity;
     private String response;
 }
@@ -0,0 +1,388 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+
+import java.util.*;
+
+// Bucket keeping each unit as a slot in parallel primitive arrays (id, expiry in epoch seconds,
+// status and expiry status packed into one byte), roughly 17 bytes per unit plus the index arrays.
+// Products are handed out as units carrying only their in-memory state, StockEngine loads the entities
+// for them outside the stripe lock.
+// Removing a unit moves the last slot into its place, so slots are not stable across writes.
+class ColumnarStockBucket implements StockBucket {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final ProductStatus[] STATUSES = ProductStatus.values();
+    private static final ExpiryStatus[] EXPIRY_STATUSES = ExpiryStatus.values();
+    // low 2 bits: status ordinal, next 3 bits: expiry status ordinal + 1, 0 and 3 stand for null
+    private static final int STATUS_BITS = 2;
+    private static final int STATUS_MASK = (1 << STATUS_BITS) - 1;
+    private static final int NULL_STATUS = STATUS_MASK;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] expiries = new long[INITIAL_CAPACITY];
+    private byte[] codes = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    private final LongIntMap slotsById = new LongIntMap(INITIAL_CAPACITY);
+
+    // Indexed binary min-heap of FREE slots ordered by (expiry, id), the FEFO index of this store.
+    // heapPositions[slot] is the slot's position in the heap, or -1 if it is not FREE.
+    private int[] heap = new int[INITIAL_CAPACITY];
+    private int[] heapPositions = new int[INITIAL_CAPACITY];
+    private int heapSize;
+
+    private final StockCounters counters = new StockCounters();
+    // shared by every bucket of the same product schema across inventories
+    private final StockCounters schemaCounters;
+
+    ColumnarStockBucket(StockCounters schemaCounters) {
+        this.schemaCounters = schemaCounters;
+    }
+
+    @Override
+    public synchronized void addAll(Collection<Product> products) {
+        if (products.stream().anyMatch(product -> product.getId() == null)) {
+            throw new IllegalArgumentException("Only persisted products can be stored in a columnar stock bucket");
+        }
+
+        ensureCapacity(size + products.size());
+        for (Product product : products) {
+            int slot = size++;
+            ids[slot] = product.getId();
+            expiries[slot] = StockUnits.encodeExpiry(product.getExpiresAt());
+            codes[slot] = encode(product.getStatus(), product.getExpiryStatus());
+            heapPositions[slot] = -1;
+            slotsById.put(product.getId(), slot);
+
+            if (product.getStatus() == ProductStatus.FREE) {
+                heapInsert(slot);
+            }
+            counters.added(product.getStatus(), product.getExpiryStatus());
+            schemaCounters.added(product.getStatus(), product.getExpiryStatus());
+        }
+    }
+
+    @Override
+    public synchronized List<Product> removeCTEFreeProducts(int quantity) {
+        List<Long> removedIds = pollCTEFreeIds(quantity);
+        // taken while the units are still here, so they carry their in-memory state
+        List<Product> removed = unitsOf(removedIds);
+        removedIds.forEach(id -> removeSlot(slotsById.get(id)));
+        return removed;
+    }
+
+    @Override
+    public synchronized List<Product> reserveCTEFreeProducts(int quantity) {
+        List<Long> reservedIds = pollCTEFreeIds(quantity);
+        reservedIds.forEach(id -> setStatus(slotsById.get(id), ProductStatus.RESERVED));
+        return unitsOf(reservedIds);
+    }
+
+    @Override
+    public synchronized Optional<Product> changeStatus(Long productId, ProductStatus status) {
+        int slot = slotOf(productId);
+        if (slot == LongIntMap.NO_VALUE) {
+            return Optional.empty();
+        }
+        setStatus(slot, status);
+        return Optional.of(unitOf(slot));
+    }
+
+    @Override
+    public synchronized List<Long> changeStatuses(Collection<Long> productIds, ProductStatus status) {
+        List<Long> changed = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            int slot = slotOf(productId);
+            if (slot != LongIntMap.NO_VALUE) {
+                setStatus(slot, status);
+                changed.add(productId);
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public synchronized boolean compareAndSetStatus(Long productId, ProductStatus expected, ProductStatus status) {
+        int slot = slotOf(productId);
+        if (slot == LongIntMap.NO_VALUE || statusOf(slot) != expected) {
+            return false;
+        }
+        setStatus(slot, status);
+        return true;
+    }
+
+    @Override
+    public synchronized Optional<Product> changeExpiryStatus(Long productId, ExpiryStatus expiryStatus) {
+        int slot = slotOf(productId);
+        if (slot == LongIntMap.NO_VALUE) {
+            return Optional.empty();
+        }
+        setExpiryStatus(slot, expiryStatus);
+        return Optional.of(unitOf(slot));
+    }
+
+    @Override
+    public synchronized List<Long> changeExpiryStatuses(Collection<Long> productIds, ExpiryStatus expiryStatus) {
+        List<Long> changed = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            int slot = slotOf(productId);
+            if (slot != LongIntMap.NO_VALUE) {
+                setExpiryStatus(slot, expiryStatus);
+                changed.add(productId);
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public synchronized List<Product> removeRemovedProducts(int maxProducts) {
+        List<Long> removedIds = new ArrayList<>();
+        for (int slot = 0; slot < size && removedIds.size() < maxProducts; slot++) {
+            if (statusOf(slot) == ProductStatus.REMOVED) {
+                removedIds.add(ids[slot]);
+            }
+        }
+
+        List<Product> removed = unitsOf(removedIds);
+        removedIds.forEach(id -> removeSlot(slotsById.get(id)));
+        return removed;
+    }
+
+    @Override
+    public synchronized Optional<Product> getSoonestExpiryFreeProduct() {
+        return heapSize == 0 ? Optional.empty() : Optional.of(unitOf(heap[0]));
+    }
+
+    @Override
+    public synchronized List<Product> getProducts() {
+        List<Product> units = new ArrayList<>(size);
+        for (int slot = 0; slot < size; slot++) {
+            units.add(unitOf(slot));
+        }
+        return Collections.unmodifiableList(units);
+    }
+
+    @Override
+    public int getCount(ProductStatus status) {
+        return counters.get(status);
+    }
+
+    @Override
+    public int getCount(ExpiryStatus expiryStatus) {
+        return counters.get(expiryStatus);
+    }
+
+    @Override
+    public synchronized int recount() {
+        StockCounters actual = new StockCounters();
+        for (int slot = 0; slot < size; slot++) {
+            actual.added(statusOf(slot), expiryStatusOf(slot));
+        }
+        return counters.correctTo(actual, schemaCounters);
+    }
+
+    @Override
+    public synchronized StockUnits exportUnits() {
+        byte[] statuses = new byte[size];
+        byte[] expiryStatuses = new byte[size];
+        for (int slot = 0; slot < size; slot++) {
+            statuses[slot] = StockUnits.encode(statusOf(slot));
+            expiryStatuses[slot] = StockUnits.encode(expiryStatusOf(slot));
+        }
+        return new StockUnits(Arrays.copyOf(ids, size), Arrays.copyOf(expiries, size), statuses, expiryStatuses);
+    }
+
+    @Override
+    public synchronized List<Long> drain() {
+        List<Long> drained = new ArrayList<>(size);
+        // from the last slot down, so no unit has to be moved
+        for (int slot = size - 1; slot >= 0; slot--) {
+            drained.add(ids[slot]);
+            removeSlot(slot);
+        }
+        return drained;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    private List<Product> unitsOf(List<Long> productIds) {
+        List<Product> units = new ArrayList<>(productIds.size());
+        productIds.forEach(productId -> units.add(unitOf(slotsById.get(productId))));
+        return units;
+    }
+
+    // Product holding the in-memory state of the unit only, not an entity
+    private Product unitOf(int slot) {
+        return Product.builder()
+                .id(ids[slot])
+                .status(statusOf(slot))
+                .expiryStatus(expiryStatusOf(slot))
+                .expiresAt(StockUnits.decodeExpiry(expiries[slot]))
+                .build();
+    }
+
+    private List<Long> pollCTEFreeIds(int quantity) {
+        List<Long> polled = new ArrayList<>(Math.min(quantity, 64));
+        while (polled.size() < quantity && heapSize > 0) {
+            int slot = heap[0];
+            heapRemove(slot);
+            polled.add(ids[slot]);
+        }
+        return polled;
+    }
+
+    private int slotOf(Long productId) {
+        return productId == null ? LongIntMap.NO_VALUE : slotsById.get(productId);
+    }
+
+    private void setStatus(int slot, ProductStatus status) {
+        ProductStatus oldStatus = statusOf(slot);
+        if (oldStatus == status) {
+            return;
+        }
+
+        if (status == ProductStatus.FREE) {
+            heapInsert(slot);
+        } else if (heapPositions[slot] >= 0) {
+            heapRemove(slot);
+        }
+        codes[slot] = encode(status, expiryStatusOf(slot));
+        counters.transitioned(oldStatus, status);
+        schemaCounters.transitioned(oldStatus, status);
+    }
+
+    private void setExpiryStatus(int slot, ExpiryStatus expiryStatus) {
+        counters.expiryTransitioned(expiryStatusOf(slot), expiryStatus);
+        schemaCounters.expiryTransitioned(expiryStatusOf(slot), expiryStatus);
+        codes[slot] = encode(statusOf(slot), expiryStatus);
+    }
+
+    private void removeSlot(int slot) {
+        if (heapPositions[slot] >= 0) {
+            heapRemove(slot);
+        }
+        counters.removed(statusOf(slot), expiryStatusOf(slot));
+        schemaCounters.removed(statusOf(slot), expiryStatusOf(slot));
+        slotsById.remove(ids[slot]);
+
+        // move the last unit into the freed slot
+        int last = --size;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            expiries[slot] = expiries[last];
+            codes[slot] = codes[last];
+            heapPositions[slot] = heapPositions[last];
+            if (heapPositions[slot] >= 0) {
+                heap[heapPositions[slot]] = slot;
+            }
+            slotsById.put(ids[slot], slot);
+        }
+    }
+
+    private ProductStatus statusOf(int slot) {
+        int ordinal = codes[slot] & STATUS_MASK;
+        return ordinal == NULL_STATUS ? null : STATUSES[ordinal];
+    }
+
+    private ExpiryStatus expiryStatusOf(int slot) {
+        int ordinal = (codes[slot] >> STATUS_BITS) - 1;
+        return ordinal < 0 ? null : EXPIRY_STATUSES[ordinal];
+    }
+
+    private static byte encode(ProductStatus status, ExpiryStatus expiryStatus) {
+        int statusCode = status == null ? NULL_STATUS : status.ordinal();
+        int expiryCode = expiryStatus == null ? 0 : expiryStatus.ordinal() + 1;
+        return (byte) (statusCode | (expiryCode << STATUS_BITS));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, newCapacity);
+        expiries = Arrays.copyOf(expiries, newCapacity);
+        codes = Arrays.copyOf(codes, newCapacity);
+        heap = Arrays.copyOf(heap, newCapacity);
+        heapPositions = Arrays.copyOf(heapPositions, newCapacity);
+    }
+
+    // :::::::::::::::::::: FEFO HEAP :::::::::::::::::::: //
+
+    private boolean before(int slot, int otherSlot) {
+        int byExpiry = Long.compare(expiries[slot], expiries[otherSlot]);
+        return byExpiry != 0 ? byExpiry < 0 : ids[slot] < ids[otherSlot];
+    }
+
+    private void heapInsert(int slot) {
+        int position = heapSize++;
+        heap[position] = slot;
+        heapPositions[slot] = position;
+        siftUp(position);
+    }
+
+    private void heapRemove(int slot) {
+        int position = heapPositions[slot];
+        int lastSlot = heap[--heapSize];
+        heapPositions[slot] = -1;
+        if (position == heapSize) {
+            return;
+        }
+
+        heap[position] = lastSlot;
+        heapPositions[lastSlot] = position;
+        siftDown(position);
+        siftUp(heapPositions[lastSlot]);
+    }
+
+    private void siftUp(int position) {
+        int slot = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!before(slot, heap[parent])) {
+                break;
+            }
+            heap[position] = heap[parent];
+            heapPositions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = slot;
+        heapPositions[slot] = position;
+    }
+
+    private void siftDown(int position) {
+        int slot = heap[position];
+        int half = heapSize >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < heapSize && before(heap[right], heap[child])) {
+                child = right;
+            }
+            if (!before(heap[child], slot)) {
+                break;
+            }
+            heap[position] = heap[child];
+            heapPositions[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = slot;
+        heapPositions[slot] = position;
+    }
+}
@@ -0,0 +1,264 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Bucket holding the Product entities themselves.
+// Reads iterate an immutable snapshot of the list and never block.
+class EntityStockBucket implements StockBucket {
+
+    private final List<Product> products = new CopyOnWriteArrayList<>();
+    private final Map<Long, Product> productsById = new HashMap<>();
+
+    // FREE products ordered by expiry (first expiry first out), ties broken by insertion order,
+    // products without expiry are handed out last
+    private final NavigableSet<FefoEntry> freeByExpiry = new ConcurrentSkipListSet<>();
+    private final Map<Product, FefoEntry> fefoEntries = new IdentityHashMap<>();
+    private long nextSequence = 0;
+
+    private final StockCounters counters = new StockCounters();
+    // shared by every bucket of the same product schema across inventories
+    private final StockCounters schemaCounters;
+
+    EntityStockBucket(StockCounters schemaCounters) {
+        this.schemaCounters = schemaCounters;
+    }
+
+    @Override
+    public void addAll(Collection<Product> productsToAdd) {
+        products.addAll(productsToAdd);
+        productsToAdd.forEach(product -> {
+            if (product.getId() != null) {
+                productsById.put(product.getId(), product);
+            }
+            counters.added(product.getStatus(), product.getExpiryStatus());
+            schemaCounters.added(product.getStatus(), product.getExpiryStatus());
+            fefoEntries.put(product, new FefoEntry(StockUnits.encodeExpiry(product.getExpiresAt()), nextSequence++, product));
+            if (product.getStatus() == ProductStatus.FREE) {
+                freeByExpiry.add(fefoEntries.get(product));
+            }
+        });
+    }
+
+    @Override
+    public List<Product> removeCTEFreeProducts(int quantity) {
+        List<Product> taken = takeCTEFreeProducts(quantity);
+        removeAll(taken);
+        return taken;
+    }
+
+    @Override
+    public List<Product> reserveCTEFreeProducts(int quantity) {
+        List<Product> taken = takeCTEFreeProducts(quantity);
+        taken.forEach(product -> setStatus(product, ProductStatus.RESERVED));
+        return taken;
+    }
+
+    @Override
+    public Optional<Product> changeStatus(Long productId, ProductStatus status) {
+        Product product = productsById.get(productId);
+        if (product == null) {
+            return Optional.empty();
+        }
+        setStatus(product, status);
+        return Optional.of(product);
+    }
+
+    @Override
+    public List<Long> changeStatuses(Collection<Long> productIds, ProductStatus status) {
+        List<Long> changed = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            Product product = productsById.get(productId);
+            if (product != null) {
+                setStatus(product, status);
+                changed.add(productId);
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean compareAndSetStatus(Long productId, ProductStatus expected, ProductStatus status) {
+        Product product = productsById.get(productId);
+        if (product == null || product.getStatus() != expected) {
+            return false;
+        }
+        setStatus(product, status);
+        return true;
+    }
+
+    @Override
+    public Optional<Product> changeExpiryStatus(Long productId, ExpiryStatus expiryStatus) {
+        Product product = productsById.get(productId);
+        if (product == null) {
+            return Optional.empty();
+        }
+        counters.expiryTransitioned(product.getExpiryStatus(), expiryStatus);
+        schemaCounters.expiryTransitioned(product.getExpiryStatus(), expiryStatus);
+        product.setExpiryStatus(expiryStatus);
+        return Optional.of(product);
+    }
+
+    @Override
+    public List<Long> changeExpiryStatuses(Collection<Long> productIds, ExpiryStatus expiryStatus) {
+        List<Long> changed = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            if (changeExpiryStatus(productId, expiryStatus).isPresent()) {
+                changed.add(productId);
+            }
+        }
+        return changed;
+    }
+
+    // Linear scan, only meant for the background compaction of buckets known to hold removed products
+    @Override
+    public List<Product> removeRemovedProducts(int maxProducts) {
+        List<Product> removed = new ArrayList<>();
+        for (Product product : products) {
+            if (removed.size() >= maxProducts) {
+                break;
+            }
+            if (product.getStatus() == ProductStatus.REMOVED) {
+                removed.add(product);
+            }
+        }
+        removeAll(removed);
+        return removed;
+    }
+
+    @Override
+    public Optional<Product> getSoonestExpiryFreeProduct() {
+        // the iterator is weakly consistent, first() could throw if a writer empties the set meanwhile
+        Iterator<FefoEntry> iterator = freeByExpiry.iterator();
+        return iterator.hasNext() ? Optional.of(iterator.next().product()) : Optional.empty();
+    }
+
+    @Override
+    public List<Product> getProducts() {
+        return Collections.unmodifiableList(products);
+    }
+
+    @Override
+    public int getCount(ProductStatus status) {
+        return counters.get(status);
+    }
+
+    @Override
+    public int getCount(ExpiryStatus expiryStatus) {
+        return counters.get(expiryStatus);
+    }
+
+    // The entities are shared with callers, a status set on them outside the bucket is only picked up here
+    @Override
+    public int recount() {
+        StockCounters actual = new StockCounters();
+        products.forEach(product -> actual.added(product.getStatus(), product.getExpiryStatus()));
+        return counters.correctTo(actual, schemaCounters);
+    }
+
+    @Override
+    public StockUnits exportUnits() {
+        List<Product> persisted = products.stream().filter(product -> product.getId() != null).toList();
+        int size = persisted.size();
+        long[] productIds = new long[size];
+        long[] expiries = new long[size];
+        byte[] statuses = new byte[size];
+        byte[] expiryStatuses = new byte[size];
+        for (int i = 0; i < size; i++) {
+            Product product = persisted.get(i);
+            productIds[i] = product.getId();
+            expiries[i] = StockUnits.encodeExpiry(product.getExpiresAt());
+            statuses[i] = StockUnits.encode(product.getStatus());
+            expiryStatuses[i] = StockUnits.encode(product.getExpiryStatus());
+        }
+        return new StockUnits(productIds, expiries, statuses, expiryStatuses);
+    }
+
+    @Override
+    public List<Long> drain() {
+        List<Product> drained = new ArrayList<>(products);
+        removeAll(drained);
+        return drained.stream().map(Product::getId).filter(Objects::nonNull).toList();
+    }
+
+    @Override
+    public int size() {
+        return products.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return products.isEmpty();
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    // Takes at most the given quantity of free products closest to expiry out of the FEFO index,
+    // costs O(quantity * log n). The caller is responsible for moving them out of FREE status.
+    private List<Product> takeCTEFreeProducts(int quantity) {
+        List<Product> taken = new ArrayList<>(Math.min(quantity, 64));
+        FefoEntry entry;
+        while (taken.size() < quantity && (entry = freeByExpiry.pollFirst()) != null) {
+            taken.add(entry.product());
+        }
+        return taken;
+    }
+
+    private void removeAll(Collection<Product> productsToRemove) {
+        Set<Product> toRemove = Collections.newSetFromMap(new IdentityHashMap<>());
+        toRemove.addAll(productsToRemove);
+
+        products.removeIf(toRemove::contains);
+        toRemove.forEach(product -> {
+            if (product.getId() != null) {
+                productsById.remove(product.getId());
+            }
+            FefoEntry entry = fefoEntries.remove(product);
+            if (entry != null) {
+                freeByExpiry.remove(entry);
+                counters.removed(product.getStatus(), product.getExpiryStatus());
+                schemaCounters.removed(product.getStatus(), product.getExpiryStatus());
+            }
+        });
+    }
+
+    // Changes the status of a product of this bucket, keeping the FEFO index and the counters in sync
+    private void setStatus(Product product, ProductStatus status) {
+        FefoEntry entry = fefoEntries.get(product);
+        if (entry != null) {
+            if (status == ProductStatus.FREE) {
+                freeByExpiry.add(entry);
+            } else {
+                freeByExpiry.remove(entry);
+            }
+            counters.transitioned(product.getStatus(), status);
+            schemaCounters.transitioned(product.getStatus(), status);
+        }
+        product.setStatus(status);
+    }
+
+    private record FefoEntry(long expiresAt, long sequence, Product product) implements Comparable<FefoEntry> {
+        @Override
+        public int compareTo(FefoEntry other) {
+            int byExpiry = Long.compare(expiresAt, other.expiresAt);
+            return byExpiry != 0 ? byExpiry : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof FefoEntry other && sequence == other.sequence;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(sequence);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import java.util.Arrays;
+
+// Open addressing (linear probing) map from long keys to non-negative int values,
+// avoiding a boxed Long and map entry per product. Not thread safe.
+class LongIntMap {
+
+    static final int NO_VALUE = -1;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    int get(long key) {
+        for (int index = indexOf(key); ; index = (index + 1) & mask) {
+            if (values[index] == NO_VALUE) {
+                return NO_VALUE;
+            }
+            if (keys[index] == key) {
+                return values[index];
+            }
+        }
+    }
+
+    void put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must not be negative: " + value);
+        }
+        if (size + 1 > values.length * LOAD_FACTOR) {
+            resize(values.length << 1);
+        }
+
+        for (int index = indexOf(key); ; index = (index + 1) & mask) {
+            if (values[index] == NO_VALUE) {
+                keys[index] = key;
+                values[index] = value;
+                size++;
+                return;
+            }
+            if (keys[index] == key) {
+                values[index] = value;
+                return;
+            }
+        }
+    }
+
+    void remove(long key) {
+        int index = indexOf(key);
+        while (values[index] != NO_VALUE && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        if (values[index] == NO_VALUE) {
+            return;
+        }
+
+        // backward shift deletion, so no tombstones are needed
+        int gap = index;
+        for (int next = (gap + 1) & mask; values[next] != NO_VALUE; next = (next + 1) & mask) {
+            int home = indexOf(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        values[gap] = NO_VALUE;
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    private int indexOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != NO_VALUE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+
+import java.util.List;
+
+// Loads products by ID for stores that do not keep the entities in memory
+@FunctionalInterface
+public interface ProductLoader {
+
+    List<Product> loadAll(List<Long> productIds);
+}
@@ -0,0 +1,59 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// Products of one (inventory, product schema) pair.
+// Writes are called under the bucket's stripe lock in StockEngine, reads may come from any thread.
+interface StockBucket {
+
+    void addAll(Collection<Product> products);
+
+    // Takes the given quantity of free products closest to expiry (FEFO) out of the bucket
+    List<Product> removeCTEFreeProducts(int quantity);
+
+    // Marks at most the given quantity of free products closest to expiry (FEFO) as reserved
+    List<Product> reserveCTEFreeProducts(int quantity);
+
+    Optional<Product> changeStatus(Long productId, ProductStatus status);
+
+    // Same transition for many products without loading them, returns the IDs of the ones found in the bucket
+    List<Long> changeStatuses(Collection<Long> productIds, ProductStatus status);
+
+    boolean compareAndSetStatus(Long productId, ProductStatus expected, ProductStatus status);
+
+    Optional<Product> changeExpiryStatus(Long productId, ExpiryStatus expiryStatus);
+
+    // Same expiry transition for many products without loading them, returns the IDs of the ones found in the bucket
+    List<Long> changeExpiryStatuses(Collection<Long> productIds, ExpiryStatus expiryStatus);
+
+    // Takes at most the given number of REMOVED products out of the bucket
+    List<Product> removeRemovedProducts(int maxProducts);
+
+    Optional<Product> getSoonestExpiryFreeProduct();
+
+    List<Product> getProducts();
+
+    int getCount(ProductStatus status);
+
+    int getCount(ExpiryStatus expiryStatus);
+
+    // Counts the units again and corrects the bucket's and the schema's counters,
+    // returns the number of units that were counted wrong. Called under the bucket's stripe lock.
+    int recount();
+
+    // Copy of every persisted unit, called under the bucket's stripe lock
+    StockUnits exportUnits();
+
+    // Takes every unit out of the bucket without loading entities, returns the IDs of the persisted ones
+    List<Long> drain();
+
+    int size();
+
+    boolean isEmpty();
+}
@@ -0,0 +1,138 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// Products of completed orders are only flagged REMOVED, this evicts them from the in-memory stock
+// and from their inventory (releasing the used space). The product rows stay, orders still refer to them.
+@Service
+public class StockCompactionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockCompactionService.class);
+
+    @Value("${custom.inventory.stock.compaction.enabled}")
+    private boolean COMPACTION_ENABLED;
+
+    @Value("${custom.inventory.stock.compaction.threshold}")
+    private int COMPACTION_THRESHOLD;
+
+    @Value("${custom.inventory.stock.compaction.batch-size}")
+    private int COMPACTION_BATCH_SIZE;
+
+    private final StockEngine stockEngine;
+    private final InventoryRepository inventoryRepository;
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private Counter compactedProductsCounter;
+    private Counter releasedSpaceCounter;
+
+    public StockCompactionService(StockEngine stockEngine,
+                                  InventoryRepository inventoryRepository,
+                                  ProductRepository productRepository,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry) {
+        this.stockEngine = stockEngine;
+        this.inventoryRepository = inventoryRepository;
+        this.productRepository = productRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        compactedProductsCounter = Counter.builder("depot.stock.compaction.products")
+                .description("Removed products evicted from the in-memory stock and their inventory")
+                .register(meterRegistry);
+        releasedSpaceCounter = Counter.builder("depot.stock.compaction.released.space")
+                .description("Inventory space released by evicting removed products")
+                .register(meterRegistry);
+        Gauge.builder("depot.stock.removed.products", stockEngine, StockEngine::getRemovedCount)
+                .description("Removed products still held in the in-memory stock")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${custom.inventory.stock.compaction.interval-ms}", initialDelay = 10000)
+    public void compactRemovedProducts() {
+        if (!COMPACTION_ENABLED) {
+            return;
+        }
+
+        int removedCount = stockEngine.getRemovedCount();
+        if (removedCount < COMPACTION_THRESHOLD) {
+            logger.debug("Skipping stock compaction, {} removed products are below the threshold of {}", removedCount, COMPACTION_THRESHOLD);
+            return;
+        }
+
+        logger.info("Compacting {} removed products out of the stock", removedCount);
+
+        int compactedCount = 0;
+        boolean failed = false;
+        Map<Long, List<Product>> batch;
+        while (!failed && !(batch = stockEngine.compactRemovedProducts(COMPACTION_BATCH_SIZE)).isEmpty()) {
+            for (Map.Entry<Long, List<Product>> entry : batch.entrySet()) {
+                if (releaseFromInventory(entry.getKey(), entry.getValue())) {
+                    compactedCount += entry.getValue().size();
+                } else {
+                    // the failed products were put back, they are retried on the next run instead of spinning
+                    failed = true;
+                }
+            }
+        }
+
+        logger.info("Stock compaction finished, evicted {} products", compactedCount);
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    // The space of the inventory and the products leaving it are written in one transaction,
+    // so a failure leaves both as they were and the products can simply be put back into the stock.
+    // The space is released relative to the stored value, stock changed meanwhile by requests is kept.
+    private boolean releaseFromInventory(Long inventoryId, List<Product> products) {
+        int space = products.stream().mapToInt(product -> product.getSchema().getStorageSpaceNeeded()).sum();
+        try {
+            Integer releasedSpace = transactionTemplate.execute(status -> {
+                if (inventoryRepository.changeUsedSpace(inventoryId, -space) == 0) {
+                    return null;
+                }
+
+                productRepository.releaseFromInventory(products.stream().map(Product::getId).toList(), LocalDateTime.now());
+                return space;
+            });
+
+            if (releasedSpace == null) {
+                logger.warn("Inventory with ID {} not found, dropped {} removed products from stock only", inventoryId, products.size());
+            } else {
+                releasedSpaceCounter.increment(releasedSpace);
+            }
+            compactedProductsCounter.increment(products.size());
+            return true;
+        } catch (RuntimeException e) {
+            logger.error("Failed to release {} removed products from inventory with ID {}", products.size(), inventoryId, e);
+            products.stream()
+                    .collect(Collectors.groupingBy(product -> product.getSchema().getId()))
+                    .forEach((productSchemaId, schemaProducts) -> stockEngine.addProducts(inventoryId, productSchemaId, schemaProducts));
+            return false;
+        }
+    }
+}
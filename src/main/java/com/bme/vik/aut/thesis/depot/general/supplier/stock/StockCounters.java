@@ -0,0 +1,78 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Number of products per status and per expiry status, maintained on every transition,
+// so availability checks and the summary report do not have to walk the products.
+class StockCounters {
+
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(ProductStatus.values().length);
+    private final AtomicIntegerArray expiryCounts = new AtomicIntegerArray(ExpiryStatus.values().length);
+
+    // products without a status or expiry status are not counted for it
+    void added(ProductStatus status, ExpiryStatus expiryStatus) {
+        add(status, 1);
+        add(expiryStatus, 1);
+    }
+
+    void removed(ProductStatus status, ExpiryStatus expiryStatus) {
+        add(status, -1);
+        add(expiryStatus, -1);
+    }
+
+    void transitioned(ProductStatus from, ProductStatus to) {
+        if (from != to) {
+            add(from, -1);
+            add(to, 1);
+        }
+    }
+
+    void expiryTransitioned(ExpiryStatus from, ExpiryStatus to) {
+        if (from != to) {
+            add(from, -1);
+            add(to, 1);
+        }
+    }
+
+    int get(ProductStatus status) {
+        return counts.get(status.ordinal());
+    }
+
+    int get(ExpiryStatus expiryStatus) {
+        return expiryCounts.get(expiryStatus.ordinal());
+    }
+
+    // Sets these counters to the actual ones and applies the same difference to the shared counters.
+    // Returns the number of units that were counted wrong.
+    int correctTo(StockCounters actual, StockCounters shared) {
+        int corrected = 0;
+        for (ProductStatus status : ProductStatus.values()) {
+            int difference = actual.get(status) - get(status);
+            add(status, difference);
+            shared.add(status, difference);
+            corrected += Math.abs(difference);
+        }
+        for (ExpiryStatus expiryStatus : ExpiryStatus.values()) {
+            int difference = actual.get(expiryStatus) - get(expiryStatus);
+            add(expiryStatus, difference);
+            shared.add(expiryStatus, difference);
+            corrected += Math.abs(difference);
+        }
+        return corrected;
+    }
+
+    private void add(ProductStatus status, int delta) {
+        if (status != null && delta != 0) {
+            counts.addAndGet(status.ordinal(), delta);
+        }
+    }
+
+    private void add(ExpiryStatus expiryStatus, int delta) {
+        if (expiryStatus != null && delta != 0) {
+            expiryCounts.addAndGet(expiryStatus.ordinal(), delta);
+        }
+    }
+}
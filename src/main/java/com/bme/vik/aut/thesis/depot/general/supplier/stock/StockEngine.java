@@ -0,0 +1,500 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+@Component
+public class StockEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockEngine.class);
+
+    // { K: InventoryID, V: { K: ProductSchemaID, V: StockBucket } }
+    private final Map<Long, Map<Long, StockBucket>> buckets = new ConcurrentHashMap<>();
+
+    // { K: ProductSchemaID, V: depot-wide counters of the schema }
+    private final Map<Long, StockCounters> schemaCounters = new ConcurrentHashMap<>();
+
+    // { K: ProductID, V: location of the product }, kept in sync with the buckets
+    private final Map<Long, StockLocation> locations = new ConcurrentHashMap<>();
+
+    // Writers of a bucket take the stripe its (inventoryID, productSchemaID) hashes to,
+    // so orders touching different buckets proceed in parallel.
+    private final ReentrantLock[] stripes;
+    private final int stripeMask;
+
+    private final StockStoreType storeType;
+    private final ProductLoader productLoader;
+
+    public StockEngine(int lockStripes) {
+        this(lockStripes, StockStoreType.ENTITY, (ProductLoader) null);
+    }
+
+    @Autowired
+    public StockEngine(@Value("${custom.inventory.stock.lock-stripes}") int lockStripes,
+                       @Value("${custom.inventory.stock.store}") StockStoreType storeType,
+                       ProductRepository productRepository) {
+        this(lockStripes, storeType, productRepository::findAllById);
+    }
+
+    public StockEngine(int lockStripes, StockStoreType storeType, ProductLoader productLoader) {
+        // rounded up to a power of two so the stripe is picked with a mask
+        int stripeCount = lockStripes <= 1 ? 1 : Integer.highestOneBit(lockStripes - 1) << 1;
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.stripeMask = stripeCount - 1;
+        this.storeType = storeType;
+        this.productLoader = productLoader;
+        logger.info("Stock engine created with {} lock stripes and {} store", stripeCount, storeType);
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@@@@@@ WRITES @@@@@@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    // A product already in the stock is not added again, e.g. one stocked by a request that was still running
+    // while its inventory was unloaded and loaded again from the database
+    public void addProducts(Long inventoryId, Long productSchemaId, List<Product> products) {
+        withBucketLock(inventoryId, productSchemaId, () -> {
+            List<Product> newProducts = products.stream()
+                    .filter(product -> product.getId() == null || !locations.containsKey(product.getId()))
+                    .toList();
+            if (newProducts.size() < products.size()) {
+                logger.debug("Skipped {} products already in the stock of inventory with ID: {}", products.size() - newProducts.size(), inventoryId);
+            }
+            if (newProducts.isEmpty()) {
+                return null;
+            }
+
+            // the bucket is put into the inventory's map atomically with the map, so the eviction of the inventory's
+            // last other bucket cannot drop the map under it
+            buckets.compute(inventoryId, (id, inventoryBuckets) -> {
+                        Map<Long, StockBucket> target = inventoryBuckets != null ? inventoryBuckets : new ConcurrentHashMap<>();
+                        target.computeIfAbsent(productSchemaId, k -> createBucket(productSchemaId));
+                        return target;
+                    })
+                    .get(productSchemaId)
+                    .addAll(newProducts);
+
+            StockLocation location = new StockLocation(inventoryId, productSchemaId);
+            newProducts.forEach(product -> {
+                // products are persisted before they are stocked, only unsaved ones lack an ID
+                if (product.getId() != null) {
+                    locations.put(product.getId(), location);
+                }
+            });
+            return null;
+        });
+    }
+
+    // Removes the given quantity of free products closest to expiry from the bucket,
+    // dropping the bucket when it becomes empty. Removes nothing if there is not enough free stock.
+    public List<Product> removeFreeProducts(Long inventoryId, Long productSchemaId, int quantity) {
+        return hydrate(withBucketLock(inventoryId, productSchemaId, () -> {
+            Map<Long, StockBucket> inventoryBuckets = buckets.get(inventoryId);
+            StockBucket bucket = inventoryBuckets == null ? null : inventoryBuckets.get(productSchemaId);
+            if (bucket == null || bucket.getCount(ProductStatus.FREE) < quantity) {
+                return new ArrayList<Product>();
+            }
+
+            List<Product> productsToRemove = bucket.removeCTEFreeProducts(quantity);
+            afterEviction(inventoryId, inventoryBuckets, productSchemaId, bucket, productsToRemove);
+            return productsToRemove;
+        }));
+    }
+
+    // Evicts at most the given number of REMOVED products, only visiting buckets whose counters
+    // say they hold some. Returns the evicted products grouped by inventory ID.
+    public Map<Long, List<Product>> compactRemovedProducts(int maxProducts) {
+        Map<Long, List<Product>> compacted = new HashMap<>();
+        int remaining = maxProducts;
+
+        for (Map.Entry<Long, Map<Long, StockBucket>> inventoryEntry : buckets.entrySet()) {
+            Long inventoryId = inventoryEntry.getKey();
+            Map<Long, StockBucket> inventoryBuckets = inventoryEntry.getValue();
+
+            for (Long productSchemaId : inventoryBuckets.keySet()) {
+                if (remaining <= 0) {
+                    return compacted;
+                }
+                StockBucket candidate = inventoryBuckets.get(productSchemaId);
+                if (candidate == null || candidate.getCount(ProductStatus.REMOVED) == 0) {
+                    continue;
+                }
+
+                int limit = remaining;
+                List<Product> evicted = hydrate(withBucketLock(inventoryId, productSchemaId, () -> {
+                    StockBucket bucket = inventoryBuckets.get(productSchemaId);
+                    if (bucket == null) {
+                        return List.<Product>of();
+                    }
+                    List<Product> removedProducts = bucket.removeRemovedProducts(limit);
+                    afterEviction(inventoryId, inventoryBuckets, productSchemaId, bucket, removedProducts);
+                    return removedProducts;
+                }));
+
+                if (!evicted.isEmpty()) {
+                    compacted.computeIfAbsent(inventoryId, k -> new ArrayList<>()).addAll(evicted);
+                    remaining -= evicted.size();
+                }
+            }
+        }
+        return compacted;
+    }
+
+    // Marks the given quantity of free products closest to expiry as reserved,
+    // served from the bucket's FEFO index instead of sorting the whole bucket.
+    public List<Product> reserveFreeProducts(Long inventoryId, Long productSchemaId, int quantity) {
+        return hydrate(withBucketLock(inventoryId, productSchemaId, () -> {
+            StockBucket bucket = getBucket(inventoryId, productSchemaId);
+            if (bucket == null) {
+                return new ArrayList<Product>();
+            }
+            return bucket.reserveCTEFreeProducts(quantity);
+        }));
+    }
+
+    // Setting a product FREE again (e.g. a cancelled order) puts it back into the FEFO index.
+    public Optional<Product> changeStatus(Long inventoryId, Long productSchemaId, Long productId, ProductStatus status) {
+        return hydrate(withBucketLock(inventoryId, productSchemaId, () -> {
+            StockBucket bucket = findBucketOf(inventoryId, productSchemaId, productId);
+            return bucket == null ? Optional.<Product>empty() : bucket.changeStatus(productId, status);
+        }));
+    }
+
+    // Same as above, but the bucket is looked up in the location index,
+    // so callers only holding a product (e.g. an order item) need no inventory query.
+    public Optional<Product> changeStatus(Long productId, ProductStatus status) {
+        StockLocation location = locate(productId).orElse(null);
+        if (location == null) {
+            return Optional.empty();
+        }
+        return changeStatus(location.inventoryId(), location.productSchemaId(), productId, status);
+    }
+
+    // Applies one transition to many products, locking each affected bucket once instead of once per product.
+    // Returns the IDs of the products found in the stock.
+    public List<Long> changeStatuses(Collection<Long> productIds, ProductStatus status) {
+        return changeLocated(productIds, (bucket, locatedIds) -> bucket.changeStatuses(locatedIds, status));
+    }
+
+    // Only switches the status if the product currently has the expected one,
+    // so two orders racing for the same product cannot both reserve it.
+    public boolean compareAndSetStatus(Long inventoryId, Long productSchemaId, Long productId, ProductStatus expected, ProductStatus status) {
+        return withBucketLock(inventoryId, productSchemaId, () -> {
+            StockBucket bucket = findBucketOf(inventoryId, productSchemaId, productId);
+            return bucket != null && bucket.compareAndSetStatus(productId, expected, status);
+        });
+    }
+
+    // Expiry counterpart of changeStatuses, for the periodic expiry check moving many products at once
+    public List<Long> changeExpiryStatuses(Collection<Long> productIds, ExpiryStatus expiryStatus) {
+        return changeLocated(productIds, (bucket, locatedIds) -> bucket.changeExpiryStatuses(locatedIds, expiryStatus));
+    }
+
+    public Optional<Product> changeExpiryStatus(Long inventoryId, Long productSchemaId, Long productId, ExpiryStatus expiryStatus) {
+        return hydrate(withBucketLock(inventoryId, productSchemaId, () -> {
+            StockBucket bucket = findBucketOf(inventoryId, productSchemaId, productId);
+            return bucket == null ? Optional.<Product>empty() : bucket.changeExpiryStatus(productId, expiryStatus);
+        }));
+    }
+
+    // Drops the stock of an inventory from memory only, the database is left as it is.
+    // Every stripe is held meanwhile: a writer that already got hold of the inventory's buckets finishes first,
+    // and none can add a bucket for a new product schema that the unload would miss and leave counted.
+    public void unloadInventory(Long inventoryId) {
+        if (!buckets.containsKey(inventoryId)) {
+            return;
+        }
+
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        try {
+            Map<Long, StockBucket> inventoryBuckets = buckets.remove(inventoryId);
+            if (inventoryBuckets != null) {
+                inventoryBuckets.values().forEach(bucket -> bucket.drain().forEach(locations::remove));
+            }
+        } finally {
+            for (ReentrantLock stripe : stripes) {
+                stripe.unlock();
+            }
+        }
+    }
+
+    // Counts every bucket again under its stripe lock and corrects the counters that drifted,
+    // returns the number of units that were counted wrong
+    public int recount() {
+        int corrected = 0;
+        for (Map.Entry<Long, Map<Long, StockBucket>> inventoryEntry : buckets.entrySet()) {
+            Long inventoryId = inventoryEntry.getKey();
+            Map<Long, StockBucket> inventoryBuckets = inventoryEntry.getValue();
+            for (Long productSchemaId : inventoryBuckets.keySet()) {
+                corrected += withBucketLock(inventoryId, productSchemaId, () -> {
+                    StockBucket bucket = inventoryBuckets.get(productSchemaId);
+                    return bucket == null ? 0 : bucket.recount();
+                });
+            }
+        }
+        return corrected;
+    }
+
+    public void clear() {
+        buckets.clear();
+        schemaCounters.clear();
+        locations.clear();
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@@@@@@ READS @@@@@@@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    public StockStoreType getStoreType() {
+        return storeType;
+    }
+
+    int getLockStripeCount() {
+        return stripes.length;
+    }
+
+    public boolean containsInventory(Long inventoryId) {
+        return buckets.containsKey(inventoryId);
+    }
+
+    public boolean containsBucket(Long inventoryId, Long productSchemaId) {
+        return getBucket(inventoryId, productSchemaId) != null;
+    }
+
+    public Optional<StockLocation> locate(Long productId) {
+        return productId == null ? Optional.empty() : Optional.ofNullable(locations.get(productId));
+    }
+
+    public int getRemovedCount() {
+        int count = 0;
+        for (StockCounters counters : schemaCounters.values()) {
+            count += counters.get(ProductStatus.REMOVED);
+        }
+        return count;
+    }
+
+    public int getInventoryCount() {
+        return buckets.size();
+    }
+
+    public int getProductCount(Long inventoryId) {
+        Map<Long, StockBucket> inventoryBuckets = buckets.get(inventoryId);
+        if (inventoryBuckets == null) {
+            return 0;
+        }
+
+        int count = 0;
+        for (StockBucket bucket : inventoryBuckets.values()) {
+            count += bucket.size();
+        }
+        return count;
+    }
+
+    // Counts are maintained on every status transition, so these are constant time.
+    public int getFreeCount(Long inventoryId, Long productSchemaId) {
+        return getStatusCount(inventoryId, productSchemaId, ProductStatus.FREE);
+    }
+
+    public int getFreeCountBySchemaId(Long productSchemaId) {
+        return getStatusCountBySchemaId(productSchemaId, ProductStatus.FREE);
+    }
+
+    public int getStatusCount(Long inventoryId, Long productSchemaId, ProductStatus status) {
+        StockBucket bucket = getBucket(inventoryId, productSchemaId);
+        return bucket == null ? 0 : bucket.getCount(status);
+    }
+
+    public int getStatusCountBySchemaId(Long productSchemaId, ProductStatus status) {
+        StockCounters counters = schemaCounters.get(productSchemaId);
+        return counters == null ? 0 : counters.get(status);
+    }
+
+    public int getExpiryStatusCount(Long inventoryId, Long productSchemaId, ExpiryStatus expiryStatus) {
+        StockBucket bucket = getBucket(inventoryId, productSchemaId);
+        return bucket == null ? 0 : bucket.getCount(expiryStatus);
+    }
+
+    public Set<Long> getProductSchemaIds(Long inventoryId) {
+        Map<Long, StockBucket> inventoryBuckets = buckets.get(inventoryId);
+        return inventoryBuckets == null ? Collections.emptySet() : Set.copyOf(inventoryBuckets.keySet());
+    }
+
+    public List<Product> getProducts(Long inventoryId, Long productSchemaId) {
+        StockBucket bucket = getBucket(inventoryId, productSchemaId);
+        return bucket == null ? Collections.emptyList() : hydrate(bucket.getProducts());
+    }
+
+    public List<Product> getProducts(Long inventoryId) {
+        Map<Long, StockBucket> inventoryBuckets = buckets.get(inventoryId);
+        if (inventoryBuckets == null) {
+            return Collections.emptyList();
+        }
+
+        List<Product> products = new ArrayList<>();
+        inventoryBuckets.values().forEach(bucket -> products.addAll(bucket.getProducts()));
+        return hydrate(products);
+    }
+
+    public Optional<Product> getSoonestExpiryFreeProduct(Long inventoryId, Long productSchemaId) {
+        StockBucket bucket = getBucket(inventoryId, productSchemaId);
+        return bucket == null ? Optional.empty() : hydrate(bucket.getSoonestExpiryFreeProduct());
+    }
+
+    // Point in time copy of the whole stock, safe to iterate while orders are running.
+    public Map<Long, Map<Long, List<Product>>> snapshot() {
+        Map<Long, Map<Long, List<Product>>> snapshot = new HashMap<>();
+        buckets.forEach((inventoryId, inventoryBuckets) -> {
+            Map<Long, List<Product>> inventoryStock = new HashMap<>();
+            inventoryBuckets.forEach((productSchemaId, bucket) ->
+                    inventoryStock.put(productSchemaId, new ArrayList<>(hydrate(bucket.getProducts()))));
+            snapshot.put(inventoryId, inventoryStock);
+        });
+        return snapshot;
+    }
+
+    // Hands over a copy of every bucket, each copied under its stripe lock so it is consistent in itself.
+    // The consumer runs outside the lock.
+    public void exportUnits(BiConsumer<StockLocation, StockUnits> consumer) {
+        buckets.forEach((inventoryId, inventoryBuckets) ->
+                inventoryBuckets.keySet().forEach(productSchemaId -> {
+                    StockUnits units = withBucketLock(inventoryId, productSchemaId, () -> {
+                        StockBucket bucket = inventoryBuckets.get(productSchemaId);
+                        return bucket == null ? null : bucket.exportUnits();
+                    });
+                    if (units != null && units.size() > 0) {
+                        consumer.accept(new StockLocation(inventoryId, productSchemaId), units);
+                    }
+                }));
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    private StockBucket createBucket(Long productSchemaId) {
+        StockCounters counters = schemaCounters.computeIfAbsent(productSchemaId, id -> new StockCounters());
+        return switch (storeType) {
+            case ENTITY -> new EntityStockBucket(counters);
+            case COLUMNAR -> new ColumnarStockBucket(counters);
+        };
+    }
+
+    // Columnar buckets hand out units carrying their in-memory state only. Their entities are loaded here,
+    // outside the stripe lock, and copied with that state applied, so no managed entity is changed and
+    // nothing is written back on flush. Products missing from the database are skipped.
+    private List<Product> hydrate(List<Product> units) {
+        if (storeType != StockStoreType.COLUMNAR || units.isEmpty()) {
+            return units;
+        }
+
+        Map<Long, Product> loaded = new HashMap<>();
+        productLoader.loadAll(units.stream().map(Product::getId).toList())
+                .forEach(product -> loaded.put(product.getId(), product));
+
+        List<Product> products = new ArrayList<>(units.size());
+        for (Product unit : units) {
+            Product product = loaded.get(unit.getId());
+            if (product != null) {
+                products.add(product.toBuilder()
+                        .status(unit.getStatus())
+                        .expiryStatus(unit.getExpiryStatus())
+                        .build());
+            }
+        }
+        return products;
+    }
+
+    private Optional<Product> hydrate(Optional<Product> unit) {
+        return unit.flatMap(product -> hydrate(List.of(product)).stream().findFirst());
+    }
+
+    // Groups the products by the bucket they are located in and applies the change to each bucket once,
+    // under its stripe lock. Returns the IDs of the products the buckets found.
+    private List<Long> changeLocated(Collection<Long> productIds, BiFunction<StockBucket, List<Long>, List<Long>> change) {
+        Map<StockLocation, List<Long>> productIdsByLocation = new LinkedHashMap<>();
+        productIds.forEach(productId -> locate(productId).ifPresent(location ->
+                productIdsByLocation.computeIfAbsent(location, k -> new ArrayList<>()).add(productId)));
+
+        List<Long> changed = new ArrayList<>(productIds.size());
+        productIdsByLocation.forEach((location, locatedIds) -> changed.addAll(
+                withBucketLock(location.inventoryId(), location.productSchemaId(), () -> {
+                    StockBucket bucket = getBucket(location.inventoryId(), location.productSchemaId());
+                    if (bucket == null) {
+                        return List.<Long>of();
+                    }
+                    // the product may have moved or left the stock since it was located
+                    List<Long> stillThere = locatedIds.stream()
+                            .filter(productId -> location.equals(locations.get(productId)))
+                            .toList();
+                    return change.apply(bucket, stillThere);
+                })));
+        return changed;
+    }
+
+    private <T> T withBucketLock(Long inventoryId, Long productSchemaId, Supplier<T> action) {
+        ReentrantLock lock = stripeFor(inventoryId, productSchemaId);
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock stripeFor(Long inventoryId, Long productSchemaId) {
+        int hash = 31 * Objects.hashCode(inventoryId) + Objects.hashCode(productSchemaId);
+        // spread the higher bits, as consecutive IDs would otherwise cluster
+        hash ^= (hash >>> 16);
+        return stripes[hash & stripeMask];
+    }
+
+    // Caller must hold the bucket's stripe lock
+    private void afterEviction(Long inventoryId, Map<Long, StockBucket> inventoryBuckets, Long productSchemaId, StockBucket bucket, List<Product> evicted) {
+        evicted.forEach(product -> {
+            if (product.getId() != null) {
+                locations.remove(product.getId());
+            }
+        });
+
+        if (bucket.isEmpty()) {
+            inventoryBuckets.remove(productSchemaId);
+            // the inventory goes with its last bucket, so it is not counted as held anymore
+            buckets.computeIfPresent(inventoryId, (id, current) -> current == inventoryBuckets && current.isEmpty() ? null : current);
+        }
+    }
+
+    private StockBucket getBucket(Long inventoryId, Long productSchemaId) {
+        Map<Long, StockBucket> inventoryBuckets = buckets.get(inventoryId);
+        return inventoryBuckets == null ? null : inventoryBuckets.get(productSchemaId);
+    }
+
+    // The bucket of the product, if it really lives in the given one according to the location index
+    private StockBucket findBucketOf(Long inventoryId, Long productSchemaId, Long productId) {
+        StockLocation location = productId == null ? null : locations.get(productId);
+        if (location == null
+                || !Objects.equals(location.inventoryId(), inventoryId)
+                || !Objects.equals(location.productSchemaId(), productSchemaId)) {
+            return null;
+        }
+        return getBucket(inventoryId, productSchemaId);
+    }
+}
@@ -0,0 +1,7 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+public enum StockHydrationMode {
+    PER_PRODUCT, // one lookup per product
+    BULK, // keyset paginated chunks per inventory, inventories loaded in parallel
+    LAZY // nothing on startup, an inventory is bulk loaded on its first use
+}
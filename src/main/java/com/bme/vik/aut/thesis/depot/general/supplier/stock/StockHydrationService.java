@@ -0,0 +1,233 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+// Loads the stock of inventories with a few large queries instead of one lookup per product.
+// Every inventory is paged through by product ID, inventories are loaded in parallel.
+// In LAZY mode an inventory is only loaded on its first use, and idle ones can be unloaded again
+// to keep the number of products held in memory under a budget.
+@Service
+@RequiredArgsConstructor
+public class StockHydrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockHydrationService.class);
+
+    @Value("${custom.inventory.stock.hydration.chunk-size}")
+    private int HYDRATION_CHUNK_SIZE;
+
+    @Value("${custom.inventory.stock.hydration.parallelism}")
+    private int HYDRATION_PARALLELISM;
+
+    @Value("${custom.inventory.stock.hydration.lazy.max-loaded-products}")
+    private int LAZY_MAX_LOADED_PRODUCTS;
+
+    @Value("${custom.inventory.stock.hydration.lazy.idle-ms}")
+    private long LAZY_IDLE_MS;
+
+    private final StockEngine stockEngine;
+    private final ProductRepository productRepository;
+    private final InventoryRepository inventoryRepository;
+    private final MeterRegistry meterRegistry;
+
+    // { K: InventoryID, V: load of the inventory's stock }, concurrent first uses wait for the same load
+    private final Map<Long, CompletableFuture<Void>> lazyLoads = new ConcurrentHashMap<>();
+    // { K: InventoryID, V: System.nanoTime() of the last use }
+    private final Map<Long, Long> lastUses = new ConcurrentHashMap<>();
+
+    // :::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PUBLIC METHODS @@@@@@@@@@@@@@@ //
+    // :::::::::::::::::::::::::::::::::::::::::::::: //
+
+    public void hydrate(List<Inventory> inventories) {
+        if (inventories.isEmpty()) {
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, HYDRATION_PARALLELISM));
+        try {
+            List<ForkJoinTask<Integer>> loads = inventories.stream()
+                    .map(inventory -> pool.submit(() -> hydrateInventory(inventory)))
+                    .toList();
+
+            int loadedCount = 0;
+            for (ForkJoinTask<Integer> load : loads) {
+                loadedCount += load.get();
+            }
+            logger.info("Bulk loaded {} products of {} inventories", loadedCount, inventories.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading the stock", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Failed to load the stock", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Loads the stock of the inventory unless it is already loaded or being loaded by another thread
+    public void ensureLoaded(Inventory inventory) {
+        Long inventoryId = inventory.getId();
+        lastUses.put(inventoryId, System.nanoTime());
+
+        CompletableFuture<Void> load = lazyLoads.get(inventoryId);
+        if (load == null) {
+            CompletableFuture<Void> newLoad = new CompletableFuture<>();
+            load = lazyLoads.putIfAbsent(inventoryId, newLoad);
+            if (load == null) {
+                load = newLoad;
+                runLazyLoad(inventory, newLoad);
+            }
+        }
+
+        try {
+            load.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    public void ensureLoaded(Long inventoryId) {
+        if (isLoaded(inventoryId)) {
+            lastUses.put(inventoryId, System.nanoTime());
+            return;
+        }
+        inventoryRepository.findById(inventoryId).ifPresent(this::ensureLoaded);
+    }
+
+    public void ensureLoadedForSchema(Long productSchemaId) {
+        inventoryRepository.findAllByProductSchemaId(productSchemaId).forEach(this::ensureLoaded);
+    }
+
+    public void ensureLoadedForProduct(Long productId) {
+        inventoryRepository.findByProductId(productId).ifPresent(this::ensureLoaded);
+    }
+
+    public boolean isLoaded(Long inventoryId) {
+        CompletableFuture<Void> load = lazyLoads.get(inventoryId);
+        return load != null && load.isDone() && !load.isCompletedExceptionally();
+    }
+
+    public void reset() {
+        lazyLoads.clear();
+        lastUses.clear();
+    }
+
+    // Unloads the least recently used inventories while more products are loaded than the budget allows.
+    // Only inventories unused for the idle time are unloaded, so a request still working on one is not affected.
+    @Scheduled(fixedDelayString = "${custom.inventory.stock.hydration.lazy.eviction-interval-ms}", initialDelay = 60000)
+    public void evictIdleInventories() {
+        if (LAZY_MAX_LOADED_PRODUCTS <= 0 || lazyLoads.isEmpty()) {
+            return;
+        }
+
+        List<Long> loadedIds = lazyLoads.keySet().stream().filter(this::isLoaded).collect(Collectors.toList());
+        int loadedCount = loadedIds.stream().mapToInt(stockEngine::getProductCount).sum();
+        if (loadedCount <= LAZY_MAX_LOADED_PRODUCTS) {
+            return;
+        }
+
+        long idleSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(LAZY_IDLE_MS);
+        loadedIds.sort(Comparator.comparingLong(inventoryId -> lastUses.getOrDefault(inventoryId, Long.MIN_VALUE)));
+
+        int evictedCount = 0;
+        for (Long inventoryId : loadedIds) {
+            if (loadedCount <= LAZY_MAX_LOADED_PRODUCTS) {
+                break;
+            }
+            int productCount = stockEngine.getProductCount(inventoryId);
+            if (unloadIfIdle(inventoryId, idleSince)) {
+                loadedCount -= productCount;
+                evictedCount++;
+            }
+        }
+        logger.info("Unloaded {} idle inventories, {} products remain loaded", evictedCount, loadedCount);
+    }
+
+    // Time from the start of stock initialization until the stock could serve requests, tagged by where it came from
+    public void recordStartup(String source, long elapsedNanos) {
+        Timer.builder("depot.stock.startup")
+                .description("Time taken to load the in-memory stock on startup")
+                .tag("source", source)
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        logger.info("Stock ready in {} ms, loaded from {}", TimeUnit.NANOSECONDS.toMillis(elapsedNanos), source);
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    private void runLazyLoad(Inventory inventory, CompletableFuture<Void> load) {
+        Long inventoryId = inventory.getId();
+        try {
+            int loadedCount = hydrateInventory(inventory);
+            logger.info("Lazily loaded {} products of inventory with ID: {}", loadedCount, inventoryId);
+            load.complete(null);
+        } catch (RuntimeException e) {
+            // drop what was loaded, the next use tries again
+            stockEngine.unloadInventory(inventoryId);
+            lazyLoads.remove(inventoryId, load);
+            load.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // compute() holds the entry, so a concurrent first use waits until the inventory is fully unloaded
+    private boolean unloadIfIdle(Long inventoryId, long idleSince) {
+        boolean[] unloaded = {false};
+        lazyLoads.computeIfPresent(inventoryId, (id, load) -> {
+            Long lastUse = lastUses.get(id);
+            if (lastUse != null && lastUse - idleSince > 0) {
+                return load;
+            }
+            stockEngine.unloadInventory(id);
+            lastUses.remove(id);
+            unloaded[0] = true;
+            return null;
+        });
+        return unloaded[0];
+    }
+
+    // Each chunk goes into the stock as soon as it arrives, so only one chunk per inventory is held at once
+    private int hydrateInventory(Inventory inventory) {
+        Long inventoryId = inventory.getId();
+
+        int loadedCount = 0;
+        long afterId = 0;
+        List<Product> chunk;
+        do {
+            chunk = productRepository.findInventoryProductsAfter(inventoryId, afterId, Limit.of(HYDRATION_CHUNK_SIZE));
+            if (chunk.isEmpty()) {
+                break;
+            }
+
+            loadedCount += chunk.size();
+            chunk.stream()
+                    .collect(Collectors.groupingBy(product -> product.getSchema().getId()))
+                    .forEach((productSchemaId, products) -> stockEngine.addProducts(inventoryId, productSchemaId, products));
+            afterId = chunk.get(chunk.size() - 1).getId();
+        } while (chunk.size() == HYDRATION_CHUNK_SIZE);
+
+        logger.debug("Initialized stock for inventory with ID: {}", inventoryId);
+        return loadedCount;
+    }
+}
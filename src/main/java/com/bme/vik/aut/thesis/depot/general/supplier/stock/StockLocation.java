@@ -0,0 +1,5 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+// Bucket a product lives in. One instance is shared by every product of the bucket.
+public record StockLocation(Long inventoryId, Long productSchemaId) {
+}
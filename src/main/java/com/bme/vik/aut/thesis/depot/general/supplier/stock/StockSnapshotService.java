@@ -0,0 +1,276 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.exception.inventory.StockSnapshotException;
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Periodically dumps the columnar stock into a binary file, so a restart only has to read the file
+// and replay the product rows changed since it was written, instead of loading every product.
+//
+// File layout (big endian): magic, version, watermark (epoch millis), bucket count,
+// then per bucket: inventory ID, schema ID, unit count and per unit: product ID, expiry, status, expiry status,
+// closed by the CRC32 of everything before it.
+@Service
+@RequiredArgsConstructor
+public class StockSnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockSnapshotService.class);
+
+    static final int MAGIC = 0x44534E50;
+    static final int VERSION = 1;
+    private static final int LOAD_CHUNK_SIZE = 1000;
+
+    @Value("${custom.inventory.stock.snapshot.enabled}")
+    private boolean SNAPSHOT_ENABLED;
+
+    @Value("${custom.inventory.stock.snapshot.path}")
+    private String SNAPSHOT_PATH;
+
+    private final StockEngine stockEngine;
+    private final ProductRepository productRepository;
+
+    // the stock must not be dumped before it was loaded, that would overwrite a good snapshot with an empty one
+    private volatile boolean stockLoaded = false;
+
+    // :::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PUBLIC METHODS @@@@@@@@@@@@@@@ //
+    // :::::::::::::::::::::::::::::::::::::::::::::: //
+
+    // Loads the stock of the given inventories from the snapshot file. Returns false, leaving the stock empty,
+    // if there is no usable snapshot and the stock has to be rebuilt from the database.
+    public boolean restore(List<Inventory> inventories) {
+        if (!isActive()) {
+            return false;
+        }
+
+        Path path = Path.of(SNAPSHOT_PATH);
+        if (!Files.exists(path)) {
+            logger.info("No stock snapshot found at {}, rebuilding stock from the database", path);
+            return false;
+        }
+
+        long start = System.nanoTime();
+        try {
+            Snapshot snapshot = read(path);
+            int restoredCount = apply(snapshot, inventories);
+            stockLoaded = true;
+            logger.info("Restored {} products from stock snapshot written at {} in {} ms",
+                    restoredCount, snapshot.watermark(), (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not restore stock from snapshot {}, rebuilding stock from the database", path, e);
+            stockEngine.clear();
+            return false;
+        }
+    }
+
+    public void onStockRebuilt() {
+        stockLoaded = true;
+    }
+
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${custom.inventory.stock.snapshot.interval-ms}", initialDelay = 60000)
+    public void writeSnapshot() {
+        if (!isActive() || !stockLoaded) {
+            return;
+        }
+
+        Path path = Path.of(SNAPSHOT_PATH);
+        try {
+            long start = System.nanoTime();
+            int unitCount = write(path);
+            logger.debug("Wrote stock snapshot of {} products to {} in {} ms", unitCount, path, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            logger.error("Failed to write stock snapshot to {}", path, e);
+        }
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    // Only the columnar store can be rebuilt from the units alone, the entity store needs every entity loaded anyway
+    private boolean isActive() {
+        return SNAPSHOT_ENABLED && stockEngine.getStoreType() == StockStoreType.COLUMNAR;
+    }
+
+    private int write(Path path) throws IOException {
+        // taken before the export, rows changed while exporting are replayed on restore
+        LocalDateTime watermark = LocalDateTime.now();
+        Map<StockLocation, StockUnits> buckets = new LinkedHashMap<>();
+        stockEngine.exportUnits(buckets::put);
+
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+        int unitCount = 0;
+        try {
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                CheckedOutputStream checked = new CheckedOutputStream(file, new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(watermark.toInstant(ZoneOffset.UTC).toEpochMilli());
+                out.writeInt(buckets.size());
+                for (Map.Entry<StockLocation, StockUnits> bucket : buckets.entrySet()) {
+                    StockUnits units = bucket.getValue();
+                    out.writeLong(bucket.getKey().inventoryId());
+                    out.writeLong(bucket.getKey().productSchemaId());
+                    out.writeInt(units.size());
+                    for (int i = 0; i < units.size(); i++) {
+                        out.writeLong(units.productIds()[i]);
+                        out.writeLong(units.expiries()[i]);
+                        out.writeByte(units.statuses()[i]);
+                        out.writeByte(units.expiryStatuses()[i]);
+                    }
+                    unitCount += units.size();
+                }
+                out.flush();
+
+                new DataOutputStream(file).writeLong(checked.getChecksum().getValue());
+            }
+            // readers never see a half written snapshot
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return unitCount;
+    }
+
+    private Snapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < Integer.BYTES * 3 + Long.BYTES * 2 || fileSize > Integer.MAX_VALUE) {
+                throw new StockSnapshotException("Stock snapshot has an invalid size of " + fileSize + " bytes");
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            int bodySize = (int) fileSize - Long.BYTES;
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(0, bodySize));
+            if (crc.getValue() != buffer.getLong(bodySize)) {
+                throw new StockSnapshotException("Stock snapshot checksum mismatch");
+            }
+
+            ByteBuffer body = buffer.slice(0, bodySize);
+            if (body.getInt() != MAGIC) {
+                throw new StockSnapshotException("Not a stock snapshot file");
+            }
+            int version = body.getInt();
+            if (version != VERSION) {
+                throw new StockSnapshotException("Unsupported stock snapshot version " + version);
+            }
+
+            LocalDateTime watermark = LocalDateTime.ofInstant(Instant.ofEpochMilli(body.getLong()), ZoneOffset.UTC);
+            int bucketCount = body.getInt();
+
+            // productId -> unit, remembering which bucket it was in
+            Map<Long, SnapshotUnit> units = new HashMap<>();
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                long inventoryId = body.getLong();
+                long productSchemaId = body.getLong();
+                int unitCount = body.getInt();
+                for (int i = 0; i < unitCount; i++) {
+                    long productId = body.getLong();
+                    long expiry = body.getLong();
+                    byte status = body.get();
+                    byte expiryStatus = body.get();
+                    units.put(productId, new SnapshotUnit(inventoryId, productSchemaId, expiry, status, expiryStatus));
+                }
+            }
+            if (body.hasRemaining()) {
+                throw new StockSnapshotException("Stock snapshot has " + body.remaining() + " trailing bytes");
+            }
+            return new Snapshot(watermark, units);
+        }
+    }
+
+    // Rebuilds the stock from the snapshot, with the products' inventory column as the source of truth for
+    // membership and the rows changed since the snapshot overriding the stored units
+    private int apply(Snapshot snapshot, List<Inventory> inventories) {
+        Map<Long, Product> changed = new HashMap<>();
+        productRepository.findAllByUpdatedAtGreaterThanEqual(snapshot.watermark())
+                .forEach(product -> changed.put(product.getId(), product));
+
+        int restoredCount = 0;
+        for (Inventory inventory : inventories) {
+            List<Long> productIds = productRepository.findIdsByInventoryId(inventory.getId());
+            if (productIds.isEmpty()) {
+                continue;
+            }
+
+            Map<Long, List<Product>> inventoryStock = new HashMap<>();
+            List<Long> missingIds = new ArrayList<>();
+            for (Long productId : productIds) {
+                Product product = changed.get(productId);
+                if (product == null) {
+                    SnapshotUnit unit = snapshot.units().get(productId);
+                    if (unit == null || unit.inventoryId() != inventory.getId()) {
+                        missingIds.add(productId);
+                        continue;
+                    }
+                    product = unit.toProduct(productId);
+                }
+                inventoryStock.computeIfAbsent(product.getSchema().getId(), k -> new ArrayList<>()).add(product);
+            }
+
+            // added before the snapshot was written but not in it, e.g. the snapshot predates a bulk import
+            for (int from = 0; from < missingIds.size(); from += LOAD_CHUNK_SIZE) {
+                List<Long> chunk = missingIds.subList(from, Math.min(from + LOAD_CHUNK_SIZE, missingIds.size()));
+                List<Product> loaded = productRepository.findAllById(chunk);
+                if (loaded.size() != chunk.size()) {
+                    throw new StockSnapshotException("Products of inventory with ID " + inventory.getId() + " are missing from the database");
+                }
+                loaded.forEach(product -> inventoryStock.computeIfAbsent(product.getSchema().getId(), k -> new ArrayList<>()).add(product));
+            }
+
+            inventoryStock.forEach((productSchemaId, products) -> stockEngine.addProducts(inventory.getId(), productSchemaId, products));
+            restoredCount += productIds.size();
+        }
+        return restoredCount;
+    }
+
+    private record Snapshot(LocalDateTime watermark, Map<Long, SnapshotUnit> units) {
+    }
+
+    private record SnapshotUnit(long inventoryId, long productSchemaId, long expiry, byte status, byte expiryStatus) {
+
+        // Transient product carrying just what the columnar store keeps, the entity is loaded on demand
+        Product toProduct(Long productId) {
+            return Product.builder()
+                    .id(productId)
+                    .schema(ProductSchema.builder().id(productSchemaId).build())
+                    .expiresAt(StockUnits.decodeExpiry(expiry))
+                    .status(StockUnits.decodeStatus(status))
+                    .expiryStatus(StockUnits.decodeExpiryStatus(expiryStatus))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+public enum StockStoreType {
+    ENTITY, // buckets hold the Product entities themselves
+    COLUMNAR // buckets hold primitive arrays, entities are loaded when a caller needs them
+}
@@ -0,0 +1,37 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Copy of the units of one bucket as parallel arrays, statuses stored as ordinals (-1 for null)
+record StockUnits(long[] productIds, long[] expiries, byte[] statuses, byte[] expiryStatuses) {
+
+    static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    int size() {
+        return productIds.length;
+    }
+
+    static long encodeExpiry(LocalDateTime expiresAt) {
+        return expiresAt == null ? NO_EXPIRY : expiresAt.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    static LocalDateTime decodeExpiry(long expiry) {
+        return expiry == NO_EXPIRY ? null : LocalDateTime.ofEpochSecond(expiry, 0, ZoneOffset.UTC);
+    }
+
+    static byte encode(Enum<?> value) {
+        return value == null ? -1 : (byte) value.ordinal();
+    }
+
+    static ProductStatus decodeStatus(byte code) {
+        return code < 0 ? null : ProductStatus.values()[code];
+    }
+
+    static ExpiryStatus decodeExpiryStatus(byte code) {
+        return code < 0 ? null : ExpiryStatus.values()[code];
+    }
+}
@@ -9,7 +9,9 @@ import com.bme.vik.aut.thesis.depot.general.supplier.supplier.dto.CreateSupplier
 import com.bme.vik.aut.thesis.depot.general.supplier.supplier.dto.SupplierCreationResponse;
 import com.bme.vik.aut.thesis.depot.general.user.UserRepository;
 import com.bme.vik.aut.thesis.depot.security.jwt.JwtTokenService;
+import com.bme.vik.aut.thesis.depot.security.jwt.TokenVersionCache;
 import com.bme.vik.aut.thesis.depot.security.user.MyUser;
+import com.bme.vik.aut.thesis.depot.security.user.PrincipalCache;
 import com.bme.vik.aut.thesis.depot.security.user.Role;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang3.RandomStringUtils;
@@ -18,6 +20,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collections;
 import java.util.List;
@@ -37,6 +40,8 @@ public class SupplierService {
     private final PasswordEncoder passwordEncoder;
     private final UserRepository userRepository;
     private final JwtTokenService jwtTokenService;
+    private final TokenVersionCache tokenVersionCache;
+    private final PrincipalCache principalCache;
 
     public List<Supplier> getAllSuppliers() {
         logger.info("Fetching all suppliers");
@@ -106,6 +111,8 @@ public class SupplierService {
                 .build();
     }
 
+    // The cached alert thresholds of the inventory are evicted once this commits
+    @Transactional
     public Supplier updateSupplier(Long id, CreateSupplierRequest request) {
         logger.info("Updating supplier with ID: {}", id);
         Supplier supplier = getSupplierById(id);
@@ -121,6 +128,7 @@ public class SupplierService {
         inventoryService.updateInventory(supplier.getInventory(), request);
 
         Supplier updatedSupplier = supplierRepository.save(supplier);
+        principalCache.invalidate(supplier.getUser().getUsername());
         logger.info("Supplier with ID {} updated successfully", updatedSupplier.getId());
 
         return updatedSupplier;
@@ -131,6 +139,9 @@ public class SupplierService {
         MyUser user = supplier.getUser();
         logger.info("Deleting Supplier user with user ID: {} user name: {} and supplier ID: {}", user.getId(), user.getUsername(), supplier.getId());
         userRepository.delete(supplier.getUser());
+        inventoryService.inventoryDeleted(supplier.getInventory().getId());
+        tokenVersionCache.deleted(user.getId());
+        principalCache.invalidate(user.getUsername());
     }
 
     private void verifySupplierRequest(CreateSupplierRequest request) {
@@ -2,6 +2,8 @@ package com.bme.vik.aut.thesis.depot.general.user;
 
 import com.bme.vik.aut.thesis.depot.security.user.MyUser;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -10,4 +12,8 @@ import java.util.Optional;
 public interface UserRepository extends JpaRepository<MyUser, Long> {
     boolean existsByUserName(String userName);
     Optional<MyUser> findByUserName(String userName);
+
+    // users created before token versions existed have none, their tokens were issued with version 0
+    @Query("SELECT COALESCE(u.tokenVersion, 0) FROM MyUser u WHERE u.id = :id")
+    Optional<Integer> findTokenVersionById(@Param("id") Long id);
 }
@@ -4,7 +4,9 @@ import com.bme.vik.aut.thesis.depot.exception.user.UserNameAlreadyExistsExceptio
 import com.bme.vik.aut.thesis.depot.exception.user.UserNotFoundByIDException;
 import com.bme.vik.aut.thesis.depot.general.user.dto.UserModifyRequest;
 import com.bme.vik.aut.thesis.depot.general.user.dto.UserResponse;
+import com.bme.vik.aut.thesis.depot.security.jwt.TokenVersionCache;
 import com.bme.vik.aut.thesis.depot.security.user.MyUser;
+import com.bme.vik.aut.thesis.depot.security.user.PrincipalCache;
 import lombok.RequiredArgsConstructor;
 import org.modelmapper.ModelMapper;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -24,6 +26,8 @@ public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final ModelMapper modelMapper;
+    private final TokenVersionCache tokenVersionCache;
+    private final PrincipalCache principalCache;
 
     public List<UserResponse> getAllUsers() {
         logger.info("Fetching all users");
@@ -60,9 +64,13 @@ public class UserService {
             throw new UserNameAlreadyExistsException("User name already exists");
         }
 
+        String previousUserName = user.getUsername();
         user.setUserName(request.getUserName());
         user.setPassword(passwordEncoder.encode(request.getPassword()));
+        user.revokeTokens();
         user = userRepository.save(user);
+        tokenVersionCache.updated(user.getId(), user.getTokenVersion());
+        principalCache.invalidate(previousUserName);
 
         logger.info("User with ID {} updated successfully", id);
         return modelMapper.map(user, UserResponse.class);
@@ -77,6 +85,8 @@ public class UserService {
                 });
 
         userRepository.delete(user);
+        tokenVersionCache.deleted(id);
+        principalCache.invalidate(user.getUsername());
         logger.info("User with ID {} deleted successfully", id);
     }
 }
@@ -0,0 +1,83 @@
+package com.bme.vik.aut.thesis.depot.general.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Writes JSON responses straight to the output stream with Jackson's streaming generator,
+// so large listings and reports are never held in memory as a whole.
+// The body is written on the MVC async executor after the controller returned, outside the request's
+// persistence context, so everything it reads has to happen in a transaction opened there.
+@Component
+@RequiredArgsConstructor
+public class JsonStreamWriter {
+
+    // items written between two flushes of the response and of the persistence context
+    static final int FLUSH_EVERY = 500;
+
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final PlatformTransactionManager transactionManager;
+
+    @FunctionalInterface
+    public interface JsonWriting {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    // The writing is expected to open its own transaction, e.g. a @Transactional service method
+    public ResponseEntity<StreamingResponseBody> respond(JsonWriting writing) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+                writing.write(generator);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    // Streams the items as a JSON array, opening the stream in a read-only transaction
+    public <T> ResponseEntity<StreamingResponseBody> respondArray(Supplier<Stream<T>> items) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        return respond(generator -> {
+            IOException[] failure = new IOException[1];
+            transaction.executeWithoutResult(status -> {
+                try (Stream<T> stream = items.get()) {
+                    writeArray(generator, stream);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        });
+    }
+
+    // Entities already written are detached every FLUSH_EVERY items, so the persistence context
+    // does not grow with the stream. Has to be called inside a transaction.
+    public void writeArray(JsonGenerator generator, Stream<?> items) throws IOException {
+        generator.writeStartArray();
+        int written = 0;
+        Iterator<?> iterator = items.iterator();
+        while (iterator.hasNext()) {
+            generator.writeObject(iterator.next());
+            if (++written % FLUSH_EVERY == 0) {
+                generator.flush();
+                entityManager.clear();
+            }
+        }
+        generator.writeEndArray();
+    }
+}
@@ -3,6 +3,8 @@ package com.bme.vik.aut.thesis.depot.security.config;
 import com.bme.vik.aut.thesis.depot.general.user.UserRepository;
 import com.bme.vik.aut.thesis.depot.security.jwt.JwtAuthFilter;
 import com.bme.vik.aut.thesis.depot.security.jwt.JwtTokenService;
+import com.bme.vik.aut.thesis.depot.security.jwt.TokenVersionCache;
+import com.bme.vik.aut.thesis.depot.security.user.PrincipalCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -24,6 +26,9 @@ public class AuthConfig {
     private static final Logger logger = Logger.getLogger(AuthConfig.class.getName());
 
     private final UserRepository userRepository;
+    private final TokenVersionCache tokenVersionCache;
+    private final PrincipalCache principalCache;
+
     @Bean
     public UserDetailsService userDetailsService() {
         return userName -> {
@@ -63,6 +68,6 @@ public class AuthConfig {
     @Bean
     public JwtAuthFilter jwtAuthFilter() {
         logger.info("Creating JWT auth filter");
-        return new JwtAuthFilter(jwtTokenService(), userDetailsService());
+        return new JwtAuthFilter(jwtTokenService(), userDetailsService(), tokenVersionCache, principalCache);
     }
 }
@@ -1,6 +1,7 @@
 package com.bme.vik.aut.thesis.depot.security.config;
 
 import com.bme.vik.aut.thesis.depot.security.jwt.JwtAuthFilter;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -41,7 +42,10 @@ public class SecurityConfig {
                 .csrf().disable() // should be enabled if I had frontend
                 .cors().disable()
                 .authorizeHttpRequests(req ->
-                        req.requestMatchers(WHITE_LIST_URL)
+                        // streamed responses are finished on an ASYNC dispatch of a request already authorized
+                        req.dispatcherTypeMatchers(DispatcherType.ASYNC)
+                                .permitAll()
+                                .requestMatchers(WHITE_LIST_URL)
                                 .permitAll()
                                 .requestMatchers("/user/**").hasRole(ADMIN.name())
                                 .requestMatchers("/admin/**").hasRole(ADMIN.name())
@@ -1,5 +1,8 @@
 package com.bme.vik.aut.thesis.depot.security.jwt;
 
+import com.bme.vik.aut.thesis.depot.security.user.MyUser;
+import com.bme.vik.aut.thesis.depot.security.user.PrincipalCache;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -8,6 +11,7 @@ import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -17,6 +21,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Optional;
 
 @Component
 @RequiredArgsConstructor
@@ -24,8 +29,14 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthFilter.class);
 
+    // builds the principal from the token claims instead of loading the user on every request
+    @Value("${application.security.jwt.stateless-auth}")
+    private boolean STATELESS_AUTH;
+
     private final JwtTokenService jwtTokenService;
     private final UserDetailsService userDetailsService;
+    private final TokenVersionCache tokenVersionCache;
+    private final PrincipalCache principalCache;
 
     @Override
     protected void doFilterInternal(
@@ -48,14 +59,26 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
         // Extract the JWT token from the Authorization header
         String jwtToken = authHeader.substring(7);
-        String userName = jwtTokenService.extractUsername(jwtToken);
+        // the token is parsed once, everything below reads these claims
+        Optional<Claims> claims = jwtTokenService.parseClaims(jwtToken);
+        String userName = claims.map(Claims::getSubject).orElse(null);
 
         logger.info("JWT Token: {}", jwtToken);
         logger.info("Extracted User Name: {}", userName);
 
         if (userName != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(userName);
-            boolean isTokenValid = jwtTokenService.isTokenValid(jwtToken, userDetails);
+            // tokens issued before the user claims existed fall back to loading the user
+            Optional<MyUser> principal = STATELESS_AUTH ? jwtTokenService.extractPrincipal(claims.get()) : Optional.empty();
+
+            UserDetails userDetails;
+            boolean isTokenValid;
+            if (principal.isPresent()) {
+                userDetails = principal.get();
+                isTokenValid = tokenVersionCache.isCurrent(principal.get().getId(), principal.get().getTokenVersion());
+            } else {
+                userDetails = principalCache.getUser(userName, claims.get().get(JwtTokenService.USER_ID_CLAIM, Long.class), userDetailsService);
+                isTokenValid = jwtTokenService.isTokenValid(claims.get(), userDetails);
+            }
 
             // If the token is valid, authenticate the user
             if (isTokenValid) {
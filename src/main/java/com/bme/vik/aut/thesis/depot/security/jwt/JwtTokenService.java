@@ -1,8 +1,12 @@
 package com.bme.vik.aut.thesis.depot.security.jwt;
 
+import com.bme.vik.aut.thesis.depot.security.user.MyUser;
+import com.bme.vik.aut.thesis.depot.security.user.Role;
+import com.bme.vik.aut.thesis.depot.security.user.UserPrincipal;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import lombok.AccessLevel;
 import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,9 +15,15 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
@@ -25,12 +35,34 @@ public class JwtTokenService {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtTokenService.class);
 
+    // claims the principal is built from without loading the user
+    static final String USER_ID_CLAIM = "uid";
+    static final String ROLE_CLAIM = "role";
+    static final String SUPPLIER_ID_CLAIM = "sid";
+    static final String INVENTORY_ID_CLAIM = "iid";
+    static final String TOKEN_VERSION_CLAIM = "ver";
+
     @Value("${application.security.jwt.secretkey}")
     private String secretKey;
 
     @Value("${application.security.jwt.expiration}")
     private long jwtExpiration;
 
+    @Value("${application.security.jwt.claims-cache.ttl-ms}")
+    private long claimsCacheTtlMs;
+
+    @Value("${application.security.jwt.claims-cache.max-size}")
+    private int claimsCacheMaxSize;
+
+    // built from the secret key on first use, the parser is immutable and thread safe
+    @Setter(AccessLevel.NONE)
+    private volatile Key signInKey;
+    @Setter(AccessLevel.NONE)
+    private volatile JwtParser jwtParser;
+
+    // { K: SHA-256 digest of a token, V: its verified claims }, least recently used first
+    private final Map<String, CachedClaims> verifiedClaims = new LinkedHashMap<>(16, 0.75f, true);
+
     public String extractUsername(String token) {
         logger.info("Extracting username from token");
         return extractClaim(token, Claims::getSubject);
@@ -64,6 +96,15 @@ public class JwtTokenService {
         claims.put("authorities", userDetails.getAuthorities().stream()
                 .map(GrantedAuthority::getAuthority)
                 .collect(Collectors.toList()));
+        if (userDetails instanceof MyUser user && user.getId() != null && user.getRole() != null) {
+            claims.put(USER_ID_CLAIM, user.getId());
+            claims.put(ROLE_CLAIM, user.getRole().name());
+            claims.put(TOKEN_VERSION_CLAIM, user.getTokenVersion());
+            if (user.getSupplier() != null) {
+                claims.put(SUPPLIER_ID_CLAIM, user.getSupplierId());
+                claims.put(INVENTORY_ID_CLAIM, user.getInventoryId());
+            }
+        }
 
 //        long expiration = 100 * 24 * 60 * 60 * 1000L; // 100 days
 //        String token = buildToken(claims, userDetails.getUsername(), expiration);
@@ -91,7 +132,10 @@ public class JwtTokenService {
             return false;
         }
 
-        Claims claims = claimsOpt.get();
+        return isTokenValid(claimsOpt.get(), userDetails);
+    }
+
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
         final String username = claims.getSubject();
         boolean isValid = (username.equals(userDetails.getUsername()) && !isTokenExpired(claims));
 
@@ -104,6 +148,43 @@ public class JwtTokenService {
         return isValid;
     }
 
+    // Verified claims of the token, empty if the token is invalid or expired.
+    // Parse once and pass the claims on instead of calling the token based methods one after the other.
+    public Optional<Claims> parseClaims(String token) {
+        return extractAllClaims(token);
+    }
+
+    public Optional<MyUser> extractPrincipal(String token) {
+        return extractAllClaims(token).flatMap(this::extractPrincipal);
+    }
+
+    // Builds the principal from the claims of a valid token. Empty for tokens issued before the user claims
+    // existed, those have to be authenticated by loading the user.
+    // The principal is not a managed entity, see UserPrincipal.toUser.
+    public Optional<MyUser> extractPrincipal(Claims claims) {
+        if (claims.get(USER_ID_CLAIM) == null || claims.get(ROLE_CLAIM) == null || claims.get(TOKEN_VERSION_CLAIM) == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new UserPrincipal(
+                claims.get(USER_ID_CLAIM, Long.class),
+                claims.getSubject(),
+                Role.valueOf(claims.get(ROLE_CLAIM, String.class)),
+                claims.get(TOKEN_VERSION_CLAIM, Integer.class),
+                claims.get(SUPPLIER_ID_CLAIM, Long.class),
+                claims.get(INVENTORY_ID_CLAIM, Long.class)
+        ).toUser());
+    }
+
+    // The key and the parser depend on the secret key only, a new one drops everything built from the old one
+    public void setSecretKey(String secretKey) {
+        this.secretKey = secretKey;
+        signInKey = null;
+        jwtParser = null;
+        synchronized (verifiedClaims) {
+            verifiedClaims.clear();
+        }
+    }
+
     private boolean isTokenExpired(Claims claims) {
         boolean expired = claims.getExpiration().before(new Date());
         if (expired) {
@@ -112,14 +193,30 @@ public class JwtTokenService {
         return expired;
     }
 
+    // Checking the signature and reading the JSON of a token is most of the cost of authenticating a request,
+    // a token seen again within the claims cache TTL is answered from the cache. A cached token is only
+    // answered until it expires.
     private Optional<Claims> extractAllClaims(String token) {
         logger.debug("Extracting all claims from token");
+        long now = System.currentTimeMillis();
+        String digest = claimsCacheMaxSize > 0 ? digest(token) : null;
+        if (digest != null) {
+            synchronized (verifiedClaims) {
+                CachedClaims cached = verifiedClaims.get(digest);
+                if (cached != null && cached.cachedUntil() > now) {
+                    return Optional.of(cached.claims());
+                }
+                verifiedClaims.remove(digest);
+            }
+        }
+
         try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(getSignInKey())
-                    .build()
+            Claims claims = getJwtParser()
                     .parseClaimsJws(token)
                     .getBody();
+            if (digest != null) {
+                cacheClaims(digest, claims, now);
+            }
             return Optional.of(claims);
         } catch (ExpiredJwtException e) {
             logger.warn("Token has expired at: {}", e.getClaims().getExpiration());
@@ -130,9 +227,54 @@ public class JwtTokenService {
         }
     }
 
+    private void cacheClaims(String digest, Claims claims, long now) {
+        long cachedUntil = now + claimsCacheTtlMs;
+        if (claims.getExpiration() != null) {
+            cachedUntil = Math.min(cachedUntil, claims.getExpiration().getTime());
+        }
+        synchronized (verifiedClaims) {
+            verifiedClaims.put(digest, new CachedClaims(claims, cachedUntil));
+            if (verifiedClaims.size() > claimsCacheMaxSize) {
+                // access ordered, the first entry is the least recently used one
+                Iterator<String> leastRecentlyUsed = verifiedClaims.keySet().iterator();
+                leastRecentlyUsed.next();
+                leastRecentlyUsed.remove();
+            }
+        }
+    }
+
+    // the token itself is not kept in memory, only its digest
+    private String digest(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private JwtParser getJwtParser() {
+        JwtParser parser = jwtParser;
+        if (parser == null) {
+            parser = Jwts.parserBuilder()
+                    .setSigningKey(getSignInKey())
+                    .build();
+            jwtParser = parser;
+        }
+        return parser;
+    }
+
     private Key getSignInKey() {
-        logger.debug("Decoding secret key for token signing");
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+        Key key = signInKey;
+        if (key == null) {
+            logger.debug("Decoding secret key for token signing");
+            byte[] keyBytes = Decoders.BASE64.decode(secretKey);
+            key = Keys.hmacShaKeyFor(keyBytes);
+            signInKey = key;
+        }
+        return key;
+    }
+
+    private record CachedClaims(Claims claims, long cachedUntil) {
     }
 }
@@ -0,0 +1,104 @@
+package com.bme.vik.aut.thesis.depot.security.jwt;
+
+import com.bme.vik.aut.thesis.depot.general.alert.TimeService;
+import com.bme.vik.aut.thesis.depot.general.user.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Tokens carry the token version their user had when they were issued. Changing or deleting a user moves the
+// version on, which revokes every token issued before. The current versions are kept here for a TTL, so the
+// filter only reads the database on the first request of a user per TTL. Changes made through this instance
+// are applied right away, changes made elsewhere are picked up at most one TTL later.
+@Component
+@RequiredArgsConstructor
+public class TokenVersionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenVersionCache.class);
+
+    // version of a user that no longer exists, no token matches it
+    private static final int DELETED = -1;
+
+    @Value("${application.security.jwt.version-cache.ttl-ms}")
+    private long VERSION_CACHE_TTL_MS;
+
+    @Value("${application.security.jwt.version-cache.max-size}")
+    private int VERSION_CACHE_MAX_SIZE;
+
+    private final UserRepository userRepository;
+    private final TimeService timeService;
+    private final MeterRegistry meterRegistry;
+
+    // { K: user ID, V: current token version of the user }
+    private final Map<Long, CachedVersion> versions = new ConcurrentHashMap<>();
+
+    private Counter hitCounter;
+    private Counter missCounter;
+
+    @PostConstruct
+    public void init() {
+        hitCounter = Counter.builder("depot.auth.token.version.lookups")
+                .description("Token version checks answered from the cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        missCounter = Counter.builder("depot.auth.token.version.lookups")
+                .description("Token version checks that had to read the user from the database")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    // :::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PUBLIC METHODS @@@@@@@@@@@@@@@ //
+    // :::::::::::::::::::::::::::::::::::::::::::::: //
+
+    public boolean isCurrent(Long userId, int tokenVersion) {
+        LocalDateTime now = timeService.getCurrentTime();
+        CachedVersion cached = versions.get(userId);
+        if (cached != null && cached.expiresAt().isAfter(now)) {
+            hitCounter.increment();
+            return cached.version() == tokenVersion;
+        }
+
+        missCounter.increment();
+        int version = userRepository.findTokenVersionById(userId).orElse(DELETED);
+        put(userId, version, now);
+        return version == tokenVersion;
+    }
+
+    // The user was changed and its tokens were revoked by moving its version on
+    public void updated(Long userId, int tokenVersion) {
+        put(userId, tokenVersion, timeService.getCurrentTime());
+    }
+
+    public void deleted(Long userId) {
+        put(userId, DELETED, timeService.getCurrentTime());
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    private void put(Long userId, int version, LocalDateTime now) {
+        if (versions.size() >= VERSION_CACHE_MAX_SIZE && !versions.containsKey(userId)) {
+            versions.values().removeIf(cached -> !cached.expiresAt().isAfter(now));
+            if (versions.size() >= VERSION_CACHE_MAX_SIZE) {
+                // every entry is still fresh, dropping them only costs one lookup per user
+                logger.warn("Token version cache is full with {} users, clearing it", versions.size());
+                versions.clear();
+            }
+        }
+        versions.put(userId, new CachedVersion(version, now.plusNanos(VERSION_CACHE_TTL_MS * 1_000_000)));
+    }
+
+    private record CachedVersion(int version, LocalDateTime expiresAt) {
+    }
+}
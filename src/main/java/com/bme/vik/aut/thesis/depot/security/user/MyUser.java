@@ -33,6 +33,10 @@ public class MyUser implements UserDetails {
     @ToString.Exclude
     private Supplier supplier;
 
+    // moved on whenever the user changes, tokens issued with an older version are rejected
+    @Column(name = "token_version")
+    private Integer tokenVersion;
+
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
 
@@ -58,6 +62,22 @@ public class MyUser implements UserDetails {
         return supplier.getId();
     }
 
+    // the inventory of a supplier user, null for other users
+    public Long getInventoryId() {
+        if (supplier == null || supplier.getInventory() == null) {
+            return null;
+        }
+        return supplier.getInventory().getId();
+    }
+
+    public int getTokenVersion() {
+        return tokenVersion == null ? 0 : tokenVersion;
+    }
+
+    public void revokeTokens() {
+        tokenVersion = getTokenVersion() + 1;
+    }
+
     @Override
     public boolean isAccountNonExpired() {
         return UserDetails.super.isAccountNonExpired();
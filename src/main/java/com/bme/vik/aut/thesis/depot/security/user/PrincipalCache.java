@@ -0,0 +1,105 @@
+package com.bme.vik.aut.thesis.depot.security.user;
+
+import com.bme.vik.aut.thesis.depot.general.alert.TimeService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Principals of the requests that are authenticated by loading the user, so the user, its supplier and its
+// inventory are loaded once per TTL instead of on every request. Changing or deleting a user or a supplier
+// through this instance invalidates its principal right away, changes made elsewhere are picked up at most
+// one TTL later.
+@Component
+@RequiredArgsConstructor
+public class PrincipalCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrincipalCache.class);
+
+    @Value("${application.security.principal-cache.ttl-ms}")
+    private long PRINCIPAL_CACHE_TTL_MS;
+
+    @Value("${application.security.principal-cache.max-size}")
+    private int PRINCIPAL_CACHE_MAX_SIZE;
+
+    private final TimeService timeService;
+    private final MeterRegistry meterRegistry;
+
+    // { K: user name, V: principal of the user }
+    private final Map<String, CachedPrincipal> principals = new ConcurrentHashMap<>();
+
+    private Counter hitCounter;
+    private Counter missCounter;
+
+    @PostConstruct
+    public void init() {
+        hitCounter = Counter.builder("depot.auth.principal.lookups")
+                .description("Principals answered from the cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        missCounter = Counter.builder("depot.auth.principal.lookups")
+                .description("Principals that had to be loaded from the database")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    // :::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PUBLIC METHODS @@@@@@@@@@@@@@@ //
+    // :::::::::::::::::::::::::::::::::::::::::::::: //
+
+    // Detached user built from the cached principal, loaded through the user details service on a miss.
+    // If the token names its user ID, a principal cached for an earlier user of the same name is not used.
+    public UserDetails getUser(String userName, Long userId, UserDetailsService userDetailsService) {
+        LocalDateTime now = timeService.getCurrentTime();
+        CachedPrincipal cached = principals.get(userName);
+        if (cached != null && cached.expiresAt().isAfter(now)
+                && (userId == null || userId.equals(cached.principal().id()))) {
+            hitCounter.increment();
+            return cached.principal().toUser();
+        }
+
+        missCounter.increment();
+        UserDetails userDetails = userDetailsService.loadUserByUsername(userName);
+        if (!(userDetails instanceof MyUser user)) {
+            return userDetails;
+        }
+        UserPrincipal principal = UserPrincipal.of(user);
+        put(userName, principal, now);
+        return principal.toUser();
+    }
+
+    public void invalidate(String userName) {
+        if (userName != null) {
+            principals.remove(userName);
+        }
+    }
+
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+    // @@@@@@@@@@@@@@@ PRIVATE METHODS @@@@@@@@@@@@@@@ //
+    // ::::::::::::::::::::::::::::::::::::::::::::::: //
+
+    private void put(String userName, UserPrincipal principal, LocalDateTime now) {
+        if (principals.size() >= PRINCIPAL_CACHE_MAX_SIZE && !principals.containsKey(userName)) {
+            principals.values().removeIf(cached -> !cached.expiresAt().isAfter(now));
+            if (principals.size() >= PRINCIPAL_CACHE_MAX_SIZE) {
+                // every entry is still fresh, dropping them only costs one lookup per user
+                logger.warn("Principal cache is full with {} users, clearing it", principals.size());
+                principals.clear();
+            }
+        }
+        principals.put(userName, new CachedPrincipal(principal, now.plusNanos(PRINCIPAL_CACHE_TTL_MS * 1_000_000)));
+    }
+
+    private record CachedPrincipal(UserPrincipal principal, LocalDateTime expiresAt) {
+    }
+}
@@ -0,0 +1,40 @@
+package com.bme.vik.aut.thesis.depot.security.user;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.supplier.Supplier;
+
+// What an authenticated request needs to know about its user, without the password and the entity graph.
+// supplierId and inventoryId are null for users that are not suppliers, inventoryId also for principals of
+// tokens issued before it was a claim.
+public record UserPrincipal(Long id, String userName, Role role, int tokenVersion, Long supplierId, Long inventoryId) {
+
+    public static UserPrincipal of(MyUser user) {
+        Supplier supplier = user.getSupplier();
+        return new UserPrincipal(
+                user.getId(),
+                user.getUsername(),
+                user.getRole(),
+                user.getTokenVersion(),
+                supplier == null ? null : supplier.getId(),
+                user.getInventoryId());
+    }
+
+    // Detached user for the security context, controllers and services take the principal as a MyUser.
+    // Only the fields of this record are set on it and on its supplier and inventory.
+    public MyUser toUser() {
+        Supplier supplier = null;
+        if (supplierId != null) {
+            supplier = Supplier.builder()
+                    .id(supplierId)
+                    .inventory(inventoryId == null ? null : Inventory.builder().id(inventoryId).build())
+                    .build();
+        }
+        return MyUser.builder()
+                .id(id)
+                .userName(userName)
+                .role(role)
+                .tokenVersion(tokenVersion)
+                .supplier(supplier)
+                .build();
+    }
+}
@@ -0,0 +1,70 @@
+package com.bme.vik.aut.thesis.depot;
+
+import com.bme.vik.aut.thesis.depot.general.admin.category.Category;
+import com.bme.vik.aut.thesis.depot.general.admin.category.CategoryRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+@ActiveProfiles("test")
+class IdSequenceAlignerTest {
+
+    private static final long EXISTING_ID = 500L;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @MockBean
+    private PasswordEncoder passwordEncoder;
+
+    @AfterEach
+    void tearDown() {
+        categoryRepository.deleteAll();
+    }
+
+    @Test
+    void shouldGenerateIdsAboveRowsInsertedBeforeTheSequenceExisted() {
+        //***** <-- given: Row written with an identity ID, sequence still at its start --> *****//
+        jdbcTemplate.update("INSERT INTO category (id, name, description, created_at) VALUES (?, 'legacy', 'legacy', CURRENT_TIMESTAMP)",
+                EXISTING_ID);
+
+        //***** <-- when: Sequences are aligned and new categories saved --> *****//
+        new IdSequenceAligner(jdbcTemplate, entityManagerFactory).run();
+        Category first = categoryRepository.save(Category.builder().name("first").build());
+        Category second = categoryRepository.save(Category.builder().name("second").build());
+
+        //***** <-- then: New IDs continue after the existing one --> *****//
+        assertThat(first.getId()).isGreaterThan(EXISTING_ID);
+        assertThat(second.getId()).isGreaterThan(first.getId());
+    }
+
+    @Test
+    void shouldLeaveSequenceAheadOfTableUntouched() {
+        //***** <-- given: Category saved through the sequence --> *****//
+        Long savedId = categoryRepository.save(Category.builder().name("saved").build()).getId();
+
+        //***** <-- when: Sequences are aligned --> *****//
+        new IdSequenceAligner(jdbcTemplate, entityManagerFactory).run();
+        Long nextId = categoryRepository.save(Category.builder().name("next").build()).getId();
+
+        //***** <-- then: IDs keep increasing without a jump back --> *****//
+        assertThat(nextId).isGreaterThan(savedId);
+    }
+}
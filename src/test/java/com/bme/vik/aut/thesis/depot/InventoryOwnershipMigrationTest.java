@@ -0,0 +1,88 @@
+package com.bme.vik.aut.thesis.depot;
+
+import com.bme.vik.aut.thesis.depot.general.admin.category.CategoryRepository;
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchemaRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+import com.bme.vik.aut.thesis.depot.general.util.TestUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+@ActiveProfiles("test")
+// the migration runs plain JDBC with DDL, every step has to be committed like on a real startup
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InventoryOwnershipMigrationTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private InventoryRepository inventoryRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private ProductSchemaRepository productSchemaRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @MockBean
+    private PasswordEncoder passwordEncoder;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + InventoryOwnershipMigration.LEGACY_TABLE);
+        productRepository.deleteAll();
+        productSchemaRepository.deleteAll();
+        categoryRepository.deleteAll();
+        inventoryRepository.deleteAll();
+    }
+
+    @Test
+    void shouldMoveLegacyInventoryListsToProductColumn() {
+        //***** <-- given: Product listed in the old inventory_products table only --> *****//
+        Inventory inventory = inventoryRepository.save(Inventory.builder().maxAvailableSpace(100).build());
+        Product product = TestUtil.createProduct(
+                categoryRepository,
+                productSchemaRepository,
+                productRepository,
+                List.of(new TestUtil.CategoryUnit("Category 1", "Test category")),
+                "Test Product",
+                10,
+                "Test Product Description",
+                1L,
+                ProductStatus.FREE,
+                LocalDateTime.now().plusDays(5)
+        ).product();
+
+        jdbcTemplate.execute("CREATE TABLE " + InventoryOwnershipMigration.LEGACY_TABLE + " (inventory_id BIGINT NOT NULL, product_id BIGINT)");
+        jdbcTemplate.update("INSERT INTO " + InventoryOwnershipMigration.LEGACY_TABLE + " (inventory_id, product_id) VALUES (?, ?)",
+                inventory.getId(), product.getId());
+
+        //***** <-- when: Migration runs --> *****//
+        new InventoryOwnershipMigration(jdbcTemplate).run();
+
+        //***** <-- then: Product points to its inventory, old table is gone --> *****//
+        assertEquals(List.of(product.getId()), productRepository.findIdsByInventoryId(inventory.getId()));
+        assertEquals(inventory.getId(), inventoryRepository.findByProductId(product.getId()).orElseThrow().getId());
+
+        // a second start finds nothing to migrate
+        assertDoesNotThrow(() -> new InventoryOwnershipMigration(jdbcTemplate).run());
+    }
+}
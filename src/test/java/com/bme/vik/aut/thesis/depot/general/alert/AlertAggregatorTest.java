@@ -0,0 +1,154 @@
+package com.bme.vik.aut.thesis.depot.general.alert;
+
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.alert.event.AlertDigestEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.event.LowStockAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.event.ProductExpiredAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxService;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AlertAggregatorTest {
+
+    private static final long WINDOW_MS = 60000;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private TimeService timeService;
+
+    @Mock
+    private OutboxService outboxService;
+
+    private AlertAggregator alertAggregator;
+
+    private final LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+    private final Inventory inventory = Inventory.builder().id(1L).build();
+    private final ProductSchema schema = ProductSchema.builder().id(10L).name("Test Product").build();
+    private final Product first = Product.builder().id(100L).schema(schema).build();
+    private final Product second = Product.builder().id(101L).schema(schema).build();
+
+    @BeforeEach
+    void setUp() {
+        alertAggregator = new AlertAggregator(eventPublisher, timeService, outboxService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(alertAggregator, "DIGEST_WINDOW_MS", WINDOW_MS);
+        alertAggregator.init();
+    }
+
+    @Test
+    void shouldMergeAlertsOfOneInventoryIntoOneDigest() {
+        //***** <-- given: Low stock alerted on two order approvals, then a product expires --> *****//
+        when(timeService.getCurrentTime()).thenReturn(start);
+        alertAggregator.onLowStockAlert(new LowStockAlertEvent(this, inventory, Map.of(schema, List.of(first, second))));
+        alertAggregator.onLowStockAlert(new LowStockAlertEvent(this, inventory, Map.of(schema, List.of(second))));
+        alertAggregator.onProductExpiredAlert(new ProductExpiredAlertEvent(this, inventory, List.of(first)));
+
+        //***** <-- when: Window ends --> *****//
+        alertAggregator.publishDigests();
+
+        //***** <-- then: One digest, the repeated low stock alert suppressed --> *****//
+        ArgumentCaptor<AlertDigestEvent> captor = ArgumentCaptor.forClass(AlertDigestEvent.class);
+        verify(eventPublisher, times(1)).publishEvent(captor.capture());
+        AlertDigestEvent digest = captor.getValue();
+        assertEquals(inventory, digest.getInventory());
+        assertEquals(List.of(first, second), digest.getLowStock().get(schema));
+        assertEquals(List.of(first), digest.getExpiredProducts());
+        assertEquals(1, alertAggregator.getSuppressedCount(AlertType.LOW_STOCK));
+        assertEquals(0, alertAggregator.getSuppressedCount(AlertType.EXPIRED));
+        assertEquals(1, alertAggregator.getSentDigestCount());
+    }
+
+    @Test
+    void shouldSuppressAlertsAlreadyReportedWithinTheWindow() {
+        //***** <-- given: Low stock alert sent in a digest --> *****//
+        when(timeService.getCurrentTime()).thenReturn(start);
+        alertAggregator.onLowStockAlert(new LowStockAlertEvent(this, inventory, Map.of(schema, List.of(first))));
+        alertAggregator.publishDigests();
+
+        //***** <-- when: Same alert is raised within the window, then after it --> *****//
+        when(timeService.getCurrentTime()).thenReturn(start.plusSeconds(30));
+        alertAggregator.onLowStockAlert(new LowStockAlertEvent(this, inventory, Map.of(schema, List.of(first))));
+        alertAggregator.publishDigests();
+
+        when(timeService.getCurrentTime()).thenReturn(start.plusSeconds(61));
+        alertAggregator.onLowStockAlert(new LowStockAlertEvent(this, inventory, Map.of(schema, List.of(first))));
+        alertAggregator.publishDigests();
+
+        //***** <-- then: Reported once per window --> *****//
+        verify(eventPublisher, times(2)).publishEvent(any(AlertDigestEvent.class));
+        assertEquals(1, alertAggregator.getSuppressedCount(AlertType.LOW_STOCK));
+        assertEquals(2, alertAggregator.getSentDigestCount());
+    }
+
+    @Test
+    void shouldReportNewProductsOfARepeatedAlertWithinTheWindow() {
+        //***** <-- given: Expired product sent in a digest --> *****//
+        when(timeService.getCurrentTime()).thenReturn(start);
+        alertAggregator.onProductExpiredAlert(new ProductExpiredAlertEvent(this, inventory, List.of(first)));
+        alertAggregator.publishDigests();
+
+        //***** <-- when: Another product of the schema expires within the window --> *****//
+        when(timeService.getCurrentTime()).thenReturn(start.plusSeconds(30));
+        alertAggregator.onProductExpiredAlert(new ProductExpiredAlertEvent(this, inventory, List.of(first, second)));
+        alertAggregator.publishDigests();
+
+        //***** <-- then: Only the new product is reported --> *****//
+        ArgumentCaptor<AlertDigestEvent> captor = ArgumentCaptor.forClass(AlertDigestEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(captor.capture());
+        assertEquals(List.of(second), captor.getAllValues().get(1).getExpiredProducts());
+        assertEquals(0, alertAggregator.getSuppressedCount(AlertType.EXPIRED));
+    }
+
+    @Test
+    void shouldHandOutboxEventsToTheDigestOfTheirInventory() {
+        //***** <-- given: Alerts of two outbox events taken, the second one suppressed --> *****//
+        when(timeService.getCurrentTime()).thenReturn(start);
+        alertAggregator.onLowStockAlert(new LowStockAlertEvent(this, inventory, Map.of(schema, List.of(first))));
+        alertAggregator.onLowStockAlert(new LowStockAlertEvent(this, inventory, Map.of(schema, List.of(first))));
+        alertAggregator.addOutboxEvents(inventory.getId(), List.of(5L, 6L));
+
+        //***** <-- when: Digests are published --> *****//
+        alertAggregator.publishDigests();
+
+        //***** <-- then: Digest carries both events, marked by its handler once mailed --> *****//
+        ArgumentCaptor<AlertDigestEvent> captor = ArgumentCaptor.forClass(AlertDigestEvent.class);
+        verify(eventPublisher).publishEvent(captor.capture());
+        assertEquals(List.of(5L, 6L), captor.getValue().getOutboxEventIds());
+        verify(outboxService, never()).markDigested(any());
+    }
+
+    @Test
+    void shouldMarkOutboxEventsDigestedWhenAllTheirAlertsWereSuppressed() {
+        //***** <-- given: Low stock alert sent in a digest, then repeated by another outbox event --> *****//
+        when(timeService.getCurrentTime()).thenReturn(start);
+        alertAggregator.onLowStockAlert(new LowStockAlertEvent(this, inventory, Map.of(schema, List.of(first))));
+        alertAggregator.publishDigests();
+        alertAggregator.onLowStockAlert(new LowStockAlertEvent(this, inventory, Map.of(schema, List.of(first))));
+        alertAggregator.addOutboxEvents(inventory.getId(), List.of(6L));
+
+        //***** <-- when: Digests are published again --> *****//
+        alertAggregator.publishDigests();
+
+        //***** <-- then: No digest holds the event, it is marked right away --> *****//
+        verify(eventPublisher, times(1)).publishEvent(any(AlertDigestEvent.class));
+        verify(outboxService).markDigested(List.of(6L));
+    }
+}
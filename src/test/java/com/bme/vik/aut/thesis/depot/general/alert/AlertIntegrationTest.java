@@ -4,6 +4,7 @@ import com.bme.vik.aut.thesis.depot.general.admin.category.Category;
 import com.bme.vik.aut.thesis.depot.general.admin.category.CategoryRepository;
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchemaRepository;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxEventRepository;
 import com.bme.vik.aut.thesis.depot.general.order.Order;
 import com.bme.vik.aut.thesis.depot.general.order.OrderRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
@@ -28,14 +29,17 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -48,6 +52,12 @@ public class AlertIntegrationTest {
     private WebTestClient webTestClient;
     @Autowired
     private ProductRepository productRepository;
+
+    @Autowired
+    private ProductLotRepository productLotRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
     @Autowired
     private ProductSchemaRepository productSchemaRepository;
     @Autowired
@@ -75,6 +85,8 @@ public class AlertIntegrationTest {
     private SupplierService supplierService;
     @Autowired
     private OrderRepository orderRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
 
     @BeforeEach
     void setUp() {
@@ -95,8 +107,11 @@ public class AlertIntegrationTest {
 
     @AfterEach
     void tearDown() {
+        TestUtil.awaitOutboxRelayed(outboxEventRepository);
+        outboxEventRepository.deleteAll();
         orderRepository.deleteAll();
         productRepository.deleteAll();
+        productLotRepository.deleteAll();
         productSchemaRepository.deleteAll();
         categoryRepository.deleteAll();
         userRepository.deleteAll();
@@ -145,11 +160,14 @@ public class AlertIntegrationTest {
         //***** <-- then: Verify stock was because of AUTO_REORDER_ENABLED --> *****//
         Inventory inventory = inventoryService.getInventoryById(response.getSupplier().getInventory().getId());
 
-        // size became larger, because products are not removed from inventory, only their state changes to REMOVED
-        assertEquals(stockQuantity + reorderQuantity, inventory.getProductIds().size());
+        // size became larger, because products are not removed from inventory, only their state changes to REMOVED,
+        // the reorder runs on the reorder executor after the order was accepted
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertEquals(stockQuantity + reorderQuantity, productRepository.findIdsByInventoryId(inventory.getId()).size()));
+        List<Long> inventoryProductIds = productRepository.findIdsByInventoryId(inventory.getId());
 
         // Verify one new product was added (reorderQuantity = 1)
-        Product newProduct = productService.getProductById(inventory.getProductIds().get(inventory.getProductIds().size() - 1));
+        Product newProduct = productService.getProductById(inventoryProductIds.get(inventoryProductIds.size() - 1));
 
         assertEquals(productSchema.getId(), newProduct.getSchema().getId());
         assertEquals(supplierService.getSupplierByName(supplierName).getId(), newProduct.getSupplierId());
@@ -195,12 +213,15 @@ public class AlertIntegrationTest {
             TestUtil.addStockToSupplierInventoryWithAPI(webTestClient, SUPPLIER_TOKEN, productSchema, stock.getDescription(), stock.getQuantity(), stock.getExpiresAt());
         }
 
+        // stored as not expired, as if the thresholds had been crossed since the last check
+        jdbcTemplate.update("UPDATE product SET expiry_status = ?", ExpiryStatus.NOTEXPIRED.name());
+
         //***** <-- when: Trigger the scheduled expiry check --> *****//
         alertService.checkForExpiredProducts();
 
         //***** <-- then: Verify updated expiry statuses in the inventory --> *****//
         Inventory inventory = inventoryService.getInventoryById(supplierResponse.getSupplier().getInventory().getId());
-        List<Product> inventoryProducts = inventory.getProductIds().stream()
+        List<Product> inventoryProducts = productRepository.findIdsByInventoryId(inventory.getId()).stream()
                 .map(productService::getProductById)
                 .toList();
 
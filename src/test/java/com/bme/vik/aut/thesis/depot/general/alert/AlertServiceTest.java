@@ -1,17 +1,18 @@
 package com.bme.vik.aut.thesis.depot.general.alert;
 
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
-import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchemaService;
-import com.bme.vik.aut.thesis.depot.general.alert.event.LowStockAlertEvent;
-import com.bme.vik.aut.thesis.depot.general.alert.event.ProductExpiredAlertEvent;
-import com.bme.vik.aut.thesis.depot.general.alert.event.ReorderAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxEventType;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxPayload;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxService;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryAlertThresholds;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryService;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductService;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockLocation;
 import com.bme.vik.aut.thesis.depot.general.supplier.supplier.Supplier;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -19,7 +20,6 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDateTime;
@@ -29,6 +29,7 @@ import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -38,7 +39,7 @@ class AlertServiceTest {
     private InventoryRepository inventoryRepository;
 
     @Mock
-    private ApplicationEventPublisher eventPublisher;
+    private OutboxService outboxService;
 
     @Mock
     private TimeService timeService;
@@ -49,9 +50,6 @@ class AlertServiceTest {
     @Mock
     private InventoryService inventoryService;
 
-    @Mock
-    private ProductSchemaService productSchemaService;
-
     @InjectMocks
     private AlertService alertService;
 
@@ -95,7 +93,7 @@ class AlertServiceTest {
 
         //***** <-- then: Ensure no interactions with dependencies --> *****//
         verify(inventoryRepository, never()).findAll();
-        verify(eventPublisher, never()).publishEvent(any());
+        verify(outboxService, never()).enqueue(any(), any(), any());
     }
 
     @Test
@@ -107,7 +105,7 @@ class AlertServiceTest {
         alertService.checkForExpiredProducts();
 
         //***** <-- then: Verify no events are emitted --> *****//
-        verify(eventPublisher, never()).publishEvent(any(ProductExpiredAlertEvent.class));
+        verify(outboxService, never()).enqueue(eq(OutboxEventType.PRODUCT_EXPIRED), any(), any());
     }
 
     @Test
@@ -118,13 +116,11 @@ class AlertServiceTest {
         Inventory inventory1 = Inventory.builder()
                 .id(1L)
                 .expiryAlertThreshold(expiryAlertThreshold)
-                .productIds(List.of(1L, 2L))
                 .build();
 
         Inventory inventory2 = Inventory.builder()
                 .id(2L)
                 .expiryAlertThreshold(expiryAlertThreshold)
-                .productIds(List.of(3L, 4L))
                 .build();
 
         Product longExpiredProduct = Product.builder()
@@ -155,53 +151,43 @@ class AlertServiceTest {
                 .schema(ProductSchema.builder().id(4L).build())
                 .build();
 
+        // the not expired product is not due for a transition, so it is not returned
         when(inventoryRepository.findAll()).thenReturn(List.of(inventory1, inventory2));
-        when(productService.getProductById(1L)).thenReturn(longExpiredProduct);
-        when(productService.getProductById(2L)).thenReturn(expiredProduct);
-        when(productService.getProductById(3L)).thenReturn(soonToExpireProduct);
-        when(productService.getProductById(4L)).thenReturn(notExpiredProduct);
-        doNothing().when(inventoryService).changeProductExpirationStatus(any(), any(), any(), any());
+        when(productService.getProductsDueForExpiryTransition(eq(1L), any(), any(), any())).thenReturn(List.of(longExpiredProduct, expiredProduct));
+        when(productService.getProductsDueForExpiryTransition(eq(2L), any(), any(), any())).thenReturn(List.of(soonToExpireProduct));
+        doAnswer(invocation -> {
+            invocation.<List<Product>>getArgument(1).forEach(product -> product.setExpiryStatus(invocation.getArgument(2)));
+            return null;
+        }).when(inventoryService).changeProductExpirationStatuses(any(), any(), any());
         when(timeService.getCurrentTime()).thenReturn(LocalDateTime.now());
 
         //***** <-- when: Expiry check is triggered --> *****//
         alertService.checkForExpiredProducts();
 
-        //***** <-- then: Verify correct events are emitted --> *****//
-
-        // Verify for inventory1
-        verify(eventPublisher, times(1)).publishEvent(argThat(event -> {
-            if (event instanceof ProductExpiredAlertEvent expiredEvent) {
-                List<Product> products = expiredEvent.getProducts();
-                return expiredEvent.getInventory().getId() == 1L
-                        && products.size() == 2
-                        && products.stream().anyMatch(p -> p.getId() == 1L && p.getExpiryStatus() == ExpiryStatus.LONGEXPIRED)
-                        && products.stream().anyMatch(p -> p.getId() == 2L && p.getExpiryStatus() == ExpiryStatus.EXPIRED);
-            }
-            return false;
-        }));
-
-        // Verify for inventory2
-        verify(eventPublisher, times(1)).publishEvent(argThat(event -> {
-            if (event instanceof ProductExpiredAlertEvent expiredEvent) {
-                List<Product> products = expiredEvent.getProducts();
-                return expiredEvent.getInventory().getId() == 2L
-                        && products.size() == 1
-                        && products.stream().anyMatch(p -> p.getId() == 3L && p.getExpiryStatus() == ExpiryStatus.SOONTOEXPIRE);
-            }
-            return false;
-        }));
+        //***** <-- then: Verify correct events are written to the outbox --> *****//
+        verify(outboxService, times(1)).enqueue(OutboxEventType.PRODUCT_EXPIRED, 1L, OutboxPayload.expired(List.of(1L, 2L)));
+        verify(outboxService, times(1)).enqueue(OutboxEventType.PRODUCT_EXPIRED, 2L, OutboxPayload.expired(List.of(3L)));
+        assertEquals(ExpiryStatus.LONGEXPIRED, longExpiredProduct.getExpiryStatus());
+        assertEquals(ExpiryStatus.EXPIRED, expiredProduct.getExpiryStatus());
+        assertEquals(ExpiryStatus.SOONTOEXPIRE, soonToExpireProduct.getExpiryStatus());
+
+        // one bulk change per new status
+        verify(inventoryService).changeProductExpirationStatuses(1L, List.of(longExpiredProduct), ExpiryStatus.LONGEXPIRED);
+        verify(inventoryService).changeProductExpirationStatuses(1L, List.of(expiredProduct), ExpiryStatus.EXPIRED);
+        verify(inventoryService).changeProductExpirationStatuses(2L, List.of(soonToExpireProduct), ExpiryStatus.SOONTOEXPIRE);
+        verify(productService, never()).getProductsByInventoryId(any());
     }
 
     @Test
     void shouldNotEmitEventsWhenStockIsEmptyEvenWhileEnabled() {
-        //***** <-- given: Empty stock map --> *****//
-        Map<Long, Map<Long, List<Product>>> stock = Collections.emptyMap();
+        //***** <-- given: No touched stock buckets --> *****//
+        List<StockLocation> stock = Collections.emptyList();
 
         //***** <-- when: Stock check is triggered --> *****//
         alertService.checkStockForReorder(stock);
 
         //***** <-- then: Verify no events are emitted --> *****//
-        verify(eventPublisher, never()).publishEvent(any());
+        verify(outboxService, never()).enqueue(any(), any(), any());
     }
 
     @Test
@@ -226,19 +212,20 @@ class AlertServiceTest {
                 .status(ProductStatus.FREE)
                 .build();
 
-        Map<Long, Map<Long, List<Product>>> stock = Map.of(
-                inventoryId, Map.of(productSchemaId, Collections.nCopies(reorderThreshold + 1, product))
-        ); // stock size does not matter
+        List<StockLocation> stock = List.of(new StockLocation(inventoryId, productSchemaId));
+        InventoryAlertThresholds thresholds = InventoryAlertThresholds.of(inventory);
 
-        when(inventoryService.getInventoryById(inventoryId)).thenReturn(inventory);
-        when(inventoryService.lowOnStock(inventory, productSchemaId)).thenReturn(false);
-        when(inventoryService.needsReorderForStock(inventory, productSchemaId)).thenReturn(false);
+        when(inventoryService.getAlertThresholds(inventoryId)).thenReturn(thresholds);
+        when(inventoryService.lowOnStock(thresholds, productSchemaId)).thenReturn(false);
+        when(inventoryService.needsReorderForStock(thresholds, productSchemaId)).thenReturn(false);
 
         //***** <-- when: Stock check is triggered --> *****//
         alertService.checkStockForReorder(stock);
 
-        //***** <-- then: Verify no events are emitted --> *****//
-        verify(eventPublisher, never()).publishEvent(any());
+        //***** <-- then: Verify no events are emitted, neither the inventory nor its products are loaded --> *****//
+        verify(outboxService, never()).enqueue(any(), any(), any());
+        verify(inventoryService, never()).getInventoryById(any());
+        verify(inventoryService, never()).getStockProducts(any(), any());
     }
 
     @Test
@@ -265,17 +252,15 @@ class AlertServiceTest {
                 .status(ProductStatus.FREE)
                 .build();
 
-        Map<Long, Map<Long, List<Product>>> stock = Map.of(
-                inventoryId, Map.of(productSchemaId, Collections.nCopies(reorderThreshold + 1, product))
-        ); // stock size does not matter
+        List<StockLocation> stock = List.of(new StockLocation(inventoryId, productSchemaId));
 
-        when(inventoryService.getInventoryById(inventoryId)).thenReturn(inventory);
+        when(inventoryService.getAlertThresholds(inventoryId)).thenReturn(InventoryAlertThresholds.of(inventory));
 
         //***** <-- when: Stock check is triggered --> *****//
         alertService.checkStockForReorder(stock);
 
         //***** <-- then: Verify no events are emitted --> *****//
-        verify(eventPublisher, never()).publishEvent(any());
+        verify(outboxService, never()).enqueue(any(), any(), any());
     }
 
     @Test
@@ -316,43 +301,24 @@ class AlertServiceTest {
                 .status(ProductStatus.FREE)
                 .build();
 
-        Map<Long, Map<Long, List<Product>>> stock = Map.of(
-                inventoryId, Map.of(
-                        productSchemaId, List.of(product1, product2),
-                        productSchemaId3, List.of(product3)
-                )
+        List<StockLocation> stock = List.of(
+                new StockLocation(inventoryId, productSchemaId),
+                new StockLocation(inventoryId, productSchemaId3)
         );
+        InventoryAlertThresholds thresholds = InventoryAlertThresholds.of(inventory);
 
-        when(inventoryService.getInventoryById(inventoryId)).thenReturn(inventory);
-        when(productSchemaService.getProductSchemaById(productSchemaId)).thenReturn(productSchema1);
-        when(productSchemaService.getProductSchemaById(productSchemaId3)).thenReturn(productSchema3);
-        when(inventoryService.lowOnStock(inventory, productSchemaId)).thenReturn(true);
-        when(inventoryService.lowOnStock(inventory, productSchemaId3)).thenReturn(true);
+        when(inventoryService.getAlertThresholds(inventoryId)).thenReturn(thresholds);
+        when(inventoryService.getStockProducts(inventoryId, productSchemaId)).thenReturn(List.of(product1, product2));
+        when(inventoryService.getStockProducts(inventoryId, productSchemaId3)).thenReturn(List.of(product3));
+        when(inventoryService.lowOnStock(thresholds, productSchemaId)).thenReturn(true);
+        when(inventoryService.lowOnStock(thresholds, productSchemaId3)).thenReturn(true);
 
         //***** <-- when: Stock check is triggered --> *****//
         alertService.checkStockForReorder(stock);
 
         //***** <-- then: Verify low stock alert event is emitted --> *****//
-        verify(eventPublisher, times(1)).publishEvent(argThat(event -> {
-            if (event instanceof LowStockAlertEvent lowStockEvent) {
-                Map<ProductSchema, List<Product>> stockMap = lowStockEvent.getStock();
-
-                // Verify event is for the correct inventory
-                if (!lowStockEvent.getInventory().getId().equals(inventoryId)) {
-                    return false;
-                }
-
-                // Verify stock contains the correct mappings
-                return stockMap.size() == 2 &&
-                        stockMap.containsKey(productSchema1) &&
-                        stockMap.get(productSchema1).size() == 2 &&
-                        stockMap.get(productSchema1).containsAll(List.of(product1, product2)) &&
-                        stockMap.containsKey(productSchema3) &&
-                        stockMap.get(productSchema3).size() == 1 &&
-                        stockMap.get(productSchema3).contains(product3);
-            }
-            return false;
-        }));
+        verify(outboxService, times(1)).enqueue(OutboxEventType.LOW_STOCK, inventoryId,
+                OutboxPayload.lowStock(Map.of(productSchemaId, List.of(1L, 2L), productSchemaId3, List.of(3L))));
     }
 
     @Test
@@ -391,49 +357,25 @@ class AlertServiceTest {
                 .expiresAt(LocalDateTime.now().plusDays(15))
                 .build();
 
-        Map<Long, Map<Long, List<Product>>> stock = Map.of(
-                inventoryId, Map.of(
-                        productSchemaId, List.of(product1),
-                        productSchemaId3, List.of(product3)
-                )
+        List<StockLocation> stock = List.of(
+                new StockLocation(inventoryId, productSchemaId),
+                new StockLocation(inventoryId, productSchemaId3)
         );
+        InventoryAlertThresholds thresholds = InventoryAlertThresholds.of(inventory);
 
-        when(inventoryService.getInventoryById(inventoryId)).thenReturn(inventory);
-        when(productSchemaService.getProductSchemaById(productSchemaId)).thenReturn(productSchema1);
-        when(productSchemaService.getProductSchemaById(productSchemaId3)).thenReturn(productSchema3);
-        when(inventoryService.needsReorderForStock(inventory, productSchemaId)).thenReturn(true);
-        when(inventoryService.needsReorderForStock(inventory, productSchemaId3)).thenReturn(true);
+        when(inventoryService.getAlertThresholds(inventoryId)).thenReturn(thresholds);
+        when(inventoryService.getStockProducts(inventoryId, productSchemaId)).thenReturn(List.of(product1));
+        when(inventoryService.getStockProducts(inventoryId, productSchemaId3)).thenReturn(List.of(product3));
+        when(inventoryService.needsReorderForStock(thresholds, productSchemaId)).thenReturn(true);
+        when(inventoryService.needsReorderForStock(thresholds, productSchemaId3)).thenReturn(true);
 
         //***** <-- when: Stock check is triggered --> *****//
         alertService.checkStockForReorder(stock);
 
         //***** <-- then: Verify reorder alert event is emitted --> *****//
-        verify(eventPublisher, times(1)).publishEvent(argThat(event -> {
-            if (event instanceof ReorderAlertEvent reorderAlertEvent) {
-                List<InternalReorder> reorders = reorderAlertEvent.getReorders();
-
-                // Verify event is for the correct inventory
-                if (!reorderAlertEvent.getInventory().getId().equals(inventoryId)) {
-                    return false;
-                }
-
-                // Verify reorders contain correct details
-                return reorders.size() == 2 &&
-                        reorders.stream().anyMatch(r ->
-                                r.getProductSchema().getId().equals(productSchemaId) &&
-                                        r.getProductSchema().getName().equals(productName) &&
-                                        r.getProductDescription().equals("Description for Product 1") &&
-                                        r.getExpiresAt().equals(product1.getExpiresAt())
-                        ) &&
-                        reorders.stream().anyMatch(r ->
-                                r.getProductSchema().getId().equals(productSchemaId3) &&
-                                        r.getProductSchema().getName().equals(productName3) &&
-                                        r.getProductDescription().equals("Description for Product 3") &&
-                                        r.getExpiresAt().equals(product3.getExpiresAt())
-                        );
-            }
-            return false;
-        }));
+        verify(outboxService, times(1)).enqueue(OutboxEventType.REORDER, inventoryId, OutboxPayload.reorders(List.of(
+                new OutboxPayload.ReorderItem(productSchemaId, "Description for Product 1", product1.getExpiresAt()),
+                new OutboxPayload.ReorderItem(productSchemaId3, "Description for Product 3", product3.getExpiresAt()))));
     }
 
     @Test
@@ -473,73 +415,31 @@ class AlertServiceTest {
                 .expiresAt(LocalDateTime.now().plusDays(15))
                 .build();
 
-        Map<Long, Map<Long, List<Product>>> stock = Map.of(
-                inventoryId, Map.of(
-                        productSchemaId, List.of(product1),
-                        productSchemaId3, List.of(product3)
-                )
+        List<StockLocation> stock = List.of(
+                new StockLocation(inventoryId, productSchemaId),
+                new StockLocation(inventoryId, productSchemaId3)
         );
+        InventoryAlertThresholds thresholds = InventoryAlertThresholds.of(inventory);
 
-        when(inventoryService.getInventoryById(inventoryId)).thenReturn(inventory);
-        when(productSchemaService.getProductSchemaById(productSchemaId)).thenReturn(productSchema1);
-        when(productSchemaService.getProductSchemaById(productSchemaId3)).thenReturn(productSchema3);
-        when(inventoryService.lowOnStock(inventory, productSchemaId)).thenReturn(true);
-        when(inventoryService.lowOnStock(inventory, productSchemaId3)).thenReturn(true);
-        when(inventoryService.needsReorderForStock(inventory, productSchemaId)).thenReturn(true);
-        when(inventoryService.needsReorderForStock(inventory, productSchemaId3)).thenReturn(true);
+        when(inventoryService.getAlertThresholds(inventoryId)).thenReturn(thresholds);
+        when(inventoryService.getStockProducts(inventoryId, productSchemaId)).thenReturn(List.of(product1));
+        when(inventoryService.getStockProducts(inventoryId, productSchemaId3)).thenReturn(List.of(product3));
+        when(inventoryService.lowOnStock(thresholds, productSchemaId)).thenReturn(true);
+        when(inventoryService.lowOnStock(thresholds, productSchemaId3)).thenReturn(true);
+        when(inventoryService.needsReorderForStock(thresholds, productSchemaId)).thenReturn(true);
+        when(inventoryService.needsReorderForStock(thresholds, productSchemaId3)).thenReturn(true);
 
         //***** <-- when: Stock check is triggered --> *****//
         alertService.checkStockForReorder(stock);
 
         //***** <-- then: Verify low stock alert event is emitted --> *****//
-        verify(eventPublisher, times(1)).publishEvent(argThat(event -> {
-            if (event instanceof LowStockAlertEvent lowStockEvent) {
-                Map<ProductSchema, List<Product>> stockMap = lowStockEvent.getStock();
-
-                // Verify event is for the correct inventory
-                if (!lowStockEvent.getInventory().getId().equals(inventoryId)) {
-                    return false;
-                }
-
-                // Verify stock contains the correct mappings
-                return stockMap.size() == 2 &&
-                        stockMap.containsKey(productSchema1) &&
-                        stockMap.get(productSchema1).size() == 1 &&
-                        stockMap.get(productSchema1).contains(product1) &&
-                        stockMap.containsKey(productSchema3) &&
-                        stockMap.get(productSchema3).size() == 1 &&
-                        stockMap.get(productSchema3).contains(product3);
-            }
-            return false;
-        }));
+        verify(outboxService, times(1)).enqueue(OutboxEventType.LOW_STOCK, inventoryId,
+                OutboxPayload.lowStock(Map.of(productSchemaId, List.of(1L), productSchemaId3, List.of(3L))));
 
         //***** <-- then: Verify reorder alert event is emitted --> *****//
-        verify(eventPublisher, times(1)).publishEvent(argThat(event -> {
-            if (event instanceof ReorderAlertEvent reorderAlertEvent) {
-                List<InternalReorder> reorders = reorderAlertEvent.getReorders();
-
-                // Verify event is for the correct inventory
-                if (!reorderAlertEvent.getInventory().getId().equals(inventoryId)) {
-                    return false;
-                }
-
-                // Verify reorders contain correct details
-                return reorders.size() == 2 &&
-                        reorders.stream().anyMatch(r ->
-                                r.getProductSchema().getId().equals(productSchemaId) &&
-                                        r.getProductSchema().getName().equals(productName) &&
-                                        r.getProductDescription().equals("Description for Product 1") &&
-                                        r.getExpiresAt().equals(product1.getExpiresAt())
-                        ) &&
-                        reorders.stream().anyMatch(r ->
-                                r.getProductSchema().getId().equals(productSchemaId3) &&
-                                        r.getProductSchema().getName().equals(productName3) &&
-                                        r.getProductDescription().equals("Description for Product 3") &&
-                                        r.getExpiresAt().equals(product3.getExpiresAt())
-                        );
-            }
-            return false;
-        }));
+        verify(outboxService, times(1)).enqueue(OutboxEventType.REORDER, inventoryId, OutboxPayload.reorders(List.of(
+                new OutboxPayload.ReorderItem(productSchemaId, "Description for Product 1", product1.getExpiresAt()),
+                new OutboxPayload.ReorderItem(productSchemaId3, "Description for Product 3", product3.getExpiresAt()))));
     }
 
 }
\ No newline at end of file
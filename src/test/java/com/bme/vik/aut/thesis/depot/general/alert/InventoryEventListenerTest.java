@@ -1,13 +1,11 @@
 package com.bme.vik.aut.thesis.depot.general.alert;
 
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
-import com.bme.vik.aut.thesis.depot.general.alert.event.LowStockAlertEvent;
-import com.bme.vik.aut.thesis.depot.general.alert.event.ProductExpiredAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.event.AlertDigestEvent;
 import com.bme.vik.aut.thesis.depot.general.alert.event.ReorderAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxService;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
-import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryService;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
-import com.bme.vik.aut.thesis.depot.general.supplier.product.dto.CreateProductStockRequest;
 import com.bme.vik.aut.thesis.depot.general.supplier.supplier.Supplier;
 import com.bme.vik.aut.thesis.depot.security.user.MyUser;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,25 +14,33 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.MailSendException;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class InventoryEventListenerTest {
 
     @Mock
-    private InventoryService inventoryService;
+    private ReorderService reorderService;
 
     @Mock
     private EmailService emailService;
 
+    @Mock
+    private OutboxService outboxService;
+
     @InjectMocks
     private InventoryEventListener inventoryEventListener;
 
@@ -73,19 +79,13 @@ class InventoryEventListenerTest {
         );
 
         ReorderAlertEvent event = new ReorderAlertEvent(this, inventory, List.of(reorder));
+        when(reorderService.reorder(inventory, List.of(reorder))).thenReturn(List.of(reorder));
 
         //***** <-- when: The reorder event is handled --> *****//
         inventoryEventListener.handleReorderEvent(event);
 
-        //***** <-- then: Ensure inventoryService.addStock is called with correct data --> *****//
-        CreateProductStockRequest expectedRequest = CreateProductStockRequest.builder()
-                .productSchemaId(productSchemaId)
-                .description(productDescription)
-                .quantity(reorderQuantity)
-                .expiresAt(expiresAt)
-                .build();
-
-        verify(inventoryService).addStock(eq(inventory.getSupplier().getUser()), eq(expectedRequest));
+        //***** <-- then: Ensure the reorders are applied as one batch --> *****//
+        verify(reorderService).reorder(inventory, List.of(reorder));
 
         //***** <-- then: Ensure emailService.sendEmail is called --> *****//
         String expectedEmailBody = String.format(
@@ -97,8 +97,30 @@ class InventoryEventListenerTest {
     }
 
     @Test
-    void shouldHandleLowStockAlertEvent() {
-        //***** <-- given: A low stock alert event --> *****//
+    void shouldNotSendReorderEmailWhenNoReorderWasApplied() {
+        //***** <-- given: Reorder of a bucket that got replenished meanwhile --> *****//
+        Inventory inventory = Inventory.builder()
+                .id(1L)
+                .reorderQuantity(50)
+                .supplier(Supplier.builder().email("supplier@example.com").build())
+                .build();
+        InternalReorder reorder = new InternalReorder(
+                ProductSchema.builder().id(10L).name("Sample Product").build(),
+                "Sample description",
+                LocalDateTime.now().plusDays(30)
+        );
+        when(reorderService.reorder(inventory, List.of(reorder))).thenReturn(List.of());
+
+        //***** <-- when: The reorder event is handled --> *****//
+        inventoryEventListener.handleReorderEvent(new ReorderAlertEvent(this, inventory, List.of(reorder)));
+
+        //***** <-- then: No email is sent --> *****//
+        verifyNoInteractions(emailService);
+    }
+
+    @Test
+    void shouldHandleLowStockAlertDigest() {
+        //***** <-- given: A digest with low stock alerts only --> *****//
         Long inventoryId = 1L;
         Long productSchemaId = 10L;
         Long productId1 = 200L;
@@ -132,27 +154,28 @@ class InventoryEventListenerTest {
                 productSchema, List.of(product1, product2)
         );
 
-        LowStockAlertEvent event = new LowStockAlertEvent(this, inventory, lowStockProducts);
+        AlertDigestEvent event = new AlertDigestEvent(this, inventory, lowStockProducts, List.of(), List.of(5L, 6L));
 
-        //***** <-- when: The low stock alert event is handled --> *****//
-        inventoryEventListener.handleLowStockAlertEvent(event);
+        //***** <-- when: The digest is handled --> *****//
+        inventoryEventListener.handleAlertDigestEvent(event);
 
-        //***** <-- then: Ensure emailService.sendEmail is called with correct data --> *****//
+        //***** <-- then: Ensure the email is sent with correct data and its outbox events are marked --> *****//
         String expectedEmailBody = "Dear Supplier,\n\n" +
                 "The following products in your inventory are running low on stock for the Low Stock Product (10) product schema:\n\n" +
                 " - Product 'Low Stock Product' (ID: 200)\n" +
                 " - Product 'Low Stock Product' (ID: 201)\n\n" +
                 "Please take necessary actions.\n\nThank you!";
 
-        verify(emailService).sendEmail(eq(supplierEmail), eq("Low Stock Alert"), eq(expectedEmailBody));
+        verify(emailService).sendEmailNow(eq(supplierEmail), eq("Low Stock Alert"), eq(expectedEmailBody));
+        verify(outboxService).markDigested(List.of(5L, 6L));
 
-        // Verify no interactions with inventoryService as this test only deals with alerts
-        verifyNoInteractions(inventoryService);
+        // Verify no reorder as this test only deals with alerts
+        verifyNoInteractions(reorderService);
     }
 
     @Test
-    void shouldHandleProductExpiredEvent() {
-        //***** <-- given: A product expired event --> *****//
+    void shouldHandleProductExpiredAlertDigest() {
+        //***** <-- given: A digest with expired products only --> *****//
         Long inventoryId = 1L;
         Long productId1 = 300L;
         Long productId2 = 301L;
@@ -183,10 +206,10 @@ class InventoryEventListenerTest {
 
         List<Product> expiredProducts = List.of(product1, product2);
 
-        ProductExpiredAlertEvent event = new ProductExpiredAlertEvent(this, inventory, expiredProducts);
+        AlertDigestEvent event = new AlertDigestEvent(this, inventory, Map.of(), expiredProducts, List.of(7L));
 
-        //***** <-- when: The product expired event is handled --> *****//
-        inventoryEventListener.handleProductExpiredEvent(event);
+        //***** <-- when: The digest is handled --> *****//
+        inventoryEventListener.handleAlertDigestEvent(event);
 
         //***** <-- then: Ensure emailService.sendEmail is called with correct data --> *****//
         String expectedEmailBody = "Dear Supplier,\n\n" +
@@ -195,10 +218,32 @@ class InventoryEventListenerTest {
                 " - Product 'Expired Product 2' (ID: 301)\n\n" +
                 "Please take necessary actions.\n\nThank you!";
 
-        verify(emailService).sendEmail(eq(supplierEmail), eq("Products Expired Alert"), eq(expectedEmailBody));
+        verify(emailService).sendEmailNow(eq(supplierEmail), eq("Products Expired Alert"), eq(expectedEmailBody));
+        verify(outboxService).markDigested(List.of(7L));
+
+        // Ensure no reorder as this test only deals with alerts
+        verifyNoInteractions(reorderService);
+    }
+
+    @Test
+    void shouldNotMarkOutboxEventsWhenDigestEmailFailed() {
+        //***** <-- given: A digest whose email cannot be sent --> *****//
+        Inventory inventory = Inventory.builder()
+                .id(1L)
+                .supplier(Supplier.builder().email("supplier@example.com").build())
+                .build();
+        Product product = Product.builder()
+                .id(300L)
+                .schema(ProductSchema.builder().name("Expired Product").build())
+                .build();
+        doThrow(new MailSendException("mail server unavailable"))
+                .when(emailService).sendEmailNow(eq("supplier@example.com"), eq("Products Expired Alert"), any());
+
+        //***** <-- when: The digest is handled --> *****//
+        inventoryEventListener.handleAlertDigestEvent(new AlertDigestEvent(this, inventory, Map.of(), List.of(product), List.of(7L)));
 
-        // Ensure no interactions with inventoryService as this test only deals with alerts
-        verifyNoInteractions(inventoryService);
+        //***** <-- then: Outbox events stay leased, so the alerts are relayed again --> *****//
+        verify(outboxService, never()).markDigested(any());
     }
 
 }
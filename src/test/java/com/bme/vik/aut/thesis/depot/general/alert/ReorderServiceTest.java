@@ -0,0 +1,98 @@
+package com.bme.vik.aut.thesis.depot.general.alert;
+
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryAlertThresholds;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReorderServiceTest {
+
+    @Mock
+    private InventoryService inventoryService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ReorderService reorderService;
+
+    private final Inventory inventory = Inventory.builder().id(1L).reorderQuantity(5).build();
+    private final InventoryAlertThresholds thresholds = InventoryAlertThresholds.of(inventory);
+    private final InternalReorder reorderA = new InternalReorder(
+            ProductSchema.builder().id(10L).name("Product A").build(), "Product A description", LocalDateTime.now().plusDays(10));
+    private final InternalReorder reorderB = new InternalReorder(
+            ProductSchema.builder().id(11L).name("Product B").build(), "Product B description", LocalDateTime.now().plusDays(10));
+
+    @BeforeEach
+    void setUp() {
+        reorderService = new ReorderService(inventoryService, meterRegistry);
+        reorderService.init();
+        when(inventoryService.getAlertThresholds(inventory.getId())).thenReturn(thresholds);
+    }
+
+    @Test
+    void shouldApplyStillNeededReordersOnceInOneBatch() {
+        //***** <-- given: Bucket A reordered twice, bucket B replenished since the reorder was raised --> *****//
+        when(inventoryService.needsReorderForStock(thresholds, 10L)).thenReturn(true);
+        when(inventoryService.needsReorderForStock(thresholds, 11L)).thenReturn(false);
+        when(inventoryService.addReorderStock(inventory.getId(), List.of(reorderA))).thenReturn(List.of(reorderA));
+
+        //***** <-- when: Reorders are applied --> *****//
+        List<InternalReorder> applied = reorderService.reorder(inventory, List.of(reorderA, reorderB, reorderA));
+
+        //***** <-- then: Bucket A is reordered once, in one call --> *****//
+        assertEquals(List.of(reorderA), applied);
+        verify(inventoryService, times(1)).addReorderStock(anyLong(), any());
+        assertEquals(5.0, meterRegistry.get("depot.reorder.units").counter().count());
+        assertEquals(1.0, meterRegistry.get("depot.reorder.skipped").tag("reason", "IN_FLIGHT").counter().count());
+        assertEquals(1.0, meterRegistry.get("depot.reorder.skipped").tag("reason", "NOT_NEEDED").counter().count());
+        assertEquals(1, meterRegistry.get("depot.reorder.batch.latency").timer().count());
+    }
+
+    @Test
+    void shouldSkipBucketWhileAnotherThreadReordersIt() throws Exception {
+        //***** <-- given: Reorder of bucket A blocked inside its batch --> *****//
+        CountDownLatch insideBatch = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(inventoryService.needsReorderForStock(thresholds, 10L)).thenReturn(true);
+        when(inventoryService.addReorderStock(inventory.getId(), List.of(reorderA))).thenAnswer(invocation -> {
+            insideBatch.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(reorderA);
+        });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<InternalReorder>> first = executor.submit(() -> reorderService.reorder(inventory, List.of(reorderA)));
+            insideBatch.await(5, TimeUnit.SECONDS);
+
+            //***** <-- when: Same bucket is reordered concurrently --> *****//
+            List<InternalReorder> concurrent = reorderService.reorder(inventory, List.of(reorderA));
+            release.countDown();
+
+            //***** <-- then: Only the first reorder is applied --> *****//
+            assertEquals(List.of(), concurrent);
+            assertEquals(List.of(reorderA), first.get(5, TimeUnit.SECONDS));
+            verify(inventoryService, times(1)).addReorderStock(anyLong(), any());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.bme.vik.aut.thesis.depot.general.alert.outbox;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+@ActiveProfiles("test")
+class OutboxEventRepositoryTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Test
+    void shouldOnlyLetAttemptHoldingTheLeaseClaimEvent() {
+        //***** <-- given: Event claimed by a second attempt after the lease of the first one ran out --> *****//
+        OutboxEvent event = outboxEventRepository.save(OutboxEvent.builder()
+                .type(OutboxEventType.REORDER)
+                .inventoryId(1L)
+                .payload("{}")
+                .status(OutboxStatus.PENDING)
+                .attempts(2)
+                .nextAttemptAt(NOW.plusMinutes(1))
+                .createdAt(NOW)
+                .build());
+
+        //***** <-- when: Both attempts claim the event --> *****//
+        int firstAttempt = outboxEventRepository.markDispatched(event.getId(), 1, NOW);
+        int secondAttempt = outboxEventRepository.markDispatched(event.getId(), 2, NOW);
+
+        //***** <-- then: Only the second attempt claims it --> *****//
+        assertEquals(0, firstAttempt);
+        assertEquals(1, secondAttempt);
+        assertEquals(OutboxStatus.DISPATCHED, outboxEventRepository.findById(event.getId()).orElseThrow().getStatus());
+    }
+}
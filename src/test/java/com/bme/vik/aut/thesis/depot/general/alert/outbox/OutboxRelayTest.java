@@ -0,0 +1,265 @@
+package com.bme.vik.aut.thesis.depot.general.alert.outbox;
+
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchemaService;
+import com.bme.vik.aut.thesis.depot.general.alert.AlertAggregator;
+import com.bme.vik.aut.thesis.depot.general.alert.InternalReorder;
+import com.bme.vik.aut.thesis.depot.general.alert.TimeService;
+import com.bme.vik.aut.thesis.depot.general.alert.event.ProductExpiredAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.alert.event.ReorderAlertEvent;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryService;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long INITIAL_BACKOFF_MS = 1000;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private InventoryService inventoryService;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ProductSchemaService productSchemaService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private AlertAggregator alertAggregator;
+
+    @Mock
+    private TimeService timeService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private OutboxRelay outboxRelay;
+
+    private final LocalDateTime now = LocalDateTime.of(2024, 1, 1, 12, 0);
+    private final Inventory inventory = Inventory.builder().id(1L).build();
+    private final ProductSchema schema = ProductSchema.builder().id(10L).name("Test Product").build();
+    private final OutboxPayload payload = OutboxPayload.reorders(List.of(
+            new OutboxPayload.ReorderItem(schema.getId(), "Test Product Description", now.plusDays(10))));
+
+    @BeforeEach
+    void setUp() {
+        outboxRelay = new OutboxRelay(outboxService, inventoryService, productRepository, productSchemaService,
+                eventPublisher, alertAggregator, timeService, transactionManager, Runnable::run, Runnable::run, meterRegistry);
+        ReflectionTestUtils.setField(outboxRelay, "BATCH_SIZE", 10);
+        ReflectionTestUtils.setField(outboxRelay, "LEASE_MS", 60000L);
+        ReflectionTestUtils.setField(outboxRelay, "MAX_ATTEMPTS", MAX_ATTEMPTS);
+        ReflectionTestUtils.setField(outboxRelay, "INITIAL_BACKOFF_MS", INITIAL_BACKOFF_MS);
+        ReflectionTestUtils.setField(outboxRelay, "MAX_BACKOFF_MS", 60000L);
+        ReflectionTestUtils.setField(outboxRelay, "DIGEST_WINDOW_MS", 900000L);
+        outboxRelay.init();
+    }
+
+    @Test
+    void shouldPublishReorderEventAndMarkItDispatched() {
+        //***** <-- given: Reorder event written a minute ago is due --> *****//
+        OutboxEvent event = reorderEvent(1);
+        when(timeService.getCurrentTime()).thenReturn(now);
+        when(outboxService.claimDueEvents(eq(10), any())).thenReturn(List.of(event));
+        when(outboxService.readPayload(event)).thenReturn(payload);
+        when(inventoryService.getInventoryById(inventory.getId())).thenReturn(inventory);
+        when(productSchemaService.getProductSchemaById(schema.getId())).thenReturn(schema);
+        when(outboxService.markDispatched(event)).thenReturn(true);
+        when(outboxService.countPending()).thenReturn(0L);
+
+        //***** <-- when: Relay runs --> *****//
+        outboxRelay.relay();
+
+        //***** <-- then: Rebuilt event is published, dispatch lag recorded --> *****//
+        ArgumentCaptor<ReorderAlertEvent> published = ArgumentCaptor.forClass(ReorderAlertEvent.class);
+        verify(eventPublisher).publishEvent(published.capture());
+        assertEquals(inventory, published.getValue().getInventory());
+        assertEquals(1, published.getValue().getReorders().size());
+        assertEquals(schema, published.getValue().getReorders().get(0).getProductSchema());
+        assertEquals("Test Product Description", published.getValue().getReorders().get(0).getProductDescription());
+
+        verify(outboxService, never()).retryLater(any(), any(), any());
+        assertEquals(1, meterRegistry.get("depot.outbox.dispatch.lag").tag("type", "REORDER").timer().count());
+    }
+
+    @Test
+    void shouldApplyReordersOfOneInventoryAsOneEvent() {
+        //***** <-- given: Two reorder events of the same inventory are due --> *****//
+        OutboxEvent first = reorderEvent(1);
+        OutboxEvent second = reorderEvent(1);
+        second.setId(6L);
+        ProductSchema otherSchema = ProductSchema.builder().id(11L).name("Other Product").build();
+        OutboxPayload otherPayload = OutboxPayload.reorders(List.of(
+                new OutboxPayload.ReorderItem(otherSchema.getId(), "Other Product Description", now.plusDays(10))));
+        when(timeService.getCurrentTime()).thenReturn(now);
+        when(outboxService.claimDueEvents(eq(10), any())).thenReturn(List.of(first, second));
+        when(outboxService.readPayload(first)).thenReturn(payload);
+        when(outboxService.readPayload(second)).thenReturn(otherPayload);
+        when(inventoryService.getInventoryById(inventory.getId())).thenReturn(inventory);
+        when(productSchemaService.getProductSchemaById(schema.getId())).thenReturn(schema);
+        when(productSchemaService.getProductSchemaById(otherSchema.getId())).thenReturn(otherSchema);
+        when(outboxService.markDispatched(any())).thenReturn(true);
+        when(outboxService.countPending()).thenReturn(0L);
+
+        //***** <-- when: Relay runs --> *****//
+        outboxRelay.relay();
+
+        //***** <-- then: One reorder event carries both reorders, both outbox events are marked --> *****//
+        ArgumentCaptor<ReorderAlertEvent> published = ArgumentCaptor.forClass(ReorderAlertEvent.class);
+        verify(eventPublisher, times(1)).publishEvent(published.capture());
+        assertEquals(List.of(schema, otherSchema), published.getValue().getReorders().stream()
+                .map(InternalReorder::getProductSchema)
+                .toList());
+        verify(outboxService).markDispatched(first);
+        verify(outboxService).markDispatched(second);
+    }
+
+    @Test
+    void shouldSkipHandlersWhenEventWasTakenOverByAnotherAttempt() {
+        //***** <-- given: Event whose lease ran out was claimed by another attempt meanwhile --> *****//
+        OutboxEvent event = reorderEvent(1);
+        SimpleTransactionStatus transaction = new SimpleTransactionStatus();
+        when(transactionManager.getTransaction(any())).thenReturn(transaction);
+        when(outboxService.markDispatched(event)).thenReturn(false);
+
+        //***** <-- when: Event is dispatched --> *****//
+        int dispatchedCount = outboxRelay.dispatch(List.of(event));
+
+        //***** <-- then: No handler runs, the event is left to the other attempt --> *****//
+        assertEquals(0, dispatchedCount);
+        assertTrue(transaction.isRollbackOnly());
+        verify(eventPublisher, never()).publishEvent(any());
+        verify(inventoryService, never()).getInventoryById(any());
+        verify(outboxService, never()).retryLater(any(), any(), any());
+        verify(outboxService, never()).giveUp(any(), any());
+        assertEquals(0, meterRegistry.get("depot.outbox.dispatch.lag").tag("type", "REORDER").timer().count());
+    }
+
+    @Test
+    void shouldReleaseClaimedEventsOfGroupWhenOneWasTakenOver() {
+        //***** <-- given: Second of two reorder events of an inventory was claimed by another attempt --> *****//
+        OutboxEvent first = reorderEvent(1);
+        OutboxEvent second = reorderEvent(1);
+        second.setId(6L);
+        SimpleTransactionStatus transaction = new SimpleTransactionStatus();
+        when(transactionManager.getTransaction(any())).thenReturn(transaction);
+        when(outboxService.markDispatched(first)).thenReturn(true);
+        when(outboxService.markDispatched(second)).thenReturn(false);
+
+        //***** <-- when: Events are dispatched --> *****//
+        int dispatchedCount = outboxRelay.dispatch(List.of(first, second));
+
+        //***** <-- then: Claim of the first one is rolled back, nothing is published --> *****//
+        assertEquals(0, dispatchedCount);
+        assertTrue(transaction.isRollbackOnly());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void shouldHandExpiredAlertToDigestInsteadOfMarkingItDispatched() {
+        //***** <-- given: Product expired event is due --> *****//
+        Product product = Product.builder().id(100L).schema(schema).build();
+        OutboxEvent event = OutboxEvent.builder()
+                .id(7L)
+                .type(OutboxEventType.PRODUCT_EXPIRED)
+                .inventoryId(inventory.getId())
+                .status(OutboxStatus.PENDING)
+                .attempts(1)
+                .createdAt(now.minusMinutes(1))
+                .build();
+        when(timeService.getCurrentTime()).thenReturn(now);
+        when(outboxService.readPayload(event)).thenReturn(OutboxPayload.expired(List.of(product.getId())));
+        when(inventoryService.getInventoryById(inventory.getId())).thenReturn(inventory);
+        when(productRepository.findAllById(List.of(product.getId()))).thenReturn(List.of(product));
+        when(outboxService.handToDigest(event, now.plusNanos((900000L + 60000L) * 1_000_000))).thenReturn(true);
+
+        //***** <-- when: Event is dispatched --> *****//
+        int dispatchedCount = outboxRelay.dispatch(List.of(event));
+
+        //***** <-- then: Leased until the digest is due, the aggregator marks it dispatched with the digest --> *****//
+        assertEquals(1, dispatchedCount);
+        verify(eventPublisher).publishEvent(any(ProductExpiredAlertEvent.class));
+        verify(outboxService, never()).markDispatched(any());
+        verify(alertAggregator).addOutboxEvents(inventory.getId(), List.of(event.getId()));
+    }
+
+    @Test
+    void shouldRetryFailedAttemptWithExponentialBackoff() {
+        //***** <-- given: Second attempt of an event whose inventory cannot be loaded --> *****//
+        OutboxEvent event = reorderEvent(2);
+        when(timeService.getCurrentTime()).thenReturn(now);
+        RuntimeException failure = new RuntimeException("database unavailable");
+        SimpleTransactionStatus transaction = new SimpleTransactionStatus();
+        when(transactionManager.getTransaction(any())).thenReturn(transaction);
+        when(outboxService.markDispatched(event)).thenReturn(true);
+        when(outboxService.readPayload(event)).thenReturn(payload);
+        when(inventoryService.getInventoryById(inventory.getId())).thenThrow(failure);
+
+        //***** <-- when: Event is dispatched --> *****//
+        int dispatchedCount = outboxRelay.dispatch(List.of(event));
+
+        //***** <-- then: Claim is rolled back, retried after twice the initial backoff --> *****//
+        assertEquals(0, dispatchedCount);
+        verify(transactionManager).rollback(transaction);
+        verify(outboxService).retryLater(event.getId(), now.plusNanos(2 * INITIAL_BACKOFF_MS * 1_000_000), failure);
+        verify(outboxService, never()).giveUp(any(), any());
+        assertEquals(1.0, meterRegistry.get("depot.outbox.retried").counter().count());
+    }
+
+    @Test
+    void shouldGiveUpAfterMaxAttempts() {
+        //***** <-- given: Last attempt of an event fails --> *****//
+        OutboxEvent event = reorderEvent(MAX_ATTEMPTS);
+        RuntimeException failure = new RuntimeException("database unavailable");
+        when(outboxService.markDispatched(event)).thenReturn(true);
+        when(outboxService.readPayload(event)).thenReturn(payload);
+        when(inventoryService.getInventoryById(inventory.getId())).thenThrow(failure);
+
+        //***** <-- when: Event is dispatched --> *****//
+        outboxRelay.dispatch(List.of(event));
+
+        //***** <-- then: Event is marked failed instead of retried --> *****//
+        verify(outboxService).giveUp(event.getId(), failure);
+        verify(outboxService, never()).retryLater(any(), any(), any());
+        assertEquals(1.0, meterRegistry.get("depot.outbox.failed").counter().count());
+    }
+
+    private OutboxEvent reorderEvent(int attempts) {
+        return OutboxEvent.builder()
+                .id(5L)
+                .type(OutboxEventType.REORDER)
+                .inventoryId(inventory.getId())
+                .status(OutboxStatus.PENDING)
+                .attempts(attempts)
+                .createdAt(now.minusMinutes(1))
+                .build();
+    }
+}
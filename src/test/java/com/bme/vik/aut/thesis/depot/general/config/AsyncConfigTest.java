@@ -0,0 +1,88 @@
+package com.bme.vik.aut.thesis.depot.general.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncConfigTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MockEnvironment environment = new MockEnvironment();
+    private AsyncConfig asyncConfig;
+
+    @BeforeEach
+    void setUp() {
+        asyncConfig = new AsyncConfig(environment, meterRegistry);
+    }
+
+    @Test
+    void shouldDropAndCountTasksWhenMailQueueIsFull() throws InterruptedException {
+        //***** <-- given: Mail executor with one thread and one queue slot, thread blocked --> *****//
+        configure("mail", "DROP");
+        ThreadPoolTaskExecutor executor = asyncConfig.mailExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger ranCount = new AtomicInteger();
+        executor.execute(() -> block(release));
+        executor.execute(ranCount::incrementAndGet);
+
+        //***** <-- when: Another task is submitted --> *****//
+        executor.execute(ranCount::incrementAndGet);
+        release.countDown();
+        executor.shutdown();
+        executor.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS);
+
+        //***** <-- then: Only the queued task ran, the rejection is counted --> *****//
+        assertEquals(1, ranCount.get());
+        assertEquals(1.0, meterRegistry.get("depot.executor.rejected").tag("name", "mail").counter().count());
+        assertEquals(2, meterRegistry.get("depot.executor.task.latency").tag("name", "mail").timer().count());
+    }
+
+    @Test
+    void shouldRunTaskOnCallerWhenReorderQueueIsFull() throws InterruptedException {
+        //***** <-- given: Reorder executor with one thread and one queue slot, both taken --> *****//
+        configure("reorder", "CALLER_RUNS");
+        ThreadPoolTaskExecutor executor = asyncConfig.reorderExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> block(release));
+        executor.execute(() -> { });
+
+        //***** <-- when: Another task is submitted --> *****//
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        executor.execute(() -> ranOn.set(Thread.currentThread()));
+
+        //***** <-- then: Caller ran it, queue depth and active threads are exported --> *****//
+        assertSame(Thread.currentThread(), ranOn.get());
+        assertEquals(1.0, meterRegistry.get("depot.executor.rejected").tag("name", "reorder").counter().count());
+        assertEquals(1.0, meterRegistry.get("depot.executor.queued").tag("name", "reorder").gauge().value());
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertEquals(1.0, meterRegistry.get("depot.executor.active").tag("name", "reorder").gauge().value()));
+
+        release.countDown();
+        executor.shutdown();
+    }
+
+    private void configure(String name, String rejectionPolicy) {
+        environment.setProperty("custom.async." + name + ".pool-size", "1");
+        environment.setProperty("custom.async." + name + ".queue-capacity", "1");
+        environment.setProperty("custom.async." + name + ".rejection-policy", rejectionPolicy);
+    }
+
+    private static void block(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -11,6 +11,7 @@ import com.bme.vik.aut.thesis.depot.general.order.OrderRepository;
 import com.bme.vik.aut.thesis.depot.general.order.OrderStatus;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryService;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductLotRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
 import com.bme.vik.aut.thesis.depot.general.supplier.supplier.Supplier;
@@ -67,6 +68,9 @@ public class InfoControllerIntegrationTest {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ProductLotRepository productLotRepository;
+
     @Autowired
     private SupplierRepository supplierRepository;
 
@@ -96,6 +100,7 @@ public class InfoControllerIntegrationTest {
     void tearDown() {
         orderRepository.deleteAll();
         productRepository.deleteAll();
+        productLotRepository.deleteAll();
         productSchemaRepository.deleteAll();
         categoryRepository.deleteAll();
         supplierRepository.deleteAll();
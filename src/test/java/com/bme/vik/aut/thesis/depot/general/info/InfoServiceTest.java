@@ -31,6 +31,7 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -174,11 +175,10 @@ class InfoServiceTest {
                 .expiresAt(expiresAt)
                 .build();
 
-        List<Product> mockProducts = List.of(product);
-        when(productRepository.findAll()).thenReturn(mockProducts);
+        when(productRepository.streamAll()).thenReturn(Stream.of(product));
 
         //***** <-- when: Fetch all products --> *****//
-        List<ProductResponse> actualResponses = infoService.getAllProducts();
+        List<ProductResponse> actualResponses = infoService.streamAllProducts().toList();
 
         //***** <-- then: Validate responses --> *****//
         ProductResponse actualProduct = actualResponses.get(0);
@@ -191,7 +191,7 @@ class InfoServiceTest {
         assertEquals(productStatus.name(), actualProduct.getStatus());
         assertEquals(expiresAt, actualProduct.getExpiresAt());
 
-        verify(productRepository).findAll();
+        verify(productRepository).streamAll();
     }
 
     @Test
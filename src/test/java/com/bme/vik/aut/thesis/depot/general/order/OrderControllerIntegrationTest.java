@@ -5,6 +5,7 @@ import com.bme.vik.aut.thesis.depot.general.admin.category.Category;
 import com.bme.vik.aut.thesis.depot.general.admin.category.CategoryRepository;
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchemaRepository;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxEventRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryService;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.*;
@@ -28,6 +29,8 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -48,6 +51,12 @@ class OrderControllerIntegrationTest {
     private WebTestClient webTestClient;
     @Autowired
     private ProductRepository productRepository;
+
+    @Autowired
+    private ProductLotRepository productLotRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
     @Autowired
     private ProductSchemaRepository productSchemaRepository;
     @Autowired
@@ -73,6 +82,8 @@ class OrderControllerIntegrationTest {
     private SupplierService supplierService;
     @Autowired
     private OrderRepository orderRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     @BeforeEach
     void setUp() {
@@ -87,8 +98,11 @@ class OrderControllerIntegrationTest {
 
     @AfterEach
     void tearDown() {
+        TestUtil.awaitOutboxRelayed(outboxEventRepository);
+        outboxEventRepository.deleteAll();
         orderRepository.deleteAll();
         productRepository.deleteAll();
+        productLotRepository.deleteAll();
         productSchemaRepository.deleteAll();
         categoryRepository.deleteAll();
         userRepository.deleteAll();
@@ -173,10 +187,11 @@ class OrderControllerIntegrationTest {
 
         // Verify inventory status after orders
         Inventory inventory = inventoryService.getInventoryById(response.getSupplier().getInventory().getId());
-        assertEquals(stockQuantity * 2, inventory.getProductIds().size());
+        List<Long> inventoryProductIds = productRepository.findIdsByInventoryId(inventory.getId());
+        assertEquals(stockQuantity * 2, inventoryProductIds.size());
 
         // Verify one new product was added (reorderQuantity = 1)
-        Product newProduct = productService.getProductById(inventory.getProductIds().get(inventory.getProductIds().size() - 1));
+        Product newProduct = productService.getProductById(inventoryProductIds.get(inventoryProductIds.size() - 1));
 
         assertEquals(productSchema.getId(), newProduct.getSchema().getId());
         assertEquals(supplierService.getSupplierByName(supplierName).getId(), newProduct.getSupplierId());
@@ -241,9 +256,10 @@ class OrderControllerIntegrationTest {
         // Validate inventory updates
         Inventory inventory = inventoryService.getInventoryById(response.getSupplier().getInventory().getId());
         // order was not accepted yet, reorder did not happen
-        assertEquals(stockQuantity, inventory.getProductIds().size());
+        List<Long> inventoryProductIds = productRepository.findIdsByInventoryId(inventory.getId());
+        assertEquals(stockQuantity, inventoryProductIds.size());
 
-        Product newProduct = productService.getProductById(inventory.getProductIds().get(inventory.getProductIds().size() - 1));
+        Product newProduct = productService.getProductById(inventoryProductIds.get(inventoryProductIds.size() - 1));
 
         assertEquals(productSchema.getId(), newProduct.getSchema().getId());
         assertEquals(supplierService.getSupplierByName(supplierName).getId(), newProduct.getSupplierId());
@@ -303,7 +319,7 @@ class OrderControllerIntegrationTest {
 
         // Fetch the inventory and verify product statuses
         Inventory inventory = inventoryService.getInventoryById(supplierResponse.getSupplier().getInventory().getId());
-        List<Product> inventoryProducts = inventory.getProductIds().stream()
+        List<Product> inventoryProducts = productRepository.findIdsByInventoryId(inventory.getId()).stream()
                 .map(productService::getProductById)
                 .toList();
 
@@ -441,4 +457,29 @@ class OrderControllerIntegrationTest {
         });
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldFlushChangesToOrderProductsMadeAfterTheirStatusChanged() {
+        //***** <-- given: Supplier with 2 products in stock --> *****//
+        Category category = TestUtil.createCategoryWithAPI(webTestClient, ADMIN_TOKEN, "Category 1", "Test category");
+        ProductSchema productSchema = TestUtil.createProductSchemaWithAPI(webTestClient, ADMIN_TOKEN, "Test Product", 10, new ArrayList<>(List.of(category)));
+        SupplierCreationResponse supplierResponse = TestUtil.createSupplierWithAPI(webTestClient, ADMIN_TOKEN, "Test Supplier", 0, 5, 0, 1);
+        TestUtil.addStockToSupplierInventoryWithAPI(webTestClient, supplierResponse.getToken(), productSchema, "Test Product Description", 2, LocalDateTime.now().plusDays(10));
+        List<Long> productIds = productRepository.findIdsByInventoryId(supplierResponse.getSupplier().getInventory().getId());
+
+        //***** <-- when: In one transaction the products are removed, then changed by the caller holding them --> *****//
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            List<Product> products = productRepository.findAllById(productIds);
+            inventoryService.removeCompletedOrderProducts(products);
+            products.forEach(product -> {
+                assertEquals(ProductStatus.REMOVED, product.getStatus());
+                product.setDescription("Changed after approval");
+            });
+        });
+
+        //***** <-- then: Both the bulk status change and the later change are stored --> *****//
+        productRepository.findAllById(productIds).forEach(product -> {
+            assertEquals(ProductStatus.REMOVED, product.getStatus());
+            assertEquals("Changed after approval", product.getDescription());
+        });
+    }
+}
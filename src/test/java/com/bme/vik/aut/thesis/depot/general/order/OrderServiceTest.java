@@ -27,6 +27,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -72,10 +73,10 @@ class OrderServiceTest {
                 .createdAt(LocalDateTime.now())
                 .build();
 
-        when(orderRepository.findAll()).thenReturn(List.of(order1, order2));
+        when(orderRepository.streamAll()).thenReturn(Stream.of(order1, order2));
 
         //***** <-- when: Fetch all orders --> *****//
-        List<Order> orders = orderService.getAllOrders();
+        List<Order> orders = orderService.streamAllOrders().toList();
 
         //***** <-- then: Validate response --> *****//
         assertNotNull(orders);
@@ -87,7 +88,7 @@ class OrderServiceTest {
         assertEquals(101L, orders.get(1).getUserId());
         assertEquals(OrderStatus.COMPLETED, orders.get(1).getStatus());
 
-        verify(orderRepository, times(1)).findAll();
+        verify(orderRepository, times(1)).streamAll();
     }
 
     @Test
@@ -4,12 +4,14 @@ import com.bme.vik.aut.thesis.depot.general.admin.category.Category;
 import com.bme.vik.aut.thesis.depot.general.admin.category.CategoryRepository;
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchemaRepository;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxEventRepository;
 import com.bme.vik.aut.thesis.depot.general.order.Order;
 import com.bme.vik.aut.thesis.depot.general.order.OrderRepository;
 import com.bme.vik.aut.thesis.depot.general.order.OrderStatus;
 import com.bme.vik.aut.thesis.depot.general.report.dto.*;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryService;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductLotRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.dto.CreateProductStockRequest;
@@ -48,11 +50,19 @@ public class ReportControllerIntegrationTest {
     private static final String BEARER_PREFIX = "Bearer ";
     private static final String INVENTORY_STATE_REPORT_PATH = "/report/inventory/state";
     private static final String INVENTORY_EXPIRY_REPORT_PATH = "/report/inventory/expiry";
+    private static final String INVENTORY_SUMMARY_REPORT_PATH = "/report/inventory/summary";
+    private static final String INVENTORY_SUMMARY_REBUILD_PATH = "/report/inventory/summary/rebuild";
     private static final String ORDER_REPORT_PATH = "/report/order";
     @Autowired
     private WebTestClient webTestClient;
     @Autowired
     private ProductRepository productRepository;
+
+    @Autowired
+    private ProductLotRepository productLotRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
     @Autowired
     private ProductSchemaRepository productSchemaRepository;
     @Autowired
@@ -91,8 +101,11 @@ public class ReportControllerIntegrationTest {
 
     @AfterEach
     void tearDown() {
+        TestUtil.awaitOutboxRelayed(outboxEventRepository);
+        outboxEventRepository.deleteAll();
         orderRepository.deleteAll();
         productRepository.deleteAll();
+        productLotRepository.deleteAll();
         productSchemaRepository.deleteAll();
         categoryRepository.deleteAll();
         userRepository.deleteAll();
@@ -295,6 +308,59 @@ public class ReportControllerIntegrationTest {
         assertNotNull(notExpiredProduct.getUpdatedAt());
     }
 
+    @Test
+    void shouldGetInventorySummaryReportFromStockCounters() {
+        //***** <-- given: Set up category, product schema and supplier --> *****//
+        Category category = TestUtil.createCategoryWithAPI(webTestClient, ADMIN_TOKEN, "Category 1", "Test category");
+        int storageSpaceNeeded = 10;
+        ProductSchema productSchema = TestUtil.createProductSchemaWithAPI(webTestClient, ADMIN_TOKEN, "Test Product", storageSpaceNeeded, List.of(category));
+
+        SupplierCreationResponse supplierResponse = TestUtil.createSupplierWithAPI(
+                webTestClient, ADMIN_TOKEN, "Test Supplier", 5, 7, 3, 5);
+        SUPPLIER_TOKEN = supplierResponse.getToken();
+
+        //***** <-- given: Stock with two expiry statuses --> *****//
+        TestUtil.addStockToSupplierInventoryWithAPI(webTestClient, SUPPLIER_TOKEN, productSchema, "Soon to Expire Product", 2, LocalDateTime.now().plusDays(3));
+        TestUtil.addStockToSupplierInventoryWithAPI(webTestClient, SUPPLIER_TOKEN, productSchema, "Not Expired Product", 3, LocalDateTime.now().plusDays(10));
+
+        //***** <-- when: Call inventory summary report and rebuild endpoints --> *****//
+        InventorySummaryReportResponse reportResponse = webTestClient
+                .get()
+                .uri(INVENTORY_SUMMARY_REPORT_PATH)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + ADMIN_TOKEN)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(InventorySummaryReportResponse.class)
+                .returnResult()
+                .getResponseBody();
+
+        InventorySummaryReportResponse rebuiltResponse = webTestClient
+                .post()
+                .uri(INVENTORY_SUMMARY_REBUILD_PATH)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + ADMIN_TOKEN)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(InventorySummaryReportResponse.class)
+                .returnResult()
+                .getResponseBody();
+
+        //***** <-- then: Counts per schema and for the depot --> *****//
+        assertNotNull(reportResponse);
+        assertEquals(1, reportResponse.getNumOfInventories());
+        assertEquals(5 * storageSpaceNeeded, reportResponse.getUsedSpaceInStorage());
+        assertEquals(5L, reportResponse.getDepotProductStats().get(ProductStatus.FREE));
+        assertEquals(2L, reportResponse.getDepotExpiryStats().get(ExpiryStatus.SOONTOEXPIRE));
+        assertEquals(3L, reportResponse.getDepotExpiryStats().get(ExpiryStatus.NOTEXPIRED));
+
+        InventorySummary inventorySummary = reportResponse.getInventorySummaries().get(0);
+        assertEquals(supplierResponse.getSupplier().getInventory().getId(), inventorySummary.getInventoryID());
+        assertEquals(5L, inventorySummary.getProductStats().get(productSchema.getId()).get(ProductStatus.FREE));
+        assertEquals(2L, inventorySummary.getExpiryStats().get(productSchema.getId()).get(ExpiryStatus.SOONTOEXPIRE));
+
+        // nothing drifted, the rebuild returns the same counts
+        assertEquals(reportResponse, rebuiltResponse);
+    }
+
     @Test
     void shouldGetOrderReport() {
         //***** <-- given: Set up orders for multiple users --> *****//
@@ -0,0 +1,203 @@
+package com.bme.vik.aut.thesis.depot.general.report;
+
+import com.bme.vik.aut.thesis.depot.general.admin.category.Category;
+import com.bme.vik.aut.thesis.depot.general.admin.category.CategoryRepository;
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchemaRepository;
+import com.bme.vik.aut.thesis.depot.general.order.Order;
+import com.bme.vik.aut.thesis.depot.general.order.OrderRepository;
+import com.bme.vik.aut.thesis.depot.general.order.OrderStatus;
+import com.bme.vik.aut.thesis.depot.general.report.dto.InventoryExpiryReportResponse;
+import com.bme.vik.aut.thesis.depot.general.report.dto.InventoryState;
+import com.bme.vik.aut.thesis.depot.general.report.dto.InventoryStateReportResponse;
+import com.bme.vik.aut.thesis.depot.general.report.dto.OrderReportResponse;
+import com.bme.vik.aut.thesis.depot.general.report.dto.UserOrder;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockEngine;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockHydrationService;
+import com.bme.vik.aut.thesis.depot.general.util.JsonStreamWriter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+@ActiveProfiles("test")
+@Import(ReportService.class)
+class ReportServiceQueryCountTest {
+
+    // inventory rows (or order status counts), schema categories, status counts (or the order stream)
+    // and the product stream
+    private static final long MAX_REPORT_QUERIES = 4;
+
+    @Autowired
+    private ReportService reportService;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private ProductSchemaRepository productSchemaRepository;
+    @Autowired
+    private InventoryRepository inventoryRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @MockBean
+    private PasswordEncoder passwordEncoder;
+    @MockBean
+    private StockEngine stockEngine;
+    @MockBean
+    private StockHydrationService stockHydrationService;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void shouldBuildInventoryStateReportWithBoundedQueryCount() {
+        //***** <-- given: Two inventories with products of two schemas --> *****//
+        Category category = categoryRepository.save(Category.builder().name("Category 1").description("Test category").build());
+        ProductSchema firstSchema = saveSchema("First", category);
+        ProductSchema secondSchema = saveSchema("Second", category);
+        Inventory firstInventory = inventoryRepository.save(Inventory.builder().maxAvailableSpace(1000).build());
+        Inventory secondInventory = inventoryRepository.save(Inventory.builder().maxAvailableSpace(1000).build());
+
+        saveProducts(firstInventory, firstSchema, 20, ProductStatus.FREE);
+        saveProducts(firstInventory, secondSchema, 10, ProductStatus.RESERVED);
+        saveProducts(secondInventory, secondSchema, 15, ProductStatus.FREE);
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        //***** <-- when: Report is built --> *****//
+        InventoryStateReportResponse report = writeReport(reportService::writeInventoryStateReport, InventoryStateReportResponse.class);
+
+        //***** <-- then: Query count does not grow with the products --> *****//
+        assertTrue(statistics.getPrepareStatementCount() <= MAX_REPORT_QUERIES,
+                "Report used " + statistics.getPrepareStatementCount() + " queries");
+
+        InventoryState firstState = report.getInventoryStates().stream()
+                .filter(state -> state.getInventoryID().equals(firstInventory.getId()))
+                .findFirst().orElseThrow();
+        assertEquals(20, firstState.getStock().get(firstSchema.getId()).size());
+        assertEquals(10, firstState.getStock().get(secondSchema.getId()).size());
+        assertEquals(20L, firstState.getProductStats().get(firstSchema.getId()).get(ProductStatus.FREE));
+        assertEquals(10L, firstState.getProductStats().get(secondSchema.getId()).get(ProductStatus.RESERVED));
+        assertEquals(List.of(category.getId()), firstState.getStock().get(firstSchema.getId()).get(0).getCategoryIDs());
+        assertEquals(2, report.getNumOfInventories());
+    }
+
+    @Test
+    void shouldBuildInventoryExpiryReportWithBoundedQueryCount() {
+        //***** <-- given: Inventory with products --> *****//
+        Category category = categoryRepository.save(Category.builder().name("Category 1").description("Test category").build());
+        ProductSchema schema = saveSchema("First", category);
+        Inventory inventory = inventoryRepository.save(Inventory.builder().maxAvailableSpace(1000).build());
+        saveProducts(inventory, schema, 25, ProductStatus.FREE);
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        //***** <-- when: Report is built --> *****//
+        InventoryExpiryReportResponse report = writeReport(reportService::writeInventoryExpiryReport, InventoryExpiryReportResponse.class);
+
+        //***** <-- then: Inventory rows, depot expiry counts and the product stream only --> *****//
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(25, report.getDepotExpiryStats().get(ExpiryStatus.NOTEXPIRED));
+        assertEquals(25, report.getInventoryExpires().get(0).getStock().get(ExpiryStatus.NOTEXPIRED).size());
+    }
+
+    @Test
+    void shouldWriteOrderReportWithBoundedQueryCount() {
+        //***** <-- given: Two orders of the same user --> *****//
+        Category category = categoryRepository.save(Category.builder().name("Category 1").description("Test category").build());
+        ProductSchema schema = saveSchema("First", category);
+        Inventory inventory = inventoryRepository.save(Inventory.builder().maxAvailableSpace(1000).build());
+        saveProducts(inventory, schema, 5, ProductStatus.RESERVED);
+        List<Product> products = productRepository.findAll();
+        Order first = orderRepository.save(Order.builder().userId(1L).status(OrderStatus.PENDING).orderItems(new ArrayList<>(products.subList(0, 2))).build());
+        Order second = orderRepository.save(Order.builder().userId(1L).status(OrderStatus.COMPLETED).orderItems(new ArrayList<>(products.subList(2, 5))).build());
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        //***** <-- when: Report is written --> *****//
+        OrderReportResponse report = writeReport(reportService::writeOrderReport, OrderReportResponse.class);
+
+        //***** <-- then: Status counts, schema categories, the order stream and the item stream only --> *****//
+        assertTrue(statistics.getPrepareStatementCount() <= MAX_REPORT_QUERIES,
+                "Report used " + statistics.getPrepareStatementCount() + " queries");
+        assertEquals(2, report.getNumOfOrders());
+        assertEquals(1L, report.getOrderStats().get(OrderStatus.PENDING));
+        assertEquals(List.of(first.getId(), second.getId()), report.getUserOrders().stream().map(UserOrder::getOrderID).toList());
+        assertEquals(2, report.getUserOrders().get(0).getProducts().size());
+        assertEquals(3, report.getUserOrders().get(1).getProducts().size());
+    }
+
+    private <T> T writeReport(JsonStreamWriter.JsonWriting report, Class<T> responseType) {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+            report.write(generator);
+            generator.flush();
+            return objectMapper.readValue(outputStream.toByteArray(), responseType);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ProductSchema saveSchema(String name, Category category) {
+        return productSchemaRepository.save(ProductSchema.builder()
+                .name(name)
+                .storageSpaceNeeded(1)
+                .categories(new ArrayList<>(List.of(category)))
+                .build());
+    }
+
+    private void saveProducts(Inventory inventory, ProductSchema schema, int count, ProductStatus status) {
+        productRepository.saveAll(IntStream.range(0, count)
+                .mapToObj(i -> Product.builder()
+                        .schema(schema)
+                        .supplierId(1L)
+                        .inventory(inventory)
+                        .status(status)
+                        .expiryStatus(ExpiryStatus.NOTEXPIRED)
+                        .expiresAt(LocalDateTime.now().plusDays(5))
+                        .build())
+                .toList());
+    }
+}
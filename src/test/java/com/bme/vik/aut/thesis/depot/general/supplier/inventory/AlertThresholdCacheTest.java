@@ -0,0 +1,106 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.inventory;
+
+import com.bme.vik.aut.thesis.depot.general.alert.TimeService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AlertThresholdCacheTest {
+
+    private static final Long INVENTORY_ID = 1L;
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Mock
+    private TimeService timeService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+    private AlertThresholdCache alertThresholdCache;
+
+    @BeforeEach
+    void setUp() {
+        alertThresholdCache = new AlertThresholdCache(timeService, meterRegistry);
+        ReflectionTestUtils.setField(alertThresholdCache, "THRESHOLD_CACHE_TTL_MS", 60_000L);
+        ReflectionTestUtils.setField(alertThresholdCache, "THRESHOLD_CACHE_MAX_SIZE", 100);
+        alertThresholdCache.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void shouldLoadThresholdsOncePerTtl() {
+        //***** <-- given: Inventory with thresholds --> *****//
+        when(timeService.getCurrentTime()).thenReturn(NOW, NOW.plusSeconds(30), NOW.plusSeconds(61));
+
+        //***** <-- when: Thresholds are read three times, the last one after the TTL --> *****//
+        alertThresholdCache.get(INVENTORY_ID, loader(3));
+        alertThresholdCache.get(INVENTORY_ID, loader(3));
+        InventoryAlertThresholds thresholds = alertThresholdCache.get(INVENTORY_ID, loader(3));
+
+        //***** <-- then: Only the first and the expired read load the inventory --> *****//
+        assertEquals(new InventoryAlertThresholds(INVENTORY_ID, 3, 2), thresholds);
+        assertEquals(2, loads.get());
+        assertEquals(1.0, meterRegistry.get("depot.inventory.alert.thresholds.lookups").tag("result", "hit").counter().count());
+        assertEquals(2.0, meterRegistry.get("depot.inventory.alert.thresholds.lookups").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void shouldKeepThresholdsUntilUpdateCommits() {
+        //***** <-- given: Cached thresholds and an open transaction --> *****//
+        when(timeService.getCurrentTime()).thenReturn(NOW);
+        alertThresholdCache.get(INVENTORY_ID, loader(3));
+        TransactionSynchronizationManager.initSynchronization();
+
+        //***** <-- when: Inventory is updated and read again before commit --> *****//
+        alertThresholdCache.invalidateAfterCommit(INVENTORY_ID);
+        InventoryAlertThresholds beforeCommit = alertThresholdCache.get(INVENTORY_ID, loader(5));
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        InventoryAlertThresholds afterCommit = alertThresholdCache.get(INVENTORY_ID, loader(5));
+
+        //***** <-- then: Old thresholds are kept until commit, new ones are loaded after --> *****//
+        assertEquals(3, beforeCommit.lowStockAlertThreshold());
+        assertEquals(5, afterCommit.lowStockAlertThreshold());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void shouldEvictThresholdsRightAwayOutsideTransaction() {
+        //***** <-- given: Cached thresholds --> *****//
+        when(timeService.getCurrentTime()).thenReturn(NOW);
+        alertThresholdCache.get(INVENTORY_ID, loader(3));
+
+        //***** <-- when: Inventory is deleted without a transaction --> *****//
+        alertThresholdCache.invalidateAfterCommit(INVENTORY_ID);
+
+        //***** <-- then: Next read loads the inventory again --> *****//
+        alertThresholdCache.get(INVENTORY_ID, loader(3));
+        assertEquals(2, loads.get());
+    }
+
+    private Function<Long, InventoryAlertThresholds> loader(int lowStockAlertThreshold) {
+        return inventoryId -> {
+            loads.incrementAndGet();
+            return new InventoryAlertThresholds(inventoryId, lowStockAlertThreshold, 2);
+        };
+    }
+}
@@ -15,6 +15,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.ActiveProfiles;
@@ -44,6 +45,8 @@ class InventoryRepositoryTest {
     private ProductSchemaRepository productSchemaRepository;
     @Autowired
     private CategoryRepository categoryRepository;
+    @Autowired
+    private TestEntityManager entityManager;
 
     @BeforeEach
     void setUp() {
@@ -55,7 +58,6 @@ class InventoryRepositoryTest {
                 .expiryAlertThreshold(5)
                 .reorderThreshold(15)
                 .reorderQuantity(50)
-                .productIds(List.of(4L, 5L))
                 .build();
 
         Inventory inventory2 = Inventory.builder()
@@ -65,7 +67,6 @@ class InventoryRepositoryTest {
                 .expiryAlertThreshold(3)
                 .reorderThreshold(10)
                 .reorderQuantity(30)
-                .productIds(List.of(6L))
                 .build();
 
         inventoryRepository.saveAll(List.of(inventory1, inventory2));
@@ -76,6 +77,22 @@ class InventoryRepositoryTest {
         supplierRepository.deleteAll();
     }
 
+    private Product createProduct() {
+        TestUtil.CreateProductResponse createProductResponse = TestUtil.createProduct(
+                categoryRepository,
+                productSchemaRepository,
+                productRepository,
+                List.of(new TestUtil.CategoryUnit("Category 1", "Test category")),
+                "Test Product",
+                10,
+                "Test Product Description",
+                1L,
+                ProductStatus.FREE,
+                LocalDateTime.now().plusDays(5)
+        );
+        return createProductResponse.product();
+    }
+
     @Test
     void shouldReturnInventoryWhenFoundBySupplierId() {
         TestUtil.CreateSupplierResponse createSupplierResponse =
@@ -112,15 +129,18 @@ class InventoryRepositoryTest {
 
     @Test
     void shouldReturnInventoryWhenFoundByProductId() {
-        //***** <-- given: Existing product ID --> *****//
-        Long productId = 5L;
+        //***** <-- given: Product stocked in an inventory --> *****//
+        Product savedProduct = createProduct();
+        Inventory inventory = inventoryRepository.findAll().get(0);
+        inventory.addStock(List.of(savedProduct));
+        productRepository.save(savedProduct);
 
         //***** <-- when: Find inventory by product ID --> *****//
-        Optional<Inventory> foundInventory = inventoryRepository.findByProductId(productId);
+        Optional<Inventory> foundInventory = inventoryRepository.findByProductId(savedProduct.getId());
 
         //***** <-- then: Verify result --> *****//
         assertTrue(foundInventory.isPresent());
-        assertTrue(foundInventory.get().getProductIds().contains(productId));
+        assertEquals(inventory.getId(), foundInventory.get().getId());
     }
 
     @Test
@@ -137,20 +157,7 @@ class InventoryRepositoryTest {
 
     @Test
     void shouldReturnInventoriesWhenFoundByProductSchemaId() {
-        TestUtil.CreateProductResponse createProductResponse = TestUtil.createProduct(
-                categoryRepository,
-                productSchemaRepository,
-                productRepository,
-                List.of(new TestUtil.CategoryUnit("Category 1", "Test category")),
-                "Test Product",
-                10,
-                "Test Product Description",
-                1L,
-                ProductStatus.FREE,
-                LocalDateTime.now().plusDays(5)
-        );
-        Product savedProduct = createProductResponse.product();
-
+        Product savedProduct = createProduct();
 
         Inventory inventory = Inventory.builder()
                 .usedSpace(30)
@@ -159,17 +166,18 @@ class InventoryRepositoryTest {
                 .expiryAlertThreshold(3)
                 .reorderThreshold(10)
                 .reorderQuantity(30)
-                .productIds(List.of(savedProduct.getId()))
                 .build();
 
         inventoryRepository.save(inventory);
+        inventory.addStock(List.of(savedProduct));
+        productRepository.save(savedProduct);
 
         //***** <-- when: Find inventories by product schema ID --> *****//
         List<Inventory> inventories = inventoryRepository.findAllByProductSchemaId(savedProduct.getSchema().getId());
 
         //***** <-- then: Verify result --> *****//
         assertEquals(1, inventories.size());
-        assertTrue(inventories.get(0).getProductIds().contains(savedProduct.getId()));
+        assertEquals(inventory.getId(), inventories.get(0).getId());
     }
 
     @Test
@@ -183,4 +191,25 @@ class InventoryRepositoryTest {
         //***** <-- then: Verify result --> *****//
         assertEquals(0, inventories.size());
     }
+
+    @Test
+    void shouldChangeUsedSpaceRelativeToStoredValue() {
+        //***** <-- given: Inventory using 50 space, loaded by a transaction that then adds stock of 20 space --> *****//
+        Inventory inventory = inventoryRepository.save(Inventory.builder()
+                .usedSpace(50)
+                .maxAvailableSpace(100)
+                .build());
+        entityManager.flush();
+        inventory.setUsedSpace(70);
+
+        //***** <-- when: Another transaction released 10 space meanwhile, then the inventory is saved --> *****//
+        inventoryRepository.changeUsedSpace(inventory.getId(), -10);
+        inventoryRepository.changeUsedSpace(inventory.getId(), 20);
+        inventoryRepository.save(inventory);
+        entityManager.flush();
+        entityManager.clear();
+
+        //***** <-- then: Both changes add up, the saved inventory did not overwrite them --> *****//
+        assertEquals(60, inventoryRepository.findById(inventory.getId()).orElseThrow().getUsedSpace());
+    }
 }
@@ -11,30 +11,43 @@ import com.bme.vik.aut.thesis.depot.exception.user.UserSupplierNotFoundException
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchemaService;
 import com.bme.vik.aut.thesis.depot.general.alert.AlertService;
+import com.bme.vik.aut.thesis.depot.general.alert.InternalReorder;
 import com.bme.vik.aut.thesis.depot.general.report.ReportService;
 import com.bme.vik.aut.thesis.depot.general.report.dto.InventoryState;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductLot;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductLotRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.dto.CreateProductStockRequest;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.dto.ProductStockResponse;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.dto.RemoveProductStockRequest;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockEngine;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockLocation;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockHydrationMode;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockHydrationService;
+import com.bme.vik.aut.thesis.depot.general.supplier.stock.StockSnapshotService;
 import com.bme.vik.aut.thesis.depot.general.supplier.supplier.Supplier;
 import com.bme.vik.aut.thesis.depot.general.supplier.supplier.SupplierRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.supplier.dto.CreateSupplierRequest;
 import com.bme.vik.aut.thesis.depot.security.user.MyUser;
+import com.bme.vik.aut.thesis.depot.security.user.Role;
+import com.bme.vik.aut.thesis.depot.security.user.UserPrincipal;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -51,12 +64,21 @@ class InventoryServiceTest {
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private ProductLotRepository productLotRepository;
+
     @Mock
     private SupplierRepository supplierRepository;
 
     @Mock
     private AlertService alertService;
 
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private AlertThresholdCache alertThresholdCache;
+
     @InjectMocks
     private InventoryService inventoryService;
 
@@ -66,11 +88,21 @@ class InventoryServiceTest {
     @Mock
     private ProductSchemaService productSchemaService;
 
+    @Spy
+    private StockEngine stockEngine = new StockEngine(16);
+
+    @Mock
+    private StockSnapshotService stockSnapshotService;
+
+    @Mock
+    private StockHydrationService stockHydrationService;
+
     @BeforeEach
     void setUp() {
         ReflectionTestUtils.setField(inventoryService, "AVAILABLE_DEPOT_SPACE_FOR_NEW_INVENTORY", 10000);
         ReflectionTestUtils.setField(inventoryService, "MAX_AVAILABLE_INVENTORY_SPACE", 1000);
         ReflectionTestUtils.setField(inventoryService, "SHOULD_CHECK_EXPIRATION", true);
+        ReflectionTestUtils.setField(inventoryService, "STOCK_HYDRATION_MODE", StockHydrationMode.PER_PRODUCT);
         inventoryService.init();
     }
 
@@ -86,13 +118,13 @@ class InventoryServiceTest {
                 .schema(ProductSchema.builder().id(productSchemaId).build())
                 .build();
 
-        inventoryService.getStock().put(inventoryId, Map.of(productSchemaId, List.of(product)));
+        stockEngine.addProducts(inventoryId, productSchemaId, List.of(product));
 
         //***** <-- when: Clear the stock --> *****//
         inventoryService.clearStock();
 
         //***** <-- then: Verify stock is cleared --> *****//
-        assertTrue(inventoryService.getStock().isEmpty());
+        assertEquals(0, stockEngine.getInventoryCount());
     }
 
     @Test
@@ -113,7 +145,6 @@ class InventoryServiceTest {
 
         Inventory inventory = Inventory.builder()
                 .id(inventoryId)
-                .productIds(List.of(productId1, productId2))
                 .maxAvailableSpace(500)
                 .build();
 
@@ -123,6 +154,7 @@ class InventoryServiceTest {
                 .build();
 
         when(supplierRepository.findAll()).thenReturn(List.of(supplier));
+        when(productRepository.findIdsByInventoryId(inventoryId)).thenReturn(List.of(productId1, productId2));
         when(productRepository.findById(productId1)).thenReturn(Optional.of(product1));
         when(productRepository.findById(productId2)).thenReturn(Optional.of(product2));
 
@@ -130,19 +162,106 @@ class InventoryServiceTest {
         inventoryService.initializeStockForAllInventories();
 
         //***** <-- then: Verify stock is initialized correctly --> *****//
-        assertEquals(1, inventoryService.getStock().size());
-        assertTrue(inventoryService.getStock().containsKey(inventoryId));
+        assertEquals(1, stockEngine.getInventoryCount());
+        assertTrue(stockEngine.containsInventory(inventoryId));
+
+        assertEquals(2, stockEngine.getProducts(inventoryId).size());
+        assertTrue(stockEngine.containsBucket(inventoryId, productSchemaId1));
+        assertTrue(stockEngine.containsBucket(inventoryId, productSchemaId2));
+
+        assertEquals(1, stockEngine.getProducts(inventoryId, productSchemaId1).size());
+        assertEquals(productId1, stockEngine.getProducts(inventoryId, productSchemaId1).get(0).getId());
+
+        assertEquals(1, stockEngine.getProducts(inventoryId, productSchemaId2).size());
+        assertEquals(productId2, stockEngine.getProducts(inventoryId, productSchemaId2).get(0).getId());
+    }
+
+    @Test
+    void shouldBulkLoadStockWhenBulkHydrationIsConfigured() {
+        //***** <-- given: Bulk hydration mode and one supplier with stock --> *****//
+        ReflectionTestUtils.setField(inventoryService, "STOCK_HYDRATION_MODE", StockHydrationMode.BULK);
+
+        Inventory inventory = Inventory.builder()
+                .id(10L)
+                .maxAvailableSpace(500)
+                .build();
+        Supplier supplier = Supplier.builder().id(1L).inventory(inventory).build();
+
+        when(supplierRepository.findAll()).thenReturn(List.of(supplier));
+
+        //***** <-- when: Initialize stock for all inventories --> *****//
+        inventoryService.initializeStockForAllInventories();
+
+        //***** <-- then: Products are loaded in bulk, not one by one --> *****//
+        verify(stockHydrationService).hydrate(List.of(inventory));
+        verify(stockHydrationService).recordStartup(eq("BULK"), anyLong());
+        verify(stockSnapshotService).onStockRebuilt();
+        verify(productRepository, never()).findById(any());
+    }
+
+    @Test
+    void shouldNotLoadStockOnStartupWhenLazyHydrationIsConfigured() {
+        //***** <-- given: Lazy hydration mode and one supplier with stock --> *****//
+        ReflectionTestUtils.setField(inventoryService, "STOCK_HYDRATION_MODE", StockHydrationMode.LAZY);
+
+        Inventory inventory = Inventory.builder()
+                .id(10L)
+                .maxAvailableSpace(500)
+                .build();
+        Supplier supplier = Supplier.builder().id(1L).inventory(inventory).build();
+
+        when(supplierRepository.findAll()).thenReturn(List.of(supplier));
+
+        //***** <-- when: Initialize stock for all inventories --> *****//
+        inventoryService.initializeStockForAllInventories();
+
+        //***** <-- then: Nothing is loaded until the inventory is used --> *****//
+        assertEquals(0, stockEngine.getInventoryCount());
+        verify(stockSnapshotService, never()).restore(any());
+        verify(stockHydrationService, never()).hydrate(any());
+        verify(productRepository, never()).findById(any());
+    }
+
+    @Test
+    void shouldLoadInventoryStockOnFirstReservationWhenLazyHydrationIsConfigured() {
+        //***** <-- given: Lazy hydration mode, the hydration service loads the inventory --> *****//
+        ReflectionTestUtils.setField(inventoryService, "STOCK_HYDRATION_MODE", StockHydrationMode.LAZY);
+
+        Long inventoryId = 10L;
+        ProductSchema schema = ProductSchema.builder().id(200L).build();
+        Product product = Product.builder().id(100L).schema(schema).status(ProductStatus.FREE).build();
+        Inventory inventory = Inventory.builder().id(inventoryId).build();
+
+        doAnswer(invocation -> {
+            stockEngine.addProducts(inventoryId, schema.getId(), List.of(product));
+            return null;
+        }).when(stockHydrationService).ensureLoaded(inventory);
+
+        //***** <-- when: The inventory is used for the first time --> *****//
+        List<Product> reserved = inventoryService.reserveProdByProdSupplName(inventory, schema, 1);
+
+        //***** <-- then: Its stock was loaded before reserving --> *****//
+        assertEquals(List.of(product), reserved);
+        assertEquals(ProductStatus.RESERVED, product.getStatus());
+        verify(stockHydrationService).ensureLoaded(inventory);
+    }
 
-        Map<Long, List<Product>> inventoryStock = inventoryService.getStock().get(inventoryId);
-        assertEquals(2, inventoryStock.size());
-        assertTrue(inventoryStock.containsKey(productSchemaId1));
-        assertTrue(inventoryStock.containsKey(productSchemaId2));
+    @Test
+    void shouldUpdateExpiryStatusInDatabaseWhenInventoryIsNotLoaded() {
+        //***** <-- given: Lazy hydration mode and an idle inventory --> *****//
+        ReflectionTestUtils.setField(inventoryService, "STOCK_HYDRATION_MODE", StockHydrationMode.LAZY);
+
+        Product product = Product.builder().id(100L).expiryStatus(ExpiryStatus.NOTEXPIRED).build();
+        when(stockHydrationService.isLoaded(10L)).thenReturn(false);
+        when(productRepository.findById(100L)).thenReturn(Optional.of(product));
 
-        assertEquals(1, inventoryStock.get(productSchemaId1).size());
-        assertEquals(productId1, inventoryStock.get(productSchemaId1).get(0).getId());
+        //***** <-- when: Expiry check changes the status of one of its products --> *****//
+        inventoryService.changeProductExpirationStatus(10L, 200L, 100L, ExpiryStatus.SOONTOEXPIRE);
 
-        assertEquals(1, inventoryStock.get(productSchemaId2).size());
-        assertEquals(productId2, inventoryStock.get(productSchemaId2).get(0).getId());
+        //***** <-- then: The row is updated without loading the inventory --> *****//
+        assertEquals(ExpiryStatus.SOONTOEXPIRE, product.getExpiryStatus());
+        verify(productRepository).save(product);
+        verify(stockHydrationService, never()).ensureLoaded(any(Inventory.class));
     }
 
     @Test
@@ -495,7 +614,6 @@ class InventoryServiceTest {
                     .maxAvailableSpace(1000)
                     .supplier(Supplier.builder().id(1L).build())
                     .createdAt(LocalDateTime.now())
-                    .productIds(new ArrayList<>())
                     .usedSpace(500) // 500 space available
                     .build();
 
@@ -526,6 +644,11 @@ class InventoryServiceTest {
             when(inventoryRepository.findBySupplierId(1L)).thenReturn(Optional.of(inventory));
             when(productSchemaService.getProductSchemaById(101L)).thenReturn(productSchema);
             when(productRepository.saveAll(anyList())).thenReturn(productsToAdd);
+            when(productLotRepository.save(any(ProductLot.class))).thenAnswer(invocation -> {
+                ProductLot lot = invocation.getArgument(0);
+                lot.setId(7L);
+                return lot;
+            });
 
             //***** <-- when: addStock is called --> *****//
             ProductStockResponse response = inventoryService.addStock(user, request);
@@ -535,11 +658,11 @@ class InventoryServiceTest {
             assertEquals(101L, response.getProductSchemaId());
             assertEquals(requestedQuantity, response.getQuantity());
             assertEquals("Stock added successfully", response.getResponse());
+            assertEquals(7L, response.getLotId());
 
-            var stock = inventoryService.getStock();
-            assertTrue(stock.containsKey(1L));
-            assertTrue(stock.get(1L).containsKey(101L));
-            List<Product> storedProducts = stock.get(1L).get(101L);
+            assertTrue(stockEngine.containsInventory(1L));
+            assertTrue(stockEngine.containsBucket(1L, 101L));
+            List<Product> storedProducts = stockEngine.getProducts(1L, 101L);
             assertNotNull(storedProducts);
             assertEquals(requestedQuantity, storedProducts.size());
 
@@ -547,14 +670,88 @@ class InventoryServiceTest {
                 assertEquals(ProductStatus.FREE, product.getStatus());
                 assertEquals(1L, product.getSupplierId());
                 assertEquals(productSchema, product.getSchema());
+                assertEquals(7L, product.getLot().getId());
             }
 
+            verify(productLotRepository, times(1)).save(argThat(lot -> lot.getQuantity() == requestedQuantity));
             verify(productRepository, times(1)).saveAll(anyList());
             verify(inventoryRepository, times(1)).save(inventory);
 
             int expectedUsedSpace = 500 + (requestedQuantity * productSchema.getStorageSpaceNeeded());
             assertEquals(expectedUsedSpace, inventory.getUsedSpace());
         }
+
+        @Test
+        void shouldAddReorderStockInOneBatchSkippingReordersThatDoNotFit() {
+            //***** <-- given: Inventory with space for only the first of two reorders --> *****//
+            Inventory inventory = Inventory.builder()
+                    .id(1L)
+                    .maxAvailableSpace(1000)
+                    .usedSpace(900) // 100 space available
+                    .reorderQuantity(5)
+                    .supplier(Supplier.builder().id(1L).build())
+                    .createdAt(LocalDateTime.now())
+                    .build();
+
+            ProductSchema smallSchema = ProductSchema.builder().id(101L).storageSpaceNeeded(10).name("Product A").build();
+            ProductSchema largeSchema = ProductSchema.builder().id(102L).storageSpaceNeeded(20).name("Product B").build();
+            LocalDateTime expiresAt = LocalDateTime.now().plusDays(10);
+            InternalReorder fitting = new InternalReorder(smallSchema, "Product A description", expiresAt); // needs 50 space
+            InternalReorder tooLarge = new InternalReorder(largeSchema, "Product B description", expiresAt); // needs 100 space
+
+            when(inventoryRepository.findById(1L)).thenReturn(Optional.of(inventory));
+            when(productLotRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+            //***** <-- when: Reorders are applied --> *****//
+            List<InternalReorder> applied = inventoryService.addReorderStock(1L, List.of(fitting, tooLarge));
+
+            //***** <-- then: Only the fitting reorder is written, with one insert batch per table --> *****//
+            assertEquals(List.of(fitting), applied);
+            assertEquals(5, stockEngine.getProducts(1L, 101L).size());
+            assertFalse(stockEngine.containsBucket(1L, 102L));
+            assertEquals(950, inventory.getUsedSpace());
+            verify(inventoryRepository).changeUsedSpace(1L, 50);
+
+            verify(productLotRepository, times(1)).saveAll(argThat(lots -> ((List<?>) lots).size() == 1));
+            verify(productRepository, times(1)).saveAll(argThat(products -> ((List<?>) products).size() == 5));
+            verify(inventoryRepository, times(1)).save(inventory);
+            verify(productLotRepository, never()).save(any());
+        }
+
+        @Test
+        void shouldSkipReorderWithInvalidExpiryDateAndApplyTheRest() {
+            //***** <-- given: Three reorders, the second one expires before the inventory was created --> *****//
+            LocalDateTime createdAt = LocalDateTime.now();
+            Inventory inventory = Inventory.builder()
+                    .id(1L)
+                    .maxAvailableSpace(1000)
+                    .usedSpace(0)
+                    .reorderQuantity(2)
+                    .supplier(Supplier.builder().id(1L).build())
+                    .createdAt(createdAt)
+                    .build();
+
+            ProductSchema schemaA = ProductSchema.builder().id(101L).storageSpaceNeeded(10).name("Product A").build();
+            ProductSchema schemaB = ProductSchema.builder().id(102L).storageSpaceNeeded(10).name("Product B").build();
+            ProductSchema schemaC = ProductSchema.builder().id(103L).storageSpaceNeeded(10).name("Product C").build();
+            InternalReorder first = new InternalReorder(schemaA, "Product A description", createdAt.plusDays(10));
+            InternalReorder invalid = new InternalReorder(schemaB, "Product B description", createdAt.minusDays(1));
+            InternalReorder last = new InternalReorder(schemaC, "Product C description", createdAt.plusDays(10));
+
+            when(inventoryRepository.findById(1L)).thenReturn(Optional.of(inventory));
+            when(productLotRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+            //***** <-- when: Reorders are applied --> *****//
+            List<InternalReorder> applied = inventoryService.addReorderStock(1L, List.of(first, invalid, last));
+
+            //***** <-- then: The invalid reorder is skipped, the others are written --> *****//
+            assertEquals(List.of(first, last), applied);
+            assertEquals(2, stockEngine.getProducts(1L, 101L).size());
+            assertFalse(stockEngine.containsBucket(1L, 102L));
+            assertEquals(2, stockEngine.getProducts(1L, 103L).size());
+            assertEquals(40, inventory.getUsedSpace());
+            verify(productLotRepository, times(1)).saveAll(argThat(lots -> ((List<?>) lots).size() == 2));
+        }
     }
 
     @Nested
@@ -665,8 +862,7 @@ class InventoryServiceTest {
                             .build())
                     .toList();
 
-            var stock = Map.of(1L, Map.of(101L, products));
-            ReflectionTestUtils.setField(inventoryService, "stock", stock);
+            stockEngine.addProducts(1L, 101L, products);
 
             RemoveProductStockRequest request = RemoveProductStockRequest.builder()
                     .productSchemaId(101L)
@@ -705,7 +901,6 @@ class InventoryServiceTest {
 
             Inventory inventory = Inventory.builder()
                     .id(1L)
-                    .productIds(new ArrayList<>(List.of(1L,2L,3L)))
                     .build();
 
             ProductSchema productSchema = ProductSchema.builder()
@@ -723,9 +918,7 @@ class InventoryServiceTest {
                             .build())
                     .toList();
 
-            var stock = new HashMap<Long, Map<Long, List<Product>>>();
-            stock.put(1L, new HashMap<>(Map.of(101L, new ArrayList<>(products))));
-            ReflectionTestUtils.setField(inventoryService, "stock", stock);
+            stockEngine.addProducts(1L, 101L, products);
 
             RemoveProductStockRequest request = RemoveProductStockRequest.builder()
                     .productSchemaId(101L)
@@ -747,8 +940,7 @@ class InventoryServiceTest {
             verify(productRepository, times(1)).deleteAll(anyList());
             verify(inventoryRepository, times(1)).save(inventory);
 
-            var remainingStock = inventoryService.getStock().get(1L).get(101L);
-            assertNull(remainingStock); // because all stock is removed
+            assertFalse(stockEngine.containsBucket(1L, 101L)); // because all stock is removed
         }
     }
 
@@ -764,8 +956,6 @@ class InventoryServiceTest {
                 .id(1L)
                 .build();
 
-        var stock = new HashMap<Long, Map<Long, List<Product>>>(); // No entry for inventory ID
-        ReflectionTestUtils.setField(inventoryService, "stock", stock);
 
         when(inventoryRepository.findBySupplierId(1L)).thenReturn(Optional.of(inventory));
 
@@ -796,9 +986,7 @@ class InventoryServiceTest {
                         .build())
                 .toList();
 
-        var stock = new HashMap<Long, Map<Long, List<Product>>>();
-        stock.put(1L, Map.of(101L, products)); // Inventory ID exists in stock
-        ReflectionTestUtils.setField(inventoryService, "stock", stock);
+        stockEngine.addProducts(1L, 101L, products);
 
         when(inventoryRepository.findBySupplierId(1L)).thenReturn(Optional.of(inventory));
 
@@ -811,6 +999,27 @@ class InventoryServiceTest {
         assertTrue(allProducts.containsAll(products));
     }
 
+    @Test
+    void shouldReturnAllProductsWithoutQueryWhenPrincipalKnowsItsInventory() {
+        //***** <-- given: Principal of a supplier built from its token, inventory in stock --> *****//
+        MyUser user = new UserPrincipal(1L, "supplier_user", Role.SUPPLIER, 0, 1L, 2L).toUser();
+
+        List<Product> products = IntStream.range(0, 3)
+                .mapToObj(i -> Product.builder()
+                        .id((long) i)
+                        .status(ProductStatus.FREE)
+                        .build())
+                .toList();
+        stockEngine.addProducts(2L, 101L, products);
+
+        //***** <-- when: getAllProductsInInventoryForUser is called --> *****//
+        List<Product> allProducts = inventoryService.getAllProductsInInventoryForUser(user);
+
+        //***** <-- then: Products come from the stock engine, the inventory is not looked up --> *****//
+        assertEquals(3, allProducts.size());
+        verifyNoInteractions(inventoryRepository, supplierRepository);
+    }
+
     @Test
     void shouldReserveOneProductSuccessfully() {
         //***** <-- given: Inventory and product setup --> *****//
@@ -829,9 +1038,7 @@ class InventoryServiceTest {
                 .build();
 
         // Simulating the stock with the product
-        var stock = new HashMap<Long, Map<Long, List<Product>>>();
-        stock.put(1L, Map.of(101L, new ArrayList<>(List.of(product))));
-        ReflectionTestUtils.setField(inventoryService, "stock", stock);
+        stockEngine.addProducts(1L, 101L, List.of(product));
 
         // Mock repository interaction to save the updated product status
         doAnswer(invocation -> {
@@ -844,7 +1051,7 @@ class InventoryServiceTest {
         inventoryService.reserveOneProduct(inventory, product);
 
         //***** <-- then: Verify product is reserved successfully --> *****//
-        var updatedProducts = inventoryService.getStock().get(1L).get(101L);
+        var updatedProducts = stockEngine.getProducts(1L, 101L);
         assertNotNull(updatedProducts);
         assertEquals(1, updatedProducts.size());
         assertEquals(ProductStatus.RESERVED, updatedProducts.get(0).getStatus());
@@ -886,19 +1093,10 @@ class InventoryServiceTest {
                 .expiresAt(now.plusDays(10)) // Expiring in 10 days
                 .build();
 
-        var stock = new HashMap<Long, Map<Long, List<Product>>>();
-        stock.put(1L, Map.of(101L, new ArrayList<>(List.of(product1, product2, product3))));
-        ReflectionTestUtils.setField(inventoryService, "stock", stock);
+        stockEngine.addProducts(1L, 101L, List.of(product1, product2, product3));
 
         int quantityToReserve = 2;
 
-        // Mock repository interaction for updating product status
-        doAnswer(invocation -> {
-            Product updatedProduct = invocation.getArgument(0);
-            updatedProduct.setStatus(ProductStatus.RESERVED);
-            return updatedProduct;
-        }).when(productRepository).save(any(Product.class));
-
         //***** <-- when: reserveProdByProdSupplName is called --> *****//
         List<Product> reservedProducts = inventoryService.reserveProdByProdSupplName(inventory, schema, quantityToReserve);
 
@@ -911,10 +1109,14 @@ class InventoryServiceTest {
         assertEquals(1001L, reservedProducts.get(1).getId()); // Next closest expiry (5 days)
 
         // Verify their status is updated in stock
-        var updatedProducts = inventoryService.getStock().get(1L).get(101L);
+        var updatedProducts = stockEngine.getProducts(1L, 101L);
         assertNotNull(updatedProducts);
         assertEquals(ProductStatus.RESERVED, updatedProducts.get(0).getStatus());
         assertEquals(ProductStatus.RESERVED, updatedProducts.get(1).getStatus());
+
+        // Both reservations are written with one statement
+        verify(productRepository, times(1)).updateStatus(eq(List.of(1002L, 1001L)), eq(ProductStatus.RESERVED), any(LocalDateTime.class));
+        verify(productRepository, never()).save(any(Product.class));
     }
 
     @Test
@@ -951,19 +1153,10 @@ class InventoryServiceTest {
                 .status(ProductStatus.RESERVED) // Already reserved
                 .build();
 
-        var stock = new HashMap<Long, Map<Long, List<Product>>>();
-        stock.put(1L, Map.of(101L, new ArrayList<>(List.of(product1, product2, product3))));
-        ReflectionTestUtils.setField(inventoryService, "stock", stock);
+        stockEngine.addProducts(1L, 101L, List.of(product1, product2, product3));
 
         int requestedQuantity = 2;
 
-        // Mock repository interaction for updating product status
-        doAnswer(invocation -> {
-            Product updatedProduct = invocation.getArgument(0);
-            updatedProduct.setStatus(ProductStatus.RESERVED);
-            return updatedProduct;
-        }).when(productRepository).save(any(Product.class));
-
         //***** <-- when: reserveProdByProdName is called --> *****//
         List<Product> reservedProducts = inventoryService.reserveProdByProdName(inventory, schema, requestedQuantity);
 
@@ -976,7 +1169,7 @@ class InventoryServiceTest {
         assertEquals(1001L, reservedProducts.get(1).getId()); // Next closest expiry (5 days)
 
         // Verify their status is updated in stock
-        var updatedProducts = inventoryService.getStock().get(1L).get(101L);
+        var updatedProducts = stockEngine.getProducts(1L, 101L);
         assertNotNull(updatedProducts);
 
         // Reserved products should be updated
@@ -985,6 +1178,7 @@ class InventoryServiceTest {
 
         // Product3 should remain unchanged
         assertEquals(ProductStatus.RESERVED, updatedProducts.get(2).getStatus());
+        verify(productRepository, times(1)).updateStatus(eq(List.of(1002L, 1001L)), eq(ProductStatus.RESERVED), any(LocalDateTime.class));
     }
 
     @Test
@@ -1010,30 +1204,21 @@ class InventoryServiceTest {
 
         List<Product> products = List.of(product1, product2);
 
-        Inventory inventory = Inventory.builder()
-                .id(1L)
-                .build();
-
-        var stock = new HashMap<Long, Map<Long, List<Product>>>();
-        stock.put(1L, Map.of(101L, new ArrayList<>(List.of(product1, product2))));
-        ReflectionTestUtils.setField(inventoryService, "stock", stock);
-
-        when(inventoryRepository.findBySupplierId(1L)).thenReturn(Optional.of(inventory));
-
-        // Mock repository interaction for saving product status updates
-        doAnswer(invocation -> {
-            Product updatedProduct = invocation.getArgument(0);
-            updatedProduct.setStatus(ProductStatus.FREE);
-            return updatedProduct;
-        }).when(productRepository).save(any(Product.class));
+        stockEngine.addProducts(1L, 101L, List.of(product1, product2));
 
         //***** <-- when: freeProducts is called --> *****//
         inventoryService.freeProducts(products);
 
         //***** <-- then: Verify product statuses are updated --> *****//
-        var updatedProducts = inventoryService.getStock().get(1L).get(101L);
+        var updatedProducts = stockEngine.getProducts(1L, 101L);
         assertNotNull(updatedProducts);
         updatedProducts.forEach(product -> assertEquals(ProductStatus.FREE, product.getStatus()));
+        assertEquals(2, stockEngine.getFreeCount(1L, 101L));
+
+        // Products are located through the stock engine, not the inventory repository
+        verify(inventoryRepository, never()).findBySupplierId(any());
+        verify(productRepository, times(1)).updateStatus(eq(List.of(1001L, 1002L)), eq(ProductStatus.FREE), any(LocalDateTime.class));
+        verify(productRepository, never()).save(any(Product.class));
     }
 
     @Test
@@ -1059,36 +1244,23 @@ class InventoryServiceTest {
 
         List<Product> orderProducts = List.of(product1, product2);
 
-        Inventory inventory = Inventory.builder()
-                .id(1L)
-                .build();
-
-        var stock = new HashMap<Long, Map<Long, List<Product>>>();
-        stock.put(1L, Map.of(101L, new ArrayList<>(List.of(product1, product2))));
-        ReflectionTestUtils.setField(inventoryService, "stock", stock);
-
-        when(inventoryRepository.findBySupplierId(1L)).thenReturn(Optional.of(inventory));
-
-        // Mock repository interaction for saving product status updates
-        doAnswer(invocation -> {
-            Product updatedProduct = invocation.getArgument(0);
-            updatedProduct.setStatus(ProductStatus.REMOVED);
-            return updatedProduct;
-        }).when(productRepository).save(any(Product.class));
+        stockEngine.addProducts(1L, 101L, List.of(product1, product2));
 
         // Mock alertService interaction
-        doNothing().when(alertService).checkStockForReorder(anyMap());
+        doNothing().when(alertService).checkStockForReorder(anyCollection());
 
         //***** <-- when: removeCompletedOrderProducts is called --> *****//
         inventoryService.removeCompletedOrderProducts(orderProducts);
 
         //***** <-- then: Verify product statuses are updated --> *****//
-        var updatedProducts = inventoryService.getStock().get(1L).get(101L);
+        var updatedProducts = stockEngine.getProducts(1L, 101L);
         assertNotNull(updatedProducts);
         updatedProducts.forEach(product -> assertEquals(ProductStatus.REMOVED, product.getStatus()));
+        verify(inventoryRepository, never()).findBySupplierId(any());
+        verify(productRepository, times(1)).updateStatus(eq(List.of(1001L, 1002L)), eq(ProductStatus.REMOVED), any(LocalDateTime.class));
 
-        // Verify alertService interaction
-        verify(alertService, times(1)).checkStockForReorder(stock);
+        // Verify alertService interaction, only the bucket of the order is checked
+        verify(alertService, times(1)).checkStockForReorder(Set.of(new StockLocation(1L, 101L)));
     }
 
     @Test
@@ -1108,9 +1280,7 @@ class InventoryServiceTest {
                 .expiryStatus(ExpiryStatus.NOTEXPIRED)
                 .build();
 
-        var stock = new HashMap<Long, Map<Long, List<Product>>>();
-        stock.put(1L, Map.of(101L, new ArrayList<>(List.of(product))));
-        ReflectionTestUtils.setField(inventoryService, "stock", stock);
+        stockEngine.addProducts(1L, 101L, List.of(product));
 
         // Mock repository interaction for saving product status updates
         doAnswer(invocation -> invocation.<Product>getArgument(0)).when(productRepository).save(any(Product.class));
@@ -1119,7 +1289,7 @@ class InventoryServiceTest {
         inventoryService.changeProductExpirationStatus(1L, 101L, 1001L, ExpiryStatus.SOONTOEXPIRE);
 
         //***** <-- then: Verify expiry status is updated --> *****//
-        var updatedProduct = inventoryService.getStock().get(1L).get(101L).get(0);
+        var updatedProduct = stockEngine.getProducts(1L, 101L).get(0);
         assertNotNull(updatedProduct);
         assertEquals(ExpiryStatus.SOONTOEXPIRE, updatedProduct.getExpiryStatus());
 
@@ -1130,6 +1300,74 @@ class InventoryServiceTest {
         assertEquals(ExpiryStatus.EXPIRED, updatedProduct.getExpiryStatus());
     }
 
+    @Test
+    void shouldEvictAlertThresholdsOnceInventoryUpdateCommits() {
+        //***** <-- given: Inventory with thresholds --> *****//
+        Inventory inventory = Inventory.builder()
+                .id(1L)
+                .lowStockAlertThreshold(3)
+                .reorderThreshold(2)
+                .build();
+
+        //***** <-- when: Inventory is updated --> *****//
+        inventoryService.updateInventory(inventory, CreateSupplierRequest.builder()
+                .lowStockAlertThreshold(5)
+                .expiryAlertThreshold(7)
+                .reorderThreshold(4)
+                .reorderQuantity(10)
+                .build());
+
+        //***** <-- then: Cached thresholds are evicted after commit --> *****//
+        assertEquals(5, inventory.getLowStockAlertThreshold());
+        verify(alertThresholdCache, times(1)).invalidateAfterCommit(1L);
+    }
+
+    @Test
+    void shouldLoadAlertThresholdsOfInventoryMissingFromCache() {
+        //***** <-- given: Inventory with thresholds, not cached yet --> *****//
+        Inventory inventory = Inventory.builder()
+                .id(1L)
+                .lowStockAlertThreshold(3)
+                .reorderThreshold(2)
+                .build();
+        when(inventoryRepository.findById(1L)).thenReturn(Optional.of(inventory));
+        when(alertThresholdCache.get(eq(1L), any())).thenAnswer(invocation ->
+                invocation.<Function<Long, InventoryAlertThresholds>>getArgument(1).apply(1L));
+
+        //***** <-- when: Thresholds are read --> *****//
+        InventoryAlertThresholds thresholds = inventoryService.getAlertThresholds(1L);
+
+        //***** <-- then: Thresholds of the inventory are loaded --> *****//
+        assertEquals(new InventoryAlertThresholds(1L, 3, 2), thresholds);
+    }
+
+    @Test
+    void shouldChangeExpirationStatusOfManyProductsWithBulkUpdate() {
+        //***** <-- given: Two products of an inventory in stock --> *****//
+        ProductSchema schema = ProductSchema.builder()
+                .id(101L)
+                .build();
+
+        Product first = Product.builder().id(1001L).schema(schema).expiryStatus(ExpiryStatus.NOTEXPIRED).build();
+        Product second = Product.builder().id(1002L).schema(schema).expiryStatus(ExpiryStatus.NOTEXPIRED).build();
+        stockEngine.addProducts(1L, 101L, List.of(first, second));
+
+        // copies as read by the expiry check query
+        Product firstRow = Product.builder().id(1001L).schema(schema).expiryStatus(ExpiryStatus.NOTEXPIRED).build();
+        Product secondRow = Product.builder().id(1002L).schema(schema).expiryStatus(ExpiryStatus.NOTEXPIRED).build();
+
+        //***** <-- when: Both are moved to EXPIRED --> *****//
+        inventoryService.changeProductExpirationStatuses(1L, List.of(firstRow, secondRow), ExpiryStatus.EXPIRED);
+
+        //***** <-- then: Stock, the given products and the database are updated --> *****//
+        assertEquals(ExpiryStatus.EXPIRED, first.getExpiryStatus());
+        assertEquals(ExpiryStatus.EXPIRED, second.getExpiryStatus());
+        assertEquals(ExpiryStatus.EXPIRED, firstRow.getExpiryStatus());
+        assertEquals(2, stockEngine.getExpiryStatusCount(1L, 101L, ExpiryStatus.EXPIRED));
+        verify(productRepository, times(1)).updateExpiryStatus(eq(List.of(1001L, 1002L)), eq(ExpiryStatus.EXPIRED), any(LocalDateTime.class));
+        verify(productRepository, never()).save(any(Product.class));
+    }
+
     @Test
     void shouldChangeProductStatusSuccessfully() {
         //***** <-- given: Inventory, schema, and product setup --> *****//
@@ -1147,18 +1385,13 @@ class InventoryServiceTest {
                 .status(ProductStatus.FREE)
                 .build();
 
-        var stock = new HashMap<Long, Map<Long, List<Product>>>();
-        stock.put(1L, Map.of(101L, new ArrayList<>(List.of(product))));
-        ReflectionTestUtils.setField(inventoryService, "stock", stock);
-
-        // Mock repository interaction for saving product status updates
-        doAnswer(invocation -> invocation.<Product>getArgument(0)).when(productRepository).save(any(Product.class));
+        stockEngine.addProducts(1L, 101L, List.of(product));
 
         //***** <-- when: changeProductStatus is called with RESERVED --> *****//
         inventoryService.changeProductStatus(1L, 101L, 1001L, ProductStatus.RESERVED);
 
         //***** <-- then: Verify product status is updated --> *****//
-        var updatedProduct = inventoryService.getStock().get(1L).get(101L).get(0);
+        var updatedProduct = stockEngine.getProducts(1L, 101L).get(0);
         assertNotNull(updatedProduct);
         assertEquals(ProductStatus.RESERVED, updatedProduct.getStatus());
 
@@ -1167,6 +1400,7 @@ class InventoryServiceTest {
 
         //***** <-- then: Verify product status is updated again --> *****//
         assertEquals(ProductStatus.REMOVED, updatedProduct.getStatus());
+        verify(productRepository, times(1)).updateStatus(eq(List.of(1001L)), eq(ProductStatus.REMOVED), any(LocalDateTime.class));
     }
 
     @Test
@@ -1204,12 +1438,8 @@ class InventoryServiceTest {
                 .status(ProductStatus.FREE) // Different schema, not counted
                 .build();
 
-        var stock = new HashMap<Long, Map<Long, List<Product>>>();
-        stock.put(1L, Map.of(
-                101L, List.of(product1, product2, product3),
-                102L, List.of(product4)
-        ));
-        ReflectionTestUtils.setField(inventoryService, "stock", stock);
+        stockEngine.addProducts(1L, 101L, List.of(product1, product2, product3));
+        stockEngine.addProducts(1L, 102L, List.of(product4));
 
         //***** <-- when: getCurrentStockBySchemaId is called for schema1 --> *****//
         int availableStockSchema1 = inventoryService.getCurrentStockBySchemaId(101L);
@@ -1236,12 +1466,10 @@ class InventoryServiceTest {
                 .id(101L)
                 .build();
 
-        var stock = new HashMap<Long, Map<Long, List<Product>>>();
-        stock.put(1L, Map.of(101L, List.of(
+        stockEngine.addProducts(1L, 101L, List.of(
                 Product.builder().status(ProductStatus.FREE).build(),
                 Product.builder().status(ProductStatus.FREE).build() // Only 2 products available
-        )));
-        ReflectionTestUtils.setField(inventoryService, "stock", stock);
+        ));
 
         //***** <-- when: needsReorderForStock is called --> *****//
         boolean result = inventoryService.needsReorderForStock(inventory, 101L);
@@ -1262,11 +1490,9 @@ class InventoryServiceTest {
                 .id(101L)
                 .build();
 
-        var stock = new HashMap<Long, Map<Long, List<Product>>>();
-        stock.put(1L, Map.of(101L, List.of(
+        stockEngine.addProducts(1L, 101L, List.of(
                 Product.builder().status(ProductStatus.FREE).build() // Only 1 product available
-        )));
-        ReflectionTestUtils.setField(inventoryService, "stock", stock);
+        ));
 
         //***** <-- when: lowOnStock is called --> *****//
         boolean result = inventoryService.lowOnStock(inventory, 101L);
@@ -1323,9 +1549,7 @@ class InventoryServiceTest {
                 .expiresAt(now.plusDays(2)) // Expiring in 2 days
                 .build();
 
-        var stock = new HashMap<Long, Map<Long, List<Product>>>();
-        stock.put(1L, Map.of(101L, List.of(product1, product2)));
-        ReflectionTestUtils.setField(inventoryService, "stock", stock);
+        stockEngine.addProducts(1L, 101L, List.of(product1, product2));
 
         //***** <-- when: getSoonestExpiryProduct is called --> *****//
         Product result = inventoryService.getSoonestExpiryProduct(inventory, schema);
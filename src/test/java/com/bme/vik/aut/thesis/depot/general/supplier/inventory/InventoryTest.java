@@ -6,7 +6,6 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -35,7 +34,6 @@ class InventoryTest {
         Inventory inventory = Inventory.builder()
                 .usedSpace(0)
                 .maxAvailableSpace(100)
-                .productIds(new ArrayList<>())
                 .build();
 
         List<Product> productsToAdd = List.of(product1, product2);
@@ -44,9 +42,8 @@ class InventoryTest {
         inventory.addStock(productsToAdd);
 
         //***** <-- then: Verify inventory state --> *****//
-        assertEquals(2, inventory.getProductIds().size());
-        assertTrue(inventory.getProductIds().contains(productId1));
-        assertTrue(inventory.getProductIds().contains(productId2));
+        assertSame(inventory, product1.getInventory());
+        assertSame(inventory, product2.getInventory());
         assertEquals(storageSpace1 + storageSpace2, inventory.getUsedSpace());
     }
 
@@ -71,8 +68,9 @@ class InventoryTest {
         Inventory inventory = Inventory.builder()
                 .usedSpace(storageSpace1 + storageSpace2)
                 .maxAvailableSpace(100)
-                .productIds(new ArrayList<>(List.of(productId1, productId2)))
                 .build();
+        inventory.addStock(List.of(product1, product2));
+        inventory.setUsedSpace(storageSpace1 + storageSpace2);
 
         List<Product> productsToRemove = List.of(product1);
 
@@ -80,9 +78,8 @@ class InventoryTest {
         inventory.removeStock(productsToRemove);
 
         //***** <-- then: Verify inventory state --> *****//
-        assertEquals(1, inventory.getProductIds().size());
-        assertFalse(inventory.getProductIds().contains(productId1));
-        assertTrue(inventory.getProductIds().contains(productId2));
+        assertNull(product1.getInventory());
+        assertSame(inventory, product2.getInventory());
         assertEquals(storageSpace2, inventory.getUsedSpace());
     }
 
@@ -0,0 +1,259 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarStockEngineTest {
+
+    private static final Long INVENTORY_ID = 1L;
+    private static final Long SCHEMA_ID = 101L;
+
+    // stands in for the product table, returns fresh copies like a new persistence context would
+    private final Map<Long, Product> database = new HashMap<>();
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    private StockEngine stockEngine;
+
+    @BeforeEach
+    void setUp() {
+        stockEngine = new StockEngine(16, StockStoreType.COLUMNAR, productIds -> {
+            loadCount.incrementAndGet();
+            return productIds.stream()
+                    .map(database::get)
+                    .filter(Objects::nonNull)
+                    .map(product -> Product.builder()
+                            .id(product.getId())
+                            .schema(product.getSchema())
+                            .status(product.getStatus())
+                            .expiryStatus(product.getExpiryStatus())
+                            .expiresAt(product.getExpiresAt())
+                            .build())
+                    .collect(Collectors.toList());
+        });
+    }
+
+    private List<Product> createFreeProducts(long firstId, int count) {
+        LocalDateTime now = LocalDateTime.now();
+        ProductSchema schema = ProductSchema.builder().id(SCHEMA_ID).build();
+        List<Product> products = LongStream.range(firstId, firstId + count)
+                .mapToObj(id -> Product.builder()
+                        .id(id)
+                        .schema(schema)
+                        .status(ProductStatus.FREE)
+                        .expiryStatus(ExpiryStatus.NOTEXPIRED)
+                        .expiresAt(now.plusDays(id))
+                        .build())
+                .collect(Collectors.toList());
+        products.forEach(product -> database.put(product.getId(), product));
+        return products;
+    }
+
+    @Test
+    void shouldCountWithoutLoadingEntities() {
+        //***** <-- given: Free products in a columnar bucket --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 100));
+
+        //***** <-- when: Availability and reservation checks run --> *****//
+        int freeCount = stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID);
+        boolean reserved = stockEngine.compareAndSetStatus(INVENTORY_ID, SCHEMA_ID, 50L, ProductStatus.FREE, ProductStatus.RESERVED);
+
+        //***** <-- then: No entity had to be loaded --> *****//
+        assertEquals(100, freeCount);
+        assertTrue(reserved);
+        assertEquals(99, stockEngine.getFreeCountBySchemaId(SCHEMA_ID));
+        assertEquals(0, loadCount.get());
+    }
+
+    @Test
+    void shouldChangeStatusOfManyProductsWithoutLoadingEntities() {
+        //***** <-- given: Reserved products in a columnar bucket --> *****//
+        List<Product> products = createFreeProducts(1, 3);
+        products.forEach(product -> product.setStatus(ProductStatus.RESERVED));
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, products);
+
+        //***** <-- when: Two of them are freed at once --> *****//
+        List<Long> changed = stockEngine.changeStatuses(List.of(3L, 1L), ProductStatus.FREE);
+
+        //***** <-- then: They are back in expiry order, nothing was loaded --> *****//
+        assertEquals(List.of(3L, 1L), changed);
+        assertEquals(2, stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+        assertEquals(0, loadCount.get());
+        assertEquals(1L, stockEngine.getSoonestExpiryFreeProduct(INVENTORY_ID, SCHEMA_ID).orElseThrow().getId());
+    }
+
+    @Test
+    void shouldChangeExpiryStatusOfManyProductsWithoutLoadingEntities() {
+        //***** <-- given: Products of two schemas in columnar buckets --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 3));
+        Product otherSchemaProduct = Product.builder().id(10L).status(ProductStatus.FREE).expiryStatus(ExpiryStatus.NOTEXPIRED).build();
+        stockEngine.addProducts(INVENTORY_ID, 102L, List.of(otherSchemaProduct));
+
+        //***** <-- when: Products of both schemas and an unknown one expire at once --> *****//
+        List<Long> changed = stockEngine.changeExpiryStatuses(List.of(1L, 10L, 3L, 99L), ExpiryStatus.EXPIRED);
+
+        //***** <-- then: Each bucket counts its expired products, nothing was loaded --> *****//
+        assertEquals(Set.of(1L, 3L, 10L), Set.copyOf(changed));
+        assertEquals(2, stockEngine.getExpiryStatusCount(INVENTORY_ID, SCHEMA_ID, ExpiryStatus.EXPIRED));
+        assertEquals(1, stockEngine.getExpiryStatusCount(INVENTORY_ID, SCHEMA_ID, ExpiryStatus.NOTEXPIRED));
+        assertEquals(1, stockEngine.getExpiryStatusCount(INVENTORY_ID, 102L, ExpiryStatus.EXPIRED));
+        assertEquals(0, loadCount.get());
+        assertEquals(0, stockEngine.recount());
+    }
+
+    @Test
+    void shouldReserveProductsClosestToExpiryAndLoadThemWithInMemoryStatus() {
+        //***** <-- given: Products added in reverse expiry order --> *****//
+        List<Product> products = createFreeProducts(1, 5);
+        Collections.reverse(products);
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, products);
+
+        //***** <-- when: Two products are reserved --> *****//
+        List<Product> reserved = stockEngine.reserveFreeProducts(INVENTORY_ID, SCHEMA_ID, 2);
+
+        //***** <-- then: The two soonest expiring are loaded, already carrying the new status --> *****//
+        assertEquals(List.of(1L, 2L), reserved.stream().map(Product::getId).toList());
+        reserved.forEach(product -> assertEquals(ProductStatus.RESERVED, product.getStatus()));
+        assertEquals(3, stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+        assertEquals(3L, stockEngine.getSoonestExpiryFreeProduct(INVENTORY_ID, SCHEMA_ID).orElseThrow().getId());
+    }
+
+    @Test
+    void shouldPutFreedProductBackIntoExpiryOrder() {
+        //***** <-- given: Three soonest expiring products are reserved --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 4));
+        stockEngine.reserveFreeProducts(INVENTORY_ID, SCHEMA_ID, 3);
+
+        //***** <-- when: The second one is freed again --> *****//
+        Optional<Product> freed = stockEngine.changeStatus(2L, ProductStatus.FREE);
+
+        //***** <-- then: It is handed out before the later expiring one --> *****//
+        assertEquals(ProductStatus.FREE, freed.orElseThrow().getStatus());
+        List<Product> reserved = stockEngine.reserveFreeProducts(INVENTORY_ID, SCHEMA_ID, 2);
+        assertEquals(List.of(2L, 4L), reserved.stream().map(Product::getId).toList());
+    }
+
+    @Test
+    void shouldRemoveFreeProductsAndKeepRemainingSlotsReachable() {
+        //***** <-- given: Bucket with 6 free products --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 6));
+        stockEngine.changeExpiryStatus(INVENTORY_ID, SCHEMA_ID, 6L, ExpiryStatus.SOONTOEXPIRE);
+
+        //***** <-- when: The 3 soonest expiring are removed --> *****//
+        List<Product> removed = stockEngine.removeFreeProducts(INVENTORY_ID, SCHEMA_ID, 3);
+
+        //***** <-- then: The rest can still be found by ID after slots moved --> *****//
+        assertEquals(List.of(1L, 2L, 3L), removed.stream().map(Product::getId).toList());
+        assertTrue(stockEngine.locate(1L).isEmpty());
+        assertEquals(Set.of(4L, 5L, 6L), stockEngine.getProducts(INVENTORY_ID, SCHEMA_ID).stream().map(Product::getId).collect(Collectors.toSet()));
+        assertEquals(ExpiryStatus.SOONTOEXPIRE, stockEngine.changeStatus(6L, ProductStatus.RESERVED).orElseThrow().getExpiryStatus());
+        assertEquals(4L, stockEngine.getSoonestExpiryFreeProduct(INVENTORY_ID, SCHEMA_ID).orElseThrow().getId());
+        assertEquals(2, stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+    }
+
+    @Test
+    void shouldCompactRemovedProducts() {
+        //***** <-- given: Two of four products are removed --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 4));
+        stockEngine.changeStatus(1L, ProductStatus.REMOVED);
+        stockEngine.changeStatus(3L, ProductStatus.REMOVED);
+
+        //***** <-- when: Compaction runs --> *****//
+        Map<Long, List<Product>> compacted = stockEngine.compactRemovedProducts(10);
+
+        //***** <-- then: Only the removed ones are evicted --> *****//
+        assertEquals(Set.of(1L, 3L), compacted.get(INVENTORY_ID).stream().map(Product::getId).collect(Collectors.toSet()));
+        assertEquals(0, stockEngine.getRemovedCount());
+        assertEquals(List.of(2L, 4L), stockEngine.reserveFreeProducts(INVENTORY_ID, SCHEMA_ID, 5).stream().map(Product::getId).toList());
+    }
+
+    @Test
+    void shouldRejectUnsavedProducts() {
+        //***** <-- given: Product without ID --> *****//
+        Product unsaved = Product.builder().status(ProductStatus.FREE).build();
+
+        //***** <-- when & then: It cannot be stored in columns --> *****//
+        assertThrows(IllegalArgumentException.class,
+                () -> stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, List.of(unsaved)));
+    }
+
+    @Test
+    void shouldCountExpiryStatusesThroughTransitions() {
+        //***** <-- given: Not expired products in a columnar bucket --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 4));
+
+        //***** <-- when: One product expires soon and one is removed from the stock --> *****//
+        stockEngine.changeExpiryStatus(INVENTORY_ID, SCHEMA_ID, 1L, ExpiryStatus.SOONTOEXPIRE);
+        stockEngine.removeFreeProducts(INVENTORY_ID, SCHEMA_ID, 1);
+
+        //***** <-- then: Expiry counters follow the units --> *****//
+        assertEquals(0, stockEngine.getExpiryStatusCount(INVENTORY_ID, SCHEMA_ID, ExpiryStatus.SOONTOEXPIRE));
+        assertEquals(3, stockEngine.getExpiryStatusCount(INVENTORY_ID, SCHEMA_ID, ExpiryStatus.NOTEXPIRED));
+        assertEquals(Set.of(SCHEMA_ID), stockEngine.getProductSchemaIds(INVENTORY_ID));
+        assertEquals(0, stockEngine.recount());
+    }
+
+    @Test
+    void shouldNotChangeLoadedEntities() {
+        //***** <-- given: Loader handing out the same instances, like a persistence context holding them --> *****//
+        StockEngine sharedEntityEngine = new StockEngine(16, StockStoreType.COLUMNAR, productIds -> productIds.stream()
+                .map(database::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+        sharedEntityEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 3));
+
+        //***** <-- when: Products are reserved and their expiry status changes --> *****//
+        List<Product> reserved = sharedEntityEngine.reserveFreeProducts(INVENTORY_ID, SCHEMA_ID, 2);
+        Product expiring = sharedEntityEngine.changeExpiryStatus(INVENTORY_ID, SCHEMA_ID, 3L, ExpiryStatus.EXPIRED).orElseThrow();
+
+        //***** <-- then: Copies carry the in-memory state, the loaded entities are left as they were --> *****//
+        reserved.forEach(product -> {
+            assertEquals(ProductStatus.RESERVED, product.getStatus());
+            assertNotSame(database.get(product.getId()), product);
+            assertEquals(ProductStatus.FREE, database.get(product.getId()).getStatus());
+        });
+        assertEquals(ExpiryStatus.EXPIRED, expiring.getExpiryStatus());
+        assertEquals(ExpiryStatus.NOTEXPIRED, database.get(3L).getExpiryStatus());
+    }
+
+    @Test
+    void shouldLoadEntitiesOutsideStripeLock() throws Exception {
+        //***** <-- given: Single stripe, the loader writes to the same bucket from another thread --> *****//
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        AtomicBoolean writerBlocked = new AtomicBoolean();
+        StockEngine[] engine = new StockEngine[1];
+        engine[0] = new StockEngine(1, StockStoreType.COLUMNAR, productIds -> {
+            try {
+                writer.submit(() -> engine[0].changeStatuses(List.of(3L), ProductStatus.REMOVED)).get(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                writerBlocked.set(true);
+            }
+            return productIds.stream().map(database::get).filter(Objects::nonNull).collect(Collectors.toList());
+        });
+        engine[0].addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 3));
+
+        //***** <-- when: Products are reserved --> *****//
+        List<Product> reserved = engine[0].reserveFreeProducts(INVENTORY_ID, SCHEMA_ID, 2);
+        writer.shutdownNow();
+
+        //***** <-- then: The writer was not blocked while the entities were loaded --> *****//
+        assertFalse(writerBlocked.get());
+        assertEquals(List.of(1L, 2L), reserved.stream().map(Product::getId).toList());
+        assertEquals(1, engine[0].getStatusCount(INVENTORY_ID, SCHEMA_ID, ProductStatus.REMOVED));
+    }
+}
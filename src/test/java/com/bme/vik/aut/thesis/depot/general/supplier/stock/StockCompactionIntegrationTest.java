@@ -0,0 +1,138 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.admin.category.Category;
+import com.bme.vik.aut.thesis.depot.general.admin.category.CategoryRepository;
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchemaRepository;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxEventRepository;
+import com.bme.vik.aut.thesis.depot.general.order.OrderRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryService;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductLotRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.supplier.dto.SupplierCreationResponse;
+import com.bme.vik.aut.thesis.depot.general.user.UserRepository;
+import com.bme.vik.aut.thesis.depot.general.util.TestUtil;
+import com.bme.vik.aut.thesis.depot.security.auth.AuthService;
+import com.bme.vik.aut.thesis.depot.security.user.Role;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The test profile disables the scheduled compaction, the pass is started by the test instead
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+@ActiveProfiles("test")
+public class StockCompactionIntegrationTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+    @Autowired
+    private StockCompactionService stockCompactionService;
+    @Autowired
+    private StockEngine stockEngine;
+    @Autowired
+    private InventoryService inventoryService;
+    @Autowired
+    private InventoryRepository inventoryRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private ProductLotRepository productLotRepository;
+    @Autowired
+    private ProductSchemaRepository productSchemaRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AuthService authService;
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Value("${custom.admin.username}")
+    private String adminUsername;
+    @Value("${custom.admin.password}")
+    private String adminPassword;
+
+    private String ADMIN_TOKEN;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(stockCompactionService, "COMPACTION_ENABLED", true);
+        ReflectionTestUtils.setField(stockCompactionService, "COMPACTION_THRESHOLD", 1);
+        ReflectionTestUtils.setField(stockCompactionService, "COMPACTION_BATCH_SIZE", 2);
+
+        ADMIN_TOKEN = TestUtil.createAndRegisterUser(
+                userRepository,
+                adminUsername,
+                adminPassword,
+                Role.ADMIN,
+                authService,
+                passwordEncoder);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(stockCompactionService, "COMPACTION_ENABLED", false);
+
+        TestUtil.awaitOutboxRelayed(outboxEventRepository);
+        outboxEventRepository.deleteAll();
+        orderRepository.deleteAll();
+        productRepository.deleteAll();
+        productLotRepository.deleteAll();
+        productSchemaRepository.deleteAll();
+        categoryRepository.deleteAll();
+        userRepository.deleteAll();
+        inventoryService.clearStock();
+    }
+
+    @Test
+    void shouldReleaseRemovedProductsFromInventoryInDatabase() {
+        //***** <-- given: Supplier with 5 products in stock --> *****//
+        Category category = TestUtil.createCategoryWithAPI(webTestClient, ADMIN_TOKEN, "Category 1", "Test category");
+        int storageSpaceNeeded = 10;
+        ProductSchema productSchema = TestUtil.createProductSchemaWithAPI(webTestClient, ADMIN_TOKEN, "Test Product", storageSpaceNeeded, List.of(category));
+
+        SupplierCreationResponse supplierResponse = TestUtil.createSupplierWithAPI(webTestClient, ADMIN_TOKEN, "Test Supplier", 0, 0, 0, 0);
+        Long inventoryId = supplierResponse.getSupplier().getInventory().getId();
+        TestUtil.addStockToSupplierInventoryWithAPI(webTestClient, supplierResponse.getToken(), productSchema, "Test Product Description", 5, LocalDateTime.now().plusDays(10));
+
+        //***** <-- given: 3 of them removed by completed orders --> *****//
+        List<Long> productIds = productRepository.findIdsByInventoryId(inventoryId);
+        List<Long> removedIds = productIds.subList(0, 3);
+        removedIds.forEach(productId -> inventoryService.changeProductStatus(productId, ProductStatus.REMOVED));
+        assertEquals(3, stockEngine.getStatusCount(inventoryId, productSchema.getId(), ProductStatus.REMOVED));
+
+        //***** <-- when: One compaction pass runs --> *****//
+        stockCompactionService.compactRemovedProducts();
+
+        //***** <-- then: Removed products left the inventory in the database and in memory --> *****//
+        List<Long> remainingIds = productRepository.findIdsByInventoryId(inventoryId);
+        assertEquals(productIds.subList(3, 5), remainingIds);
+        assertEquals(2 * storageSpaceNeeded, inventoryRepository.findById(inventoryId).orElseThrow().getUsedSpace());
+        removedIds.forEach(productId -> assertTrue(productRepository.existsById(productId)));
+        assertEquals(0, stockEngine.getStatusCount(inventoryId, productSchema.getId(), ProductStatus.REMOVED));
+        assertEquals(2, stockEngine.getFreeCount(inventoryId, productSchema.getId()));
+    }
+}
@@ -0,0 +1,153 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockCompactionServiceTest {
+
+    private static final Long INVENTORY_ID = 1L;
+    private static final Long SCHEMA_ID = 101L;
+    private static final int STORAGE_SPACE_NEEDED = 2;
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private StockEngine stockEngine;
+    private SimpleMeterRegistry meterRegistry;
+    private StockCompactionService stockCompactionService;
+
+    @BeforeEach
+    void setUp() {
+        stockEngine = new StockEngine(16);
+        meterRegistry = new SimpleMeterRegistry();
+        stockCompactionService = new StockCompactionService(stockEngine, inventoryRepository, productRepository, transactionManager, meterRegistry);
+
+        ReflectionTestUtils.setField(stockCompactionService, "COMPACTION_ENABLED", true);
+        ReflectionTestUtils.setField(stockCompactionService, "COMPACTION_THRESHOLD", 1);
+        ReflectionTestUtils.setField(stockCompactionService, "COMPACTION_BATCH_SIZE", 2);
+        stockCompactionService.init();
+    }
+
+    private List<Product> createProducts(long firstId, int count, ProductStatus status) {
+        ProductSchema schema = ProductSchema.builder().id(SCHEMA_ID).storageSpaceNeeded(STORAGE_SPACE_NEEDED).build();
+        return LongStream.range(firstId, firstId + count)
+                .mapToObj(id -> Product.builder()
+                        .id(id)
+                        .schema(schema)
+                        .status(status)
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void shouldEvictRemovedProductsAndReleaseTheirSpace() {
+        //***** <-- given: 5 removed and 2 free products in stock --> *****//
+        List<Product> removedProducts = createProducts(1, 5, ProductStatus.REMOVED);
+        List<Product> freeProducts = createProducts(6, 2, ProductStatus.FREE);
+        List<Product> allProducts = new ArrayList<>(removedProducts);
+        allProducts.addAll(freeProducts);
+
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, allProducts);
+        when(inventoryRepository.changeUsedSpace(eq(INVENTORY_ID), anyInt())).thenReturn(1);
+
+        //***** <-- when: Compaction runs --> *****//
+        stockCompactionService.compactRemovedProducts();
+
+        //***** <-- then: Only free products remain, in stock and in the inventory --> *****//
+        assertEquals(List.of(6L, 7L), stockEngine.getProducts(INVENTORY_ID, SCHEMA_ID).stream().map(Product::getId).toList());
+        assertEquals(0, stockEngine.getRemovedCount());
+        assertTrue(stockEngine.locate(1L).isEmpty());
+
+        // batch size is 2, so 5 products take 3 batches, each releasing its space relative to the stored one
+        verify(inventoryRepository, times(2)).changeUsedSpace(INVENTORY_ID, -2 * STORAGE_SPACE_NEEDED);
+        verify(inventoryRepository).changeUsedSpace(INVENTORY_ID, -STORAGE_SPACE_NEEDED);
+        verify(inventoryRepository, never()).save(any());
+        verify(productRepository).releaseFromInventory(eq(List.of(1L, 2L)), any());
+        verify(productRepository).releaseFromInventory(eq(List.of(3L, 4L)), any());
+        verify(productRepository).releaseFromInventory(eq(List.of(5L)), any());
+
+        //***** <-- then: Metrics report the reclaimed products and space --> *****//
+        assertEquals(5, meterRegistry.get("depot.stock.compaction.products").counter().count());
+        assertEquals(5 * STORAGE_SPACE_NEEDED, meterRegistry.get("depot.stock.compaction.released.space").counter().count());
+        assertEquals(0, meterRegistry.get("depot.stock.removed.products").gauge().value());
+    }
+
+    @Test
+    void shouldDropEmptyBucketAndInventoryAfterCompaction() {
+        //***** <-- given: Bucket holding only removed products --> *****//
+        List<Product> removedProducts = createProducts(1, 2, ProductStatus.REMOVED);
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, removedProducts);
+        when(inventoryRepository.changeUsedSpace(INVENTORY_ID, -2 * STORAGE_SPACE_NEEDED)).thenReturn(1);
+
+        //***** <-- when: Compaction runs --> *****//
+        stockCompactionService.compactRemovedProducts();
+
+        //***** <-- then: Bucket is gone, with it the inventory it was the last one of --> *****//
+        assertFalse(stockEngine.containsBucket(INVENTORY_ID, SCHEMA_ID));
+        assertFalse(stockEngine.containsInventory(INVENTORY_ID));
+        assertEquals(0, stockEngine.getInventoryCount());
+    }
+
+    @Test
+    void shouldNotCompactBelowThreshold() {
+        //***** <-- given: Fewer removed products than the threshold --> *****//
+        ReflectionTestUtils.setField(stockCompactionService, "COMPACTION_THRESHOLD", 10);
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createProducts(1, 3, ProductStatus.REMOVED));
+
+        //***** <-- when: Compaction runs --> *****//
+        stockCompactionService.compactRemovedProducts();
+
+        //***** <-- then: Nothing is evicted --> *****//
+        assertEquals(3, stockEngine.getRemovedCount());
+        verifyNoInteractions(inventoryRepository);
+    }
+
+    @Test
+    void shouldPutProductsBackWhenInventoryCannotBeSaved() {
+        //***** <-- given: Releasing the products fails after the inventory space was released --> *****//
+        List<Product> removedProducts = createProducts(1, 3, ProductStatus.REMOVED);
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, removedProducts);
+        when(inventoryRepository.changeUsedSpace(INVENTORY_ID, -2 * STORAGE_SPACE_NEEDED)).thenReturn(1);
+        when(productRepository.releaseFromInventory(any(), any())).thenThrow(new RuntimeException("Database unavailable"));
+
+        //***** <-- when: Compaction runs --> *****//
+        stockCompactionService.compactRemovedProducts();
+
+        //***** <-- then: The run stops after the first batch, its transaction is rolled back and the products are back in stock --> *****//
+        verify(inventoryRepository, times(1)).changeUsedSpace(INVENTORY_ID, -2 * STORAGE_SPACE_NEEDED);
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        assertEquals(3, stockEngine.getRemovedCount());
+        assertEquals(3, stockEngine.getProducts(INVENTORY_ID, SCHEMA_ID).size());
+        assertTrue(stockEngine.locate(1L).isPresent());
+        assertEquals(0, meterRegistry.get("depot.stock.compaction.products").counter().count());
+    }
+}
@@ -0,0 +1,421 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockEngineTest {
+
+    private static final Long INVENTORY_ID = 1L;
+    private static final Long SCHEMA_ID = 101L;
+
+    private StockEngine stockEngine;
+
+    @BeforeEach
+    void setUp() {
+        stockEngine = new StockEngine(16);
+    }
+
+    private List<Product> createFreeProducts(long firstId, int count) {
+        LocalDateTime now = LocalDateTime.now();
+        ProductSchema schema = ProductSchema.builder().id(SCHEMA_ID).build();
+        return LongStream.range(firstId, firstId + count)
+                .mapToObj(id -> Product.builder()
+                        .id(id)
+                        .schema(schema)
+                        .status(ProductStatus.FREE)
+                        .expiresAt(now.plusDays(id))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void shouldAddProductsToBucket() {
+        //***** <-- given: Free products --> *****//
+        List<Product> products = createFreeProducts(1, 3);
+
+        //***** <-- when: Products are added --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, products);
+
+        //***** <-- then: Bucket holds the products --> *****//
+        assertTrue(stockEngine.containsInventory(INVENTORY_ID));
+        assertTrue(stockEngine.containsBucket(INVENTORY_ID, SCHEMA_ID));
+        assertEquals(3, stockEngine.getProducts(INVENTORY_ID, SCHEMA_ID).size());
+        assertEquals(3, stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+        assertEquals(3, stockEngine.getFreeCountBySchemaId(SCHEMA_ID));
+    }
+
+    @Test
+    void shouldReserveProductsClosestToExpiry() {
+        //***** <-- given: Products with different expiry dates --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 5));
+
+        //***** <-- when: Two products are reserved --> *****//
+        List<Product> reserved = stockEngine.reserveFreeProducts(INVENTORY_ID, SCHEMA_ID, 2);
+
+        //***** <-- then: The two soonest expiring products are reserved --> *****//
+        assertEquals(List.of(1L, 2L), reserved.stream().map(Product::getId).toList());
+        reserved.forEach(product -> assertEquals(ProductStatus.RESERVED, product.getStatus()));
+        assertEquals(3, stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+    }
+
+    @Test
+    void shouldPutFreedProductBackIntoExpiryOrder() {
+        //***** <-- given: Two soonest expiring products are reserved --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 3));
+        stockEngine.reserveFreeProducts(INVENTORY_ID, SCHEMA_ID, 2);
+
+        //***** <-- when: The soonest expiring one is freed again --> *****//
+        stockEngine.changeStatus(INVENTORY_ID, SCHEMA_ID, 1L, ProductStatus.FREE);
+
+        //***** <-- then: It is the next one handed out --> *****//
+        assertEquals(1L, stockEngine.getSoonestExpiryFreeProduct(INVENTORY_ID, SCHEMA_ID).orElseThrow().getId());
+        List<Product> reserved = stockEngine.reserveFreeProducts(INVENTORY_ID, SCHEMA_ID, 2);
+        assertEquals(List.of(1L, 3L), reserved.stream().map(Product::getId).toList());
+        assertTrue(stockEngine.getSoonestExpiryFreeProduct(INVENTORY_ID, SCHEMA_ID).isEmpty());
+    }
+
+    @Test
+    void shouldHandOutProductsWithoutExpiryLast() {
+        //***** <-- given: A product without expiry added before one with expiry --> *****//
+        Product withoutExpiry = Product.builder().id(1L).status(ProductStatus.FREE).build();
+        Product withExpiry = Product.builder().id(2L).status(ProductStatus.FREE).expiresAt(LocalDateTime.now()).build();
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, List.of(withoutExpiry, withExpiry));
+
+        //***** <-- when: One product is reserved --> *****//
+        List<Product> reserved = stockEngine.reserveFreeProducts(INVENTORY_ID, SCHEMA_ID, 1);
+
+        //***** <-- then: The one with expiry is reserved --> *****//
+        assertEquals(List.of(2L), reserved.stream().map(Product::getId).toList());
+    }
+
+    @Test
+    void shouldNotHandOutProductReservedWithCompareAndSet() {
+        //***** <-- given: Soonest expiring product is reserved directly --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 2));
+        stockEngine.compareAndSetStatus(INVENTORY_ID, SCHEMA_ID, 1L, ProductStatus.FREE, ProductStatus.RESERVED);
+
+        //***** <-- when: Free products are removed --> *****//
+        List<Product> removed = stockEngine.removeFreeProducts(INVENTORY_ID, SCHEMA_ID, 1);
+
+        //***** <-- then: Only the still free product is removed --> *****//
+        assertEquals(List.of(2L), removed.stream().map(Product::getId).toList());
+        assertEquals(List.of(1L), stockEngine.getProducts(INVENTORY_ID, SCHEMA_ID).stream().map(Product::getId).toList());
+    }
+
+    @Test
+    void shouldKeepStatusCountersInSyncWithTransitions() {
+        //***** <-- given: Two inventories holding the same product schema --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 4));
+        stockEngine.addProducts(2L, SCHEMA_ID, createFreeProducts(5, 2));
+
+        //***** <-- when: Products are reserved, removed, freed and taken out of stock --> *****//
+        stockEngine.reserveFreeProducts(INVENTORY_ID, SCHEMA_ID, 2);
+        stockEngine.changeStatus(INVENTORY_ID, SCHEMA_ID, 1L, ProductStatus.REMOVED);
+        stockEngine.changeStatus(INVENTORY_ID, SCHEMA_ID, 2L, ProductStatus.FREE);
+        stockEngine.removeFreeProducts(2L, SCHEMA_ID, 1);
+
+        //***** <-- then: Bucket and schema counters reflect every transition --> *****//
+        assertEquals(3, stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+        assertEquals(0, stockEngine.getStatusCount(INVENTORY_ID, SCHEMA_ID, ProductStatus.RESERVED));
+        assertEquals(1, stockEngine.getStatusCount(INVENTORY_ID, SCHEMA_ID, ProductStatus.REMOVED));
+        assertEquals(1, stockEngine.getFreeCount(2L, SCHEMA_ID));
+        assertEquals(4, stockEngine.getFreeCountBySchemaId(SCHEMA_ID));
+        assertEquals(1, stockEngine.getStatusCountBySchemaId(SCHEMA_ID, ProductStatus.REMOVED));
+        assertEquals(0, stockEngine.getFreeCountBySchemaId(999L));
+    }
+
+    @Test
+    void shouldLocateProductAndChangeItsStatusById() {
+        //***** <-- given: Products in two inventories --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 2));
+        stockEngine.addProducts(2L, SCHEMA_ID, createFreeProducts(3, 2));
+
+        //***** <-- when: A product is reserved knowing only its ID --> *****//
+        var changed = stockEngine.changeStatus(3L, ProductStatus.RESERVED);
+
+        //***** <-- then: The product of the right bucket changed --> *****//
+        StockLocation location = stockEngine.locate(3L).orElseThrow();
+        assertEquals(2L, location.inventoryId());
+        assertEquals(SCHEMA_ID, location.productSchemaId());
+        assertEquals(ProductStatus.RESERVED, changed.orElseThrow().getStatus());
+        assertEquals(1, stockEngine.getFreeCount(2L, SCHEMA_ID));
+        assertEquals(2, stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+    }
+
+    @Test
+    void shouldChangeStatusOfManyProductsAcrossBuckets() {
+        //***** <-- given: Products in two inventories --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 3));
+        stockEngine.addProducts(2L, SCHEMA_ID, createFreeProducts(4, 2));
+
+        //***** <-- when: Products of both and an unknown one are reserved at once --> *****//
+        List<Long> changed = stockEngine.changeStatuses(List.of(1L, 4L, 2L, 99L), ProductStatus.RESERVED);
+
+        //***** <-- then: Only the stocked ones changed, counters follow --> *****//
+        assertEquals(List.of(1L, 2L, 4L), changed.stream().sorted().toList());
+        assertEquals(1, stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+        assertEquals(1, stockEngine.getFreeCount(2L, SCHEMA_ID));
+        assertEquals(3, stockEngine.getStatusCountBySchemaId(SCHEMA_ID, ProductStatus.RESERVED));
+        assertEquals(3L, stockEngine.getSoonestExpiryFreeProduct(INVENTORY_ID, SCHEMA_ID).orElseThrow().getId());
+    }
+
+    @Test
+    void shouldForgetLocationOfRemovedProducts() {
+        //***** <-- given: Bucket with 2 free products --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 2));
+
+        //***** <-- when: The soonest expiring one is removed --> *****//
+        stockEngine.removeFreeProducts(INVENTORY_ID, SCHEMA_ID, 1);
+
+        //***** <-- then: It cannot be located or changed anymore --> *****//
+        assertTrue(stockEngine.locate(1L).isEmpty());
+        assertTrue(stockEngine.changeStatus(1L, ProductStatus.RESERVED).isEmpty());
+        assertTrue(stockEngine.locate(2L).isPresent());
+    }
+
+    @Test
+    void shouldNotRemoveAnythingWhenNotEnoughFreeStock() {
+        //***** <-- given: Bucket with 2 free products --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 2));
+
+        //***** <-- when: 3 products are removed --> *****//
+        List<Product> removed = stockEngine.removeFreeProducts(INVENTORY_ID, SCHEMA_ID, 3);
+
+        //***** <-- then: Nothing is removed --> *****//
+        assertTrue(removed.isEmpty());
+        assertEquals(2, stockEngine.getProducts(INVENTORY_ID, SCHEMA_ID).size());
+    }
+
+    @Test
+    void shouldDropBucketWhenLastProductIsRemoved() {
+        //***** <-- given: Bucket with 2 free products --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 2));
+
+        //***** <-- when: Both products are removed --> *****//
+        List<Product> removed = stockEngine.removeFreeProducts(INVENTORY_ID, SCHEMA_ID, 2);
+
+        //***** <-- then: Bucket is gone, with it the inventory it was the last one of --> *****//
+        assertEquals(2, removed.size());
+        assertFalse(stockEngine.containsBucket(INVENTORY_ID, SCHEMA_ID));
+        assertFalse(stockEngine.containsInventory(INVENTORY_ID));
+        assertEquals(0, stockEngine.getInventoryCount());
+    }
+
+    @Test
+    void shouldDropInventoryWhenItsLastBucketIsCompacted() {
+        //***** <-- given: Two inventories, all products of the first one removed --> *****//
+        List<Product> products = createFreeProducts(1, 2);
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, products);
+        stockEngine.addProducts(2L, SCHEMA_ID, createFreeProducts(3, 1));
+        products.forEach(product -> stockEngine.changeStatus(product.getId(), ProductStatus.REMOVED));
+
+        //***** <-- when: Removed products are compacted --> *****//
+        Map<Long, List<Product>> compacted = stockEngine.compactRemovedProducts(10);
+
+        //***** <-- then: Only the other inventory is held, stocking the first one again brings it back --> *****//
+        assertEquals(2, compacted.get(INVENTORY_ID).size());
+        assertFalse(stockEngine.containsInventory(INVENTORY_ID));
+        assertEquals(1, stockEngine.getInventoryCount());
+
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(4, 1));
+        assertEquals(1, stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+        assertEquals(2, stockEngine.getInventoryCount());
+    }
+
+    @Test
+    void shouldOnlyReserveFreeProductOnceWithCompareAndSet() {
+        //***** <-- given: One free product --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 1));
+
+        //***** <-- when: It is reserved twice --> *****//
+        boolean first = stockEngine.compareAndSetStatus(INVENTORY_ID, SCHEMA_ID, 1L, ProductStatus.FREE, ProductStatus.RESERVED);
+        boolean second = stockEngine.compareAndSetStatus(INVENTORY_ID, SCHEMA_ID, 1L, ProductStatus.FREE, ProductStatus.RESERVED);
+
+        //***** <-- then: Only the first reservation succeeds --> *****//
+        assertTrue(first);
+        assertFalse(second);
+    }
+
+    @Test
+    void shouldNotLoseReservationsUnderConcurrentOrders() throws Exception {
+        //***** <-- given: 1000 free products and 8 threads reserving one at a time --> *****//
+        int productCount = 1000;
+        int threadCount = 8;
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, productCount));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger reservedCount = new AtomicInteger();
+        List<Future<List<Product>>> futures = new ArrayList<>();
+
+        //***** <-- when: Threads race for the stock, while another one keeps reading --> *****//
+        for (int i = 0; i < threadCount; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                List<Product> reservedByThread = new ArrayList<>();
+                List<Product> reserved;
+                while (!(reserved = stockEngine.reserveFreeProducts(INVENTORY_ID, SCHEMA_ID, 1)).isEmpty()) {
+                    reservedByThread.addAll(reserved);
+                    reservedCount.incrementAndGet();
+                }
+                return reservedByThread;
+            }));
+        }
+        Future<?> reader = executor.submit(() -> {
+            while (reservedCount.get() < productCount) {
+                assertTrue(stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID) >= 0);
+            }
+        });
+        start.countDown();
+
+        List<Long> reservedIds = new ArrayList<>();
+        for (Future<List<Product>> future : futures) {
+            future.get(30, TimeUnit.SECONDS).forEach(product -> reservedIds.add(product.getId()));
+        }
+        reader.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        //***** <-- then: Every product was reserved exactly once --> *****//
+        assertEquals(productCount, reservedIds.size());
+        assertEquals(productCount, reservedIds.stream().distinct().count());
+        assertEquals(0, stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+    }
+
+    @Test
+    void shouldNotAddProductAlreadyInStock() {
+        //***** <-- given: Products in stock --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 3));
+
+        //***** <-- when: Some of them are added again with a new one, as by a reload --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(2, 3));
+
+        //***** <-- then: Each product is held and counted once --> *****//
+        assertEquals(4, stockEngine.getProductCount(INVENTORY_ID));
+        assertEquals(4, stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+        assertEquals(4, stockEngine.getFreeCountBySchemaId(SCHEMA_ID));
+    }
+
+    @Test
+    void shouldKeepCountersExactWhenUnloadRacesWithWriters() throws Exception {
+        //***** <-- given: Products of 8 schemas, writers stocking them again and again as requests and reloads do --> *****//
+        int schemaCount = 8;
+        int productsPerSchema = 50;
+        int writerCount = 4;
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, List<Product>> productsBySchema = new HashMap<>();
+        for (long schemaId = 1; schemaId <= schemaCount; schemaId++) {
+            ProductSchema schema = ProductSchema.builder().id(schemaId).build();
+            long firstId = schemaId * 1000;
+            productsBySchema.put(schemaId, LongStream.range(firstId, firstId + productsPerSchema)
+                    .mapToObj(id -> Product.builder().id(id).schema(schema).status(ProductStatus.FREE).expiresAt(now.plusDays(id)).build())
+                    .collect(Collectors.toList()));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(writerCount + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger runningWriters = new AtomicInteger(writerCount);
+        List<Future<?>> futures = new ArrayList<>();
+
+        //***** <-- when: The inventory is unloaded over and over while the writers run --> *****//
+        for (int i = 0; i < writerCount; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int round = 0; round < 200; round++) {
+                    productsBySchema.forEach((schemaId, products) -> stockEngine.addProducts(INVENTORY_ID, schemaId, products));
+                }
+                runningWriters.decrementAndGet();
+                return null;
+            }));
+        }
+        futures.add(executor.submit(() -> {
+            start.await();
+            while (runningWriters.get() > 0) {
+                stockEngine.unloadInventory(INVENTORY_ID);
+            }
+            return null;
+        }));
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        productsBySchema.forEach((schemaId, products) -> stockEngine.addProducts(INVENTORY_ID, schemaId, products));
+
+        //***** <-- then: Every product is held once and no counter kept units of a dropped bucket --> *****//
+        assertEquals(schemaCount * productsPerSchema, stockEngine.getProductCount(INVENTORY_ID));
+        productsBySchema.keySet().forEach(schemaId -> {
+            assertEquals(productsPerSchema, stockEngine.getFreeCount(INVENTORY_ID, schemaId));
+            assertEquals(productsPerSchema, stockEngine.getFreeCountBySchemaId(schemaId));
+        });
+        assertEquals(0, stockEngine.recount());
+    }
+
+    @Test
+    void shouldReturnIndependentSnapshot() {
+        //***** <-- given: Bucket with products --> *****//
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(1, 2));
+
+        //***** <-- when: Snapshot is taken and the stock changes afterwards --> *****//
+        var snapshot = stockEngine.snapshot();
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, createFreeProducts(3, 2));
+
+        //***** <-- then: Snapshot is unaffected --> *****//
+        assertEquals(2, snapshot.get(INVENTORY_ID).get(SCHEMA_ID).size());
+        assertEquals(4, stockEngine.getProducts(INVENTORY_ID, SCHEMA_ID).size());
+    }
+
+    @Test
+    void shouldCorrectDriftedCountersOnRecount() {
+        //***** <-- given: Product whose status was changed on the entity, bypassing the engine --> *****//
+        List<Product> products = createFreeProducts(1, 3);
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, products);
+        products.get(0).setStatus(ProductStatus.REMOVED);
+        assertEquals(3, stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+
+        //***** <-- when: Stock is recounted --> *****//
+        int corrected = stockEngine.recount();
+
+        //***** <-- then: Bucket and schema counters match the products again --> *****//
+        assertEquals(2, corrected);
+        assertEquals(2, stockEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+        assertEquals(2, stockEngine.getFreeCountBySchemaId(SCHEMA_ID));
+        assertEquals(1, stockEngine.getStatusCount(INVENTORY_ID, SCHEMA_ID, ProductStatus.REMOVED));
+        assertEquals(0, stockEngine.recount());
+    }
+
+    @Test
+    void shouldUseSingleStripeWhenOneIsConfigured() {
+        //***** <-- given: One lock stripe configured, or less --> *****//
+        //***** <-- when: Engines are created --> *****//
+        //***** <-- then: A single stripe is used --> *****//
+        assertEquals(1, new StockEngine(1).getLockStripeCount());
+        assertEquals(1, new StockEngine(0).getLockStripeCount());
+    }
+
+    @Test
+    void shouldRoundStripeCountUpToPowerOfTwo() {
+        //***** <-- given: Stripe counts that are and are not powers of two --> *****//
+        //***** <-- when: Engines are created --> *****//
+        //***** <-- then: Counts are rounded up to the next power of two --> *****//
+        assertEquals(2, new StockEngine(2).getLockStripeCount());
+        assertEquals(4, new StockEngine(3).getLockStripeCount());
+        assertEquals(8, new StockEngine(5).getLockStripeCount());
+        assertEquals(16, new StockEngine(16).getLockStripeCount());
+        assertEquals(32, new StockEngine(17).getLockStripeCount());
+    }
+}
@@ -0,0 +1,175 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockHydrationServiceTest {
+
+    private static final int CHUNK_SIZE = 2;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+
+    private final StockEngine stockEngine = new StockEngine(16);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private StockHydrationService stockHydrationService;
+
+    @BeforeEach
+    void setUp() {
+        stockHydrationService = new StockHydrationService(stockEngine, productRepository, inventoryRepository, meterRegistry);
+        ReflectionTestUtils.setField(stockHydrationService, "HYDRATION_CHUNK_SIZE", CHUNK_SIZE);
+        ReflectionTestUtils.setField(stockHydrationService, "HYDRATION_PARALLELISM", 2);
+    }
+
+    private List<Product> createProducts(long firstId, int count, Long productSchemaId) {
+        ProductSchema schema = ProductSchema.builder().id(productSchemaId).build();
+        return LongStream.range(firstId, firstId + count)
+                .mapToObj(id -> Product.builder().id(id).schema(schema).status(ProductStatus.FREE).build())
+                .collect(Collectors.toList());
+    }
+
+    private Inventory inventoryOf(Long inventoryId) {
+        return Inventory.builder().id(inventoryId).build();
+    }
+
+    @Test
+    void shouldPageThroughEveryInventoryByProductId() {
+        //***** <-- given: Two inventories, one spanning several chunks --> *****//
+        List<Product> firstProducts = new ArrayList<>(createProducts(1, 2, 101L));
+        firstProducts.addAll(createProducts(3, 1, 102L));
+        List<Product> secondProducts = createProducts(10, 1, 101L);
+
+        when(productRepository.findInventoryProductsAfter(eq(1L), eq(0L), any(Limit.class))).thenReturn(firstProducts.subList(0, 2));
+        when(productRepository.findInventoryProductsAfter(eq(1L), eq(2L), any(Limit.class))).thenReturn(firstProducts.subList(2, 3));
+        when(productRepository.findInventoryProductsAfter(eq(2L), eq(0L), any(Limit.class))).thenReturn(secondProducts);
+
+        //***** <-- when: The stock is bulk loaded --> *****//
+        stockHydrationService.hydrate(List.of(inventoryOf(1L), inventoryOf(2L)));
+
+        //***** <-- then: Every product is in its bucket, a short chunk ends the paging --> *****//
+        assertEquals(2, stockEngine.getFreeCount(1L, 101L));
+        assertEquals(1, stockEngine.getFreeCount(1L, 102L));
+        assertEquals(1, stockEngine.getFreeCount(2L, 101L));
+        verify(productRepository, times(3)).findInventoryProductsAfter(anyLong(), anyLong(), any(Limit.class));
+    }
+
+    @Test
+    void shouldRecordStartupTimeBySource() {
+        //***** <-- given: A finished stock load --> *****//
+
+        //***** <-- when: Its duration is recorded --> *****//
+        stockHydrationService.recordStartup("BULK", 5_000_000);
+
+        //***** <-- then: The startup timer holds it under its source --> *****//
+        assertEquals(1, meterRegistry.get("depot.stock.startup").tag("source", "BULK").timer().count());
+    }
+
+    @Test
+    void shouldShareOneLazyLoadBetweenConcurrentFirstUses() throws Exception {
+        //***** <-- given: Inventory whose load blocks until both callers arrived --> *****//
+        List<Product> products = createProducts(1, 1, 101L);
+        Inventory inventory = inventoryOf(1L);
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+
+        when(productRepository.findInventoryProductsAfter(eq(1L), eq(0L), any(Limit.class))).thenAnswer(invocation -> {
+            loadStarted.countDown();
+            assertTrue(releaseLoad.await(5, TimeUnit.SECONDS));
+            return products;
+        });
+
+        //***** <-- when: Two threads use the inventory at the same time --> *****//
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(() -> stockHydrationService.ensureLoaded(inventory));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+            Future<?> second = executor.submit(() -> stockHydrationService.ensureLoaded(inventory));
+            releaseLoad.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //***** <-- then: The inventory was queried once and loaded once --> *****//
+        verify(productRepository, times(1)).findInventoryProductsAfter(anyLong(), anyLong(), any(Limit.class));
+        assertTrue(stockHydrationService.isLoaded(1L));
+        assertEquals(1, stockEngine.getFreeCount(1L, 101L));
+    }
+
+    @Test
+    void shouldRetryLazyLoadAfterFailure() {
+        //***** <-- given: First load of the inventory fails --> *****//
+        List<Product> products = createProducts(1, 1, 101L);
+        Inventory inventory = inventoryOf(1L);
+
+        when(productRepository.findInventoryProductsAfter(eq(1L), eq(0L), any(Limit.class)))
+                .thenThrow(new IllegalStateException("database unavailable"))
+                .thenReturn(products);
+
+        //***** <-- when: The inventory is used twice --> *****//
+        assertThrows(IllegalStateException.class, () -> stockHydrationService.ensureLoaded(inventory));
+        boolean loadedAfterFailure = stockHydrationService.isLoaded(1L);
+        stockHydrationService.ensureLoaded(inventory);
+
+        //***** <-- then: The second use loads it --> *****//
+        assertFalse(loadedAfterFailure);
+        assertTrue(stockHydrationService.isLoaded(1L));
+        assertEquals(1, stockEngine.getFreeCount(1L, 101L));
+    }
+
+    @Test
+    void shouldUnloadLeastRecentlyUsedInventoriesOverBudget() {
+        //***** <-- given: Three loaded inventories of 2 products each, budget of 4 products --> *****//
+        ReflectionTestUtils.setField(stockHydrationService, "LAZY_MAX_LOADED_PRODUCTS", 4);
+        ReflectionTestUtils.setField(stockHydrationService, "LAZY_IDLE_MS", 0L);
+
+        for (long inventoryId = 1; inventoryId <= 3; inventoryId++) {
+            List<Product> products = createProducts(inventoryId * 10, 2, 101L);
+            when(productRepository.findInventoryProductsAfter(eq(inventoryId), eq(0L), any(Limit.class))).thenReturn(products);
+            stockHydrationService.ensureLoaded(inventoryOf(inventoryId));
+        }
+
+        //***** <-- when: Idle inventories are evicted --> *****//
+        stockHydrationService.evictIdleInventories();
+
+        //***** <-- then: Only the first used one is unloaded, counters follow --> *****//
+        assertFalse(stockHydrationService.isLoaded(1L));
+        assertFalse(stockEngine.containsInventory(1L));
+        assertTrue(stockEngine.locate(10L).isEmpty());
+        assertTrue(stockHydrationService.isLoaded(2L));
+        assertTrue(stockHydrationService.isLoaded(3L));
+        assertEquals(4, stockEngine.getFreeCountBySchemaId(101L));
+    }
+}
@@ -0,0 +1,186 @@
+package com.bme.vik.aut.thesis.depot.general.supplier.stock;
+
+import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ExpiryStatus;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockSnapshotServiceTest {
+
+    private static final Long INVENTORY_ID = 1L;
+    private static final Long SCHEMA_ID = 101L;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @TempDir
+    private Path tempDir;
+
+    private Path snapshotPath;
+    private final Map<Long, Product> database = new HashMap<>();
+
+    private StockEngine stockEngine;
+    private StockSnapshotService stockSnapshotService;
+
+    @BeforeEach
+    void setUp() {
+        snapshotPath = tempDir.resolve("stock.snapshot");
+        stockEngine = newEngine();
+        stockSnapshotService = newService(stockEngine);
+    }
+
+    private StockEngine newEngine() {
+        return new StockEngine(16, StockStoreType.COLUMNAR, productIds -> productIds.stream()
+                .map(database::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+    }
+
+    private StockSnapshotService newService(StockEngine engine) {
+        StockSnapshotService service = new StockSnapshotService(engine, productRepository);
+        ReflectionTestUtils.setField(service, "SNAPSHOT_ENABLED", true);
+        ReflectionTestUtils.setField(service, "SNAPSHOT_PATH", snapshotPath.toString());
+        return service;
+    }
+
+    private List<Product> createFreeProducts(long firstId, int count) {
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        ProductSchema schema = ProductSchema.builder().id(SCHEMA_ID).build();
+        List<Product> products = LongStream.range(firstId, firstId + count)
+                .mapToObj(id -> Product.builder()
+                        .id(id)
+                        .schema(schema)
+                        .status(ProductStatus.FREE)
+                        .expiryStatus(ExpiryStatus.NOTEXPIRED)
+                        .expiresAt(now.plusDays(id))
+                        .build())
+                .collect(Collectors.toList());
+        products.forEach(product -> database.put(product.getId(), product));
+        return products;
+    }
+
+    // the inventory's products as the database lists them, lenient as a refused snapshot never asks
+    private Inventory inventoryOf(Long... productIds) {
+        lenient().when(productRepository.findIdsByInventoryId(INVENTORY_ID)).thenReturn(List.of(productIds));
+        return Inventory.builder().id(INVENTORY_ID).build();
+    }
+
+    private void writeSnapshotOf(List<Product> products) {
+        stockEngine.addProducts(INVENTORY_ID, SCHEMA_ID, products);
+        stockSnapshotService.onStockRebuilt();
+        stockSnapshotService.writeSnapshot();
+    }
+
+    @Test
+    void shouldRestoreStockFromSnapshotWithoutLoadingProducts() {
+        //***** <-- given: Snapshot of 3 products, one of them reserved --> *****//
+        List<Product> products = createFreeProducts(1, 3);
+        products.get(1).setStatus(ProductStatus.RESERVED);
+        products.get(2).setExpiryStatus(ExpiryStatus.SOONTOEXPIRE);
+        writeSnapshotOf(products);
+        when(productRepository.findAllByUpdatedAtGreaterThanEqual(any())).thenReturn(List.of());
+
+        //***** <-- when: A fresh engine is restored --> *****//
+        StockEngine restoredEngine = newEngine();
+        boolean restored = newService(restoredEngine).restore(List.of(inventoryOf(1L, 2L, 3L)));
+
+        //***** <-- then: Counts, statuses and expiry order come back without a product load --> *****//
+        assertTrue(restored);
+        assertEquals(2, restoredEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+        assertEquals(1, restoredEngine.getStatusCount(INVENTORY_ID, SCHEMA_ID, ProductStatus.RESERVED));
+        assertEquals(new StockLocation(INVENTORY_ID, SCHEMA_ID), restoredEngine.locate(3L).orElseThrow());
+        assertEquals(ExpiryStatus.SOONTOEXPIRE, restoredEngine.changeStatus(3L, ProductStatus.FREE).orElseThrow().getExpiryStatus());
+        assertEquals(1L, restoredEngine.getSoonestExpiryFreeProduct(INVENTORY_ID, SCHEMA_ID).orElseThrow().getId());
+        verify(productRepository, never()).findAllById(anyList());
+    }
+
+    @Test
+    void shouldReplayProductsChangedSinceSnapshot() {
+        //***** <-- given: Snapshot of free products, one reserved afterwards --> *****//
+        writeSnapshotOf(createFreeProducts(1, 3));
+        Product changed = Product.builder()
+                .id(2L)
+                .schema(ProductSchema.builder().id(SCHEMA_ID).build())
+                .status(ProductStatus.RESERVED)
+                .expiryStatus(ExpiryStatus.NOTEXPIRED)
+                .build();
+        when(productRepository.findAllByUpdatedAtGreaterThanEqual(any())).thenReturn(List.of(changed));
+
+        //***** <-- when: A fresh engine is restored --> *****//
+        StockEngine restoredEngine = newEngine();
+        newService(restoredEngine).restore(List.of(inventoryOf(1L, 2L, 3L)));
+
+        //***** <-- then: The changed row wins over the snapshot --> *****//
+        assertEquals(2, restoredEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+        assertFalse(restoredEngine.compareAndSetStatus(INVENTORY_ID, SCHEMA_ID, 2L, ProductStatus.FREE, ProductStatus.RESERVED));
+    }
+
+    @Test
+    void shouldReconcileSnapshotWithInventoryProducts() {
+        //***** <-- given: Snapshot of products 1-3, inventory now lists 2, 3 and a new product 4 --> *****//
+        writeSnapshotOf(createFreeProducts(1, 3));
+        Product added = createFreeProducts(4, 1).get(0);
+        when(productRepository.findAllByUpdatedAtGreaterThanEqual(any())).thenReturn(List.of());
+        when(productRepository.findAllById(List.of(4L))).thenReturn(List.of(added));
+
+        //***** <-- when: A fresh engine is restored --> *****//
+        StockEngine restoredEngine = newEngine();
+        newService(restoredEngine).restore(List.of(inventoryOf(2L, 3L, 4L)));
+
+        //***** <-- then: Released product is gone, the missing one is loaded --> *****//
+        assertTrue(restoredEngine.locate(1L).isEmpty());
+        assertTrue(restoredEngine.locate(4L).isPresent());
+        assertEquals(3, restoredEngine.getFreeCount(INVENTORY_ID, SCHEMA_ID));
+    }
+
+    @Test
+    void shouldFallBackWhenSnapshotIsCorrupt() throws IOException {
+        //***** <-- given: Snapshot with a flipped byte --> *****//
+        writeSnapshotOf(createFreeProducts(1, 3));
+        byte[] bytes = Files.readAllBytes(snapshotPath);
+        bytes[bytes.length / 2] ^= 0x7F;
+        Files.write(snapshotPath, bytes);
+
+        //***** <-- when: A fresh engine is restored --> *****//
+        StockEngine restoredEngine = newEngine();
+        boolean restored = newService(restoredEngine).restore(List.of(inventoryOf(1L, 2L, 3L)));
+
+        //***** <-- then: Restore is refused and the stock is left empty --> *****//
+        assertFalse(restored);
+        assertEquals(0, restoredEngine.getInventoryCount());
+    }
+
+    @Test
+    void shouldNotWriteSnapshotBeforeStockIsLoaded() {
+        //***** <-- given: Stock that was never loaded --> *****//
+
+        //***** <-- when: Scheduled write runs --> *****//
+        stockSnapshotService.writeSnapshot();
+
+        //***** <-- then: No file is written --> *****//
+        assertFalse(Files.exists(snapshotPath));
+    }
+}
@@ -9,6 +9,8 @@ import com.bme.vik.aut.thesis.depot.general.supplier.supplier.dto.CreateSupplier
 import com.bme.vik.aut.thesis.depot.general.supplier.supplier.dto.SupplierCreationResponse;
 import com.bme.vik.aut.thesis.depot.general.user.UserRepository;
 import com.bme.vik.aut.thesis.depot.security.jwt.JwtTokenService;
+import com.bme.vik.aut.thesis.depot.security.jwt.TokenVersionCache;
+import com.bme.vik.aut.thesis.depot.security.user.PrincipalCache;
 import com.bme.vik.aut.thesis.depot.security.user.MyUser;
 import com.bme.vik.aut.thesis.depot.security.user.Role;
 import org.junit.jupiter.api.BeforeEach;
@@ -46,6 +48,12 @@ class SupplierServiceTest {
     @Mock
     private JwtTokenService jwtTokenService;
 
+    @Mock
+    private TokenVersionCache tokenVersionCache;
+
+    @Mock
+    private PrincipalCache principalCache;
+
     @InjectMocks
     private SupplierService supplierService;
 
@@ -335,6 +343,7 @@ class SupplierServiceTest {
                     .id(1L)
                     .name("Supplier A")
                     .inventory(Inventory.builder().id(1L).build())
+                    .user(MyUser.builder().id(2L).userName("Supplier A").build())
                     .build();
 
             CreateSupplierRequest request = CreateSupplierRequest.builder()
@@ -360,6 +369,7 @@ class SupplierServiceTest {
             verify(supplierRepository, times(1)).existsByName("Supplier B");
             verify(inventoryService, times(1)).updateInventory(existingSupplier.getInventory(), request);
             verify(supplierRepository, times(1)).save(existingSupplier);
+            verify(principalCache, times(1)).invalidate("Supplier A");
         }
     }
 
@@ -375,6 +385,7 @@ class SupplierServiceTest {
                 .id(1L)
                 .name("Supplier A")
                 .user(user)
+                .inventory(Inventory.builder().id(2L).build())
                 .build();
 
         when(supplierRepository.findById(1L)).thenReturn(Optional.of(supplier));
@@ -385,6 +396,9 @@ class SupplierServiceTest {
         //***** <-- then: Verify user is deleted --> *****//
         verify(userRepository, times(1)).delete(user);
         verify(supplierRepository, times(1)).findById(1L);
+        verify(inventoryService, times(1)).inventoryDeleted(2L);
+        verify(tokenVersionCache, times(1)).deleted(1L);
+        verify(principalCache, times(1)).invalidate("SupplierUser");
 
         // Verify no other interactions
         verifyNoMoreInteractions(userRepository);
@@ -10,6 +10,7 @@ import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.inventory.InventoryService;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.Product;
+import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductLotRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductRepository;
 import com.bme.vik.aut.thesis.depot.general.supplier.product.ProductStatus;
 import com.bme.vik.aut.thesis.depot.general.supplier.supplier.dto.SupplierCreationResponse;
@@ -59,6 +60,9 @@ class SupplierStockControllerIntegrationTest {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ProductLotRepository productLotRepository;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
@@ -102,6 +106,7 @@ class SupplierStockControllerIntegrationTest {
     @AfterEach
     void tearDown() {
         productRepository.deleteAll();
+        productLotRepository.deleteAll();
         productSchemaRepository.deleteAll();
         inventoryRepository.deleteAll();
         categoryRepository.deleteAll();
@@ -201,7 +206,8 @@ class SupplierStockControllerIntegrationTest {
 
         //***** <-- then: Verify stock addition --> *****//
         Inventory inventory = inventoryRepository.findAll().get(0);
-        assertEquals(10, inventory.getProductIds().size());
+        List<Long> inventoryProductIds = productRepository.findIdsByInventoryId(inventory.getId());
+        assertEquals(10, inventoryProductIds.size());
         assertEquals(50, inventory.getUsedSpace());
         assertEquals(950, inventory.getMaxAvailableSpace() - inventory.getUsedSpace());
 
@@ -248,7 +254,8 @@ class SupplierStockControllerIntegrationTest {
 
         //***** <-- then: Verify stock removal --> *****//
         Inventory inventory = inventoryRepository.findAll().get(0);
-        assertEquals(5, inventory.getProductIds().size());
+        List<Long> inventoryProductIds = productRepository.findIdsByInventoryId(inventory.getId());
+        assertEquals(5, inventoryProductIds.size());
         assertEquals(25, inventory.getUsedSpace());
         assertEquals(975, inventory.getMaxAvailableSpace() - inventory.getUsedSpace());
 
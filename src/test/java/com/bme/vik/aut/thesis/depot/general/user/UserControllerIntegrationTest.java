@@ -4,6 +4,7 @@ import com.bme.vik.aut.thesis.depot.general.util.TestUtil;
 import com.bme.vik.aut.thesis.depot.general.user.dto.UserModifyRequest;
 import com.bme.vik.aut.thesis.depot.general.user.dto.UserResponse;
 import com.bme.vik.aut.thesis.depot.security.auth.AuthService;
+import com.bme.vik.aut.thesis.depot.security.auth.dto.AuthRequest;
 import com.bme.vik.aut.thesis.depot.security.auth.dto.RegisterRequest;
 import com.bme.vik.aut.thesis.depot.security.user.MyUser;
 import com.bme.vik.aut.thesis.depot.security.user.Role;
@@ -37,6 +38,7 @@ class UserControllerIntegrationTest {
     private static final String BEARER_PREFIX = "Bearer ";
 
     private static final String USER_PATH = "/user";
+    private static final String USER_INFO_PATH = "/info/user/me";
 
     @Autowired
     private WebTestClient webTestClient;
@@ -223,6 +225,35 @@ class UserControllerIntegrationTest {
         assertFalse(userRepository.findById(savedUser.getId()).isPresent());
     }
 
+    @Test
+    void shouldRejectTokensOfUserOnceUpdatedOrDeleted() {
+        //***** <-- given: Registered user authenticated from its token --> *****//
+        RegisterRequest userRequest = RegisterRequest.builder()
+                .userName(userUsername)
+                .password(userPassword)
+                .build();
+        String userToken = authService.register(userRequest).getToken();
+        Long userId = userRepository.findByUserName(userUsername).orElseThrow().getId();
+        getOwnInfoWithToken(userToken).expectStatus().isOk();
+
+        //***** <-- when: User is updated --> *****//
+        updateUserById(userId, "updatedUser", "updatedPassword").expectStatus().isCreated();
+
+        //***** <-- then: Token issued before the update is rejected right away --> *****//
+        getOwnInfoWithToken(userToken).expectStatus().isForbidden();
+
+        //***** <-- when: User logs in again, then is deleted --> *****//
+        String newToken = authService.authenticate(AuthRequest.builder()
+                .userName("updatedUser")
+                .password("updatedPassword")
+                .build()).getToken();
+        getOwnInfoWithToken(newToken).expectStatus().isOk();
+        deleteUserById(userId).expectStatus().isNoContent();
+
+        //***** <-- then: New token is rejected too --> *****//
+        getOwnInfoWithToken(newToken).expectStatus().isForbidden();
+    }
+
     @Test
     void shouldNotDeleteUserByInvalidId() {
         //***** <-- given: Non-existing user ID --> *****//
@@ -257,6 +288,14 @@ class UserControllerIntegrationTest {
                 .exchange();
     }
 
+    WebTestClient.ResponseSpec getOwnInfoWithToken(String token) {
+        return webTestClient
+                .get()
+                .uri(USER_INFO_PATH)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .exchange();
+    }
+
     WebTestClient.ListBodySpec<UserResponse> getAllUsers() {
         return webTestClient
                 .get()
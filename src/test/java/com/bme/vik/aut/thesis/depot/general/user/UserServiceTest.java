@@ -4,6 +4,8 @@ import com.bme.vik.aut.thesis.depot.exception.user.UserNameAlreadyExistsExceptio
 import com.bme.vik.aut.thesis.depot.exception.user.UserNotFoundByIDException;
 import com.bme.vik.aut.thesis.depot.general.user.dto.UserModifyRequest;
 import com.bme.vik.aut.thesis.depot.general.user.dto.UserResponse;
+import com.bme.vik.aut.thesis.depot.security.jwt.TokenVersionCache;
+import com.bme.vik.aut.thesis.depot.security.user.PrincipalCache;
 import com.bme.vik.aut.thesis.depot.security.user.MyUser;
 import com.bme.vik.aut.thesis.depot.security.user.Role;
 import org.junit.jupiter.api.Test;
@@ -37,6 +39,12 @@ class UserServiceTest {
     @Mock
     private ModelMapper modelMapper;
 
+    @Mock
+    private TokenVersionCache tokenVersionCache;
+
+    @Mock
+    private PrincipalCache principalCache;
+
     @InjectMocks
     private UserService userService;
 
@@ -155,6 +163,7 @@ class UserServiceTest {
                 .userName(newUserName)
                 .password(encodedPassword)
                 .role(Role.USER)
+                .tokenVersion(1)
                 .createdAt(createdAt) // createdAt remains unchanged
                 .updatedAt(updatedAt) // updatedAt is now the current time
                 .build();
@@ -193,6 +202,10 @@ class UserServiceTest {
         MyUser savedUser = userCaptor.getValue();
 
         assertEquals(newUserName, savedUser.getUsername());
+        // tokens issued before the change are revoked
+        assertEquals(1, savedUser.getTokenVersion());
+        verify(tokenVersionCache).updated(userId, 1);
+        verify(principalCache).invalidate(userName);
         assertEquals(encodedPassword, savedUser.getPassword());
         assertEquals(Role.USER, savedUser.getRole());
         assertEquals(createdAt, savedUser.getCreatedAt(), "createdAt should not change on update");
@@ -248,6 +261,8 @@ class UserServiceTest {
         //***** <-- then: Verify deletion --> *****//
         verify(userRepository).findById(userId);
         verify(userRepository).delete(existingUser);
+        verify(tokenVersionCache).deleted(userId);
+        verify(principalCache).invalidate("user1");
     }
 
     @Test
@@ -6,6 +6,8 @@ import com.bme.vik.aut.thesis.depot.general.admin.category.dto.CreateCategoryReq
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchema;
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.ProductSchemaRepository;
 import com.bme.vik.aut.thesis.depot.general.admin.productschema.dto.CreateProductSchemaRequest;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxEventRepository;
+import com.bme.vik.aut.thesis.depot.general.alert.outbox.OutboxStatus;
 import com.bme.vik.aut.thesis.depot.general.order.Order;
 import com.bme.vik.aut.thesis.depot.general.order.OrderRepository;
 import com.bme.vik.aut.thesis.depot.general.order.OrderStatus;
@@ -28,11 +30,13 @@ import com.bme.vik.aut.thesis.depot.security.user.Role;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Map;
 
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -402,6 +406,13 @@ public class TestUtil {
                 .getResponseBody();
     }
 
+    // Alerts and reorders of an accepted order are published by the outbox relay, this waits until it caught up.
+    // Alert events handed to the digest stay pending until the digest is published.
+    public static void awaitOutboxRelayed(OutboxEventRepository outboxEventRepository) {
+        await().atMost(Duration.ofSeconds(10))
+                .until(() -> outboxEventRepository.countByStatusAndHandedToDigestAtIsNull(OutboxStatus.PENDING) == 0);
+    }
+
     public static void acceptPendingOrderWithAPI(
             WebTestClient webTestClient,
             String adminToken,
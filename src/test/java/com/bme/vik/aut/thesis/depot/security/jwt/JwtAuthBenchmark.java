@@ -0,0 +1,96 @@
+package com.bme.vik.aut.thesis.depot.security.jwt;
+
+import com.bme.vik.aut.thesis.depot.general.supplier.supplier.Supplier;
+import com.bme.vik.aut.thesis.depot.security.user.MyUser;
+import com.bme.vik.aut.thesis.depot.security.user.Role;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.io.Encoders;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.Key;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// CPU spent on the token of one request by JwtAuthFilter, without the user lookup.
+// Not run by the build, start it with:
+//   mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/test-classpath.txt
+//   java -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) com.bme.vik.aut.thesis.depot.security.jwt.JwtAuthBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtAuthBenchmark {
+
+    private String secretKey;
+    private String token;
+    private JwtTokenService uncachedService;
+    private JwtTokenService cachingService;
+
+    @Setup
+    public void setUp() {
+        secretKey = Encoders.BASE64.encode(Keys.secretKeyFor(SignatureAlgorithm.HS256).getEncoded());
+        uncachedService = tokenService(0);
+        cachingService = tokenService(10000);
+        token = uncachedService.generateToken(MyUser.builder()
+                .id(1L)
+                .userName("supplier")
+                .password("password")
+                .role(Role.SUPPLIER)
+                .supplier(Supplier.builder().id(1L).build())
+                .build());
+    }
+
+    // what the filter did before: a new key and parser for each of the two parses of the token
+    @Benchmark
+    public Object keyAndParserPerParse() {
+        String userName = parseWithNewParser(token).getSubject();
+        Claims claims = parseWithNewParser(token);
+        return userName.equals(claims.getSubject()) ? claims : null;
+    }
+
+    // first request with a token: one parse with the cached key and parser
+    @Benchmark
+    public Optional<MyUser> singleParse() {
+        return uncachedService.parseClaims(token).flatMap(uncachedService::extractPrincipal);
+    }
+
+    // later requests with the same token within the claims cache TTL
+    @Benchmark
+    public Optional<MyUser> cachedClaims() {
+        return cachingService.parseClaims(token).flatMap(cachingService::extractPrincipal);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtAuthBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+
+    private JwtTokenService tokenService(int claimsCacheMaxSize) {
+        JwtTokenService tokenService = new JwtTokenService();
+        tokenService.setSecretKey(secretKey);
+        tokenService.setJwtExpiration(3600000);
+        tokenService.setClaimsCacheTtlMs(60000);
+        tokenService.setClaimsCacheMaxSize(claimsCacheMaxSize);
+        return tokenService;
+    }
+
+    private Claims parseWithNewParser(String token) {
+        Key key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        return Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+}
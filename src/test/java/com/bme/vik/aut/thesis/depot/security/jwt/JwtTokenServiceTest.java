@@ -1,16 +1,23 @@
 package com.bme.vik.aut.thesis.depot.security.jwt;
 
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.supplier.Supplier;
 import com.bme.vik.aut.thesis.depot.security.user.MyUser;
 import com.bme.vik.aut.thesis.depot.security.user.Role;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Encoders;
+import io.jsonwebtoken.security.Keys;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -18,7 +25,9 @@ import static org.junit.jupiter.api.Assertions.*;
 @SpringJUnitConfig(JwtTokenServiceTest.JwtTokenServiceTestConfig.class)
 @TestPropertySource(properties = {
         "application.security.jwt.secret-key=rg26e1357eefb8bdf1542850d66d8007d620e4050b5715dc83f4a921d36ce9ce47d0d13c5d85f2b0ff8318d2877eec2f63b931bd47417a81a538327af927da3e",
-        "application.security.jwt.expiration=3600000"  // 1 hour expiration
+        "application.security.jwt.expiration=3600000",  // 1 hour expiration
+        "application.security.jwt.claims-cache.ttl-ms=60000",
+        "application.security.jwt.claims-cache.max-size=2"
 })
 class JwtTokenServiceTest {
 
@@ -212,6 +221,77 @@ class JwtTokenServiceTest {
         assertEquals(3, tokenParts.length, "JWT token should have 3 parts (header, payload, signature)");
     }
 
+    @Test
+    void shouldBuildPrincipalFromUserClaimsOfToken() {
+        //***** <-- given: Token of a saved supplier user --> *****//
+        MyUser user = MyUser.builder()
+                .id(7L)
+                .userName(SUPPLIER_NAME)
+                .password(SUPPLIER_PASSWORD)
+                .role(Role.SUPPLIER)
+                .tokenVersion(3)
+                .supplier(Supplier.builder().id(5L).inventory(Inventory.builder().id(9L).build()).build())
+                .build();
+        String token = jwtTokenService.generateToken(user);
+
+        //***** <-- when --> *****//
+        Optional<MyUser> principal = jwtTokenService.extractPrincipal(token);
+
+        //***** <-- then: Principal carries the user claims, no password --> *****//
+        assertTrue(principal.isPresent());
+        assertEquals(7L, principal.get().getId());
+        assertEquals(SUPPLIER_NAME, principal.get().getUsername());
+        assertEquals(Role.SUPPLIER, principal.get().getRole());
+        assertEquals(3, principal.get().getTokenVersion());
+        assertEquals(5L, principal.get().getSupplierId());
+        assertEquals(9L, principal.get().getInventoryId());
+        assertNull(principal.get().getPassword());
+        assertTrue(principal.get().getAuthorities().containsAll(Role.SUPPLIER.getAuthorities()));
+    }
+
+    @Test
+    void shouldNotBuildPrincipalFromTokenWithoutUserClaims() {
+        //***** <-- given: Token of a user without ID, like tokens issued before the user claims --> *****//
+        MyUser user = MyUser.builder()
+                .userName(USER_NAME)
+                .password(USER_PASSWORD)
+                .role(Role.USER)
+                .build();
+        String token = jwtTokenService.generateToken(user);
+
+        //***** <-- when and then --> *****//
+        assertTrue(jwtTokenService.extractPrincipal(token).isEmpty());
+        assertTrue(jwtTokenService.extractPrincipal(BAD_TOKEN).isEmpty());
+    }
+
+    @Test
+    void shouldAnswerRepeatedTokensFromClaimsCacheAndEvictLeastRecentlyUsed() {
+        //***** <-- given: Service caching the claims of two tokens, three tokens parsed --> *****//
+        JwtTokenService cachingService = new JwtTokenService();
+        cachingService.setSecretKey(Encoders.BASE64.encode(Keys.secretKeyFor(SignatureAlgorithm.HS256).getEncoded()));
+        cachingService.setJwtExpiration(3600000);
+        cachingService.setClaimsCacheTtlMs(60000);
+        cachingService.setClaimsCacheMaxSize(2);
+
+        String firstToken = cachingService.generateToken(MyUser.builder().userName("first").password(USER_PASSWORD).role(Role.USER).build());
+        String secondToken = cachingService.generateToken(MyUser.builder().userName("second").password(USER_PASSWORD).role(Role.USER).build());
+        String thirdToken = cachingService.generateToken(MyUser.builder().userName("third").password(USER_PASSWORD).role(Role.USER).build());
+
+        cachingService.parseClaims(firstToken);
+        cachingService.parseClaims(secondToken);
+        cachingService.parseClaims(firstToken);
+        cachingService.parseClaims(thirdToken);
+
+        //***** <-- when: Tokens can no longer be verified by parsing them again --> *****//
+        ReflectionTestUtils.setField(cachingService, "signInKey", Keys.secretKeyFor(SignatureAlgorithm.HS256));
+        ReflectionTestUtils.setField(cachingService, "jwtParser", null);
+
+        //***** <-- then: Cached tokens are answered without parsing, the least recently used one was evicted --> *****//
+        assertEquals("first", cachingService.parseClaims(firstToken).orElseThrow().getSubject());
+        assertEquals("third", cachingService.parseClaims(thirdToken).orElseThrow().getSubject());
+        assertTrue(cachingService.parseClaims(secondToken).isEmpty());
+    }
+
     @Test
     void shouldThrowExceptionWhenUserIsNull() {
         //***** <-- when and then --> *****//
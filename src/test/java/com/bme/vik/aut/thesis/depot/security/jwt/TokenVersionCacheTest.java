@@ -0,0 +1,92 @@
+package com.bme.vik.aut.thesis.depot.security.jwt;
+
+import com.bme.vik.aut.thesis.depot.general.alert.TimeService;
+import com.bme.vik.aut.thesis.depot.general.user.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenVersionCacheTest {
+
+    private static final Long USER_ID = 1L;
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private TimeService timeService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TokenVersionCache tokenVersionCache;
+
+    @BeforeEach
+    void setUp() {
+        tokenVersionCache = new TokenVersionCache(userRepository, timeService, meterRegistry);
+        ReflectionTestUtils.setField(tokenVersionCache, "VERSION_CACHE_TTL_MS", 30_000L);
+        ReflectionTestUtils.setField(tokenVersionCache, "VERSION_CACHE_MAX_SIZE", 100);
+        tokenVersionCache.init();
+    }
+
+    @Test
+    void shouldReadVersionOncePerTtl() {
+        //***** <-- given: User at version 0 --> *****//
+        when(timeService.getCurrentTime()).thenReturn(NOW, NOW.plusSeconds(10), NOW.plusSeconds(31));
+        when(userRepository.findTokenVersionById(USER_ID)).thenReturn(Optional.of(0));
+
+        //***** <-- when: Token is checked three times, the last one after the TTL --> *****//
+        boolean first = tokenVersionCache.isCurrent(USER_ID, 0);
+        boolean second = tokenVersionCache.isCurrent(USER_ID, 0);
+        boolean third = tokenVersionCache.isCurrent(USER_ID, 0);
+
+        //***** <-- then: Only the first and the expired check read the database --> *****//
+        assertTrue(first);
+        assertTrue(second);
+        assertTrue(third);
+        verify(userRepository, times(2)).findTokenVersionById(USER_ID);
+        assertEquals(1.0, meterRegistry.get("depot.auth.token.version.lookups").tag("result", "hit").counter().count());
+        assertEquals(2.0, meterRegistry.get("depot.auth.token.version.lookups").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void shouldRejectOlderTokensRightAfterUserWasUpdated() {
+        //***** <-- given: Cached version 0 --> *****//
+        when(timeService.getCurrentTime()).thenReturn(NOW);
+        when(userRepository.findTokenVersionById(USER_ID)).thenReturn(Optional.of(0));
+        assertTrue(tokenVersionCache.isCurrent(USER_ID, 0));
+
+        //***** <-- when: User is updated to version 1 --> *****//
+        tokenVersionCache.updated(USER_ID, 1);
+
+        //***** <-- then: Old token is rejected, new one accepted, without reading again --> *****//
+        assertFalse(tokenVersionCache.isCurrent(USER_ID, 0));
+        assertTrue(tokenVersionCache.isCurrent(USER_ID, 1));
+        verify(userRepository, times(1)).findTokenVersionById(USER_ID);
+    }
+
+    @Test
+    void shouldRejectTokensOfDeletedUser() {
+        //***** <-- given: One user deleted here, another one missing from the database --> *****//
+        when(timeService.getCurrentTime()).thenReturn(NOW);
+        when(userRepository.findTokenVersionById(2L)).thenReturn(Optional.empty());
+
+        //***** <-- when: User is deleted --> *****//
+        tokenVersionCache.deleted(USER_ID);
+
+        //***** <-- then: Tokens of both are rejected --> *****//
+        assertFalse(tokenVersionCache.isCurrent(USER_ID, 0));
+        assertFalse(tokenVersionCache.isCurrent(2L, 0));
+        verify(userRepository, never()).findTokenVersionById(USER_ID);
+    }
+}
@@ -0,0 +1,107 @@
+package com.bme.vik.aut.thesis.depot.security.user;
+
+import com.bme.vik.aut.thesis.depot.general.alert.TimeService;
+import com.bme.vik.aut.thesis.depot.general.supplier.inventory.Inventory;
+import com.bme.vik.aut.thesis.depot.general.supplier.supplier.Supplier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PrincipalCacheTest {
+
+    private static final String USER_NAME = "supplier";
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Mock
+    private TimeService timeService;
+
+    @Mock
+    private UserDetailsService userDetailsService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private PrincipalCache principalCache;
+
+    private final MyUser supplierUser = MyUser.builder()
+            .id(1L)
+            .userName(USER_NAME)
+            .password("encodedPassword")
+            .role(Role.SUPPLIER)
+            .supplier(Supplier.builder().id(2L).inventory(Inventory.builder().id(3L).build()).build())
+            .build();
+
+    @BeforeEach
+    void setUp() {
+        principalCache = new PrincipalCache(timeService, meterRegistry);
+        ReflectionTestUtils.setField(principalCache, "PRINCIPAL_CACHE_TTL_MS", 30_000L);
+        ReflectionTestUtils.setField(principalCache, "PRINCIPAL_CACHE_MAX_SIZE", 100);
+        principalCache.init();
+    }
+
+    @Test
+    void shouldLoadUserOncePerTtlAndKeepOnlyThePrincipal() {
+        //***** <-- given: Supplier user loaded from the database --> *****//
+        when(timeService.getCurrentTime()).thenReturn(NOW, NOW.plusSeconds(10), NOW.plusSeconds(31));
+        when(userDetailsService.loadUserByUsername(USER_NAME)).thenReturn(supplierUser);
+
+        //***** <-- when: User is resolved three times, the last one after the TTL --> *****//
+        UserDetails first = principalCache.getUser(USER_NAME, null, userDetailsService);
+        UserDetails second = principalCache.getUser(USER_NAME, null, userDetailsService);
+        principalCache.getUser(USER_NAME, null, userDetailsService);
+
+        //***** <-- then: Loaded twice, the principal knows supplier and inventory but not the password --> *****//
+        verify(userDetailsService, times(2)).loadUserByUsername(USER_NAME);
+        MyUser principal = (MyUser) second;
+        assertEquals(1L, principal.getId());
+        assertEquals(Role.SUPPLIER, principal.getRole());
+        assertEquals(2L, principal.getSupplierId());
+        assertEquals(3L, principal.getInventoryId());
+        assertNull(principal.getPassword());
+        assertEquals(first, second);
+        assertEquals(1.0, meterRegistry.get("depot.auth.principal.lookups").tag("result", "hit").counter().count());
+        assertEquals(2.0, meterRegistry.get("depot.auth.principal.lookups").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void shouldNotUsePrincipalOfEarlierUserWithSameName() {
+        //***** <-- given: Principal cached for user 1 --> *****//
+        when(timeService.getCurrentTime()).thenReturn(NOW);
+        MyUser recreatedUser = MyUser.builder().id(5L).userName(USER_NAME).role(Role.USER).build();
+        when(userDetailsService.loadUserByUsername(USER_NAME)).thenReturn(supplierUser, recreatedUser);
+        principalCache.getUser(USER_NAME, 1L, userDetailsService);
+
+        //***** <-- when: Token of a user created with the same name elsewhere arrives --> *****//
+        MyUser principal = (MyUser) principalCache.getUser(USER_NAME, 5L, userDetailsService);
+
+        //***** <-- then: The new user is loaded --> *****//
+        assertEquals(5L, principal.getId());
+        assertNull(principal.getSupplier());
+        verify(userDetailsService, times(2)).loadUserByUsername(USER_NAME);
+    }
+
+    @Test
+    void shouldLoadUserAgainOnceInvalidated() {
+        //***** <-- given: Cached principal --> *****//
+        when(timeService.getCurrentTime()).thenReturn(NOW);
+        when(userDetailsService.loadUserByUsername(USER_NAME)).thenReturn(supplierUser);
+        principalCache.getUser(USER_NAME, null, userDetailsService);
+
+        //***** <-- when: User is changed --> *****//
+        principalCache.invalidate(USER_NAME);
+        principalCache.getUser(USER_NAME, null, userDetailsService);
+
+        //***** <-- then: Loaded again --> *****//
+        verify(userDetailsService, times(2)).loadUserByUsername(USER_NAME);
+    }
+}